@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.account;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.context.DemoData;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.data.FriendshipValues;
+import org.andstatus.app.data.MyQuery;
+import org.andstatus.app.database.UserTable;
+import org.andstatus.app.util.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MyFriendsTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testFriendsAreKeptCurrent() {
+        MyAccount ma = DemoData.getConversationMyAccount();
+        PersistentAccounts accounts = MyContextHolder.get().persistentAccounts();
+        LongSet friendsStored = MyQuery.getFriendsIds(ma.getUserId());
+        assertEquals(friendsStored, accounts.myFriends().getFriendsOf(ma.getUserId()));
+
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        long userId = 0;
+        for (int offset = 0; userId == 0 || accounts.isAccountUserId(userId); offset++) {
+            userId = MyQuery.sqlToLong(db, "testFriendsAreKeptCurrent", "SELECT " + UserTable._ID
+                    + " FROM " + UserTable.TABLE_NAME + " ORDER BY " + UserTable._ID + " DESC LIMIT 1 OFFSET " + offset);
+            if (userId == 0) {
+                break;
+            }
+        }
+        assertTrue("User found", userId != 0);
+        FriendshipValues.setNotFollowed(ma.getUserId(), userId);
+        assertFalse("Not a friend " + userId, accounts.myFriends().isFriend(ma.getUserId(), userId));
+
+        FriendshipValues.setFollowed(ma.getUserId(), userId);
+        assertTrue("Followed " + userId, accounts.isMeOrMyFriend(userId));
+        assertTrue(accounts.myFriends().isFriend(ma.getUserId(), userId));
+        LongSet friendsOf = accounts.myFriends().getFriendsOf(ma.getUserId());
+        friendsOf.remove(userId);
+        assertTrue("The copy was changed only " + userId, accounts.myFriends().isFriend(ma.getUserId(), userId));
+
+        LongSet friends = new LongSet(MyQuery.getFriendsIds(ma.getUserId()));
+        friends.remove(userId);
+        FriendshipValues.syncFriends(ma.getUserId(), MyQuery.getFriendsIds(ma.getUserId()), friends);
+        assertFalse("Unfollowed by sync " + userId, accounts.myFriends().isFriend(ma.getUserId(), userId));
+        assertEquals(MyQuery.getFriendsIds(ma.getUserId()), accounts.myFriends().getFriendsOf(ma.getUserId()));
+
+        FriendshipValues.syncFriends(ma.getUserId(), MyQuery.getFriendsIds(ma.getUserId()), friendsStored);
+        assertEquals("Restored", friendsStored, accounts.myFriends().getFriendsOf(ma.getUserId()));
+    }
+}
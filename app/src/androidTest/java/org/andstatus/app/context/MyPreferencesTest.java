@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.context;
+
+import org.andstatus.app.util.SharedPreferencesUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MyPreferencesTest {
+    private String syncLanesStored;
+    private String syncLanesPerOriginStored;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        syncLanesStored = SharedPreferencesUtil.getString(MyPreferences.KEY_SYNC_LANES, "");
+        syncLanesPerOriginStored = SharedPreferencesUtil.getString(MyPreferences.KEY_SYNC_LANES_PER_ORIGIN, "");
+    }
+
+    @After
+    public void tearDown() {
+        SharedPreferencesUtil.putString(MyPreferences.KEY_SYNC_LANES, syncLanesStored);
+        SharedPreferencesUtil.putString(MyPreferences.KEY_SYNC_LANES_PER_ORIGIN, syncLanesPerOriginStored);
+    }
+
+    @Test
+    public void testSyncLanesAreInBounds() {
+        assertSyncLanes("0", "0", 1, 1);
+        assertSyncLanes("-3", "-1", 1, 1);
+        assertSyncLanes("3", "0", 3, 1);
+        assertSyncLanes("3", "5", 3, 3);
+        assertSyncLanes("100", "2", 8, 2);
+        assertSyncLanes("not a number", "", 1, 1);
+    }
+
+    private static void assertSyncLanes(String lanes, String lanesPerOrigin, int expected, int expectedPerOrigin) {
+        SharedPreferencesUtil.putString(MyPreferences.KEY_SYNC_LANES, lanes);
+        SharedPreferencesUtil.putString(MyPreferences.KEY_SYNC_LANES_PER_ORIGIN, lanesPerOrigin);
+        assertEquals("Lanes for '" + lanes + "'", expected, MyPreferences.getSyncLanes());
+        assertEquals("Lanes per origin for '" + lanesPerOrigin + "'", expectedPerOrigin,
+                MyPreferences.getSyncLanesPerOrigin());
+    }
+}
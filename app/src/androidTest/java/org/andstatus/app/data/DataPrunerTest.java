@@ -1,11 +1,15 @@
 package org.andstatus.app.data;
 
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
 
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.MsgOfUserTable;
+import org.andstatus.app.service.CommandExecutorParent;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
 import org.andstatus.app.util.SharedPreferencesUtil;
@@ -90,6 +94,39 @@ public class DataPrunerTest {
         MyLog.v(this, method + "; Ended");
     }
 
+    @Test
+    public void testPausedPruning() {
+        clearPrunedDate();
+        DataPruner dp = new DataPruner(MyContextHolder.get()).setParent(new CommandExecutorParent() {
+            @Override
+            public boolean isStopping() {
+                return true;
+            }
+        });
+        assertFalse("Pruning paused", dp.prune());
+        assertEquals("Pruning date not updated", 0,
+                SharedPreferencesUtil.getLong(MyPreferences.KEY_DATA_PRUNED_DATE));
+        assertTrue("Pruned after resume", new DataPruner(MyContextHolder.get()).prune());
+    }
+
+    @Test
+    public void testPausedPruningOfLinksIsFinishedLater() {
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        ContentValues values = new ContentValues();
+        values.put(MsgOfUserTable.USER_ID, 1L);
+        values.put(MsgOfUserTable.MSG_ID, -555L);
+        long rowId = db.insert(MsgOfUserTable.TABLE_NAME, null, values);
+        assertTrue("Link to an absent message inserted", rowId > 0);
+        SharedPreferencesUtil.putLong(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_ROWID, 0);
+        SharedPreferencesUtil.putBoolean(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_PENDING, true);
+
+        clearPrunedDate();
+        assertTrue("Pruned", new DataPruner(MyContextHolder.get()).prune());
+        assertFalse("Pruning of links finished", DataPruner.isMsgOfUserPruningPending());
+        assertEquals("Link deleted", 0, MyQuery.sqlToLong(db, "testPausedPruningOfLinksIsFinishedLater",
+                "SELECT COUNT(*) FROM " + MsgOfUserTable.TABLE_NAME + " WHERE rowid=" + rowId));
+    }
+
     @Test
     public void testPruneAttachments() throws MalformedURLException {
         DataPruner dp = new DataPruner(MyContextHolder.get());
@@ -46,6 +46,8 @@ import org.andstatus.app.util.TriState;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -566,4 +568,38 @@ public class DataUpdaterTest {
         long messageId = di.onActivity(message.update(accountUser));
         assertTrue("Message added", messageId != 0);
     }
+
+    @Test
+    public void testOnActivities() {
+        MyAccount ma = DemoData.getMyAccount(DemoData.GNUSOCIAL_TEST_ACCOUNT_NAME);
+        MbUser accountUser = ma.toPartialUser();
+        MbUser author = MbUser.fromOriginAndUserOid(accountUser.originId, "page" + DemoData.TESTRUN_UID);
+        author.setUserName("pageAuthor");
+
+        List<MbActivity> activities = new ArrayList<>();
+        List<MbMessage> messages = new ArrayList<>();
+        for (int ind = 0; ind < 3; ind++) {
+            MbMessage message = MbMessage.fromOriginAndOid(accountUser.originId,
+                    accountUser.oid, "page" + ind + "-" + System.nanoTime(), DownloadStatus.LOADED);
+            message.setBody("Message " + ind + " of the page");
+            message.setUpdatedDate(System.currentTimeMillis());
+            message.setAuthor(author);
+            messages.add(message);
+            activities.add(message.update(accountUser));
+        }
+
+        DataUpdater di = new DataUpdater(ma);
+        di.onActivities(activities);
+        di.saveLum();
+
+        long authorId = MyQuery.oidToId(OidEnum.USER_OID, accountUser.originId, author.oid);
+        assertTrue("Author added", authorId != 0);
+        for (MbMessage message : messages) {
+            assertTrue("Message added " + message, message.msgId != 0);
+            assertEquals("Message stored " + message, message.msgId,
+                    MyQuery.oidToId(OidEnum.MSG_OID, accountUser.originId, message.oid));
+            assertEquals("Author of " + message, authorId,
+                    MyQuery.msgIdToLongColumnValue(MsgTable.AUTHOR_ID, message.msgId));
+        }
+    }
 }
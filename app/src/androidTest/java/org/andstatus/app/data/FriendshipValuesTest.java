@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.UserTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FriendshipValuesTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testSyncFriendsAndFollowers() {
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        long[] ids = new long[4];
+        for (int index = 0; index < ids.length; index++) {
+            ids[index] = MyQuery.sqlToLong(db, "testSyncFriends", "SELECT " + UserTable._ID
+                    + " FROM " + UserTable.TABLE_NAME + " ORDER BY " + UserTable._ID + " LIMIT 1 OFFSET " + index);
+            assertTrue("User " + index + " found", ids[index] != 0);
+        }
+        long userId = ids[0];
+
+        Set<Long> friendsStored = MyQuery.getFriendsIds(userId);
+        Set<Long> friends = new HashSet<>();
+        friends.add(ids[1]);
+        friends.add(ids[2]);
+        FriendshipValues.syncFriends(userId, friendsStored, friends);
+        assertEquals(friends, MyQuery.getFriendsIds(userId));
+
+        Set<Long> friends2 = new HashSet<>();
+        friends2.add(ids[2]);
+        friends2.add(ids[3]);
+        FriendshipValues.syncFriends(userId, MyQuery.getFriendsIds(userId), friends2);
+        assertEquals(friends2, MyQuery.getFriendsIds(userId));
+        assertTrue("Follower of " + ids[3], MyQuery.getFollowersIds(ids[3]).contains(userId));
+        assertTrue("Not a follower of " + ids[1], !MyQuery.getFollowersIds(ids[1]).contains(userId));
+
+        Set<Long> followersStored = MyQuery.getFollowersIds(ids[1]);
+        Set<Long> followers = new HashSet<>(followersStored);
+        followers.add(userId);
+        FriendshipValues.syncFollowers(ids[1], followersStored, followers);
+        assertEquals(followers, MyQuery.getFollowersIds(ids[1]));
+        assertTrue("Friend of " + userId, MyQuery.getFriendsIds(userId).contains(ids[1]));
+
+        FriendshipValues.syncFollowers(ids[1], followers, followersStored);
+        FriendshipValues.syncFriends(userId, MyQuery.getFriendsIds(userId), friendsStored);
+        assertEquals("Restored", friendsStored, MyQuery.getFriendsIds(userId));
+    }
+}
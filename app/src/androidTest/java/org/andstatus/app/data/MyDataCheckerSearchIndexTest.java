@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.backup.ProgressLogger;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.MsgTable;
+import org.andstatus.app.util.MyHtml;
+import org.andstatus.app.util.SharedPreferencesUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MyDataCheckerSearchIndexTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testFixAndResume() {
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        long msgId = MyQuery.sqlToLong(db, "testFixAndResume", "SELECT " + MsgTable._ID + " FROM " + MsgTable.TABLE_NAME
+                + " WHERE " + MsgTable.BODY + " IS NOT NULL ORDER BY " + MsgTable._ID + " DESC LIMIT 1");
+        assertTrue("Message found", msgId != 0);
+        String expected = MyHtml.getBodyToSearch(MyQuery.msgIdToStringColumnValue(MsgTable.BODY, msgId));
+        DbUtils.execSQL(db, "UPDATE " + MsgTable.TABLE_NAME + " SET " + MsgTable.BODY_TO_SEARCH + "='wrong'"
+                + " WHERE " + MsgTable._ID + "=" + msgId);
+
+        SharedPreferencesUtil.putLong(MyDataCheckerSearchIndex.CHECKPOINT_KEY, msgId);
+        new MyDataCheckerSearchIndex(MyContextHolder.get(), ProgressLogger.getEmpty()).fixData();
+        assertEquals("Checked rows are skipped on resume", "wrong",
+                MyQuery.msgIdToStringColumnValue(MsgTable.BODY_TO_SEARCH, msgId));
+        assertEquals("Checkpoint removed", 0, SharedPreferencesUtil.getLong(MyDataCheckerSearchIndex.CHECKPOINT_KEY));
+
+        new MyDataCheckerSearchIndex(MyContextHolder.get(), ProgressLogger.getEmpty()).fixData();
+        assertEquals("Fixed", expected, MyQuery.msgIdToStringColumnValue(MsgTable.BODY_TO_SEARCH, msgId));
+    }
+
+    @Test
+    public void testMessageChangedDuringCheckIsNotOverwritten() {
+        final SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        final long msgId = MyQuery.sqlToLong(db, "testMessageChangedDuringCheck", "SELECT " + MsgTable._ID
+                + " FROM " + MsgTable.TABLE_NAME
+                + " WHERE " + MsgTable.BODY + " IS NOT NULL ORDER BY " + MsgTable._ID + " DESC LIMIT 1");
+        assertTrue("Message found", msgId != 0);
+        final String bodyStored = MyQuery.msgIdToStringColumnValue(MsgTable.BODY, msgId);
+        final String bodyNew = "Changed by sync " + System.currentTimeMillis();
+        DbUtils.execSQL(db, "UPDATE " + MsgTable.TABLE_NAME + " SET " + MsgTable.BODY_TO_SEARCH + "='wrong'"
+                + " WHERE " + MsgTable._ID + "=" + msgId);
+
+        SharedPreferencesUtil.putLong(MyDataCheckerSearchIndex.CHECKPOINT_KEY, msgId - 1);
+        new MyDataCheckerSearchIndex(MyContextHolder.get(), ProgressLogger.getEmpty()) {
+            @Override
+            protected boolean fix(Row row) {
+                if (row.id == msgId) {
+                    // Sync rewrites the message after it was loaded for the check
+                    updateBody(db, msgId, bodyNew);
+                }
+                return super.fix(row);
+            }
+        }.fixData();
+        assertEquals("The body to search of the changed message is kept", MyHtml.getBodyToSearch(bodyNew),
+                MyQuery.msgIdToStringColumnValue(MsgTable.BODY_TO_SEARCH, msgId));
+
+        updateBody(db, msgId, bodyStored);
+    }
+
+    private static void updateBody(SQLiteDatabase db, long msgId, String body) {
+        ContentValues values = new ContentValues();
+        values.put(MsgTable.BODY, body);
+        values.put(MsgTable.BODY_TO_SEARCH, MyHtml.getBodyToSearch(body));
+        db.update(MsgTable.TABLE_NAME, values, MsgTable._ID + "=" + msgId, null);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.database.MsgTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OidCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testMessageOid() {
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        long msgId = MyQuery.sqlToLong(db, "testMessageOid", "SELECT " + MsgTable._ID + " FROM " + MsgTable.TABLE_NAME
+                + " WHERE " + MsgTable.MSG_OID + " IS NOT NULL LIMIT 1");
+        assertTrue("Message found", msgId != 0);
+        long originId = MyQuery.msgIdToOriginId(msgId);
+
+        OidCache.clear();
+        String oid = MyQuery.idToOid(OidEnum.MSG_OID, msgId, 0);
+        assertFalse("Oid of " + msgId, oid.isEmpty());
+        assertEquals("Not cached yet", 0, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+        assertEquals(msgId, MyQuery.oidToId(OidEnum.MSG_OID, originId, oid));
+        assertEquals("Cached", msgId, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+        assertEquals("Cached oid", oid, MyQuery.idToOid(OidEnum.MSG_OID, msgId, 0));
+        assertEquals("Other origin", 0, OidCache.getCached(db, OidEnum.MSG_OID, originId + 1, oid));
+        assertEquals("Other entity", 0, OidCache.getCached(db, OidEnum.USER_OID, originId, oid));
+
+        OidCache.forget(OidEnum.MSG_OID, msgId);
+        assertEquals("Forgotten", 0, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+        assertEquals("Found again", msgId, MyQuery.oidToId(OidEnum.MSG_OID, originId, oid));
+
+        OidCache.clear();
+        assertEquals("Cleared", 0, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+        assertEquals("Not found", 0, MyQuery.oidToId(OidEnum.MSG_OID, originId, oid + "_absent"));
+    }
+
+    @Test
+    public void testLookupBeforeInvalidationIsNotCached() {
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        long msgId = MyQuery.sqlToLong(db, "testLookupBeforeInvalidation", "SELECT " + MsgTable._ID
+                + " FROM " + MsgTable.TABLE_NAME + " WHERE " + MsgTable.MSG_OID + " IS NOT NULL LIMIT 1");
+        assertTrue("Message found", msgId != 0);
+        long originId = MyQuery.msgIdToOriginId(msgId);
+        String oid = MyQuery.idToOid(OidEnum.MSG_OID, msgId, 0);
+
+        OidCache.clear();
+        long generation = OidCache.getGeneration();
+        OidCache.clear();
+        OidCache.putIfValid(generation, OidEnum.MSG_OID, originId, oid, msgId);
+        assertEquals("Not cached after invalidation", 0, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+        OidCache.putIfValid(OidCache.getGeneration(), OidEnum.MSG_OID, originId, oid, msgId);
+        assertEquals("Cached", msgId, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+
+        OidCache.clear();
+        Map<String, Long> ids = MyQuery.oidsToIds(OidEnum.MSG_OID, originId, Arrays.asList(oid, oid, ""));
+        assertEquals("Duplicates are looked up once " + ids, 1, ids.size());
+        assertEquals(Long.valueOf(msgId), ids.get(oid));
+        assertEquals("Cached by the bulk lookup", msgId, OidCache.getCached(db, OidEnum.MSG_OID, originId, oid));
+    }
+}
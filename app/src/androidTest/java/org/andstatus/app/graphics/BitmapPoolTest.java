@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BitmapPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        BitmapPool pool = new BitmapPool(800, 400, 10L * 800 * 400 * ImageCache.BYTES_PER_PIXEL);
+        assertEquals(100, pool.classWidth(1));
+        assertEquals(100, pool.classWidth(100));
+        assertEquals(200, pool.classWidth(101));
+        assertEquals("Not larger than the maximum", 800, pool.classWidth(1000));
+        assertEquals(50, pool.classHeight(20));
+
+        assertNull("Empty pool", pool.acquire(150, 40));
+        Bitmap bitmap = Bitmap.createBitmap(200, 50, CachedImage.BITMAP_CONFIG);
+        pool.release(bitmap);
+        assertNull("Other size class", pool.acquire(250, 40));
+        assertSame("Same size class", bitmap, pool.acquire(150, 40));
+        assertNull("Taken from the pool", pool.acquire(150, 40));
+
+        pool.release(Bitmap.createBitmap(120, 50, CachedImage.BITMAP_CONFIG).copy(CachedImage.BITMAP_CONFIG, false));
+        assertNull("Immutable bitmap cannot be reused", pool.acquire(120, 50));
+
+        pool.release(bitmap);
+        pool.clear();
+        assertNull("Cleared", pool.acquire(150, 40));
+    }
+
+    @Test
+    public void testSizeLimit() {
+        long bitmapBytes = 100L * 100 * ImageCache.BYTES_PER_PIXEL;
+        BitmapPool pool = new BitmapPool(800, 800, bitmapBytes);
+        Bitmap bitmap1 = Bitmap.createBitmap(100, 100, CachedImage.BITMAP_CONFIG);
+        Bitmap bitmap2 = Bitmap.createBitmap(100, 100, CachedImage.BITMAP_CONFIG);
+        pool.release(bitmap1);
+        pool.release(bitmap2);
+        assertSame(bitmap1, pool.acquire(100, 100));
+        assertNull("The second bitmap didn't fit", pool.acquire(100, 100));
+    }
+}
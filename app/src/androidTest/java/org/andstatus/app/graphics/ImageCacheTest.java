@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.content.ComponentCallbacks2;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImageCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testOutOfMemoryDoesNotDisableCaching() {
+        int requestedSizeBytes = 100 * 100 * ImageCache.BYTES_PER_PIXEL * 64;
+        ImageCache cache = new ImageCache(MyContextHolder.get().context(), CacheName.AVATAR, 100,
+                requestedSizeBytes, 0);
+        assertEquals(0, cache.size());
+        for (int i = 0; i < 10; i++) {
+            cache.onOutOfMemory();
+        }
+        int minSizeBytes = cache.getMinSizeBytes();
+        assertTrue("Minimum size " + minSizeBytes, minSizeBytes > 0);
+        assertEquals(cache.getInfo(), minSizeBytes, cache.getCurrentSizeBytes());
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(cache.getInfo(), requestedSizeBytes, cache.getCurrentSizeBytes());
+    }
+}
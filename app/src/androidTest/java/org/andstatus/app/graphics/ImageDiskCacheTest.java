@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.graphics;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImageDiskCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Context context = MyContextHolder.get().context();
+        ImageDiskCache cache = new ImageDiskCache(context, CacheName.ATTACHED_IMAGE, 50, 40, 1024 * 1024);
+        File source = new File(context.getCacheDir(), "ImageDiskCacheTest.png");
+        Bitmap bitmap = Bitmap.createBitmap(40, 30, CachedImage.BITMAP_CONFIG);
+        bitmap.eraseColor(Color.BLUE);
+        FileOutputStream out = new FileOutputStream(source);
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        out.close();
+        String path = source.getAbsolutePath();
+
+        assertNull(cache.load(this, path));
+        cache.save(this, path, bitmap);
+        Bitmap loaded = cache.load(this, path);
+        assertNotNull(cache.getInfo(), loaded);
+        assertEquals(40, loaded.getWidth());
+        assertEquals(30, loaded.getHeight());
+
+        File[] files = new File(new File(context.getCacheDir(), ImageDiskCache.DIRECTORY_IMAGES),
+                "attached_image").listFiles();
+        assertTrue(files != null && files.length > 0);
+        for (File file : files) {
+            assertTrue("No temporary files left: " + file.getName(),
+                    file.getName().matches("[0-9a-f]{40}_\\d+x\\d+"));
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.seek(raf.length() - 1);
+            int lastByte = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(lastByte ^ 0xFF);
+            raf.close();
+        }
+        assertNull("Broken file should be ignored", cache.load(this, path));
+
+        cache.save(this, path, bitmap);
+        assertTrue(source.setLastModified(source.lastModified() - 10000));
+        assertNull("Changed source file", cache.load(this, path));
+        assertTrue(source.delete());
+    }
+}
@@ -59,6 +59,39 @@ public class KeywordsFilterTest {
         assertNotMatchAll(query, body2);
     }
 
+    @Test
+    public void testSqlMatchQuery() {
+        assertEquals("\"deleted notice*\"", new KeywordsFilter("\"deleted notice\"").getSqlMatchQuery());
+        assertEquals("\"word*\" \"deleted notice*\"",
+                new KeywordsFilter("  , Word, \"deleted notice\"").getSqlMatchQuery());
+        assertEquals("\"andstatus andstatus*\"", new KeywordsFilter("#AndStatus").getSqlMatchQuery());
+        assertEquals("\"user user example com*\"", new KeywordsFilter("@user@example.com").getSqlMatchQuery());
+        assertEquals("", new KeywordsFilter("...").getSqlMatchQuery());
+        assertEquals("", new KeywordsFilter("").getSqlMatchQuery());
+    }
+
+    @Test
+    public void testWholeWordsOnly() {
+        final String body = "I like AndStatus, status of my timeline";
+        assertMatchAll("status", body);
+        assertMatchAll("andstatus", body);
+        assertNotMatchAll("stat", body);
+    }
+
+    @Test
+    public void testSqlExclusion() {
+        KeywordsFilter filter = new KeywordsFilter("  , Word, \"deleted notice\"");
+        assertEquals("(body IS NULL OR NOT (body LIKE ? ESCAPE '\\' OR body LIKE ? ESCAPE '\\'))",
+                filter.getSqlExclusion("body"));
+        String[] args = filter.getSqlExclusionArgs();
+        assertEquals(2, args.length);
+        assertEquals("%,word,%", args[0]);
+        assertEquals("%,deleted,notice,%", args[1]);
+
+        assertEquals("", new KeywordsFilter("").getSqlExclusion("body"));
+        assertEquals(0, new KeywordsFilter("").getSqlExclusionArgs().length);
+    }
+
     private void assertOneQueryToKeywords(String query, String... keywords) {
         int size = keywords.length;
         KeywordsFilter filter1 = new KeywordsFilter(query);
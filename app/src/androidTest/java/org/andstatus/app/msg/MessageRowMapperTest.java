@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.msg;
+
+import android.database.Cursor;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.context.DemoData;
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.data.DownloadStatus;
+import org.andstatus.app.data.MatchedUri;
+import org.andstatus.app.data.TimelineSql;
+import org.andstatus.app.database.MsgOfUserTable;
+import org.andstatus.app.database.MsgTable;
+import org.andstatus.app.database.UserTable;
+import org.andstatus.app.timeline.Timeline;
+import org.andstatus.app.timeline.TimelineType;
+import org.andstatus.app.util.MyHtml;
+import org.andstatus.app.util.SharedPreferencesUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageRowMapperTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testSameAsMappingByColumnNames() {
+        boolean showOriginStored = MyPreferences.getShowOrigin();
+        try {
+            SharedPreferencesUtil.putBoolean(MyPreferences.KEY_SHOW_ORIGIN, false);
+            assertMappedByNames();
+            SharedPreferencesUtil.putBoolean(MyPreferences.KEY_SHOW_ORIGIN, true);
+            assertMappedByNames();
+        } finally {
+            SharedPreferencesUtil.putBoolean(MyPreferences.KEY_SHOW_ORIGIN, showOriginStored);
+        }
+    }
+
+    private void assertMappedByNames() {
+        MyContext myContext = MyContextHolder.get();
+        MyAccount ma = DemoData.getMyAccount(DemoData.CONVERSATION_ACCOUNT_NAME);
+        Cursor cursor = myContext.context().getContentResolver().query(
+                MatchedUri.getTimelineUri(Timeline.getTimeline(TimelineType.HOME, ma, 0, null)),
+                TimelineSql.getTimelineProjection(), null, null, MsgTable.DESC_SORT_ORDER);
+        assertTrue("No cursor", cursor != null);
+        int rowsCount = 0;
+        try {
+            if (cursor.moveToFirst()) {
+                MessageRowMapper row = new MessageRowMapper(cursor);
+                do {
+                    rowsCount++;
+                    assertRow(myContext, cursor, TimelineViewItem.fromCursorRow(myContext, row));
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue("No messages in the timeline of " + ma, rowsCount > 0);
+    }
+
+    private static void assertRow(MyContext myContext, Cursor cursor, TimelineViewItem item) {
+        String msgLog = "Row " + cursor.getPosition() + ", " + item;
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable._ID), item.getMsgId());
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.ORIGIN_ID), item.getOriginId());
+        assertEquals(msgLog, DbUtils.getLong(cursor, UserTable.LINKED_USER_ID), item.getLinkedUserId());
+        assertEquals(msgLog, TimelineSql.userColumnNameToNameAtTimeline(cursor, UserTable.AUTHOR_NAME,
+                MyPreferences.getShowOrigin()), item.authorName);
+        assertEquals(msgLog, MyHtml.prepareForView(DbUtils.getString(cursor, MsgTable.BODY)), item.getBody());
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_MSG_ID), item.inReplyToMsgId);
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_USER_ID), item.inReplyToUserId);
+        assertEquals(msgLog, DbUtils.getString(cursor, UserTable.IN_REPLY_TO_NAME), item.inReplyToName);
+        assertEquals(msgLog, DbUtils.getString(cursor, UserTable.RECIPIENT_NAME), item.recipientName);
+        assertEquals(msgLog, item.isLinkedToMyAccount() && DbUtils.getLong(cursor, MsgOfUserTable.FAVORITED) == 1,
+                item.favorited);
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.SENT_DATE), item.sentDate);
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.UPDATED_DATE), item.updatedDate);
+        assertEquals(msgLog, DownloadStatus.load(DbUtils.getLong(cursor, MsgTable.MSG_STATUS)), item.msgStatus);
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.AUTHOR_ID), item.authorId);
+        assertEquals(msgLog, DbUtils.getLong(cursor, MsgTable.ACTOR_ID) != item.authorId
+                || (item.isLinkedToMyAccount() && DbUtils.getInt(cursor, MsgOfUserTable.REBLOGGED) == 1),
+                item.isReblogged());
+        assertEquals(msgLog, DbUtils.getString(cursor, MsgTable.VIA), item.via);
+        assertEquals(msgLog, myContext, item.getMyContext());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.msg;
+
+import android.text.Spanned;
+
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RenderedBodyCacheTest {
+    /** Far from ids of real messages, which may be in the cache too */
+    private static final long FIRST_MSG_ID = 1000000000L;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreEvicted() {
+        Spanned first = RenderedBodyCache.get(FIRST_MSG_ID, bodyOf(FIRST_MSG_ID));
+        Spanned second = RenderedBodyCache.get(FIRST_MSG_ID + 1, bodyOf(FIRST_MSG_ID + 1));
+        for (long msgId = FIRST_MSG_ID + 2; msgId < FIRST_MSG_ID + RenderedBodyCache.MAX_SIZE; msgId++) {
+            RenderedBodyCache.get(msgId, bodyOf(msgId));
+        }
+        assertSame("Cached", first, RenderedBodyCache.get(FIRST_MSG_ID, bodyOf(FIRST_MSG_ID)));
+
+        long nextMsgId = FIRST_MSG_ID + RenderedBodyCache.MAX_SIZE;
+        RenderedBodyCache.get(nextMsgId, bodyOf(nextMsgId));
+        assertSame("Recently used", first, RenderedBodyCache.get(FIRST_MSG_ID, bodyOf(FIRST_MSG_ID)));
+        Spanned secondRendered = RenderedBodyCache.get(FIRST_MSG_ID + 1, bodyOf(FIRST_MSG_ID + 1));
+        assertNotSame("Least recently used is evicted", second, secondRendered);
+        assertEquals(second.toString(), secondRendered.toString());
+    }
+
+    @Test
+    public void testChangedBodyIsRenderedAgain() {
+        long msgId = FIRST_MSG_ID - 1;
+        Spanned rendered = RenderedBodyCache.get(msgId, "<p>Old <b>body</b></p>");
+        assertSame(rendered, RenderedBodyCache.get(msgId, "<p>Old <b>body</b></p>"));
+
+        Spanned changed = RenderedBodyCache.get(msgId, "<p>New body</p>");
+        assertNotSame("The message was changed", rendered, changed);
+        assertEquals("New body", changed.toString().trim());
+        assertSame(changed, RenderedBodyCache.get(msgId, "<p>New body</p>"));
+
+        assertNull("Empty body", RenderedBodyCache.get(msgId, ""));
+    }
+
+    private static String bodyOf(long msgId) {
+        return "<p>Body of the message <a href=\"https://example.com/" + msgId + "\">" + msgId + "</a></p>";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.msg;
+
+import org.andstatus.app.WhichPage;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineDataTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testMergeOlderPage() {
+        TimelineListParameters params = new TimelineListParameters(MyContextHolder.get());
+        params.setTimeline(MyContextHolder.get().persistentTimelines().getDefault());
+        params.whichPage = WhichPage.CURRENT;
+        TimelinePage page1 = newPage(params, new long[][]{{12, 2000}, {15, 1000}, {11, 1000}});
+        TimelineData data1 = new TimelineData(null, page1);
+        assertEquals(3, data1.size());
+        assertEquals(1, data1.getPositionById(15));
+        assertEquals(-1, data1.getPositionById(10));
+
+        TimelineListParameters older = TimelineListParameters.clone(params, WhichPage.OLDER);
+        TimelinePage page2 = newPage(older, new long[][]{{11, 1000}, {10, 1000}, {9, 900}});
+        TimelineData data2 = new TimelineData(data1, page2);
+        assertEquals("Duplicate removed " + data2, 5, data2.size());
+        assertEquals("Old data is not changed", 3, data1.size());
+        assertEquals("Loaded page is not changed", 3, page2.items.size());
+        assertEquals(2, data2.getPositionById(11));
+        assertEquals(3, data2.getPositionById(10));
+        assertEquals(4, data2.getPositionById(9));
+        assertEquals(9, data2.getItem(4).getMsgId());
+        assertEquals(10, data2.getById(10).getMsgId());
+        assertEquals(0, data2.getById(999).getMsgId());
+        assertEquals(TimelineViewItem.getEmpty(), data2.getItem(5));
+        assertTrue(data2.isSameTimeline);
+    }
+
+    private static TimelinePage newPage(TimelineListParameters params, long[][] idsAndDates) {
+        List<TimelineViewItem> items = new ArrayList<>();
+        for (long[] idAndDate : idsAndDates) {
+            TimelineViewItem item = new TimelineViewItem();
+            item.setMsgId(idAndDate[0]);
+            item.sentDate = idAndDate[1];
+            items.add(item);
+            params.rememberSentDateLoaded(item.sentDate, item.getMsgId());
+        }
+        params.rowsLoaded = items.size();
+        return new TimelinePage(params, items);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.msg;
+
+import org.andstatus.app.WhichPage;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineListParametersTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+    }
+
+    @Test
+    public void testKeysetOfOlderPage() {
+        TimelineListParameters params = new TimelineListParameters(MyContextHolder.get());
+        params.setTimeline(MyContextHolder.get().persistentTimelines().getDefault());
+        params.whichPage = WhichPage.CURRENT;
+        params.rowsLoaded = 3;
+        params.rememberSentDateLoaded(2000, 12);
+        params.rememberSentDateLoaded(1000, 15);
+        params.rememberSentDateLoaded(1000, 11);
+
+        TimelineListParameters older = TimelineListParameters.clone(params, WhichPage.OLDER);
+        assertEquals(1000, older.maxSentDate);
+        assertEquals("Oldest row is the page boundary", 11, older.maxSentDateMsgId);
+        assertFalse(older.equals(params));
+
+        older.rowsLoaded = 2;
+        older.rememberSentDateLoaded(1000, 10);
+        older.rememberSentDateLoaded(1000, 9);
+        assertTrue("All rows at the same date, but older ones may exist", older.mayHaveOlderPage());
+        TimelineListParameters older2 = TimelineListParameters.clone(older, WhichPage.OLDER);
+        assertEquals(1000, older2.maxSentDate);
+        assertEquals(9, older2.maxSentDateMsgId);
+
+        TimelineListParameters younger = TimelineListParameters.clone(older, WhichPage.YOUNGER);
+        assertEquals(1000, younger.minSentDate);
+        assertEquals("Youngest row is the page boundary", 10, younger.minSentDateMsgId);
+    }
+}
@@ -21,6 +21,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -49,4 +54,40 @@ public class HttpReadResultTest {
         assertEquals(true, result.hasFormParams());
         assertTrue(result.toString(), result.toString().contains("posted"));
     }
+
+    @Test
+    public void testResultToStreamedArray() throws IOException, JSONException {
+        final String url = "https://example.com/somepath/file.html";
+        final String in = "{\"since_id\":\"Wed, 05 Mar 2014 16:37:17 +0100\""
+                + ",\"results\":[{\"text\":\"Text1\",\"id\":12345678901,\"count\":3,\"to_user\":null},"
+                + "{\"text\":\"Text2\",\"favorited\":true,\"place\":{\"coordinates\":[1.5,-2]}}]"
+                + "}";
+        final List<JSONObject> items = new ArrayList<>();
+        JsonItemConsumer consumer = new JsonItemConsumer() {
+            @Override
+            public void accept(JSONObject item) {
+                items.add(item);
+            }
+        };
+
+        HttpReadResult result = new HttpReadResult(url).setJsonArrayConsumer("results", consumer);
+        result.readStream(new ByteArrayInputStream(in.getBytes(HttpConnectionUtils.UTF_8)));
+        assertEquals(result.toString(), 2, items.size());
+        JSONObject item1 = items.get(0);
+        assertEquals("Text1", item1.getString("text"));
+        assertEquals(12345678901L, item1.getLong("id"));
+        assertEquals("12345678901", item1.getString("id"));
+        assertEquals(3, item1.getInt("count"));
+        assertTrue(item1.isNull("to_user"));
+        JSONObject item2 = items.get(1);
+        assertTrue(item2.getBoolean("favorited"));
+        assertEquals(-2, item2.getJSONObject("place").getJSONArray("coordinates").getInt(1));
+        assertTrue(result.toString(), result.toString().contains("items:2"));
+
+        items.clear();
+        result = new HttpReadResult(url).setJsonArrayConsumer("items", consumer);
+        result.strResponse = in;
+        result.consumeJsonArray();
+        assertEquals("The first array should be used, if there is no expected key", 2, items.size());
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.net.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JavaNetTransportTest {
+    private static final String BODY = "{\"id\":\"12345\",\"text\":\"Some text, which is repeated, repeated, repeated\"}";
+
+    @Test
+    public void testDecode() throws IOException {
+        assertEquals(BODY, HttpConnectionUtils.readStreamToString(
+                JavaNetTransport.decode(toStream(BODY.getBytes(HttpConnectionUtils.UTF_8)), null)));
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gzipped), BODY);
+        assertEquals(BODY, HttpConnectionUtils.readStreamToString(
+                JavaNetTransport.decode(toStream(gzipped.toByteArray()), "gzip")));
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(deflated), BODY);
+        assertEquals(BODY, HttpConnectionUtils.readStreamToString(
+                JavaNetTransport.decode(toStream(deflated.toByteArray()), "Deflate")));
+
+        assertEquals("Empty body", "", HttpConnectionUtils.readStreamToString(
+                JavaNetTransport.decode(toStream(new byte[0]), "gzip")));
+    }
+
+    private static InputStream toStream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(HttpConnectionUtils.UTF_8));
+        out.close();
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        final String url = "https://example.com/api/account/verify_credentials.json";
+        final String cacheKey = "testaccount " + url;
+        final String eTag = "\"abc123\"";
+        JavaNetTransport.clearCache();
+
+        HttpReadResult result = new HttpReadResult(url);
+        JavaNetTransport.CachedResponse cached = JavaNetTransport.getCached(cacheKey, result);
+        assertTrue(cached.isEmpty());
+        Map<String, String> headers = JavaNetTransport.getRequestHeaders(cached);
+        assertEquals(JavaNetTransport.ACCEPT_ENCODING, headers.get("Accept-Encoding"));
+        assertFalse(headers.containsKey("If-None-Match"));
+
+        result.setStatusCode(200);
+        JavaNetTransport.readResponse(result, toStream(BODY.getBytes(HttpConnectionUtils.UTF_8)), cacheKey, cached,
+                eTag, null);
+        assertEquals(BODY, result.strResponse);
+
+        HttpReadResult result2 = new HttpReadResult(url);
+        cached = JavaNetTransport.getCached(cacheKey, result2);
+        assertFalse(cached.isEmpty());
+        headers = JavaNetTransport.getRequestHeaders(cached);
+        assertEquals(eTag, headers.get("If-None-Match"));
+        assertFalse(headers.containsKey("If-Modified-Since"));
+
+        result2.setStatusCode(304);
+        assertTrue(result2.isNotModified());
+        JavaNetTransport.readResponse(result2, toStream(new byte[0]), cacheKey, cached, eTag, null);
+        assertEquals("Cached response used", BODY, result2.strResponse);
+
+        HttpReadResult result3 = new HttpReadResult(url);
+        result3.setStatusCode(200);
+        JavaNetTransport.readResponse(result3, toStream(BODY.getBytes(HttpConnectionUtils.UTF_8)), cacheKey,
+                JavaNetTransport.getCached(cacheKey, result3), null, null);
+        assertTrue("No validators, removed from cache", JavaNetTransport.getCached(cacheKey, result3).isEmpty());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.net.http;
+
+import org.andstatus.app.account.AccountName;
+import org.andstatus.app.context.DemoData;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.origin.Origin;
+import org.andstatus.app.origin.OriginConnectionData;
+import org.andstatus.app.util.TriState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateLimitsTest {
+    private static final String URL_HOME = "https://api.twitter.com/1.1/statuses/home_timeline.json";
+    private HttpConnectionData data1;
+    private HttpConnectionData data2;
+    private String keyStored;
+    private String secretStored;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initializeWithData(this);
+        RateLimits.clear();
+        Origin origin = MyContextHolder.get().persistentOrigins().fromName(DemoData.TWITTER_TEST_ORIGIN_NAME);
+        data1 = newConnectionData(origin, DemoData.TWITTER_TEST_ACCOUNT_USERNAME);
+        keyStored = data1.oauthClientKeys.getConsumerKey();
+        secretStored = data1.oauthClientKeys.getConsumerSecret();
+        if (!data1.oauthClientKeys.areKeysPresent()) {
+            data1.oauthClientKeys.setConsumerKeyAndSecret("keyForRateLimitsTest", "thisIsASecret341232");
+        }
+        data2 = newConnectionData(origin, "someOtherUser");
+        assertEquals("Accounts share the key", data1.oauthClientKeys.getConsumerKey(),
+                data2.oauthClientKeys.getConsumerKey());
+    }
+
+    private static HttpConnectionData newConnectionData(Origin origin, String username) {
+        HttpConnectionData data = HttpConnectionData.fromConnectionData(OriginConnectionData.fromAccountName(
+                AccountName.fromOriginAndUserName(origin, username), TriState.UNKNOWN));
+        data.oauthClientKeys = OAuthClientKeys.fromConnectionData(data);
+        return data;
+    }
+
+    @After
+    public void tearDown() {
+        RateLimits.clear();
+        if (data1 != null) {
+            data1.oauthClientKeys.setConsumerKeyAndSecret(keyStored, secretStored);
+        }
+    }
+
+    @Test
+    public void testQuotaIsSpreadAndShared() throws ConnectionException {
+        assertEquals("No quota yet", 0, RateLimits.getDelayMs(data1, URL_HOME));
+        long resetAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10);
+        onResponse(data1, URL_HOME + "?count=20", 200, "15", "10", resetAt);
+        assertEquals("No requests yet", 0, RateLimits.getDelayMs(data1, URL_HOME));
+
+        RateLimits.onRequest(data1, new HttpReadResult(URL_HOME));
+        long delayMs = RateLimits.getDelayMs(data1, URL_HOME);
+        assertTrue("Delay " + delayMs, delayMs > TimeUnit.SECONDS.toMillis(60)
+                && delayMs <= TimeUnit.SECONDS.toMillis(75));
+        assertEquals("Other endpoint", 0,
+                RateLimits.getDelayMs(data1, "https://api.twitter.com/1.1/statuses/mentions_timeline.json"));
+        assertEquals("Shared by accounts with the same key", delayMs, RateLimits.getDelayMs(data2, URL_HOME));
+
+        onResponse(data1, URL_HOME, 200, "15", "1", resetAt);
+        assertRequestRejected(true);
+        delayMs = RateLimits.getDelayMs(data1, URL_HOME);
+        assertTrue("Delay till reset " + delayMs, delayMs > TimeUnit.MINUTES.toMillis(9));
+    }
+
+    @Test
+    public void testReserveIsLeftForUser() throws ConnectionException {
+        long resetAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10);
+        onResponse(data1, URL_HOME, 200, "100", "5", resetAt);
+        assertRequestRejected(true);
+
+        assertFalse(RateLimits.isInBackground());
+        for (int i = 0; i < 5; i++) {
+            RateLimits.onRequest(data1, new HttpReadResult(URL_HOME));
+        }
+        assertRequestRejected(false);
+    }
+
+    private void assertRequestRejected(boolean background) {
+        boolean previous = RateLimits.setInBackground(background);
+        try {
+            RateLimits.onRequest(data1, new HttpReadResult(URL_HOME));
+            fail("Quota is exhausted, background:" + background);
+        } catch (ConnectionException e) {
+            assertEquals(ConnectionException.StatusCode.TOO_MANY_REQUESTS, e.getStatusCode());
+            assertFalse("Should be retried: " + e, e.isHardError());
+        } finally {
+            RateLimits.setInBackground(previous);
+        }
+    }
+
+    @Test
+    public void testTooManyRequests() throws ConnectionException {
+        String url1 = "https://api.twitter.com/1.1/statuses/show/123.json";
+        HttpReadResult result = new HttpReadResult(url1);
+        result.setStatusCode(429);
+        result.setHeader("Retry-After", "60");
+        RateLimits.onResponse(data1, result);
+        long delayMs = RateLimits.getDelayMs(data1, "https://api.twitter.com/1.1/statuses/show/456.json");
+        assertTrue("Delay for any id " + delayMs, delayMs > TimeUnit.SECONDS.toMillis(50)
+                && delayMs <= TimeUnit.SECONDS.toMillis(60));
+    }
+
+    private static void onResponse(HttpConnectionData data, String url, int statusCode,
+                                   String limit, String remaining, long resetAt) throws ConnectionException {
+        HttpReadResult result = new HttpReadResult(url);
+        result.setStatusCode(statusCode);
+        result.setHeader("X-Rate-Limit-Limit", limit);
+        result.setHeader("X-Rate-Limit-Remaining", remaining);
+        result.setHeader("X-Rate-Limit-Reset", Long.toString(TimeUnit.MILLISECONDS.toSeconds(resetAt)));
+        result.setHeader("Content-Type", "application/json");
+        RateLimits.onResponse(data, result);
+    }
+}
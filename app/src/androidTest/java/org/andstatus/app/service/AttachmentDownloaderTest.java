@@ -22,6 +22,7 @@ import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.TestSuite;
 import org.andstatus.app.data.DownloadData;
+import org.andstatus.app.data.DownloadFile;
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.data.FileProvider;
 import org.andstatus.app.data.DemoMessageInserter;
@@ -72,6 +73,27 @@ public class AttachmentDownloaderTest {
         loadAndAssertStatusForRow(dd.getDownloadId(), DownloadStatus.LOADED, false);
         
         testFileProvider(dd.getDownloadId());
+
+        testSameUriIsCopied(message.attachments.get(0), dd);
+    }
+
+    private void testSameUriIsCopied(MbAttachment attachment, DownloadData loaded) throws IOException {
+        DemoMessageInserter mi = new DemoMessageInserter(ma);
+        MbMessage message = mi.buildMessage(mi.buildUser(), "The same image in another message", null, null,
+                DownloadStatus.LOADED);
+        message.attachments.add(MbAttachment.fromUriAndContentType(attachment.getUri(), MyContentType.IMAGE));
+        long msgId = mi.onActivity(message.update(ma.toPartialUser()));
+
+        DownloadData dd = DownloadData.getSingleForMessage(msgId, attachment.contentType, null);
+        assertEquals("Image URI stored", attachment.getUri(), dd.getUri());
+        assertTrue("Another row " + dd, dd.getDownloadId() != loaded.getDownloadId());
+        DownloadFile loadedFile = dd.getLoadedFileWithSameUri();
+        assertTrue("Loaded file found for " + dd, loadedFile.exists());
+
+        loadAndAssertStatusForRow(dd.getDownloadId(), DownloadStatus.LOADED, false);
+        DownloadData data = DownloadData.fromId(dd.getDownloadId());
+        assertFalse("Separate file " + data, loadedFile.equals(data.getFile()));
+        assertEquals("File copied " + data, loadedFile.getSize(), data.getFile().getSize());
     }
     
     private void testFileProvider(long downloadRowId) throws IOException {
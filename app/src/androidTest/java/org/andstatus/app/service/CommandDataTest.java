@@ -16,6 +16,9 @@
 
 package org.andstatus.app.service;
 
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
 import org.andstatus.app.SearchObjects;
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContextHolder;
@@ -23,6 +26,7 @@ import org.andstatus.app.context.TestSuite;
 import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.data.MyQuery;
 import org.andstatus.app.data.OidEnum;
+import org.andstatus.app.database.CommandTable;
 import org.andstatus.app.context.DemoData;
 import org.andstatus.app.util.MyLog;
 import org.junit.Before;
@@ -97,6 +101,98 @@ public class CommandDataTest {
         assertEquals(commandData.getResult().getMessage(), commandData2.getResult().getMessage());
     }
 
+    @Test
+    public void testJournaledQueue() {
+        CommandQueue queues = new CommandQueue();
+        queues.clear();
+        CommandData commandData = CommandData.newSearch(SearchObjects.MESSAGES, MyContextHolder.get(), null,
+                "journaled");
+        Queue<CommandData> queue = queues.get(QueueType.TEST);
+        assertTrue(queue.offer(commandData));
+        CommandData duplicate = CommandData.newSearch(SearchObjects.MESSAGES, MyContextHolder.get(), null,
+                "journaled");
+        assertTrue("Same command is in the queue", queue.contains(duplicate));
+        assertTrue(queue.offer(duplicate));
+        assertEquals("Duplicate was not added", 1, queue.size());
+
+        assertTrue(queues.flushJournal());
+        CommandQueue queues2 = new CommandQueue();
+        assertEquals("Loaded journaled command", 1, queues2.load(QueueType.TEST));
+        assertEquals(commandData.getCommandId(), queues2.get(QueueType.TEST).peek().getCommandId());
+
+        assertTrue(queue.remove(duplicate));
+        assertFalse(queue.contains(commandData));
+        assertTrue(queues.flushJournal());
+        assertEquals("Removal was journaled", 0, new CommandQueue().load(QueueType.TEST));
+    }
+
+    @Test
+    public void testPolledCommandIsKeptTillFinished() {
+        CommandQueue queues = new CommandQueue();
+        queues.clear();
+        CommandData commandData = CommandData.newSearch(SearchObjects.MESSAGES, MyContextHolder.get(), null,
+                "polled");
+        Queue<CommandData> queue = queues.get(QueueType.TEST);
+        assertTrue(queue.offer(commandData));
+        assertTrue(queues.flushJournal());
+        assertEquals(commandData, queue.poll());
+        assertTrue(queues.flushJournal());
+        assertEquals("Kept in the database while executing", 1, new CommandQueue().load(QueueType.TEST));
+        assertEquals("Not loaded again while executing", 0, queues.load(QueueType.TEST));
+
+        commandData.getResult().incrementNumIoExceptions();
+        commandData.getResult().afterExecutionEnded();
+        assertTrue(queue.offer(commandData));
+        assertTrue(queues.flushJournal());
+        CommandQueue queues2 = new CommandQueue();
+        assertEquals("Returned to the queue", 1, queues2.load(QueueType.TEST));
+        CommandData loaded = queues2.get(QueueType.TEST).peek();
+        assertEquals(1, loaded.getResult().getExecutionCount());
+        assertTrue(loaded.getResult().hasError());
+
+        commandData.resetRetries();
+        queues.onChanged(commandData);
+        assertTrue(queues.flushJournal());
+        queues2 = new CommandQueue();
+        assertEquals(1, queues2.load(QueueType.TEST));
+        assertFalse("Change of the queued command was journaled",
+                queues2.get(QueueType.TEST).peek().getResult().hasError());
+
+        assertEquals(commandData, queue.poll());
+        queues.finish(commandData);
+        assertTrue(queues.flushJournal());
+        assertEquals("Deleted after execution", 0, new CommandQueue().load(QueueType.TEST));
+    }
+
+    @Test
+    public void testDuplicatesAreDeletedOnLoad() {
+        CommandQueue queues = new CommandQueue();
+        queues.clear();
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        CommandData commandData = CommandData.newSearch(SearchObjects.MESSAGES, MyContextHolder.get(), null,
+                "duplicated");
+        CommandData duplicate = CommandData.newSearch(SearchObjects.MESSAGES, MyContextHolder.get(), null,
+                "duplicated");
+        assertTrue(commandData.getCommandId() != duplicate.getCommandId());
+        for (CommandData cd : new CommandData[]{commandData, duplicate}) {
+            ContentValues values = new ContentValues();
+            cd.toContentValues(values);
+            values.put(CommandTable.QUEUE_TYPE, QueueType.TEST.save());
+            db.replaceOrThrow(CommandTable.TABLE_NAME, null, values);
+        }
+        assertEquals("Stored with a duplicate", 2, countTestCommandsInDatabase(db));
+
+        assertEquals("Duplicate is not loaded", 1, new CommandQueue().load(QueueType.TEST));
+        assertEquals("Duplicate deleted", 1, countTestCommandsInDatabase(db));
+        assertEquals(1, new CommandQueue().load(QueueType.TEST));
+        queues.clear();
+    }
+
+    private static long countTestCommandsInDatabase(SQLiteDatabase db) {
+        return MyQuery.sqlToLong(db, "countTestCommands", "SELECT COUNT(*) FROM " + CommandTable.TABLE_NAME
+                + " WHERE " + CommandTable.QUEUE_TYPE + "='" + QueueType.TEST.save() + "'");
+    }
+
     @Test
     public void testEquals() {
         CommandData data1 = CommandData.newSearch(SearchObjects.MESSAGES, MyContextHolder.get(), null, "andstatus");
@@ -154,6 +154,19 @@ public class CommandExecutorStrategyTest {
         httpConnectionMock.setException(null);
     }
 
+    @Test
+    public void testTooManyRequestsIsRetried() {
+        CommandData commandData = getCommandDataForUnsentMessage("3");
+        httpConnectionMock.setException(ConnectionException.fromStatusCode(StatusCode.TOO_MANY_REQUESTS,
+                "Quota of requests is exhausted"));
+        CommandExecutorStrategy.executeCommand(commandData, null);
+        httpConnectionMock.setException(null);
+        assertEquals(1, commandData.getResult().getExecutionCount());
+        assertTrue(commandData.toString(), commandData.getResult().hasSoftError());
+        assertFalse(commandData.toString(), commandData.getResult().hasHardError());
+        assertTrue(commandData.toString(), commandData.getResult().shouldWeRetry());
+    }
+
     private CommandData getCommandDataForUnsentMessage(String suffix) {
         String body = "Some text " + suffix + " to send " + System.currentTimeMillis() + "ms";
         long unsentMessageId = DemoMessageInserter.addMessageForAccount(
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.service;
+
+import org.andstatus.app.context.TestSuite;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class FileDownloadQueueTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testTwoDownloadsAtTheSameTime() throws InterruptedException {
+        FileDownloadQueue queue = new FileDownloadQueue(null);
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 2; i++) {
+                FileDownloadQueue.Entry entry = new FileDownloadQueue.Entry(
+                        CommandData.newCommand(CommandEnum.FETCH_AVATAR));
+                FileDownloadQueue.DownloadTask task = queue.new DownloadTask(entry) {
+                    @Override
+                    protected Void doInBackground2(Void... params) {
+                        bothStarted.countDown();
+                        try {
+                            release.await(20, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                };
+                assertTrue("Download " + i + " launched", AsyncTaskLauncher.execute(this, true, task));
+            }
+            assertTrue("Both downloads are running at the same time", bothStarted.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.user;
+
+import org.andstatus.app.account.PersistentAccounts;
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserMentionIndexTest {
+    /** Not my friends */
+    private static final long USER_ID1 = 1000001;
+    private static final long USER_ID2 = 1000002;
+    private static final long USER_ID3 = 1000003;
+
+    private PersistentAccounts accounts;
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+        accounts = MyContextHolder.get().persistentAccounts();
+    }
+
+    @Test
+    public void testFindAndRank() {
+        UserMentionIndex index = new UserMentionIndex(1);
+        index.onUserUpdated(USER_ID1, "alice", "alice@example.com", "Alice Smith");
+        index.onUserUpdated(USER_ID2, "alan", "alan@example.org", "Alan");
+        index.setLoaded(Collections.<UserMentionIndex.UserEntry>emptyList());
+        index.onUserUpdated(USER_ID3, "bob", "bob@example.com", "Alfred Bob");
+
+        assertEquals(Arrays.asList(USER_ID1, USER_ID2, USER_ID3), index.find(accounts, "Al", 10));
+        assertEquals(Collections.singletonList(USER_ID1), index.find(accounts, "alice@", 10));
+        assertEquals(Collections.singletonList(USER_ID3), index.find(accounts, "bob", 10));
+        assertTrue(index.find(accounts, "carol", 10).isEmpty());
+
+        index.onMessage(USER_ID2, 100, false);
+        assertEquals(Arrays.asList(USER_ID2, USER_ID1), index.find(accounts, "al", 2));
+        index.onMessage(USER_ID3, 50, true);
+        assertEquals(Arrays.asList(USER_ID3, USER_ID2, USER_ID1), index.find(accounts, "al", 10));
+
+        index.onUserUpdated(USER_ID1, "carol", "carol@example.com", "Carol");
+        assertEquals(Arrays.asList(USER_ID3, USER_ID2), index.find(accounts, "al", 10));
+        assertEquals(Collections.singletonList(USER_ID1), index.find(accounts, "car", 10));
+    }
+
+    @Test
+    public void testMentionedUserIsFoundAmongMany() {
+        UserMentionIndex index = new UserMentionIndex(1);
+        List<UserMentionIndex.UserEntry> users = new ArrayList<>();
+        final int count = 5000;
+        for (int ind = 1; ind <= count; ind++) {
+            users.add(new UserMentionIndex.UserEntry(USER_ID1 + ind,
+                    new String[]{String.format(Locale.ROOT, "user%05d", ind)}));
+        }
+        index.setLoaded(users);
+        index.onMessage(USER_ID1 + count, 100, true);
+        assertEquals("The last one alphabetically, but mentioned",
+                Collections.singletonList(USER_ID1 + count), index.find(accounts, "u", 1));
+    }
+
+    @Test
+    public void testNullRealName() {
+        UserMentionIndex index = new UserMentionIndex(1);
+        index.setLoaded(Collections.<UserMentionIndex.UserEntry>emptyList());
+        index.onUserUpdated(USER_ID1, "dave", "dave@example.com", null);
+        assertEquals(Collections.singletonList(USER_ID1), index.find(accounts, "dav", 10));
+    }
+
+    @Test
+    public void testManyUpdates() {
+        UserMentionIndex index = new UserMentionIndex(1);
+        index.setLoaded(Collections.<UserMentionIndex.UserEntry>emptyList());
+        final int count = 3000;
+        for (int ind = 1; ind <= count; ind++) {
+            index.onUserUpdated(USER_ID1 + ind, "user" + ind, "user" + ind + "@example.com", "");
+        }
+        for (int ind = 1; ind <= count; ind += 2) {
+            index.onUserUpdated(USER_ID1 + ind, "renamed" + ind, "renamed" + ind + "@example.com", "");
+        }
+        List<Long> found = index.find(accounts, "user", count);
+        assertEquals(count / 2, found.size());
+        assertEquals(count / 2, index.find(accounts, "renamed", count).size());
+        assertEquals(Collections.singletonList(USER_ID1 + 1234), index.find(accounts, "user1234@", count));
+        assertEquals(UserMentionIndex.MAX_SUGGESTIONS,
+                index.find(accounts, "re", UserMentionIndex.MAX_SUGGESTIONS).size());
+    }
+}
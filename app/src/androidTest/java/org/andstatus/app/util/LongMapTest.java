@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.util;
+
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongMapTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        LongMap<String> map = new LongMap<>();
+        assertNull(map.put(5, "five"));
+        assertNull(map.put(0, "zero"));
+        assertEquals("five", map.put(5, "FIVE"));
+        assertEquals(2, map.size());
+        assertEquals("FIVE", map.get(5));
+        assertEquals("zero", map.get(0));
+        assertNull(map.get(6));
+        assertTrue(map.containsKey(0));
+        assertEquals(LongSet.of(0, 5), map.keys());
+        assertEquals(2, map.values().size());
+        assertEquals("zero", map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertNull(map.remove(0));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+    }
+
+    @Test
+    public void testSameAsHashMap() {
+        Random random = new Random(1);
+        LongMap<Integer> map = new LongMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(2000) * 64L;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals("put " + key, expected.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals("remove " + key, expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals("get " + key, expected.get(key), map.get(key));
+                    break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected.keySet(), map.keys());
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+    }
+}
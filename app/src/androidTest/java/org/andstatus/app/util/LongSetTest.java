@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.util;
+
+import org.andstatus.app.context.TestSuite;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongSetTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestSuite.initialize(this);
+    }
+
+    @Test
+    public void testAddContainsRemove() {
+        LongSet set = LongSet.of(3, 0, 1024, 3);
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(1024));
+        assertFalse(set.contains(1));
+        assertFalse(set.add(1024));
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertEquals(2, set.toLongArray().length);
+
+        Set<Long> expected = new HashSet<>();
+        expected.add(3L);
+        expected.add(1024L);
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected, new LongSet(set));
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(3));
+    }
+
+    @Test
+    public void testSameAsHashSet() {
+        Random random = new Random(1);
+        LongSet set = new LongSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(2000) * 64L;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals("add " + value, expected.add(value), set.add(value));
+                    break;
+                case 1:
+                    assertEquals("remove " + value, expected.remove(value), set.remove(value));
+                    break;
+                default:
+                    assertEquals("contains " + value, expected.contains(value), set.contains(value));
+                    break;
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        assertEquals(expected, set);
+    }
+
+    @Test
+    public void testBulkRemoval() {
+        LongSet set = LongSet.of(0, 1, 2, 3, 4, 5);
+        Set<Long> toRemove = new HashSet<>();
+        toRemove.add(0L);
+        toRemove.add(3L);
+        toRemove.add(7L);
+        assertTrue(set.removeAll(toRemove));
+        assertEquals(LongSet.of(1, 2, 4, 5), set);
+        assertFalse(set.removeAll(toRemove));
+
+        Set<Long> toRetain = new HashSet<>();
+        toRetain.add(2L);
+        toRetain.add(5L);
+        toRetain.add(9L);
+        assertTrue(set.retainAll(toRetain));
+        assertEquals(LongSet.of(2, 5), set);
+        assertFalse(set.retainAll(toRetain));
+        assertTrue(set.retainAll(LongSet.of(5)));
+        assertEquals(LongSet.of(5), set);
+    }
+
+    @Test
+    public void testAsLongSet() {
+        LongSet set = LongSet.of(1, 2);
+        assertTrue(set == LongSet.asLongSet(set));
+        Set<Long> hashSet = new HashSet<>(set);
+        assertEquals(set, LongSet.asLongSet(hashSet));
+    }
+}
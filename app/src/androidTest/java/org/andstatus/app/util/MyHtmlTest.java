@@ -85,6 +85,35 @@ public class MyHtmlTest {
         assertEquals(result4, MyHtml.getBodyToSearch(text4));
     }
 
+    /** The same "body to search", as the one produced by the regex based implementation,
+     * which is stored in existing databases */
+    @Test
+    public void testBodyToSearchGolden() {
+        String[] texts = {
+                "", " ", ",", "...", "!!!", "#", "@", "#!", "#.", "a.,!b", "a , ... , !b", "!a", "@@user",
+                "#tag1#tag2, @user@domain.com!!", "Hi!!!\n\n  #hvv?", "?Why. (Not) {ok}?!",
+                "'quoted'; \"double\": <>[brackets]", "tab\tvertical\u000Bform\fcr\r",
+                "non\u00A0breaking space", "a.b.c! d?e ,f,, ,,g",
+                "@somebody,  [This]  .       is'\n a\t; \"normalised {text}\"@user@domain.com, #AndStatus. (!gnusocial)"
+        };
+        for (String text : texts) {
+            assertEquals("'" + text + "'", normalizeWordsForSearchWithRegex(text), MyHtml.normalizeWordsForSearch(text));
+        }
+        assertEquals(",hvv,#hvv,sbahnhh,#sbahnhh,", MyHtml.getBodyToSearch("#HVV! #SBahnHH."));
+        assertEquals(",a,&&,b,", MyHtml.getBodyToSearch("<p>a &amp;&amp; b</p>"));
+    }
+
+    private static String normalizeWordsForSearchWithRegex(String text) {
+        if (text.isEmpty()) {
+            return "";
+        }
+        String text2 = "," + text + ",";
+        text2 = text2.replaceAll("[\\[\\]\\(\\)\\{\\}\n\'\"<>,:;\\s]+", ",");
+        text2 = text2.replaceAll("[,.!?]+,", ",");
+        text2 = text2.replaceAll("(,[@#!]([^@#!,]+))", ",$2$1");
+        return text2;
+    }
+
     @Test
     public void testHasHtmlMarkup() {
         assertFalse(MyHtml.hasHtmlMarkup(THIS_MESSAGE_HAS_NEWLINE));
@@ -19,22 +19,33 @@ package org.andstatus.app.util;
 import android.text.TextUtils;
 
 import org.andstatus.app.context.TestSuite;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class MyLogTest {
+    private LogFileWriter writer = null;
 
     @Before
     public void setUp() throws Exception {
         TestSuite.initialize(this);
     }
 
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.stop();
+            writer = null;
+        }
+    }
+
     @Test
     public void testObjTag() {
        Object tag = this;
@@ -56,6 +67,7 @@ public class MyLogTest {
         assertFalse(TextUtils.isEmpty(MyLog.getLogFilename()));
         MyLog.v(this, method);
         File file = MyLog.getFileInLogDir(MyLog.getLogFilename(), true);
+        MyLog.flushLogFile();
         assertTrue(file.exists());
         
         MyLog.setLogToFile(false);
@@ -70,6 +82,50 @@ public class MyLogTest {
         }
     }
 
+    @Test
+    public void testLogFileWriter() throws IOException {
+        final String method = "testLogFileWriter";
+        boolean isLogEnabled = MyLog.isLogToFileEnabled();
+
+        MyLog.setLogToFile(true);
+        File file = MyLog.getFileInLogDir(MyLog.getLogFilename(), true);
+        for (int ind = 0; ind < 100; ind++) {
+            MyLog.v(this, method + " line " + ind);
+        }
+        MyLog.setLogToFile(false);
+        String content = new String(FileUtils.getBytes(file), "UTF-8");
+        assertTrue(content, content.contains(method + " line 0\n"));
+        assertTrue(content, content.contains(method + " line 99\n"));
+        assertTrue(file.delete());
+
+        if (isLogEnabled) {
+            MyLog.setLogToFile(true);
+        }
+    }
+
+    @Test
+    public void testLogFileWriterIsIdleWhenLoggingIsDisabled() throws InterruptedException {
+        final String method = "testLogFileWriterIsIdleWhenLoggingIsDisabled";
+        boolean isLogEnabled = MyLog.isLogToFileEnabled();
+
+        MyLog.setLogToFile(false);
+        writer = new LogFileWriter();
+        assertFalse(writer.isIdle());
+        writer.add(method + " urgent\n", true);
+        writer.add(method + " not urgent\n", false);
+        long endTime = System.currentTimeMillis() + 3 * LogFileWriter.FLUSH_PERIOD_MS;
+        while (!writer.isIdle() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(50);
+        }
+        assertTrue("The writer thread should be parked, as nothing is queued", writer.isIdle());
+        Thread.sleep(2 * LogFileWriter.FLUSH_PERIOD_MS);
+        assertTrue("The writer thread should stay parked", writer.isIdle());
+
+        if (isLogEnabled) {
+            MyLog.setLogToFile(true);
+        }
+    }
+
     @Test
     public void testUniqueDateTimeFormatted() {
         String string1 = "";
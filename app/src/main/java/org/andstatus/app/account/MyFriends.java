@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.account;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.database.FriendshipTable;
+import org.andstatus.app.util.LongSet;
+import org.andstatus.app.util.MyLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Users, followed by my accounts: the "followed" rows of the {@link FriendshipTable} are read once
+ * and then changes are applied incrementally by {@link org.andstatus.app.data.FriendshipValues},
+ * so lookups are always current and don't hit the database.
+ * A changed set of friends is copied and the whole snapshot is replaced, so readers don't need locks
+ * @author yvolk@yurivolkov.com
+ */
+public class MyFriends {
+    private final MyContext myContext;
+    private final PersistentAccounts accounts;
+    private final Object writeLock = new Object();
+    /** Null until loaded. It is replaced under the writeLock, published snapshots are never changed */
+    private volatile Snapshot snapshot = null;
+
+    private static class Snapshot {
+        /** User ids of my accounts */
+        final long[] accountUserIds;
+        /** Friends of the account with the same index */
+        final LongSet[] friends;
+
+        Snapshot(long[] accountUserIds, LongSet[] friends) {
+            this.accountUserIds = accountUserIds;
+            this.friends = friends;
+        }
+
+        int indexOf(long accountUserId) {
+            for (int index = 0; index < accountUserIds.length; index++) {
+                if (accountUserIds[index] == accountUserId) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        Snapshot withFriends(int index, LongSet friendsOfAccount) {
+            LongSet[] friends2 = friends.clone();
+            friends2[index] = friendsOfAccount;
+            return new Snapshot(accountUserIds, friends2);
+        }
+    }
+
+    MyFriends(MyContext myContext, PersistentAccounts accounts) {
+        this.myContext = myContext;
+        this.accounts = accounts;
+    }
+
+    /** @return true if any of my accounts follows the user */
+    public boolean isFriendOfAny(long userId) {
+        if (userId == 0) {
+            return false;
+        }
+        Snapshot current = get();
+        for (LongSet friends : current.friends) {
+            if (friends.contains(userId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isFriend(long accountUserId, long userId) {
+        Snapshot current = get();
+        int index = current.indexOf(accountUserId);
+        return index >= 0 && current.friends[index].contains(userId);
+    }
+
+    /** @return a copy, so changes of the set don't affect the published snapshot */
+    @NonNull
+    public LongSet getFriendsOf(long accountUserId) {
+        Snapshot current = get();
+        int index = current.indexOf(accountUserId);
+        return index < 0 ? new LongSet() : new LongSet(current.friends[index]);
+    }
+
+    /** Applies a change, which has been written to the {@link FriendshipTable} already */
+    public void onFollowed(long followerId, long friendId, boolean followed) {
+        if (followerId == 0 || friendId == 0) {
+            return;
+        }
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+            int index = current.indexOf(followerId);
+            if (index < 0) {
+                resetIfMyAccount(followerId);
+                return;
+            }
+            if (current.friends[index].contains(friendId) == followed) {
+                return;
+            }
+            LongSet friends = new LongSet(current.friends[index]);
+            if (followed) {
+                friends.add(friendId);
+            } else {
+                friends.remove(friendId);
+            }
+            snapshot = current.withFriends(index, friends);
+        }
+    }
+
+    /** Applies changes of friends of one user in one step, see {@link #onFollowed(long, long, boolean)} */
+    public void onFriendsChanged(long followerId, @NonNull LongSet followed, @NonNull LongSet notFollowed) {
+        if (followerId == 0 || (followed.isEmpty() && notFollowed.isEmpty())) {
+            return;
+        }
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+            int index = current.indexOf(followerId);
+            if (index < 0) {
+                resetIfMyAccount(followerId);
+                return;
+            }
+            LongSet friends = new LongSet(current.friends[index]);
+            friends.addAll(followed);
+            for (long friendId : notFollowed.toLongArray()) {
+                friends.remove(friendId);
+            }
+            friends.remove(0);
+            snapshot = current.withFriends(index, friends);
+        }
+    }
+
+    /** An account, added after loading, causes reloading on the next lookup */
+    @GuardedBy("writeLock")
+    private void resetIfMyAccount(long userId) {
+        if (accounts.isAccountUserId(userId)) {
+            snapshot = null;
+        }
+    }
+
+    /** Forget everything, e.g. when accounts have changed or Friendship rows were changed in bulk */
+    public void reset() {
+        synchronized (writeLock) {
+            snapshot = null;
+        }
+    }
+
+    @NonNull
+    private Snapshot get() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (writeLock) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    @GuardedBy("writeLock")
+    @NonNull
+    private Snapshot load() {
+        List<Long> userIds = new ArrayList<>();
+        for (MyAccount ma : accounts.list()) {
+            if (ma.getUserId() != 0 && !userIds.contains(ma.getUserId())) {
+                userIds.add(ma.getUserId());
+            }
+        }
+        long[] accountUserIds = new long[userIds.size()];
+        LongSet[] friends = new LongSet[userIds.size()];
+        for (int index = 0; index < accountUserIds.length; index++) {
+            accountUserIds[index] = userIds.get(index);
+            friends[index] = new LongSet();
+        }
+        Snapshot loaded = new Snapshot(accountUserIds, friends);
+        SQLiteDatabase db = myContext.getDatabase();
+        if (userIds.isEmpty() || db == null) {
+            return loaded;
+        }
+        String sql = "SELECT " + FriendshipTable.USER_ID + ", " + FriendshipTable.FRIEND_ID
+                + " FROM " + FriendshipTable.TABLE_NAME
+                + " WHERE " + FriendshipTable.USER_ID + " IN (" + TextUtils.join(",", userIds) + ")"
+                + " AND " + FriendshipTable.FOLLOWED + "=1";
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                int index = loaded.indexOf(cursor.getLong(0));
+                if (index >= 0) {
+                    friends[index].add(cursor.getLong(1));
+                }
+            }
+        } catch (Exception e) {
+            MyLog.i(this, "SQL:'" + sql + "'", e);
+        } finally {
+            DbUtils.closeSilently(cursor);
+        }
+        return loaded;
+    }
+}
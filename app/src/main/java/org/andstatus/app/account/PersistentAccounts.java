@@ -3,8 +3,6 @@ package org.andstatus.app.account;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
@@ -15,8 +13,6 @@ import org.andstatus.app.backup.MyBackupDataOutput;
 import org.andstatus.app.backup.MyBackupDescriptor;
 import org.andstatus.app.context.MyContext;
 import org.andstatus.app.context.MyPreferences;
-import org.andstatus.app.data.DbUtils;
-import org.andstatus.app.database.FriendshipTable;
 import org.andstatus.app.origin.Origin;
 import org.andstatus.app.util.CollectionsUtil;
 import org.andstatus.app.util.I18n;
@@ -43,10 +39,11 @@ public class PersistentAccounts {
     private final MyContext myContext;
     private final List<MyAccount> mAccounts = new CopyOnWriteArrayList<>();
     private int distinctOriginsCount = 0;
-    private volatile Set<Long> myFriends = null;
+    private final MyFriends myFriends;
 
     private PersistentAccounts(MyContext myContext) {
         this.myContext = myContext;
+        myFriends = new MyFriends(myContext, this);
     }
 
     /**
@@ -69,7 +66,6 @@ public class PersistentAccounts {
     }
     
     public PersistentAccounts initialize() {
-        myFriends = null;
         android.accounts.Account[] aa = getAccounts(myContext.context());
         List<MyAccount> myAccounts = new ArrayList<>();
         for (android.accounts.Account account : aa) {
@@ -83,6 +79,7 @@ public class PersistentAccounts {
         CollectionsUtil.sort(myAccounts);
         mAccounts.clear();
         mAccounts.addAll(myAccounts);
+        myFriends.reset();
         calculateDistinctOriginsCount();
         MyLog.v(this, "Account list initialized, " + mAccounts.size() + " accounts in " + distinctOriginsCount + " origins");
         return this;
@@ -129,6 +126,7 @@ public class PersistentAccounts {
 
             // And delete the object from the list
             mAccounts.remove(toDelete);
+            myFriends.reset();
 
             isDeleted = true;
             MyPreferences.onPreferencesChanged();
@@ -158,6 +156,7 @@ public class PersistentAccounts {
                 MyAccount myAccount = Builder.fromAndroidAccount(myContext, androidAccount).getAccount();
                 mAccounts.add(myAccount);
                 CollectionsUtil.sort(mAccounts);
+                myFriends.reset();
                 MyPreferences.onPreferencesChanged();
                 return myAccount;
             }
@@ -468,37 +467,13 @@ public class PersistentAccounts {
         return mAccounts.equals(other.mAccounts);
     }
 
-    public boolean isMeOrMyFriend(long inReplyToUserId) {
-        if (isAccountUserId(inReplyToUserId)) {
-            return true;
-        }
-        return isMyFriend(inReplyToUserId);
-    }
-
-    private boolean isMyFriend(long userId) {
-        if (myFriends == null) {
-            initializeMyFriends();
-        }
-        return myFriends.contains(userId);
+    public boolean isMeOrMyFriend(long userId) {
+        return isAccountUserId(userId) || myFriends.isFriendOfAny(userId);
     }
 
-    private void initializeMyFriends() {
-        Set<Long> friends = new HashSet<>();
-        String sql = "SELECT DISTINCT " + FriendshipTable.FRIEND_ID + " FROM " + FriendshipTable.TABLE_NAME
-                + " WHERE " + FriendshipTable.FOLLOWED + "=1";
-        SQLiteDatabase db = myContext.getDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery(sql, null);
-            while (cursor.moveToNext()) {
-                friends.add(cursor.getLong(0));
-            }
-        } catch (Exception e) {
-            MyLog.i(this, "SQL:'" + sql + "'", e);
-        } finally {
-            DbUtils.closeSilently(cursor);
-        }
-        myFriends = friends;
+    /** Friends of my accounts, kept in memory */
+    public MyFriends myFriends() {
+        return myFriends;
     }
 
     public void reorderAccounts(List<MyAccount> reorderedItems) {
@@ -137,6 +137,10 @@ public class MyBackupAgent extends BackupAgent {
     }
 
     private void doBackup(MyBackupDataOutput data) throws IOException {
+        DatabaseHolder db = MyContextHolder.get().getMyDatabase();
+        if (db != null) {
+            db.checkpoint();
+        }
         sharedPreferencesBackedUp = backupFile(data,
                 SHARED_PREFERENCES_KEY,
                 SharedPreferencesUtil.defaultSharedPreferencesPath(MyContextHolder.get().context()));
@@ -258,6 +262,7 @@ public class MyBackupAgent extends BackupAgent {
     private void doRestore(MyBackupDataInput data) throws IOException {
         restoreSharedPreferences(data);
         assertNextHeader(data, DATABASE_KEY + "_" + DatabaseHolder.DATABASE_NAME);
+        DatabaseHolder.deleteWalFiles(MyStorage.getDatabasePath(DatabaseHolder.DATABASE_NAME));
         databasesRestored += restoreFile(data,
                     MyStorage.getDatabasePath(DatabaseHolder.DATABASE_NAME));
         MyContextHolder.release();
@@ -39,6 +39,7 @@ import org.andstatus.app.origin.PersistentOrigins;
 import org.andstatus.app.service.ConnectionState;
 import org.andstatus.app.timeline.PersistentTimelines;
 import org.andstatus.app.timeline.TimelineType;
+import org.andstatus.app.user.UserMentionIndex;
 import org.andstatus.app.util.InstanceId;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.Permissions;
@@ -136,6 +137,8 @@ public final class MyContextImpl implements MyContext {
 
     private void initializeDatabase(boolean createApplicationData) {
         final String method = "initializeDatabase";
+        // Indices of the previous database are not valid for the new one
+        UserMentionIndex.clear();
         DatabaseHolder newDb = new DatabaseHolder(mContext, createApplicationData);
         try {
             mState = newDb.checkState();
@@ -80,6 +80,13 @@ public class MyPreferences {
     public static final String KEY_DONT_SYNCHRONIZE_OLD_MESSAGES = "dont_synchronize_old_messages";
     public static final String KEY_CONNECTION_TIMEOUT_SECONDS = "connection_timeout";
     private static final long CONNECTION_TIMEOUT_DEFAULT_SECONDS = 30;
+    /** Number of commands, which may be executed in parallel by the {@link org.andstatus.app.service.MyService} */
+    public static final String KEY_SYNC_LANES = "sync_lanes";
+    private static final long SYNC_LANES_DEFAULT = 1;
+    private static final long SYNC_LANES_MAX = 8;
+    /** Max number of commands for one Origin, executed in parallel */
+    public static final String KEY_SYNC_LANES_PER_ORIGIN = "sync_lanes_per_origin";
+    private static final long SYNC_LANES_PER_ORIGIN_DEFAULT = 1;
 
     // ----------------------------------------------------------
     // Filters
@@ -105,6 +112,8 @@ public class MyPreferences {
     public static final String KEY_HISTORY_SIZE = "history_size";
     public static final String KEY_HISTORY_TIME = "history_time";
     public static final String KEY_ENABLE_ANDROID_BACKUP = "enable_android_backup";
+    /** Write-Ahead Logging of the database, see https://www.sqlite.org/wal.html */
+    public static final String KEY_USE_WRITE_AHEAD_LOGGING = "use_write_ahead_logging";
 
     // ----------------------------------------------------------
     // Information
@@ -125,6 +134,10 @@ public class MyPreferences {
     /** System time when shared preferences were changed */
     public static final String KEY_PREFERENCES_CHANGE_TIME = "preferences_change_time";
     public static final String KEY_DATA_PRUNED_DATE = "data_pruned_date";
+    /** Links of users to deleted messages are not deleted yet, see {@link org.andstatus.app.data.DataPruner} */
+    public static final String KEY_DATA_PRUNE_MSG_OF_USER_PENDING = "data_prune_msg_of_user_pending";
+    /** Rowid, up to which links of users to deleted messages have been deleted already */
+    public static final String KEY_DATA_PRUNE_MSG_OF_USER_ROWID = "data_prune_msg_of_user_rowid";
     /** Version code of last opened application (int) */
     public static final String KEY_VERSION_CODE_LAST = "version_code_last";
     public static final String KEY_BEING_EDITED_MESSAGE_ID = "draft_message_id";
@@ -168,6 +181,17 @@ public class MyPreferences {
         SharedPreferencesUtil.putBoolean(KEY_SYNC_OVER_WIFI_ONLY, overWiFi);
     }
 
+    /** At least one lane, otherwise nothing would be synced */
+    public static int getSyncLanes() {
+        return (int) Math.max(1, Math.min(SYNC_LANES_MAX,
+                SharedPreferencesUtil.getLongStoredAsString(KEY_SYNC_LANES, SYNC_LANES_DEFAULT)));
+    }
+
+    public static int getSyncLanesPerOrigin() {
+        return (int) Math.max(1, Math.min(getSyncLanes(),
+                SharedPreferencesUtil.getLongStoredAsString(KEY_SYNC_LANES_PER_ORIGIN, SYNC_LANES_PER_ORIGIN_DEFAULT)));
+    }
+
     public static boolean isSyncWhileUsingApplicationEnabled() {
         return SharedPreferencesUtil.getBoolean(KEY_SYNC_WHILE_USING_APPLICATION, true);
     }
@@ -180,6 +204,10 @@ public class MyPreferences {
         SharedPreferencesUtil.putBoolean(KEY_DOWNLOAD_ATTACHMENTS_OVER_WIFI_ONLY, overWiFi);
     }
 
+    public static boolean isWriteAheadLoggingEnabled() {
+        return SharedPreferencesUtil.getBoolean(KEY_USE_WRITE_AHEAD_LOGGING, false);
+    }
+
     public static boolean isLongPressToOpenContextMenu() {
         return SharedPreferencesUtil.getBoolean(KEY_LONG_PRESS_TO_OPEN_CONTEXT_MENU, false);
     }
@@ -161,6 +161,10 @@ public class StorageSwitch {
                 return;
             }
             try {
+                DatabaseHolder db = MyContextHolder.get().getMyDatabase();
+                if (db != null) {
+                    db.checkpoint();
+                }
                 result.success = moveDatabase(mUseExternalStorageNew, result.messageBuilder, DatabaseHolder.DATABASE_NAME);
                 if (result.success) {
                     result.moved = true;
@@ -203,6 +207,7 @@ public class StorageSwitch {
                             succeeded = true;
                         } else if (dbFileNew.exists()) {
                             messageToAppend.insert(0, " Database already exists " + databaseName);
+                            DatabaseHolder.deleteWalFiles(dbFileNew);
                             if (!dbFileNew.delete()) {
                                 messageToAppend
                                         .insert(0, " Couldn't delete already existed files. ");
@@ -240,6 +245,9 @@ public class StorageSwitch {
                                 && !dbFileOld.delete()) {
                             messageToAppend.append(method + " couldn't delete old files. ");
                         }
+                        if (copied) {
+                            DatabaseHolder.deleteWalFiles(dbFileOld);
+                        }
                     } else {
                         if (dbFileNew != null
                                 && dbFileNew.exists()
@@ -16,7 +16,6 @@
 
 package org.andstatus.app.data;
 
-import android.content.ContentResolver;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -29,35 +28,51 @@ import org.andstatus.app.database.FriendshipTable;
 import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.database.MsgOfUserTable;
 import org.andstatus.app.database.UserTable;
+import org.andstatus.app.service.CommandExecutorParent;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
-import org.andstatus.app.util.SelectionAndArgs;
 import org.andstatus.app.util.SharedPreferencesUtil;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Clean database from outdated information
  * old Messages, log files...
+ * Messages are deleted in chunks of {@link #CHUNK_SIZE} in short transactions,
+ * so the database is not locked for a long time. Pruning is paused between chunks,
+ * when the application comes to foreground or the parent command is stopping;
+ * as the pruning date is not updated in this case, the next call continues the work.
+ * Deletion of links to the deleted messages is tracked separately, so it is finished by a later call
+ * even if that call has no messages to delete
  */
 public class DataPruner {
     private MyContext mMyContext;
-    private ContentResolver mContentResolver;
+    private CommandExecutorParent parent = null;
+    private boolean paused = false;
     private int mDeleted = 0;
     static final long MAX_DAYS_LOGS_TO_KEEP = 10;
     static final long PRUNE_MIN_PERIOD_DAYS = 1;	
+    static final int CHUNK_SIZE = 500;
+    /** Rows of the link tables are checked by ranges of rowids of this size */
+    static final int ROWID_RANGE_SIZE = 5000;
 
     public DataPruner(MyContext myContext) {
         mMyContext = myContext;
-        mContentResolver = myContext.context().getContentResolver();
+    }
+
+    public DataPruner setParent(CommandExecutorParent parent) {
+        this.parent = parent;
+        return this;
     }
 
     /**
-     * @return true if done successfully, false if skipped or an error
+     * @return true if done successfully, false if skipped, paused or an error
      */
     public boolean prune() {
         final String method = "prune";
@@ -65,103 +80,210 @@ public class DataPruner {
         if (!isTimeToPrune()) {
             return pruned;
         }
+        SQLiteDatabase db = mMyContext.getDatabase();
+        if (db == null) {
+            MyLog.v(this, method + "; Database is null");
+            return pruned;
+        }
         MyLog.v(this, method + " started");
 
         mDeleted = 0;
-        int nDeletedTime = 0;
+        paused = false;
         // We're using global preferences here
         SharedPreferences sp = SharedPreferencesUtil
                 .getDefaultSharedPreferences();
-
-        // Don't delete messages, which are favorited by any user
-        String sqlNotFavoritedMessage = "NOT EXISTS ("
-                + "SELECT * FROM " + MsgOfUserTable.TABLE_NAME + " AS gnf WHERE "
-                + MsgTable.TABLE_NAME + "." + MsgTable._ID + "=gnf." + MsgOfUserTable.MSG_ID
-                + " AND gnf." + MsgOfUserTable.FAVORITED + "=1"
-                + ")";
-        String sqlNotLatestMessageByFollowedUser = MsgTable.TABLE_NAME + "." + MsgTable._ID + " NOT IN("
-                + "SELECT " + UserTable.USER_MSG_ID
-                + " FROM " + UserTable.TABLE_NAME + " AS userf"
-                + " INNER JOIN " + FriendshipTable.TABLE_NAME
-                + " ON" 
-                + " userf." + UserTable._ID + "=" + FriendshipTable.TABLE_NAME + "." + FriendshipTable.FRIEND_ID
-                + " AND " + FriendshipTable.TABLE_NAME + "." + FriendshipTable.FOLLOWED + "=1"
-                + ")";
-
         int maxDays = Integer.parseInt(sp.getString(MyPreferences.KEY_HISTORY_TIME, "3"));
-        long latestTimestamp = 0;
-
-        int nTweets = 0;
-        int nToDeleteSize = 0;
-        int nDeletedSize = 0;
         int maxSize = Integer.parseInt(sp.getString(MyPreferences.KEY_HISTORY_SIZE, "2000"));
+        long latestTimestamp = 0;
         long latestTimestampSize = 0;
-        Cursor cursor = null;
+        int nTweets = 0;
+        long nDeletedLinks = 0;
         try {
             if (maxDays > 0) {
-                latestTimestamp = System.currentTimeMillis() - java.util.concurrent.TimeUnit.DAYS.toMillis(maxDays);
-                SelectionAndArgs sa = new SelectionAndArgs();
-                sa.addSelection(MsgTable.TABLE_NAME + "." + MsgTable.INS_DATE + " <  ?",
-                        String.valueOf(latestTimestamp));
-                sa.addSelection(sqlNotFavoritedMessage);
-                sa.addSelection(sqlNotLatestMessageByFollowedUser);
-                nDeletedTime = mContentResolver.delete(MatchedUri.MSG_CONTENT_URI, sa.selection, sa.selectionArgs);
+                latestTimestamp = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxDays);
             }
-
             if (maxSize > 0) {
-                nDeletedSize = 0;
-                cursor = mContentResolver.query(MatchedUri.MSG_CONTENT_COUNT_URI, null, null, null, null);
-                if (cursor.moveToFirst()) {
-                    // Count is in the first column
-                    nTweets = cursor.getInt(0);
-                    nToDeleteSize = nTweets - maxSize;
-                }
-                cursor.close();
+                nTweets = (int) MyQuery.sqlToLong(db, method, "SELECT COUNT(*) FROM " + MsgTable.TABLE_NAME);
+                int nToDeleteSize = nTweets - maxSize;
                 if (nToDeleteSize > 0) {
-                    // Find INS_DATE of the most recent tweet to delete
-                    cursor = mContentResolver.query(MatchedUri.MSG_CONTENT_URI, new String[] {
-                            MsgTable.INS_DATE
-                    }, null, null, MsgTable.INS_DATE + " ASC LIMIT 0," + nToDeleteSize);
-                    if (cursor.moveToLast()) {
-                        latestTimestampSize = cursor.getLong(0);
-                    }
-                    cursor.close();
-                    if (latestTimestampSize > 0) {
-                        SelectionAndArgs sa = new SelectionAndArgs();
-                        sa.addSelection(MsgTable.TABLE_NAME + "." + MsgTable.INS_DATE + " <=  ?",
-                                String.valueOf(latestTimestampSize));
-                        sa.addSelection(sqlNotFavoritedMessage);
-                        sa.addSelection(sqlNotLatestMessageByFollowedUser);
-                        nDeletedSize = mContentResolver.delete(MatchedUri.MSG_CONTENT_URI, sa.selection,
-                                sa.selectionArgs);
-                    }
+                    // INS_DATE of the most recent message to delete
+                    latestTimestampSize = MyQuery.sqlToLong(db, method, "SELECT " + MsgTable.INS_DATE
+                            + " FROM " + MsgTable.TABLE_NAME
+                            + " ORDER BY " + MsgTable.INS_DATE + " ASC LIMIT 1 OFFSET " + (nToDeleteSize - 1));
                 }
             }
-            pruned = true;
+            String olderThan = "";
+            if (latestTimestamp > 0) {
+                olderThan = MsgTable.INS_DATE + "<" + latestTimestamp;
+            }
+            if (latestTimestampSize > 0) {
+                olderThan += (olderThan.length() > 0 ? " OR " : "") + MsgTable.INS_DATE + "<=" + latestTimestampSize;
+            }
+            if (olderThan.length() > 0) {
+                mDeleted = deleteMessages(db, "(" + olderThan + ")", getProtectedMessageIds(db));
+            }
+            if (mDeleted > 0) {
+                setMsgOfUserPruningPending();
+            }
+            if (isMsgOfUserPruningPending() && !isPaused()) {
+                nDeletedLinks = pruneMsgOfUser(db);
+            }
+            pruned = !paused;
         } catch (Exception e) {
             MyLog.i(this, method + " failed", e);
-        } finally {
-            DbUtils.closeSilently(cursor);
         }
-        mDeleted = nDeletedTime + nDeletedSize;
-        if (mDeleted > 0) {
-            pruneAttachments();
+        if (!paused) {
+            if (mDeleted > 0) {
+                pruneAttachments();
+            }
+            pruneLogs(MAX_DAYS_LOGS_TO_KEEP);
+            setDataPrunedNow();
         }
-        pruneLogs(MAX_DAYS_LOGS_TO_KEEP);
-        setDataPrunedNow();
         if (MyLog.isVerboseEnabled()) {
-            MyLog.v(this,
-                    method + " " + (pruned ? "succeeded" : "failed") + "; History time=" + maxDays + " days; deleted " + nDeletedTime
-                    + " , before " + new Date(latestTimestamp).toString());
-            MyLog.v(this, method + "; History size=" + maxSize + " messages; deleted "
-                    + nDeletedSize + " of " + nTweets + " messages, before " + new Date(latestTimestampSize).toString());
+            MyLog.v(this, method + " " + (pruned ? "succeeded" : (paused ? "paused" : "failed"))
+                    + "; History time=" + maxDays + " days, before " + new Date(latestTimestamp).toString()
+                    + "; History size=" + maxSize + " messages of " + nTweets
+                    + ", before " + new Date(latestTimestampSize).toString()
+                    + "; deleted " + mDeleted + " messages, " + nDeletedLinks + " links to users");
         }
         return pruned;
     }
 
+    /** Pruning should be paused between chunks in order not to interfere with a User or to stop faster */
+    private boolean isPaused() {
+        if (!paused && (mMyContext.isInForeground() || (parent != null && parent.isStopping()))) {
+            paused = true;
+            MyLog.v(this, "Pausing pruning");
+        }
+        return paused;
+    }
+
+    /** Messages, which shouldn't be deleted: favorited by any user or the latest by followed users */
+    private Set<Long> getProtectedMessageIds(SQLiteDatabase db) {
+        Set<Long> ids = new HashSet<>();
+        String sql = "SELECT " + MsgOfUserTable.MSG_ID + " FROM " + MsgOfUserTable.TABLE_NAME
+                + " WHERE " + MsgOfUserTable.FAVORITED + "=1"
+                + " UNION SELECT " + UserTable.USER_MSG_ID
+                + " FROM " + UserTable.TABLE_NAME + " AS userf"
+                + " INNER JOIN " + FriendshipTable.TABLE_NAME
+                + " ON"
+                + " userf." + UserTable._ID + "=" + FriendshipTable.TABLE_NAME + "." + FriendshipTable.FRIEND_ID
+                + " AND " + FriendshipTable.TABLE_NAME + "." + FriendshipTable.FOLLOWED + "=1";
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            DbUtils.closeSilently(cursor);
+        }
+        return ids;
+    }
+
+    /** Deletes chunk by chunk the messages, which satisfy the condition, together with their attachments */
+    private int deleteMessages(SQLiteDatabase db, String condition, Set<Long> protectedIds) {
+        int deleted = 0;
+        long lastId = 0;
+        while (!isPaused()) {
+            List<Long> ids = new ArrayList<>();
+            String sql = "SELECT " + MsgTable._ID + " FROM " + MsgTable.TABLE_NAME
+                    + " WHERE " + MsgTable._ID + ">" + lastId + " AND " + condition
+                    + " ORDER BY " + MsgTable._ID + " LIMIT " + CHUNK_SIZE;
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery(sql, null);
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    if (!protectedIds.contains(lastId)) {
+                        ids.add(lastId);
+                    }
+                }
+                if (cursor.getCount() == 0) {
+                    break;
+                }
+            } finally {
+                DbUtils.closeSilently(cursor);
+            }
+            if (!ids.isEmpty()) {
+                deleted += deleteMessagesChunk(db, ids);
+            }
+        }
+        return deleted;
+    }
+
+    private int deleteMessagesChunk(SQLiteDatabase db, List<Long> msgIds) {
+        String sqlIds = DownloadData.toSqlList(msgIds);
+        List<DownloadFile> files = new ArrayList<>();
+        int count = 0;
+        db.beginTransaction();
+        try {
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery("SELECT " + DownloadTable.FILE_NAME + " FROM " + DownloadTable.TABLE_NAME
+                        + " WHERE " + DownloadTable.MSG_ID + " IN(" + sqlIds + ")", null);
+                while (cursor.moveToNext()) {
+                    files.add(new DownloadFile(cursor.getString(0)));
+                }
+            } finally {
+                DbUtils.closeSilently(cursor);
+            }
+            db.delete(DownloadTable.TABLE_NAME, DownloadTable.MSG_ID + " IN(" + sqlIds + ")", null);
+            count = db.delete(MsgTable.TABLE_NAME, MsgTable._ID + " IN(" + sqlIds + ")", null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        OidCache.clear();
+        for (DownloadFile file : files) {
+            file.delete();
+        }
+        return count;
+    }
+
+    /** New deletions may leave links anywhere in the table, so the scan starts from the beginning */
+    private static void setMsgOfUserPruningPending() {
+        SharedPreferencesUtil.putLong(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_ROWID, 0);
+        SharedPreferencesUtil.putBoolean(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_PENDING, true);
+    }
+
+    static boolean isMsgOfUserPruningPending() {
+        return SharedPreferencesUtil.getBoolean(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_PENDING, false);
+    }
+
+    /**
+     * Deletes links of users to the deleted messages. The {@link MsgOfUserTable} is not indexed by a message id,
+     * so it is scanned once by ranges of rowids, instead of being scanned for each chunk of messages.
+     * The scan continues from the range, where it was paused
+     */
+    private long pruneMsgOfUser(SQLiteDatabase db) {
+        final String method = "pruneMsgOfUser";
+        long maxRowId = MyQuery.sqlToLong(db, method, "SELECT MAX(rowid) FROM " + MsgOfUserTable.TABLE_NAME);
+        long deleted = 0;
+        long fromRowId = SharedPreferencesUtil.getLong(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_ROWID);
+        for (; fromRowId < maxRowId && !isPaused(); fromRowId += ROWID_RANGE_SIZE) {
+            deleted += db.delete(MsgOfUserTable.TABLE_NAME,
+                    "rowid>" + fromRowId + " AND rowid<=" + (fromRowId + ROWID_RANGE_SIZE)
+                    + " AND NOT EXISTS (SELECT " + MsgTable._ID + " FROM " + MsgTable.TABLE_NAME
+                    + " WHERE " + MsgTable.TABLE_NAME + "." + MsgTable._ID
+                    + "=" + MsgOfUserTable.TABLE_NAME + "." + MsgOfUserTable.MSG_ID + ")", null);
+            SharedPreferencesUtil.putLong(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_ROWID, fromRowId + ROWID_RANGE_SIZE);
+        }
+        if (fromRowId >= maxRowId) {
+            SharedPreferencesUtil.putBoolean(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_PENDING, false);
+            SharedPreferencesUtil.removeKey(MyPreferences.KEY_DATA_PRUNE_MSG_OF_USER_ROWID);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes attachments, which messages don't exist anymore
+     * @return number of such messages
+     */
     long pruneAttachments() {
         final String method = "pruneAttachments";
-        String sql = "SELECT DISTINCT " + DownloadTable.MSG_ID + " FROM " + DownloadTable.TABLE_NAME
+        String sql = "SELECT " + DownloadTable._ID + ", " + DownloadTable.MSG_ID + ", " + DownloadTable.FILE_NAME
+                + " FROM " + DownloadTable.TABLE_NAME
                 + " WHERE " + DownloadTable.MSG_ID + " NOT NULL"
                 + " AND NOT EXISTS (" 
                 + "SELECT * FROM " + MsgTable.TABLE_NAME
@@ -172,25 +294,32 @@ public class DataPruner {
             MyLog.v(this, method + "; Database is null");
             return 0;
         }
-        long nDeleted = 0;
-        List<Long> list = new ArrayList<Long>();
+        Set<Long> msgIds = new HashSet<>();
+        List<Long> rowIds = new ArrayList<>();
+        List<DownloadFile> files = new ArrayList<>();
         Cursor cursor = null;
         try {
             cursor = db.rawQuery(sql, null);
             while (cursor.moveToNext()) {
-                list.add(cursor.getLong(0));
+                rowIds.add(cursor.getLong(0));
+                msgIds.add(cursor.getLong(1));
+                files.add(new DownloadFile(cursor.getString(2)));
             }
         } finally {
             DbUtils.closeSilently(cursor);
         }
-        for (Long msgId : list) {
-            DownloadData.deleteAllOfThisMsg(db, msgId);
-            nDeleted++;
+        for (int from = 0; from < rowIds.size(); from += CHUNK_SIZE) {
+            db.delete(DownloadTable.TABLE_NAME, DownloadTable._ID + " IN("
+                    + DownloadData.toSqlList(rowIds.subList(from, Math.min(from + CHUNK_SIZE, rowIds.size()))) + ")",
+                    null);
+        }
+        for (DownloadFile file : files) {
+            file.delete();
         }
-        if (nDeleted > 0) {
-            MyLog.v(this, method + "; Attachments deleted for " + nDeleted + " messages");
+        if (!msgIds.isEmpty()) {
+            MyLog.v(this, method + "; Attachments deleted for " + msgIds.size() + " messages");
         }
-        return nDeleted;
+        return msgIds.size();
     }
 
     public static void setDataPrunedNow() {
@@ -17,6 +17,7 @@
 package org.andstatus.app.data;
 
 import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
@@ -40,6 +41,7 @@ import org.andstatus.app.service.CommandData;
 import org.andstatus.app.service.CommandEnum;
 import org.andstatus.app.service.CommandExecutionContext;
 import org.andstatus.app.timeline.TimelineType;
+import org.andstatus.app.user.UserMentionIndex;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.SharedPreferencesUtil;
 import org.andstatus.app.util.TriState;
@@ -47,7 +49,9 @@ import org.andstatus.app.util.UriUtils;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Stores (updates) messages and users
@@ -107,6 +111,115 @@ public class DataUpdater {
         return id;
     }
 
+    /**
+     * Stores a whole downloaded page in one database transaction.
+     * Ids of the users and messages, which are already in the database, are looked up in bulk beforehand
+     */
+    public void onActivities(@NonNull List<MbActivity> activities) {
+        if (activities.isEmpty()) {
+            return;
+        }
+        lookupIds(activities);
+        SQLiteDatabase db = execContext.getMyContext().getDatabase();
+        if (db == null) {
+            MyLog.v(this, "onActivities; Database is null");
+            return;
+        }
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            for (MbActivity activity : activities) {
+                onActivity(activity, false);
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            db.endTransaction();
+            if (!success) {
+                // Ids of the rows, inserted in the transaction, are not valid anymore
+                OidCache.clear();
+            }
+        }
+    }
+
+    private void lookupIds(@NonNull List<MbActivity> activities) {
+        Map<Long, Map<String, MbUser>> users = new HashMap<>();
+        Map<Long, Map<String, MbMessage>> messages = new HashMap<>();
+        for (MbActivity activity : activities) {
+            collectToLookup(activity, users, messages);
+        }
+        for (Map.Entry<Long, Map<String, MbUser>> entry : users.entrySet()) {
+            Map<String, Long> ids = MyQuery.oidsToIds(OidEnum.USER_OID, entry.getKey(), entry.getValue().keySet());
+            for (Map.Entry<String, Long> idEntry : ids.entrySet()) {
+                entry.getValue().get(idEntry.getKey()).userId = idEntry.getValue();
+            }
+        }
+        for (Map.Entry<Long, Map<String, MbMessage>> entry : messages.entrySet()) {
+            Map<String, Long> ids = MyQuery.oidsToIds(OidEnum.MSG_OID, entry.getKey(), entry.getValue().keySet());
+            for (Map.Entry<String, Long> idEntry : ids.entrySet()) {
+                entry.getValue().get(idEntry.getKey()).msgId = idEntry.getValue();
+            }
+        }
+    }
+
+    private void collectToLookup(MbActivity activity, Map<Long, Map<String, MbUser>> users,
+                                 Map<Long, Map<String, MbMessage>> messages) {
+        if (activity == null || activity.isEmpty()) {
+            return;
+        }
+        collectToLookup(activity.getActor(), users);
+        switch (activity.getObjectType()) {
+            case ACTIVITY:
+                collectToLookup(activity.getActivity(), users, messages);
+                break;
+            case MESSAGE:
+                collectToLookup(activity.getMessage(), users, messages);
+                break;
+            case USER:
+                collectToLookup(activity.getUser(), users);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void collectToLookup(MbMessage message, Map<Long, Map<String, MbUser>> users,
+                                 Map<Long, Map<String, MbMessage>> messages) {
+        if (message.isEmpty()) {
+            return;
+        }
+        if (message.msgId == 0 && !TextUtils.isEmpty(message.oid)) {
+            Map<String, MbMessage> ofOrigin = messages.get(message.originId);
+            if (ofOrigin == null) {
+                ofOrigin = new HashMap<>();
+                messages.put(message.originId, ofOrigin);
+            }
+            if (!ofOrigin.containsKey(message.oid)) {
+                ofOrigin.put(message.oid, message);
+            }
+        }
+        collectToLookup(message.getAuthor(), users);
+        collectToLookup(message.getRecipient(), users);
+        collectToLookup(message.getInReplyTo(), users, messages);
+        for (MbMessage reply : message.replies) {
+            collectToLookup(reply, users, messages);
+        }
+    }
+
+    private void collectToLookup(MbUser user, Map<Long, Map<String, MbUser>> users) {
+        if (user.isEmpty() || user.userId != 0 || !user.isOidReal()) {
+            return;
+        }
+        Map<String, MbUser> ofOrigin = users.get(user.originId);
+        if (ofOrigin == null) {
+            ofOrigin = new HashMap<>();
+            users.put(user.originId, ofOrigin);
+        }
+        if (!ofOrigin.containsKey(user.oid)) {
+            ofOrigin.put(user.oid, user);
+        }
+    }
+
     public void saveLum() {
         lum.save();
     }
@@ -287,6 +400,11 @@ public class DataUpdater {
                     }
                 }
             }
+            UserMentionIndex.onMessage(message.originId, message.getAuthor().userId, message.getUpdatedDate(), false);
+            if (activity.isAuthorMe() && values.containsKey(MsgTable.IN_REPLY_TO_USER_ID)) {
+                UserMentionIndex.onMessage(message.originId, values.getAsLong(MsgTable.IN_REPLY_TO_USER_ID),
+                        message.getUpdatedDate(), true);
+            }
             // Remember all messages that we added or updated
             lum.onNewUserMsg(new UserMsg(activity.getActor().userId, message.msgId, message.sentDate));
             if ( !activity.isAuthorActor()) {
@@ -497,6 +615,10 @@ public class DataUpdater {
                 execContext.getContext().getContentResolver().update(userUri, values, null, null);
             }
             mbUser.userId = userId;
+            if (values.containsKey(UserTable.USERNAME)) {
+                UserMentionIndex.onUserUpdated(originId, userId, values.getAsString(UserTable.USERNAME),
+                        values.getAsString(UserTable.WEBFINGER_ID), values.getAsString(UserTable.REAL_NAME));
+            }
             if (mbUser.hasLatestMessage()) {
                 updateMessage(mbUser.getLatestMessage().update(activity.accountUser), false);
             }
@@ -407,6 +407,39 @@ public class DownloadData {
         return uri;
     }
 
+    /**
+     * @return existing file, which was already downloaded from the same Uri for another row
+     *  or {@link DownloadFile#EMPTY}. So the same file doesn't need to be downloaded again
+     */
+    public DownloadFile getLoadedFileWithSameUri() {
+        if (UriUtils.isEmpty(uri)) {
+            return DownloadFile.EMPTY;
+        }
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        if (db == null) {
+            MyLog.v(this, "Database is null");
+            return DownloadFile.EMPTY;
+        }
+        String sql = "SELECT " + DownloadTable.FILE_NAME
+                + " FROM " + DownloadTable.TABLE_NAME
+                + " WHERE " + DownloadTable.URI + "=" + MyQuery.quoteIfNotQuoted(uri.toString())
+                + " AND " + DownloadTable.DOWNLOAD_STATUS + "=" + DownloadStatus.LOADED.save()
+                + (downloadId == 0 ? "" : " AND " + DownloadTable._ID + "<>" + downloadId);
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                DownloadFile file = new DownloadFile(DbUtils.getString(cursor, DownloadTable.FILE_NAME));
+                if (file.exists()) {
+                    return file;
+                }
+            }
+        } finally {
+            DbUtils.closeSilently(cursor);
+        }
+        return DownloadFile.EMPTY;
+    }
+
     public void requestDownload() {
         if (!hardError && downloadId == 0) {
             saveToDatabase();
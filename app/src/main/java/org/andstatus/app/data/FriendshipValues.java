@@ -20,18 +20,24 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteStatement;
 
+import org.andstatus.app.account.MyFriends;
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.database.FriendshipTable;
 import org.andstatus.app.util.ContentValuesUtils;
+import org.andstatus.app.util.LongSet;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.SharedPreferencesUtil;
 
+import java.util.Set;
+
 /**
  * Helper class to update the "Friendship" information (see {@link FriendshipTable})
  * @author yvolk@yurivolkov.com
  */
 public class FriendshipValues {
+    private static final String TAG = FriendshipValues.class.getSimpleName();
     public long userId;
     public long friendId;
     private ContentValues contentValues = new ContentValues();
@@ -63,6 +69,106 @@ public class FriendshipValues {
         fu.update(MyContextHolder.get().getDatabase());
     }
 
+    /**
+     * Makes the followers of the user to be the new set: only the difference between the sets is written,
+     * in one transaction
+     * @param oldFollowerIds followers, currently stored in the database
+     */
+    public static void syncFollowers(long userId, Set<Long> oldFollowerIds, Set<Long> newFollowerIds) {
+        syncFriendships(userId, false, LongSet.asLongSet(oldFollowerIds), LongSet.asLongSet(newFollowerIds));
+    }
+
+    /** The same as {@link #syncFollowers(long, Set, Set)} but for the friends of the user */
+    public static void syncFriends(long userId, Set<Long> oldFriendIds, Set<Long> newFriendIds) {
+        syncFriendships(userId, true, LongSet.asLongSet(oldFriendIds), LongSet.asLongSet(newFriendIds));
+    }
+
+    private static void syncFriendships(long userId, boolean ofFriends, LongSet oldIds, LongSet newIds) {
+        final String method = "syncFriendships";
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        if (db == null || userId == 0) {
+            MyLog.v(TAG, method + "; Database is null or no user");
+            return;
+        }
+        LongSet followed = new LongSet();
+        for (long id : newIds.toLongArray()) {
+            if (id != 0 && !oldIds.contains(id)) {
+                followed.add(id);
+            }
+        }
+        LongSet notFollowed = new LongSet();
+        for (long id : oldIds.toLongArray()) {
+            if (!newIds.contains(id)) {
+                notFollowed.add(id);
+            }
+        }
+        if (followed.isEmpty() && notFollowed.isEmpty()) {
+            return;
+        }
+        for (int pass=0; pass<5; pass++) {
+            try {
+                tryToSync(db, userId, ofFriends, followed, notFollowed);
+                onSynced(userId, ofFriends, followed, notFollowed);
+                MyLog.v(TAG, method + "; userId=" + userId + (ofFriends ? " friends" : " followers")
+                        + " +" + followed.size() + " -" + notFollowed.size());
+                break;
+            } catch (SQLiteDatabaseLockedException e) {
+                MyLog.i(TAG, method + ", Database is locked, pass=" + pass, e);
+                if (DbUtils.waitBetweenRetries(method)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void tryToSync(SQLiteDatabase db, long userId, boolean ofFriends,
+                                  LongSet followed, LongSet notFollowed) {
+        SQLiteStatement follow = null;
+        SQLiteStatement unfollow = null;
+        db.beginTransaction();
+        try {
+            follow = db.compileStatement("INSERT OR REPLACE INTO " + FriendshipTable.TABLE_NAME + " ("
+                    + FriendshipTable.USER_ID + ", " + FriendshipTable.FRIEND_ID + ", " + FriendshipTable.FOLLOWED
+                    + ") VALUES (?, ?, 1)");
+            for (long id : followed.toLongArray()) {
+                bindFriendship(follow, userId, ofFriends, id);
+                follow.executeInsert();
+            }
+            unfollow = db.compileStatement("UPDATE " + FriendshipTable.TABLE_NAME
+                    + " SET " + FriendshipTable.FOLLOWED + "=0"
+                    + " WHERE " + FriendshipTable.USER_ID + "=? AND " + FriendshipTable.FRIEND_ID + "=?");
+            for (long id : notFollowed.toLongArray()) {
+                bindFriendship(unfollow, userId, ofFriends, id);
+                unfollow.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            DbUtils.closeSilently(follow);
+            DbUtils.closeSilently(unfollow);
+        }
+    }
+
+    /** Keeps friends of my accounts in memory current */
+    private static void onSynced(long userId, boolean ofFriends, LongSet followed, LongSet notFollowed) {
+        MyFriends myFriends = MyContextHolder.get().persistentAccounts().myFriends();
+        if (ofFriends) {
+            myFriends.onFriendsChanged(userId, followed, notFollowed);
+        } else {
+            for (long id : followed.toLongArray()) {
+                myFriends.onFollowed(id, userId, true);
+            }
+            for (long id : notFollowed.toLongArray()) {
+                myFriends.onFollowed(id, userId, false);
+            }
+        }
+    }
+
+    private static void bindFriendship(SQLiteStatement statement, long userId, boolean ofFriends, long otherId) {
+        statement.bindLong(1, ofFriends ? userId : otherId);
+        statement.bindLong(2, ofFriends ? otherId : userId);
+    }
+
     public FriendshipValues(long userId, long friendId) {
         this.userId = userId;
         this.friendId = friendId;
@@ -89,6 +195,7 @@ public class FriendshipValues {
         for (int pass=0; pass<5; pass++) {
             try {
                 tryToUpdate(db, followed);
+                MyContextHolder.get().persistentAccounts().myFriends().onFollowed(userId, friendId, followed);
                 break;
             } catch (SQLiteDatabaseLockedException e) {
                 MyLog.i(this, "update, Database is locked, pass=" + pass, e);
@@ -16,19 +16,16 @@
 
 package org.andstatus.app.data;
 
+import org.andstatus.app.util.LongMap;
+
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Collects {@link UserMsg} data (e.g. during timeline download) and allows to save it in bulk 
  * @author yvolk@yurivolkov.com
  */
 public class LatestUserMessages {
-    private Map<Long, UserMsg> messages;
-    public LatestUserMessages() {
-        messages = new HashMap<Long, UserMsg>();
-    }
+    private final LongMap<UserMsg> messages = new LongMap<>();
     
     public Collection<UserMsg> getUserMessages() {
         return messages.values();
@@ -42,11 +39,10 @@ public class LatestUserMessages {
         // http://stackoverflow.com/questions/81346/most-efficient-way-to-increment-a-map-value-in-java
         UserMsg um = messages.get(umIn.getUserId());
         if (um == null) {
-            um = umIn;
+            messages.put(umIn.getUserId(), umIn);
         } else {
             um.onNewMsg(umIn.getLastMsgId(), umIn.getLastMsgDate() );
         }
-        messages.put(um.getUserId(), um);
     }
     
     /**
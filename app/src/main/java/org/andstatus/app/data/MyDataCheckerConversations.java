@@ -17,30 +17,37 @@
 package org.andstatus.app.data;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
 import org.andstatus.app.backup.ProgressLogger;
 import org.andstatus.app.context.MyContext;
 import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.service.MyServiceManager;
+import org.andstatus.app.util.LongMap;
 import org.andstatus.app.util.MyLog;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author yvolk@yurivolkov.com
  */
 public class MyDataCheckerConversations {
     private static final int PROGRESS_REPORT_PERIOD_SECONDS = 20;
+    private static final int LOAD_CHUNK_SIZE = 5000;
+    /** Changes are saved in short transactions, so other database users are not blocked for long */
+    private static final int SAVE_CHUNK_SIZE = 500;
     private final MyContext myContext;
     private final ProgressLogger logger;
 
-    Map<Long, MsgItem> items = new TreeMap<>();
-    Map<Long, List<MsgItem>> replies = new TreeMap<>();
+    /** Ordered by id */
+    List<MsgItem> items = new ArrayList<>();
+    LongMap<MsgItem> itemsById = new LongMap<>();
+    LongMap<List<MsgItem>> replies = new LongMap<>();
 
     private class MsgItem {
         long id = 0;
@@ -108,49 +115,59 @@ public class MyDataCheckerConversations {
 
     private void loadMessages() {
         items.clear();
+        itemsById.clear();
         replies.clear();
-        String sql = "SELECT " + MsgTable._ID
-                + ", " + MsgTable.ORIGIN_ID
-                + ", " + MsgTable.IN_REPLY_TO_MSG_ID
-                + ", " + MsgTable.CONVERSATION_ID
-                + ", " + MsgTable.CONVERSATION_OID
-                + " FROM " + MsgTable.TABLE_NAME
-                ;
-        Cursor c = null;
         long rowsCount = 0;
-        try {
-            c = myContext.getDatabase().rawQuery(sql, null);
-            while (c.moveToNext()) {
-                rowsCount++;
-                MsgItem item = new MsgItem();
-                item.id = c.getLong(0);
-                item.originId = c.getLong(1);
-                item.inReplyToId = c.getLong(2);
-                item.inReplyToId_initial = item.inReplyToId;
-                item.conversationId = c.getLong(3);
-                item.conversationId_initial = item.conversationId;
-                item.conversationOid = c.getString(4);
-                items.put(item.id, item);
-                if (item.inReplyToId != 0) {
-                    List<MsgItem> replies1 = replies.get(item.inReplyToId);
-                    if (replies1 == null) {
-                        replies1 = new ArrayList<>();
-                        replies.put(item.inReplyToId, replies1);
+        for (long lastId = 0, loaded = LOAD_CHUNK_SIZE; loaded == LOAD_CHUNK_SIZE; ) {
+            loaded = 0;
+            String sql = "SELECT " + MsgTable._ID
+                    + ", " + MsgTable.ORIGIN_ID
+                    + ", " + MsgTable.IN_REPLY_TO_MSG_ID
+                    + ", " + MsgTable.CONVERSATION_ID
+                    + ", " + MsgTable.CONVERSATION_OID
+                    + " FROM " + MsgTable.TABLE_NAME
+                    + " WHERE " + MsgTable._ID + ">" + lastId
+                    + " ORDER BY " + MsgTable._ID
+                    + " LIMIT " + LOAD_CHUNK_SIZE
+                    ;
+            Cursor c = null;
+            try {
+                c = myContext.getDatabase().rawQuery(sql, null);
+                while (c.moveToNext()) {
+                    loaded++;
+                    MsgItem item = new MsgItem();
+                    item.id = c.getLong(0);
+                    item.originId = c.getLong(1);
+                    item.inReplyToId = c.getLong(2);
+                    item.inReplyToId_initial = item.inReplyToId;
+                    item.conversationId = c.getLong(3);
+                    item.conversationId_initial = item.conversationId;
+                    item.conversationOid = c.getString(4);
+                    items.add(item);
+                    itemsById.put(item.id, item);
+                    if (item.inReplyToId != 0) {
+                        List<MsgItem> replies1 = replies.get(item.inReplyToId);
+                        if (replies1 == null) {
+                            replies1 = new ArrayList<>();
+                            replies.put(item.inReplyToId, replies1);
+                        }
+                        replies1.add(item);
                     }
-                    replies1.add(item);
+                    lastId = item.id;
                 }
+            } finally {
+                DbUtils.closeSilently(c);
             }
-        } finally {
-            DbUtils.closeSilently(c);
+            rowsCount += loaded;
         }
         logger.logProgress(Long.toString(rowsCount) + " messages loaded");
     }
 
     private void fixConversationsUsingReplies() {
         int counter = 0;
-        for (MsgItem item : items.values()) {
+        for (MsgItem item : items) {
             if (item.inReplyToId != 0) {
-                MsgItem parent = items.get(item.inReplyToId);
+                MsgItem parent = itemsById.get(item.inReplyToId);
                 if (parent == null) {
                     item.fixInReplyToId(0);
                 } else {
@@ -171,12 +188,12 @@ public class MyDataCheckerConversations {
 
     private void fixConversationsUsingConversationOid() {
         int counter = 0;
-        Map<Long, Map<String, MsgItem>> origins = new ConcurrentHashMap<>();
-        for (MsgItem item : items.values()) {
+        LongMap<Map<String, MsgItem>> origins = new LongMap<>();
+        for (MsgItem item : items) {
             if (!TextUtils.isEmpty(item.conversationOid)) {
                 Map<String, MsgItem> firstConversationMembers = origins.get(item.originId);
                 if (firstConversationMembers == null) {
-                    firstConversationMembers = new ConcurrentHashMap<>();
+                    firstConversationMembers = new HashMap<>();
                     origins.put(item.originId, firstConversationMembers);
                 }
                 MsgItem parent = firstConversationMembers.get(item.conversationOid);
@@ -213,43 +230,73 @@ public class MyDataCheckerConversations {
     }
 
     private int saveChanges(boolean countOnly) {
-        int changedCount = 0;
-        for (MsgItem item : items.values()) {
+        List<MsgItem> changed = new ArrayList<>();
+        for (MsgItem item : items) {
             if (item.isChanged()) {
-                String sql = "";
-                try {
-                    if (changedCount < 5) {
-                        MyLog.v(this, "msgId=" + item.id + "; "
-                            + (item.isInReplyToIdChanged() ? "inReplyToId changed from "
-                                + item.inReplyToId_initial + " to " + item.inReplyToId : "")
-                            + (item.isInReplyToIdChanged() && item.isConversationIdChanged() ? " and " : "")
-                            + (item.isConversationIdChanged() ? "conversationId changed from "
-                                + item.conversationId_initial + " to " + item.conversationId : ""));
-                    }
-                    if (!countOnly) {
-                        sql = "UPDATE " + MsgTable.TABLE_NAME
-                                + " SET "
-                                + (item.isInReplyToIdChanged() ?
-                                    MsgTable.IN_REPLY_TO_MSG_ID + "=" + DbUtils.sqlZeroToNull(item.inReplyToId) : "")
-                                + (item.isInReplyToIdChanged() && item.isConversationIdChanged() ? ", " : "")
-                                + (item.isConversationIdChanged() ?
-                                    MsgTable.CONVERSATION_ID + "=" + DbUtils.sqlZeroToNull(item.conversationId) : "")
-                                + " WHERE " + MsgTable._ID + "=" + item.id;
-                        myContext.getDatabase().execSQL(sql);
-                    }
-                    changedCount++;
-                    if (logger.loggedMoreSecondsAgoThan(PROGRESS_REPORT_PERIOD_SECONDS)) {
-                        logger.logProgress("Saved changes for " + changedCount + " messages");
-                        MyServiceManager.setServiceUnavailable();
-                    }
-                } catch (Exception e) {
-                    String logMsg = "Error: " + e.getMessage() + ", SQL:" + sql;
-                    logger.logProgress(logMsg);
-                    MyLog.e(this, logMsg, e);
+                if (changed.size() < 5) {
+                    MyLog.v(this, "msgId=" + item.id + "; "
+                        + (item.isInReplyToIdChanged() ? "inReplyToId changed from "
+                            + item.inReplyToId_initial + " to " + item.inReplyToId : "")
+                        + (item.isInReplyToIdChanged() && item.isConversationIdChanged() ? " and " : "")
+                        + (item.isConversationIdChanged() ? "conversationId changed from "
+                            + item.conversationId_initial + " to " + item.conversationId : ""));
                 }
+                changed.add(item);
+            }
+        }
+        if (countOnly) {
+            return changed.size();
+        }
+        int changedCount = 0;
+        for (int from = 0; from < changed.size(); from += SAVE_CHUNK_SIZE) {
+            List<MsgItem> chunk = changed.subList(from, Math.min(changed.size(), from + SAVE_CHUNK_SIZE));
+            try {
+                saveChunk(chunk);
+                changedCount += chunk.size();
+            } catch (Exception e) {
+                String logMsg = "Error: " + e.getMessage() + ", while saving changes of " + chunk.size()
+                        + " messages, starting from msgId=" + chunk.get(0).id;
+                logger.logProgress(logMsg);
+                MyLog.e(this, logMsg, e);
+            }
+            if (logger.loggedMoreSecondsAgoThan(PROGRESS_REPORT_PERIOD_SECONDS)) {
+                logger.logProgress("Saved changes for " + changedCount + " messages of " + changed.size());
+                MyServiceManager.setServiceUnavailable();
             }
         }
         return changedCount;
     }
 
+    private void saveChunk(List<MsgItem> chunk) {
+        SQLiteDatabase db = myContext.getDatabase();
+        SQLiteStatement statement = db.compileStatement("UPDATE " + MsgTable.TABLE_NAME
+                + " SET " + MsgTable.IN_REPLY_TO_MSG_ID + "=?, " + MsgTable.CONVERSATION_ID + "=?"
+                + " WHERE " + MsgTable._ID + "=?");
+        try {
+            db.beginTransaction();
+            try {
+                for (MsgItem item : chunk) {
+                    statement.clearBindings();
+                    bindZeroAsNull(statement, 1, item.inReplyToId);
+                    bindZeroAsNull(statement, 2, item.conversationId);
+                    statement.bindLong(3, item.id);
+                    statement.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            DbUtils.closeSilently(statement);
+        }
+    }
+
+    private static void bindZeroAsNull(SQLiteStatement statement, int index, long value) {
+        if (value == 0) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value);
+        }
+    }
+
 }
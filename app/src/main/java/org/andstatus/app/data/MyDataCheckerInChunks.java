@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+
+import org.andstatus.app.backup.ProgressLogger;
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.os.MyAsyncTask;
+import org.andstatus.app.util.MyLog;
+import org.andstatus.app.util.SharedPreferencesUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks rows of a table in chunks, ordered by id.
+ * Fixes of a chunk are computed in parallel in the shared pool of {@link AsyncTaskLauncher}
+ * and are saved in one transaction,
+ * so other database users are not blocked for long. The id of the last checked row is stored as a checkpoint:
+ * an interrupted check resumes after it
+ * @author yvolk@yurivolkov.com
+ */
+abstract class MyDataCheckerInChunks<T> {
+    private static final int CHUNK_SIZE = 500;
+    private static final int PROGRESS_REPORT_PERIOD_SECONDS = 20;
+    /** A chunk is split into this number of slices, which are fixed in parallel */
+    private static final int SLICES_IN_CHUNK = 4;
+    protected final MyContext myContext;
+    protected final ProgressLogger logger;
+    private final String checkpointKey;
+
+    long rowsCount = 0;
+    long changedCount = 0;
+
+    MyDataCheckerInChunks(MyContext myContext, ProgressLogger logger, String checkpointKey) {
+        this.myContext = myContext;
+        this.logger = logger;
+        this.checkpointKey = checkpointKey;
+    }
+
+    /** @return the table, which has {@link BaseColumns#_ID} column */
+    protected abstract String getTableName();
+
+    /** @return the columns to read, the first of them is {@link BaseColumns#_ID} */
+    protected abstract String getColumns();
+
+    protected abstract T fromCursor(Cursor cursor);
+
+    protected abstract long getId(T row);
+
+    /** Called on a worker thread
+     * @return true if the row was changed */
+    protected abstract boolean fix(T row);
+
+    protected abstract String getUpdateSql();
+
+    protected abstract void bindUpdate(SQLiteStatement statement, T row);
+
+    protected abstract String getProgressMessage();
+
+    /** @return true if all rows were checked */
+    boolean checkRows() {
+        long afterId = SharedPreferencesUtil.getLong(checkpointKey);
+        if (afterId > 0) {
+            logger.logProgress("Resuming the check after id=" + afterId);
+        }
+        try {
+            for (List<T> rows = loadChunk(afterId); !rows.isEmpty(); rows = loadChunk(afterId)) {
+                List<T> changedRows = fixChunk(rows);
+                saveChunk(changedRows);
+                rowsCount += rows.size();
+                changedCount += changedRows.size();
+                afterId = getId(rows.get(rows.size() - 1));
+                SharedPreferencesUtil.putLong(checkpointKey, afterId);
+                if (logger.loggedMoreSecondsAgoThan(PROGRESS_REPORT_PERIOD_SECONDS)) {
+                    logger.logProgress(getProgressMessage());
+                }
+            }
+            SharedPreferencesUtil.removeKey(checkpointKey);
+            return true;
+        } catch (Exception e) {
+            String logMsg = "Error: " + e.getMessage() + ", the check will be resumed after id=" + afterId;
+            logger.logProgress(logMsg);
+            MyLog.e(this, logMsg, e);
+        }
+        return false;
+    }
+
+    @NonNull
+    private List<T> loadChunk(long afterId) {
+        String sql = "SELECT " + getColumns()
+                + " FROM " + getTableName()
+                + " WHERE " + BaseColumns._ID + ">" + afterId
+                + " ORDER BY " + BaseColumns._ID
+                + " LIMIT " + CHUNK_SIZE;
+        List<T> rows = new ArrayList<>();
+        Cursor c = null;
+        try {
+            c = myContext.getDatabase().rawQuery(sql, null);
+            while (c.moveToNext()) {
+                rows.add(fromCursor(c));
+            }
+        } finally {
+            DbUtils.closeSilently(c);
+        }
+        return rows;
+    }
+
+    /** Fixes a slice of a chunk */
+    private class FixTask extends MyAsyncTask<Void, Void, List<T>> {
+        private final List<T> slice;
+
+        FixTask(List<T> slice) {
+            super(MyDataCheckerInChunks.this.getClass().getSimpleName() + "-" + getId(slice.get(0)),
+                    PoolEnum.DEFAULT);
+            setSingleInstance(false);
+            this.slice = slice;
+        }
+
+        @Override
+        protected List<T> doInBackground2(Void... params) {
+            List<T> changed = new ArrayList<>();
+            for (T row : slice) {
+                if (fix(row)) {
+                    changed.add(row);
+                }
+            }
+            return changed;
+        }
+
+        /** Executes the task in the current thread, if it was not launched */
+        List<T> executeHere() {
+            return doInBackground2();
+        }
+    }
+
+    /** @return changed rows in the same order */
+    @NonNull
+    private List<T> fixChunk(List<T> rows) throws Exception {
+        int sliceSize = (rows.size() + SLICES_IN_CHUNK - 1) / SLICES_IN_CHUNK;
+        List<FixTask> tasks = new ArrayList<>();
+        List<Boolean> launched = new ArrayList<>();
+        try {
+            for (int from = 0; from < rows.size(); from += sliceSize) {
+                FixTask task = new FixTask(rows.subList(from, Math.min(rows.size(), from + sliceSize)));
+                tasks.add(task);
+                launched.add(AsyncTaskLauncher.execute(this, false, task));
+            }
+            List<T> changedRows = new ArrayList<>();
+            for (int index = 0; index < tasks.size(); index++) {
+                changedRows.addAll(launched.get(index) ? tasks.get(index).get() : tasks.get(index).executeHere());
+            }
+            return changedRows;
+        } finally {
+            for (FixTask task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private void saveChunk(List<T> changedRows) {
+        if (changedRows.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = myContext.getDatabase();
+        SQLiteStatement statement = db.compileStatement(getUpdateSql());
+        try {
+            db.beginTransaction();
+            try {
+                for (T row : changedRows) {
+                    statement.clearBindings();
+                    bindUpdate(statement, row);
+                    statement.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            DbUtils.closeSilently(statement);
+        }
+    }
+}
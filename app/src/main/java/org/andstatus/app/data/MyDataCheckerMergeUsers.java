@@ -17,6 +17,7 @@
 package org.andstatus.app.data;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 
 import org.andstatus.app.backup.ProgressLogger;
@@ -55,6 +56,9 @@ public class MyDataCheckerMergeUsers {
             mergeUser(activity);
             changedCount++;
         }
+        if (changedCount > 0) {
+            myContext.persistentAccounts().myFriends().reset();
+        }
         logger.logProgress(method + " ended, "
                 + (changedCount > 0 ?  changedCount + " users merged" : " no changes were needed"));
         DbUtils.waitMs(method, changedCount == 0 ? 1000 : 3000);
@@ -124,24 +128,33 @@ public class MyDataCheckerMergeUsers {
         return activity;
     }
 
+    /** All changes of one user are made in one transaction */
     private void mergeUser(MbActivity activity) {
         MbUser user = activity.getUser();
         String logMsg = "Merging " + user + " with " + activity.getActor();
         logger.logProgress(logMsg);
-        updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.ACTOR_ID, false);
-        updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.AUTHOR_ID, false);
-        updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.RECIPIENT_ID, false);
-        updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.IN_REPLY_TO_USER_ID, false);
+        SQLiteDatabase db = myContext.getDatabase();
+        db.beginTransaction();
+        try {
+            updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.ACTOR_ID, false);
+            updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.AUTHOR_ID, false);
+            updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.RECIPIENT_ID, false);
+            updateColumn(logMsg, activity, MsgTable.TABLE_NAME, MsgTable.IN_REPLY_TO_USER_ID, false);
 
-        updateColumn(logMsg, activity, MsgOfUserTable.TABLE_NAME, MsgOfUserTable.USER_ID, true);
-        deleteRows(logMsg, user, MsgOfUserTable.TABLE_NAME, MsgOfUserTable.USER_ID);
+            updateColumn(logMsg, activity, MsgOfUserTable.TABLE_NAME, MsgOfUserTable.USER_ID, true);
+            deleteRows(logMsg, user, MsgOfUserTable.TABLE_NAME, MsgOfUserTable.USER_ID);
 
-        deleteRows(logMsg, user, FriendshipTable.TABLE_NAME, FriendshipTable.USER_ID);
-        deleteRows(logMsg, user, FriendshipTable.TABLE_NAME, FriendshipTable.FRIEND_ID);
+            deleteRows(logMsg, user, FriendshipTable.TABLE_NAME, FriendshipTable.USER_ID);
+            deleteRows(logMsg, user, FriendshipTable.TABLE_NAME, FriendshipTable.FRIEND_ID);
 
-        deleteRows(logMsg, user, DownloadTable.TABLE_NAME, DownloadTable.USER_ID);
+            deleteRows(logMsg, user, DownloadTable.TABLE_NAME, DownloadTable.USER_ID);
 
-        deleteRows(logMsg, user, UserTable.TABLE_NAME, UserTable._ID);
+            deleteRows(logMsg, user, UserTable.TABLE_NAME, UserTable._ID);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        OidCache.forget(OidEnum.USER_OID, user.userId);
     }
 
     private void updateColumn(String logMsg, MbActivity activity, String table, String column, boolean ignoreError) {
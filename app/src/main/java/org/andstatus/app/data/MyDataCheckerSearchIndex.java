@@ -17,9 +17,13 @@
 package org.andstatus.app.data;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 
 import org.andstatus.app.backup.ProgressLogger;
 import org.andstatus.app.context.MyContext;
+import org.andstatus.app.database.MsgSearchTable;
 import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.service.MyServiceManager;
 import org.andstatus.app.util.MyHtml;
@@ -28,64 +32,114 @@ import org.andstatus.app.util.MyLog;
 import static org.andstatus.app.data.MyQuery.quoteIfNotQuoted;
 
 /**
+ * Recalculates {@link MsgTable#BODY_TO_SEARCH} in chunks, so the check doesn't need exclusive access to the database
+ * and is resumed after an interruption
  * @author yvolk@yurivolkov.com
  */
-public class MyDataCheckerSearchIndex {
-    private static final int PROGRESS_REPORT_PERIOD_SECONDS = 20;
-    private final MyContext myContext;
-    private final ProgressLogger logger;
+public class MyDataCheckerSearchIndex extends MyDataCheckerInChunks<MyDataCheckerSearchIndex.Row> {
+    static final String CHECKPOINT_KEY = "data_checker_search_index_last_id";
+
+    static class Row {
+        final long id;
+        final String body;
+        String bodyToSearch;
+
+        Row(long id, String body, String bodyToSearch) {
+            this.id = id;
+            this.body = body;
+            this.bodyToSearch = bodyToSearch;
+        }
+    }
 
     public MyDataCheckerSearchIndex(MyContext myContext, ProgressLogger logger) {
-        this.myContext = myContext;
-        this.logger = logger;
+        super(myContext, logger, CHECKPOINT_KEY);
     }
 
     public void fixData() {
         logger.logProgress("Search index update started");
-        String sql = "SELECT " + MsgTable._ID
-                + ", " + MsgTable.BODY
-                + ", " + MsgTable.BODY_TO_SEARCH
-                + " FROM " + MsgTable.TABLE_NAME
-                ;
-        Cursor c = null;
-        long rowsCount = 0;
-        long changedCount = 0;
-        try {
-            c = myContext.getDatabase().rawQuery(sql, null);
-            while (c.moveToNext()) {
-                rowsCount++;
-                long id = c.getLong(0);
-                String body = c.getString(1);
-                String bodyToSearch = c.getString(2);
-                String bodyToSearchExpected = MyHtml.getBodyToSearch(body);
-                if (!bodyToSearchExpected.equals(bodyToSearch)) {
-                    changedCount++;
-                    MyLog.i(this, "Wrong body to search for " + id + ": " + quoteIfNotQuoted(body));
-                    sql = "UPDATE " + MsgTable.TABLE_NAME
-                            + " SET "
-                            + MsgTable.BODY_TO_SEARCH + "=" + quoteIfNotQuoted(bodyToSearchExpected)
-                            + " WHERE " + MsgTable._ID + "=" + id;
-                    myContext.getDatabase().execSQL(sql);
-                }
-                if (logger.loggedMoreSecondsAgoThan(PROGRESS_REPORT_PERIOD_SECONDS)) {
-                    logger.logProgress("Updating search index"
-                            + (changedCount == 0 ? ". " : ", changed " + changedCount + " of ")
-                            + rowsCount + " messages"
-                    );
-                    MyServiceManager.setServiceUnavailable();
-                }
-            }
-        } catch (Exception e) {
-            String logMsg = "Error: " + e.getMessage() + ", SQL:" + sql;
-            logger.logProgress(logMsg);
-            MyLog.e(this, logMsg, e);
-        } finally {
-            DbUtils.closeSilently(c);
-        }
+        checkRows();
         logger.logProgress(changedCount == 0
                 ? "No changes to search index were needed. " + rowsCount + " messages"
                 : "Changed search index for " + changedCount + " of " + rowsCount + " messages");
+        checkFullTextIndex(changedCount > 0);
         DbUtils.waitMs(this, changedCount == 0 ? 1000 : 3000);
     }
 
+    @Override
+    protected String getTableName() {
+        return MsgTable.TABLE_NAME;
+    }
+
+    @Override
+    protected String getColumns() {
+        return MsgTable._ID + ", " + MsgTable.BODY + ", " + MsgTable.BODY_TO_SEARCH;
+    }
+
+    @Override
+    protected Row fromCursor(Cursor cursor) {
+        return new Row(cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+    }
+
+    @Override
+    protected long getId(Row row) {
+        return row.id;
+    }
+
+    @Override
+    protected boolean fix(Row row) {
+        String bodyToSearchExpected = MyHtml.getBodyToSearch(row.body);
+        if (bodyToSearchExpected.equals(row.bodyToSearch)) {
+            return false;
+        }
+        MyLog.i(this, "Wrong body to search for " + row.id + ": " + quoteIfNotQuoted(row.body));
+        row.bodyToSearch = bodyToSearchExpected;
+        return true;
+    }
+
+    /** Sync may run during the check, so a message, which was changed after it was loaded, is not updated */
+    @Override
+    protected String getUpdateSql() {
+        return "UPDATE " + MsgTable.TABLE_NAME + " SET " + MsgTable.BODY_TO_SEARCH + "=?"
+                + " WHERE " + MsgTable._ID + "=? AND " + MsgTable.BODY + " IS ?";
+    }
+
+    @Override
+    protected void bindUpdate(SQLiteStatement statement, Row row) {
+        statement.bindString(1, row.bodyToSearch);
+        statement.bindLong(2, row.id);
+        if (row.body == null) {
+            statement.bindNull(3);
+        } else {
+            statement.bindString(3, row.body);
+        }
+    }
+
+    @Override
+    protected String getProgressMessage() {
+        return "Updating search index" + (changedCount == 0 ? ". " : ", changed " + changedCount + " of ")
+                + rowsCount + " messages";
+    }
+
+    /**
+     * Changed rows were already reindexed by triggers, one by one.
+     * Here we check the index as a whole and rebuild it only if it is broken
+     */
+    private void checkFullTextIndex(boolean rowsChanged) {
+        SQLiteDatabase db = myContext.getDatabase();
+        try {
+            DbUtils.execSQL(db, "INSERT INTO " + MsgSearchTable.TABLE_NAME + "(" + MsgSearchTable.TABLE_NAME
+                    + ") VALUES('integrity-check')");
+            if (rowsChanged) {
+                MsgSearchTable.optimize(db);
+            }
+            logger.logProgress("Full text search index is ok");
+        } catch (SQLiteException e) {
+            MyLog.i(this, "Full text search index check failed", e);
+            logger.logProgress("Rebuilding full text search index");
+            MyServiceManager.setServiceUnavailable();
+            MsgSearchTable.rebuild(db);
+            logger.logProgress("Full text search index rebuilt");
+        }
+    }
+
 }
@@ -104,6 +104,8 @@ public class MyProvider extends ContentProvider {
             default:
                 throw new IllegalArgumentException(uriParser.toString());
         }
+        // After the deletion is committed, so deleted rows are not cached again by concurrent lookups
+        OidCache.clear();
         return count;
     }
 
@@ -218,7 +220,12 @@ public class MyProvider extends ContentProvider {
                 throw new SQLException("Failed to insert row into " + uri);
             }
             if ( UserTable.TABLE_NAME.equals(table)) {
+                cacheOid(OidEnum.USER_OID, values.getAsLong(UserTable.ORIGIN_ID),
+                        values.getAsString(UserTable.USER_OID), rowId);
                 optionallyLoadAvatar(rowId, values);
+            } else if (MsgTable.TABLE_NAME.equals(table)) {
+                cacheOid(OidEnum.MSG_OID, values.getAsLong(MsgTable.ORIGIN_ID),
+                        values.getAsString(MsgTable.MSG_OID), rowId);
             }
             
             msgOfUserValues.setMsgId(rowId);
@@ -250,6 +257,12 @@ public class MyProvider extends ContentProvider {
         return newUri;
     }
 
+    private static void cacheOid(OidEnum oidEnum, Long originId, String oid, long rowId) {
+        if (originId != null) {
+            OidCache.put(oidEnum, originId, oid, rowId);
+        }
+    }
+
     private void optionallyLoadAvatar(long userId, ContentValues values) {
         if (MyPreferences.getShowAvatars() && values.containsKey(UserTable.AVATAR_URL)) {
             AvatarData.getForUser(userId).requestDownload();
@@ -438,6 +451,9 @@ public class MyProvider extends ContentProvider {
         switch (uriParser.matched()) {
             case MSG:
                 count = db.update(MsgTable.TABLE_NAME, values, selection, selectionArgs);
+                if (values.containsKey(MsgTable.MSG_OID)) {
+                    OidCache.clear();
+                }
                 break;
 
             case MSG_ITEM:
@@ -452,12 +468,18 @@ public class MyProvider extends ContentProvider {
                             + (StringUtils.nonEmpty(selection) ? " AND (" + selection + ')' : ""),
                             selectionArgs);
                 }
+                if (values.containsKey(MsgTable.MSG_OID)) {
+                    OidCache.forget(OidEnum.MSG_OID, rowId);
+                }
                 count += msgOfUserValues.update(db);
                 otherUserValues.update(db);
                 break;
 
             case USER:
                 count = db.update(UserTable.TABLE_NAME, values, selection, selectionArgs);
+                if (values.containsKey(UserTable.USER_OID)) {
+                    OidCache.clear();
+                }
                 break;
 
             case USER_ITEM:
@@ -469,6 +491,9 @@ public class MyProvider extends ContentProvider {
                                     + (StringUtils.nonEmpty(selection) ? " AND (" + selection + ')' : ""),
                             selectionArgs);
                 }
+                if (values.containsKey(UserTable.USER_OID)) {
+                    OidCache.forget(OidEnum.USER_OID, selectedUserId);
+                }
                 friendshipValues.update(db);
                 optionallyLoadAvatar(selectedUserId, values);
                 break;
@@ -33,17 +33,25 @@ import org.andstatus.app.database.UserTable;
 import org.andstatus.app.origin.Origin;
 import org.andstatus.app.timeline.Timeline;
 import org.andstatus.app.util.I18n;
+import org.andstatus.app.util.LongSet;
 import org.andstatus.app.util.MyHtml;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.StringUtils;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class MyQuery {
     static final String TAG = MyQuery.class.getSimpleName();
+    /** Less than the SQLite limit of 999 host parameters */
+    private static final int MAX_SQL_ARGUMENTS = 500;
 
     private MyQuery() {
         // Empty
@@ -81,24 +89,94 @@ public class MyQuery {
             return 0;
         }
         String msgLog = "oidToId; " + originId + "+" + oid + ", oidEnum=" + oidEnum;
-        String sql;
         switch (oidEnum) {
             case MSG_OID:
-                sql = "SELECT " + BaseColumns._ID + " FROM " + MsgTable.TABLE_NAME
-                        + " WHERE " + MsgTable.ORIGIN_ID + "=" + originId + " AND " + MsgTable.MSG_OID
-                        + "=" + quoteIfNotQuoted(oid);
+            case USER_OID:
                 break;
+            default:
+                throw new IllegalArgumentException(msgLog + "; Unknown oidEnum");
+        }
+        SQLiteDatabase db = database == null ? MyContextHolder.get().getDatabase() : database;
+        if (db == null) {
+            MyLog.v(TAG, msgLog + "; database is null");
+            return 0;
+        }
+        long id = 0;
+        try {
+            id = OidCache.oidToId(db, oidEnum, originId, oid);
+        } catch (Exception e) {
+            MyLog.e(TAG, msgLog, e);
+        }
+        if (MyLog.isVerboseEnabled()) {
+            MyLog.v(TAG, msgLog + " -> " + id);
+        }
+        return id;
+    }
 
+    /**
+     * Lookup System's ids for several oids of the same Origin with one query per chunk of oids
+     * @return Map of oids, which were found, to their ids
+     */
+    @NonNull
+    public static Map<String, Long> oidsToIds(OidEnum oidEnum, long originId, Collection<String> oids) {
+        Map<String, Long> ids = new HashMap<>();
+        SQLiteDatabase db = MyContextHolder.get().getDatabase();
+        if (db == null) {
+            MyLog.v(TAG, "oidsToIds; Database is null");
+            return ids;
+        }
+        String tableName;
+        String originIdColumn;
+        String oidColumn;
+        switch (oidEnum) {
+            case MSG_OID:
+                tableName = MsgTable.TABLE_NAME;
+                originIdColumn = MsgTable.ORIGIN_ID;
+                oidColumn = MsgTable.MSG_OID;
+                break;
             case USER_OID:
-                sql = "SELECT " + BaseColumns._ID + " FROM " + UserTable.TABLE_NAME
-                        + " WHERE " + UserTable.ORIGIN_ID + "=" + originId + " AND " + UserTable.USER_OID
-                        + "=" + quoteIfNotQuoted(oid);
+                tableName = UserTable.TABLE_NAME;
+                originIdColumn = UserTable.ORIGIN_ID;
+                oidColumn = UserTable.USER_OID;
                 break;
-
             default:
-                throw new IllegalArgumentException(msgLog + "; Unknown oidEnum");
+                throw new IllegalArgumentException("oidsToIds; Unknown oidEnum=" + oidEnum);
+        }
+        Set<String> chunk = new LinkedHashSet<>();
+        for (Iterator<String> iterator = oids.iterator(); iterator.hasNext(); ) {
+            String oid = iterator.next();
+            if (!TextUtils.isEmpty(oid) && !chunk.contains(oid)) {
+                long id = OidCache.getCached(db, oidEnum, originId, oid);
+                if (id == 0) {
+                    chunk.add(oid);
+                } else {
+                    ids.put(oid, id);
+                }
+            }
+            if (chunk.size() >= MAX_SQL_ARGUMENTS || (!iterator.hasNext() && !chunk.isEmpty())) {
+                String sql = "SELECT " + BaseColumns._ID + ", " + oidColumn + " FROM " + tableName
+                        + " WHERE " + originIdColumn + "=" + originId
+                        + " AND " + oidColumn + " IN (" + TextUtils.join(",", Collections.nCopies(chunk.size(), "?"))
+                        + ")";
+                Cursor c = null;
+                long generationBefore = OidCache.getGeneration();
+                try {
+                    c = db.rawQuery(sql, chunk.toArray(new String[chunk.size()]));
+                    while (c.moveToNext()) {
+                        ids.put(c.getString(1), c.getLong(0));
+                        OidCache.putIfValid(generationBefore, oidEnum, originId, c.getString(1), c.getLong(0));
+                    }
+                } finally {
+                    DbUtils.closeSilently(c);
+                }
+                chunk.clear();
+            }
+        }
+        if (MyLog.isVerboseEnabled()) {
+            MyLog.v(TAG, "oidsToIds; " + oidEnum + ", originId=" + originId + ", found " + ids.size()
+                    + " of " + oids.size());
         }
-        return sqlToLong(database, msgLog, sql);
+        return ids;
     }
 
     public static long sqlToLong(SQLiteDatabase databaseIn, String msgLogIn, String sql) {
@@ -198,14 +276,8 @@ public class MyQuery {
             try {
                 switch (oe) {
                     case MSG_OID:
-                        sql = "SELECT " + MsgTable.MSG_OID + " FROM "
-                                + MsgTable.TABLE_NAME + " WHERE " + BaseColumns._ID + "=" + entityId;
-                        break;
-    
                     case USER_OID:
-                        sql = "SELECT " + UserTable.USER_OID + " FROM "
-                                + UserTable.TABLE_NAME + " WHERE " + BaseColumns._ID + "="
-                                + entityId;
+                        oid = OidCache.idToOid(db, oe, entityId);
                         break;
     
                     case REBLOG_OID:
@@ -216,13 +288,13 @@ public class MyQuery {
                                 + MsgOfUserTable.TABLE_NAME + " WHERE "
                                 + MsgOfUserTable.MSG_ID + "=" + entityId + " AND "
                                 + MsgOfUserTable.USER_ID + "=" + rebloggerUserId;
+                        prog = db.compileStatement(sql);
+                        oid = prog.simpleQueryForString();
                         break;
     
                     default:
                         throw new IllegalArgumentException(method + "; Unknown parameter: " + oe);
                 }
-                prog = db.compileStatement(sql);
-                oid = prog.simpleQueryForString();
                 
                 if (TextUtils.isEmpty(oid) && oe == OidEnum.REBLOG_OID) {
                     // This not reblogged message
@@ -472,7 +544,7 @@ public class MyQuery {
     }
 
     @NonNull
-    public static Set<Long> getFollowersIds(long userId) {
+    public static LongSet getFollowersIds(long userId) {
         String where = FriendshipTable.FRIEND_ID + "=" + userId
                 + " AND " + FriendshipTable.FOLLOWED + "=1";
         String sql = "SELECT " + FriendshipTable.USER_ID
@@ -482,7 +554,7 @@ public class MyQuery {
     }
 
     @NonNull
-    public static Set<Long> getFriendsIds(long userId) {
+    public static LongSet getFriendsIds(long userId) {
         String where = FriendshipTable.USER_ID + "=" + userId
                 + " AND " + FriendshipTable.FOLLOWED + "=1";
         String sql = "SELECT " + FriendshipTable.FRIEND_ID
@@ -492,8 +564,8 @@ public class MyQuery {
     }
 
     @NonNull
-    private static Set<Long> getLongs(String sql) {
-        Set<Long> ids = new HashSet<>();
+    private static LongSet getLongs(String sql) {
+        LongSet ids = new LongSet();
         SQLiteDatabase db = MyContextHolder.get().getDatabase();
         if (db == null) {
             MyLog.v(TAG, "getLongs; Database is null");
@@ -515,7 +587,7 @@ public class MyQuery {
      *  MyAccounts' userIDs, who follow the specified User
      */
     @NonNull
-    public static Set<Long> getMyFollowersOf(long userId) {
+    public static LongSet getMyFollowersOf(long userId) {
         SelectedUserIds selectedAccounts = new SelectedUserIds(Timeline.EMPTY);
 
         String where = FriendshipTable.USER_ID + selectedAccounts.getSql()
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.database.MsgTable;
+import org.andstatus.app.database.UserTable;
+import org.andstatus.app.util.MyLog;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of resolutions of {@link OidEnum#MSG_OID} and {@link OidEnum#USER_OID} to System's ids and back.
+ * Only found pairs are cached. Misses are looked up with reusable compiled statements with bound parameters.
+ * Rows, inserted via {@link MyProvider}, are added to the cache, deletions clear it
+ * after they are committed. A value, looked up before an invalidation, is not cached after it
+ * @author yvolk@yurivolkov.com
+ */
+final class OidCache {
+    static final int MAX_SIZE = 5000;
+
+    private static final Object lock = new Object();
+    @GuardedBy("lock")
+    private static SQLiteDatabase database = null;
+    @GuardedBy("lock")
+    private static final Map<String, Long> oidToId = newLruMap();
+    @GuardedBy("lock")
+    private static final Map<String, String> idToOid = newLruMap();
+    @GuardedBy("lock")
+    private static final Map<String, SQLiteStatement> statements = new HashMap<>();
+    /** Incremented on each invalidation */
+    @GuardedBy("lock")
+    private static long generation = 0;
+
+    private OidCache() {
+        // Empty
+    }
+
+    private static <V> Map<String, V> newLruMap() {
+        return new LinkedHashMap<String, V>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_SIZE;
+            }
+        };
+    }
+
+    private static String oidKey(OidEnum oidEnum, long originId, String oid) {
+        return oidEnum.ordinal() + ";" + originId + ";" + oid;
+    }
+
+    private static String idKey(OidEnum oidEnum, long id) {
+        return oidEnum.ordinal() + ";" + id;
+    }
+
+    /** @return 0 if not in the cache. The database is not queried */
+    static long getCached(SQLiteDatabase db, OidEnum oidEnum, long originId, String oid) {
+        synchronized (lock) {
+            onDatabase(db);
+            Long id = oidToId.get(oidKey(oidEnum, originId, oid));
+            return id == null ? 0 : id;
+        }
+    }
+
+    /** @return 0 if not found */
+    static long oidToId(SQLiteDatabase db, OidEnum oidEnum, long originId, String oid) {
+        String key = oidKey(oidEnum, originId, oid);
+        SQLiteStatement statement;
+        long generationBefore;
+        synchronized (lock) {
+            onDatabase(db);
+            Long id = oidToId.get(key);
+            if (id != null) {
+                return id;
+            }
+            statement = getStatement(db, oidEnum, true);
+            generationBefore = generation;
+        }
+        long id = 0;
+        try {
+            synchronized (statement) {
+                statement.bindLong(1, originId);
+                statement.bindString(2, oid);
+                id = statement.simpleQueryForLong();
+            }
+        } catch (SQLiteDoneException e) {
+            MyLog.ignored(MyQuery.TAG, e);
+        }
+        if (id != 0) {
+            synchronized (lock) {
+                if (generation == generationBefore) {
+                    putLocked(oidEnum, originId, oid, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /** @return empty string if not found */
+    static String idToOid(SQLiteDatabase db, OidEnum oidEnum, long id) {
+        String key = idKey(oidEnum, id);
+        SQLiteStatement statement;
+        long generationBefore;
+        synchronized (lock) {
+            onDatabase(db);
+            String oid = idToOid.get(key);
+            if (oid != null) {
+                return oid;
+            }
+            statement = getStatement(db, oidEnum, false);
+            generationBefore = generation;
+        }
+        String oid = "";
+        try {
+            synchronized (statement) {
+                statement.bindLong(1, id);
+                oid = statement.simpleQueryForString();
+            }
+        } catch (SQLiteDoneException e) {
+            MyLog.ignored(MyQuery.TAG, e);
+        }
+        if (!TextUtils.isEmpty(oid)) {
+            synchronized (lock) {
+                if (generation == generationBefore) {
+                    idToOid.put(key, oid);
+                }
+            }
+        }
+        return oid == null ? "" : oid;
+    }
+
+    /** Cached values are valid for one database instance only */
+    @GuardedBy("lock")
+    private static void onDatabase(SQLiteDatabase db) {
+        if (db != database) {
+            clearLocked();
+            database = db;
+        }
+    }
+
+    @GuardedBy("lock")
+    private static SQLiteStatement getStatement(SQLiteDatabase db, OidEnum oidEnum, boolean byOid) {
+        String key = oidEnum.name() + (byOid ? "_oidToId" : "_idToOid");
+        SQLiteStatement statement = statements.get(key);
+        if (statement == null) {
+            String tableName;
+            String originIdColumn;
+            String oidColumn;
+            switch (oidEnum) {
+                case MSG_OID:
+                    tableName = MsgTable.TABLE_NAME;
+                    originIdColumn = MsgTable.ORIGIN_ID;
+                    oidColumn = MsgTable.MSG_OID;
+                    break;
+                case USER_OID:
+                    tableName = UserTable.TABLE_NAME;
+                    originIdColumn = UserTable.ORIGIN_ID;
+                    oidColumn = UserTable.USER_OID;
+                    break;
+                default:
+                    throw new IllegalArgumentException("OidCache; Unknown oidEnum=" + oidEnum);
+            }
+            statement = db.compileStatement(byOid
+                    ? "SELECT " + BaseColumns._ID + " FROM " + tableName
+                        + " WHERE " + originIdColumn + "=? AND " + oidColumn + "=?"
+                    : "SELECT " + oidColumn + " FROM " + tableName + " WHERE " + BaseColumns._ID + "=?");
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /** @return the generation to pass to {@link #putIfValid(long, OidEnum, long, String, long)}.
+     * Take it before the lookup */
+    static long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /** Caches a pair, which was looked up by a caller, unless the cache was invalidated since the lookup began */
+    static void putIfValid(long generationBefore, OidEnum oidEnum, long originId, String oid, long id) {
+        if (TextUtils.isEmpty(oid) || id == 0) {
+            return;
+        }
+        synchronized (lock) {
+            if (generation == generationBefore) {
+                putLocked(oidEnum, originId, oid, id);
+            }
+        }
+    }
+
+    static void put(OidEnum oidEnum, long originId, String oid, long id) {
+        if (TextUtils.isEmpty(oid) || id == 0) {
+            return;
+        }
+        synchronized (lock) {
+            putLocked(oidEnum, originId, oid, id);
+        }
+    }
+
+    @GuardedBy("lock")
+    private static void putLocked(OidEnum oidEnum, long originId, String oid, long id) {
+        oidToId.put(oidKey(oidEnum, originId, oid), id);
+        idToOid.put(idKey(oidEnum, id), oid);
+    }
+
+    /** The oid of the row was changed */
+    static void forget(OidEnum oidEnum, long id) {
+        synchronized (lock) {
+            generation++;
+            idToOid.remove(idKey(oidEnum, id));
+            String prefix = oidEnum.ordinal() + ";";
+            for (Iterator<Map.Entry<String, Long>> iterator = oidToId.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getValue() == id && entry.getKey().startsWith(prefix)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /** Rows were deleted or changed, and we don't know which */
+    static void clear() {
+        synchronized (lock) {
+            generation++;
+            oidToId.clear();
+            idToOid.clear();
+        }
+    }
+
+    @GuardedBy("lock")
+    private static void clearLocked() {
+        generation++;
+        oidToId.clear();
+        idToOid.clear();
+        for (SQLiteStatement statement : statements.values()) {
+            DbUtils.closeSilently(statement);
+        }
+        statements.clear();
+    }
+}
@@ -23,14 +23,20 @@ import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.context.MyContext;
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.context.UserInTimeline;
 import org.andstatus.app.database.DownloadTable;
 import org.andstatus.app.database.FriendshipTable;
 import org.andstatus.app.database.MsgOfUserTable;
+import org.andstatus.app.database.MsgSearchTable;
 import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.database.UserTable;
+import org.andstatus.app.msg.KeywordsFilter;
 import org.andstatus.app.origin.Origin;
 import org.andstatus.app.origin.OriginType;
 import org.andstatus.app.timeline.Timeline;
@@ -40,9 +46,21 @@ import org.andstatus.app.util.SharedPreferencesUtil;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TimelineSql {
+    private static final int TABLES_CACHE_SIZE = 32;
+    /** Table expressions by timeline, projection and other parameters they depend upon. See {@link #tablesKey} */
+    @GuardedBy("tablesCache")
+    private static final Map<String, String> tablesCache = new LinkedHashMap<String, String>(TABLES_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > TABLES_CACHE_SIZE;
+        }
+    };
+
     private TimelineSql() {
         // Empty
     }
@@ -56,9 +74,30 @@ public class TimelineSql {
     static String tablesForTimeline(Uri uri, String[] projection) {
         Timeline timeline = Timeline.fromParsedUri(MyContextHolder.get(), ParsedUri.fromUri(uri), "");
         SelectedUserIds selectedAccounts = new SelectedUserIds(timeline);
-    
-        Collection<String> columns = new java.util.HashSet<>(Arrays.asList(projection));
-    
+        Collection<String> columns = new java.util.TreeSet<>(Arrays.asList(projection));
+        String key = tablesKey(uri, selectedAccounts, columns);
+        synchronized (tablesCache) {
+            String tables = tablesCache.get(key);
+            if (tables != null) {
+                return tables;
+            }
+        }
+        String tables = buildTablesForTimeline(timeline, selectedAccounts, columns);
+        synchronized (tablesCache) {
+            tablesCache.put(key, tables);
+        }
+        return tables;
+    }
+
+    /** The same key for all pages of a timeline, so the SQL text is the same also
+     * and its compiled statement is reused by the database */
+    private static String tablesKey(Uri uri, SelectedUserIds selectedAccounts, Collection<String> columns) {
+        return uri.toString() + ";" + userNameField() + ";" + selectedAccounts.getSql() + ";"
+                + TextUtils.join(",", columns);
+    }
+
+    private static String buildTablesForTimeline(Timeline timeline, SelectedUserIds selectedAccounts,
+                                                 Collection<String> columns) {
         String msgTable = MsgTable.TABLE_NAME;
         SqlWhere where = new SqlWhere();
 
@@ -121,6 +160,10 @@ public class TimelineSql {
                 break;
         }
 
+        if (timeline.hasSearchQuery()) {
+            where.append(searchIndexCondition(timeline.getSearchQuery()));
+        }
+
         String tables = msgTable;
         if (!tables.contains(" AS " + ProjectionMap.MSG_TABLE_ALIAS)) {
             if (timeline.getTimelineType().isAtOrigin() && !timeline.isCombined()) {
@@ -245,6 +288,53 @@ public class TimelineSql {
         return tables;
     }
 
+    /**
+     * Selection of messages, which are not replies or are replies to me or to my friends,
+     * the same as {@link org.andstatus.app.account.PersistentAccounts#isMeOrMyFriend(long)} for replies:
+     * friends are users, followed by my accounts. Friends are selected by a subquery, so the SQL text
+     * changes only when my accounts change, and the statement is reused for all pages
+     */
+    @NonNull
+    public static String notRepliesOrRepliesToMeOrMyFriends(@NonNull MyContext myContext) {
+        String inReplyToUserId = ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.IN_REPLY_TO_USER_ID;
+        StringBuilder myUserIds = new StringBuilder();
+        for (MyAccount ma : myContext.persistentAccounts().list()) {
+            if (myUserIds.length() > 0) {
+                myUserIds.append(", ");
+            }
+            myUserIds.append(Long.toString(ma.getUserId()));
+        }
+        if (myUserIds.length() == 0) {
+            return "(IFNULL(" + inReplyToUserId + ", 0)=0)";
+        }
+        return "(IFNULL(" + inReplyToUserId + ", 0)=0"
+                + " OR " + inReplyToUserId + " IN (" + myUserIds + ")"
+                + " OR " + inReplyToUserId + " IN (SELECT " + FriendshipTable.FRIEND_ID
+                + " FROM " + FriendshipTable.TABLE_NAME
+                + " WHERE " + FriendshipTable.FOLLOWED + "=1"
+                + " AND " + FriendshipTable.USER_ID + " IN (" + myUserIds + "))"
+                + ")";
+    }
+
+    /**
+     * Narrows the search to messages found in the full text search index (or written by matching authors),
+     * exact matching is done by {@link MyProvider} on the rows found,
+     * see {@link KeywordsFilter#getSqlMatchQuery()}
+     */
+    @NonNull
+    private static String searchIndexCondition(String rawQuery) {
+        String matchQuery = new KeywordsFilter(rawQuery).getSqlMatchQuery();
+        if (TextUtils.isEmpty(matchQuery)) {
+            return "";
+        }
+        return BaseColumns._ID + " IN (SELECT " + MsgSearchTable.DOCID
+                + " FROM " + MsgSearchTable.TABLE_NAME
+                + " WHERE " + MsgSearchTable.TABLE_NAME + " MATCH " + MyQuery.quoteIfNotQuoted(matchQuery) + ")"
+                + " OR " + MsgTable.AUTHOR_ID + " IN (SELECT " + BaseColumns._ID
+                + " FROM " + UserTable.TABLE_NAME
+                + " WHERE " + userNameField() + " LIKE " + MyQuery.quoteIfNotQuoted("%" + rawQuery + "%") + ")";
+    }
+
     /** 
      * Table columns to use for the messages content
      */
@@ -308,6 +398,15 @@ public class TimelineSql {
 
     @NonNull
     public static String userColumnIndexToNameAtTimeline(Cursor cursor, int columnIndex, boolean showOrigin) {
+        return userColumnIndexToNameAtTimeline(cursor, columnIndex, showOrigin,
+                cursor.getColumnIndex(MsgTable.ORIGIN_ID), cursor.getColumnIndex(MsgTable.AUTHOR_ID));
+    }
+
+    /** For a caller, who resolved indices of the {@link MsgTable#ORIGIN_ID} and {@link MsgTable#AUTHOR_ID} columns
+     *  once per cursor. A negative index means that there is no such column */
+    @NonNull
+    public static String userColumnIndexToNameAtTimeline(Cursor cursor, int columnIndex, boolean showOrigin,
+                                                         int originIdIndex, int authorIdIndex) {
         String userName = "";
         if (columnIndex >= 0) {
             userName = cursor.getString(columnIndex);
@@ -316,13 +415,13 @@ public class TimelineSql {
             }
         }
         if (showOrigin) {
-            long originId = DbUtils.getLong(cursor, MsgTable.ORIGIN_ID);
+            long originId = originIdIndex < 0 ? 0 : cursor.getLong(originIdIndex);
             if (originId != 0) {
                 Origin origin = MyContextHolder.get().persistentOrigins().fromId(originId);
                 userName += " / " + origin.getName();
                 if (origin.getOriginType() == OriginType.GNUSOCIAL &&
                         MyPreferences.isShowDebuggingInfoInUi()) {
-                    long authorId = DbUtils.getLong(cursor, MsgTable.AUTHOR_ID);
+                    long authorId = authorIdIndex < 0 ? 0 : cursor.getLong(authorIdIndex);
                     if (authorId != 0) {
                         userName += " id:" + MyQuery.idToOid(OidEnum.USER_OID, authorId, 0);
                     }
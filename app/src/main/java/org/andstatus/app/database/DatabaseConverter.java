@@ -423,4 +423,32 @@ class DatabaseConverter {
         }
     }
 
+    static class Convert26 extends OneStep {
+        Convert26() {
+            versionTo = 27;
+        }
+
+        @Override
+        protected void execute2() {
+            sql = "CREATE VIRTUAL TABLE msg_fts USING fts4(content=\"msg\", body_to_search)";
+            DbUtils.execSQL(db, sql);
+            sql = "CREATE TRIGGER msg_fts_bu BEFORE UPDATE OF body_to_search ON msg BEGIN"
+                    + " DELETE FROM msg_fts WHERE docid=old._id; END";
+            DbUtils.execSQL(db, sql);
+            sql = "CREATE TRIGGER msg_fts_bd BEFORE DELETE ON msg BEGIN"
+                    + " DELETE FROM msg_fts WHERE docid=old._id; END";
+            DbUtils.execSQL(db, sql);
+            sql = "CREATE TRIGGER msg_fts_au AFTER UPDATE OF body_to_search ON msg BEGIN"
+                    + " INSERT INTO msg_fts(docid, body_to_search) VALUES(new._id, new.body_to_search); END";
+            DbUtils.execSQL(db, sql);
+            sql = "CREATE TRIGGER msg_fts_ai AFTER INSERT ON msg BEGIN"
+                    + " INSERT INTO msg_fts(docid, body_to_search) VALUES(new._id, new.body_to_search); END";
+            DbUtils.execSQL(db, sql);
+
+            progressLogger.logProgress(stepTitle + ": building search index");
+            sql = "INSERT INTO msg_fts(msg_fts) VALUES('rebuild')";
+            DbUtils.execSQL(db, sql);
+        }
+    }
+
 }
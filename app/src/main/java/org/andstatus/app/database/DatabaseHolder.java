@@ -17,11 +17,14 @@
 package org.andstatus.app.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import org.andstatus.app.context.MyContextState;
+import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.context.MyStorage;
+import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.util.MyLog;
 
 import java.io.File;
@@ -31,10 +34,16 @@ public final class DatabaseHolder extends SQLiteOpenHelper  {
     private boolean wasNotCreated = false;
 
     public static final String DATABASE_NAME = "andstatus.sqlite";
+    /** Files, which SQLite creates next to the database file in the Write-Ahead Logging mode */
+    private static final String[] WAL_FILE_SUFFIXES = {"-wal", "-shm"};
 
     public DatabaseHolder(Context context, boolean creationEnabled) {
         super(context, DATABASE_NAME, null, DatabaseCreator.DATABASE_VERSION);
         this.creationEnabled = creationEnabled;
+        // In the WAL mode the framework keeps a bounded pool of connections,
+        // so readers (e.g. Timeline loaders) don't wait for a writer (e.g. a sync).
+        // Switching the option off returns the database to the rollback journal mode
+        setWriteAheadLoggingEnabled(MyPreferences.isWriteAheadLoggingEnabled());
         File databasePath = context.getDatabasePath(DATABASE_NAME);
         if (databasePath == null || (!creationEnabled && !databasePath.exists())) {
             wasNotCreated = true;
@@ -55,6 +64,10 @@ public final class DatabaseHolder extends SQLiteOpenHelper  {
             if (MyStorage.isDataAvailable()) {
                 SQLiteDatabase db = getWritableDatabase();
                 if (onUpgradeTriggered.get() || DatabaseConverterController.isUpgrading()) {
+                    if (onUpgradeTriggered.get() && db != null && db.isOpen()) {
+                        // Upgrade may produce a large WAL file
+                        checkpoint();
+                    }
                     state = MyContextState.UPGRADING;
                 } else {
                     if (db != null && db.isOpen()) {
@@ -73,6 +86,43 @@ public final class DatabaseHolder extends SQLiteOpenHelper  {
         return state;
     }
     
+    /**
+     * Moves all committed transactions from the WAL file into the database file,
+     * so the database file alone may be copied (backed up, moved...)
+     */
+    public void checkpoint() {
+        final String method = "checkpoint";
+        SQLiteDatabase db = getWritableDatabase();
+        if (db == null || !db.isWriteAheadLoggingEnabled()) {
+            return;
+        }
+        Cursor c = null;
+        try {
+            c = db.rawQuery("PRAGMA wal_checkpoint(FULL)", null);
+            if (c.moveToFirst()) {
+                MyLog.v(this, method + "; busy=" + c.getInt(0) + ", log frames=" + c.getInt(1)
+                        + ", checkpointed=" + c.getInt(2));
+            }
+        } catch (Exception e) {
+            MyLog.w(this, method, e);
+        } finally {
+            DbUtils.closeSilently(c);
+        }
+    }
+
+    /** Deletes WAL files, which may be left next to the database file */
+    public static void deleteWalFiles(File databaseFile) {
+        if (databaseFile == null) {
+            return;
+        }
+        for (String suffix : WAL_FILE_SUFFIXES) {
+            File file = new File(databaseFile.getPath() + suffix);
+            if (file.exists() && !file.delete()) {
+                MyLog.w(DatabaseHolder.class, "Couldn't delete " + file.getAbsolutePath());
+            }
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         if (!creationEnabled) {
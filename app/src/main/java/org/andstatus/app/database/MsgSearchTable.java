@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import org.andstatus.app.data.DbUtils;
+
+/**
+ * Full text search index of {@link MsgTable#BODY_TO_SEARCH}.
+ * This is an "external content" FTS4 table, see https://www.sqlite.org/fts3.html#_external_content_fts4_tables_ :
+ * it doesn't store a copy of the text, its "docid" is {@link MsgTable#_ID}.
+ * The index is kept in sync with the {@link MsgTable} by triggers
+ */
+public final class MsgSearchTable {
+    public static final String TABLE_NAME = "msg_fts";
+
+    private MsgSearchTable() {
+    }
+
+    /** The FTS table's alias of the {@link MsgTable#_ID} */
+    public static final String DOCID = "docid";
+
+    public static void create(SQLiteDatabase db) {
+        DbUtils.execSQL(db, "CREATE VIRTUAL TABLE " + TABLE_NAME + " USING fts4("
+                + "content=\"" + MsgTable.TABLE_NAME + "\", "
+                + MsgTable.BODY_TO_SEARCH
+                + ")");
+
+        // Old values should be removed from the index before they are changed in the content table
+        DbUtils.execSQL(db, "CREATE TRIGGER " + TABLE_NAME + "_bu BEFORE UPDATE OF " + MsgTable.BODY_TO_SEARCH
+                + " ON " + MsgTable.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + TABLE_NAME + " WHERE " + DOCID + "=old." + BaseColumns._ID + ";"
+                + " END");
+        DbUtils.execSQL(db, "CREATE TRIGGER " + TABLE_NAME + "_bd BEFORE DELETE"
+                + " ON " + MsgTable.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + TABLE_NAME + " WHERE " + DOCID + "=old." + BaseColumns._ID + ";"
+                + " END");
+        DbUtils.execSQL(db, "CREATE TRIGGER " + TABLE_NAME + "_au AFTER UPDATE OF " + MsgTable.BODY_TO_SEARCH
+                + " ON " + MsgTable.TABLE_NAME + " BEGIN"
+                + " INSERT INTO " + TABLE_NAME + "(" + DOCID + ", " + MsgTable.BODY_TO_SEARCH + ")"
+                + " VALUES(new." + BaseColumns._ID + ", new." + MsgTable.BODY_TO_SEARCH + ");"
+                + " END");
+        DbUtils.execSQL(db, "CREATE TRIGGER " + TABLE_NAME + "_ai AFTER INSERT"
+                + " ON " + MsgTable.TABLE_NAME + " BEGIN"
+                + " INSERT INTO " + TABLE_NAME + "(" + DOCID + ", " + MsgTable.BODY_TO_SEARCH + ")"
+                + " VALUES(new." + BaseColumns._ID + ", new." + MsgTable.BODY_TO_SEARCH + ");"
+                + " END");
+    }
+
+    /** Recreates the whole index from the content of the {@link MsgTable} */
+    public static void rebuild(SQLiteDatabase db) {
+        DbUtils.execSQL(db, "INSERT INTO " + TABLE_NAME + "(" + TABLE_NAME + ") VALUES('rebuild')");
+    }
+
+    /** Merges index b-trees in order to make queries faster, see https://www.sqlite.org/fts3.html#*fts4optcmd */
+    public static void optimize(SQLiteDatabase db) {
+        DbUtils.execSQL(db, "INSERT INTO " + TABLE_NAME + "(" + TABLE_NAME + ") VALUES('optimize')");
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.graphics;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.util.I18n;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Bitmaps, which are not used by the {@link ImageCache} any more, grouped by their size classes,
+ * so they can be reused for new images of similar sizes. The pool is limited in bytes
+ * @author yvolk@yurivolkov.com
+ */
+class BitmapPool {
+    /** Number of size classes in each dimension */
+    private static final int SIZE_CLASSES = 8;
+    private static final int MIN_SIZE_CLASS_STEP = 16;
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int stepX;
+    private final int stepY;
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final Map<Long, Deque<Bitmap>> bitmaps = new HashMap<>();
+    private final long maxSizeBytes;
+    @GuardedBy("lock")
+    private long sizeBytes = 0;
+    @GuardedBy("lock")
+    private int count = 0;
+
+    BitmapPool(int maxWidth, int maxHeight, long maxSizeBytes) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        stepX = Math.max(MIN_SIZE_CLASS_STEP, (maxWidth + SIZE_CLASSES - 1) / SIZE_CLASSES);
+        stepY = Math.max(MIN_SIZE_CLASS_STEP, (maxHeight + SIZE_CLASSES - 1) / SIZE_CLASSES);
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /** @return Width of bitmaps of the size class of this width */
+    int classWidth(int width) {
+        return Math.min(maxWidth, Math.max(1, roundUp(width, stepX)));
+    }
+
+    int classHeight(int height) {
+        return Math.min(maxHeight, Math.max(1, roundUp(height, stepY)));
+    }
+
+    private static int roundUp(int value, int step) {
+        return ((value + step - 1) / step) * step;
+    }
+
+    private static long classKey(int classWidth, int classHeight) {
+        return ((long) classWidth << 32) | classHeight;
+    }
+
+    /** @return a bitmap of the size class of the size, or null if there is none in the pool */
+    @Nullable
+    Bitmap acquire(int width, int height) {
+        long key = classKey(classWidth(width), classHeight(height));
+        synchronized (lock) {
+            Deque<Bitmap> deque = bitmaps.get(key);
+            if (deque == null || deque.isEmpty()) {
+                return null;
+            }
+            Bitmap bitmap = deque.pollFirst();
+            sizeBytes -= byteCount(bitmap);
+            count--;
+            return bitmap;
+        }
+    }
+
+    /** Keeps the bitmap for reuse, if it fits into its size class and the pool has room for it */
+    void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() != CachedImage.BITMAP_CONFIG) {
+            return;
+        }
+        int classWidth = classWidth(bitmap.getWidth());
+        int classHeight = classHeight(bitmap.getHeight());
+        if (bitmap.getWidth() != classWidth || bitmap.getHeight() != classHeight) {
+            if (!reconfigure(bitmap, classWidth, classHeight)) {
+                return;
+            }
+        }
+        long bytes = byteCount(bitmap);
+        synchronized (lock) {
+            if (sizeBytes + bytes > maxSizeBytes) {
+                return;
+            }
+            long key = classKey(classWidth, classHeight);
+            Deque<Bitmap> deque = bitmaps.get(key);
+            if (deque == null) {
+                deque = new ArrayDeque<>();
+                bitmaps.put(key, deque);
+            }
+            deque.addFirst(bitmap);
+            sizeBytes += bytes;
+            count++;
+        }
+    }
+
+    /** A bitmap, decoded into a reused one, gets the size of the image, so we return it to its size class */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean reconfigure(Bitmap bitmap, int width, int height) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+                || bitmap.getAllocationByteCount() < width * height * ImageCache.BYTES_PER_PIXEL) {
+            return false;
+        }
+        try {
+            bitmap.reconfigure(width, height, CachedImage.BITMAP_CONFIG);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static long byteCount(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    /** Drops bitmaps until the pool is not larger than the size. Bitmaps are not recycled,
+     * because they may be still referenced by expired images */
+    void trimToSize(long maxBytes) {
+        synchronized (lock) {
+            Iterator<Deque<Bitmap>> iterator = bitmaps.values().iterator();
+            while (sizeBytes > maxBytes && iterator.hasNext()) {
+                Deque<Bitmap> deque = iterator.next();
+                while (sizeBytes > maxBytes && !deque.isEmpty()) {
+                    sizeBytes -= byteCount(deque.pollLast());
+                    count--;
+                }
+                if (deque.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    void clear() {
+        trimToSize(0);
+    }
+
+    long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    String getInfo() {
+        synchronized (lock) {
+            return "free: " + count + ", " + I18n.formatBytes(sizeBytes) + " of " + I18n.formatBytes(maxSizeBytes)
+                    + " in " + bitmaps.size() + " size classes";
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.andstatus.app.graphics;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -35,41 +36,47 @@ import android.util.DisplayMetrics;
 import android.util.LruCache;
 
 import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
 
 import java.io.File;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * The cache is sized in bytes of its bitmaps. Bitmaps are allocated lazily, sized by their size classes
+ * (see {@link BitmapPool}), and are reused after eviction
  * @author yvolk@yurivolkov.com
  * On LruCache usage read http://developer.android.com/reference/android/util/LruCache.html
  */
 public class ImageCache extends LruCache<String, CachedImage> {
 
     public final static int BYTES_PER_PIXEL = 4;
+    /** Part of the cache size, which the pool of reusable bitmaps may take additionally */
+    private static final float POOL_PART_OF_CACHE_SIZE = 0.25f;
     final CacheName name;
-    private volatile int requestedCacheSize;
-    private volatile int currentCacheSize;
+    private final int requestedSizeBytes;
+    /** Less than the requested size after we ran out of memory */
+    private volatile int currentSizeBytes;
     private volatile int maxBitmapHeight;
     private volatile int maxBitmapWidth;
     final AtomicLong hits = new AtomicLong();
     final AtomicLong misses = new AtomicLong();
     final Set<String> brokenBitmaps = new ConcurrentSkipListSet<>();
-    final Queue<Bitmap> recycledBitmaps;
+    final BitmapPool bitmapPool;
     final DisplayMetrics displayMetrics;
     volatile boolean rounded = false;
+    private final ImageDiskCache diskCache;
 
     @Override
     public void resize(int maxSize) {
         throw new IllegalStateException("Cache cannot be resized");
     }
 
-    public ImageCache(Context context, CacheName name, int maxBitmapHeightWidthIn, int requestedCacheSizeIn) {
-        super(requestedCacheSizeIn);
+    public ImageCache(Context context, CacheName name, int maxBitmapHeightWidthIn, int requestedSizeBytes,
+                      long diskCacheSizeBytes) {
+        super(Math.max(1, requestedSizeBytes));
         this.name = name;
         displayMetrics = context.getResources().getDisplayMetrics();
         int maxBitmapHeightWidth = maxBitmapHeightWidthIn;
@@ -82,36 +89,86 @@ public class ImageCache extends LruCache<String, CachedImage> {
             }
         }
         this.setMaxBounds(maxBitmapHeightWidth, maxBitmapHeightWidth);
-        this.requestedCacheSize = requestedCacheSizeIn;
-        this.currentCacheSize = this.requestedCacheSize;
-        recycledBitmaps = new ConcurrentLinkedQueue<>();
+        diskCache = new ImageDiskCache(context, name, maxBitmapWidth, maxBitmapHeight, diskCacheSizeBytes);
+        this.requestedSizeBytes = requestedSizeBytes;
+        this.currentSizeBytes = requestedSizeBytes;
+        bitmapPool = new BitmapPool(maxBitmapWidth, maxBitmapHeight,
+                Math.round(POOL_PART_OF_CACHE_SIZE * requestedSizeBytes));
+    }
+
+    @Override
+    protected int sizeOf(String key, CachedImage value) {
+        return (int) BitmapPool.byteCount(value.getBitmap());
+    }
+
+    @Nullable
+    private Bitmap newBlankBitmap(int width, int height) {
+        Bitmap bitmap;
         try {
-            for (int i = 0; i < currentCacheSize + 2; i++) {
-                recycledBitmaps.add(newBlankBitmap());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                bitmap = Bitmap.createBitmap(displayMetrics, width, height, CachedImage.BITMAP_CONFIG);
+            } else {
+                bitmap = Bitmap.createBitmap(width, height, CachedImage.BITMAP_CONFIG);
+                bitmap.setDensity(displayMetrics.densityDpi);
             }
         } catch (OutOfMemoryError e) {
             MyLog.w(this, getInfo(), e);
-            currentCacheSize = recycledBitmaps.size() - 2;
-            if (currentCacheSize < 0) {
-                currentCacheSize = 0;
-            }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                super.resize(currentCacheSize);
-            }
+            onOutOfMemory();
+            return null;
         }
+        return bitmap;
     }
 
-    private Bitmap newBlankBitmap() {
-        Bitmap bitmap;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            bitmap = Bitmap.createBitmap(displayMetrics, maxBitmapWidth,
-                    maxBitmapHeight, CachedImage.BITMAP_CONFIG);
-        } else {
-            bitmap = Bitmap.createBitmap(maxBitmapWidth,
-                    maxBitmapHeight, CachedImage.BITMAP_CONFIG);
-            bitmap.setDensity(displayMetrics.densityDpi);
+    /**
+     * Halves the cache and frees memory, taken by reusable bitmaps.
+     * The cache is not shrunk below {@link #getMinSizeBytes()}, so caching is never turned off
+     */
+    void onOutOfMemory() {
+        currentSizeBytes = Math.max(getMinSizeBytes(), Math.min(currentSizeBytes, size()) / 2);
+        trimToSize(currentSizeBytes);
+        bitmapPool.clear();
+    }
+
+    /** Enough for a couple of the largest bitmaps */
+    int getMinSizeBytes() {
+        return Math.min(requestedSizeBytes, Math.max(requestedSizeBytes / 8,
+                2 * maxBitmapWidth * maxBitmapHeight * BYTES_PER_PIXEL));
+    }
+
+    int getCurrentSizeBytes() {
+        return currentSizeBytes;
+    }
+
+    /**
+     * Shrinks the cache gradually as memory becomes scarce,
+     * see {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     * When the application is hidden, the size, reduced after {@link OutOfMemoryError}, is restored:
+     * the cache is empty or trimmed at that moment anyway
+     */
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            currentSizeBytes = requestedSizeBytes;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            evictAll();
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            trimToSize(maxSize() / 4);
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimToSize(maxSize() / 2);
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(maxSize() / 2);
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() * 3 / 4);
+            bitmapPool.trimToSize(bitmapPool.getMaxSizeBytes() / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            bitmapPool.trimToSize(bitmapPool.getMaxSizeBytes() / 2);
         }
-        return bitmap;
     }
 
     @Nullable
@@ -128,7 +185,7 @@ public class ImageCache extends LruCache<String, CachedImage> {
     protected void entryRemoved(boolean evicted, String key, CachedImage oldValue, CachedImage newValue) {
         if (oldValue.isBitmapRecyclable()) {
             oldValue.makeExpired();
-            recycledBitmaps.add(oldValue.getBitmap());
+            bitmapPool.release(oldValue.getBitmap());
         }
     }
 
@@ -150,8 +207,12 @@ public class ImageCache extends LruCache<String, CachedImage> {
             if (!fromCacheOnly) {
                 image = loadImage(objTag, imageId, path);
                 if (image != null) {
-                    if (currentCacheSize > 0) {
+                    int sizeBytes = currentSizeBytes;
+                    if (sizeBytes > 0) {
                         put(path, image);
+                        if (sizeBytes < maxSize()) {
+                            trimToSize(sizeBytes);
+                        }
                     }
                 } else {
                     brokenBitmaps.add(path);
@@ -181,7 +242,12 @@ public class ImageCache extends LruCache<String, CachedImage> {
         } else {
             canvas.drawBitmap(bitmap, 0 , 0, null);
         }
-        bitmap.recycle();
+        if (bitmap.isMutable()) {
+            // Decoded into a reused bitmap
+            bitmapPool.release(bitmap);
+        } else {
+            bitmap.recycle();
+        }
         return new CachedImage(imageId, background, srcRect);
     }
 
@@ -198,23 +264,36 @@ public class ImageCache extends LruCache<String, CachedImage> {
         canvas.drawOval(rectF, paint);
     }
 
+    @Nullable
     private Bitmap getSuitableRecycledBitmap(Rect srcRect) {
-        return recycledBitmaps.poll();
+        Bitmap bitmap = bitmapPool.acquire(srcRect.width(), srcRect.height());
+        return bitmap == null
+                ? newBlankBitmap(bitmapPool.classWidth(srcRect.width()), bitmapPool.classHeight(srcRect.height()))
+                : bitmap;
     }
 
     @Nullable
     private Bitmap loadBitmap(Object objTag, long imageId, String path) {
-        Bitmap bitmap = null;
+        Bitmap bitmap = diskCache.load(objTag, path);
+        if (bitmap != null) {
+            if (MyLog.isVerboseEnabled()) {
+                MyLog.v(objTag, "Loaded " + name + "'s bitmap " + bitmap.getWidth()
+                        + "x" + bitmap.getHeight() + " from disk cache '" + path + "'");
+            }
+            return bitmap;
+        }
+        Point imageSize = getImageSize(imageId, path);
+        BitmapFactory.Options options = calculateScaling(objTag, imageSize);
+        setBitmapToReuse(options, imageSize);
         if (MyPreferences.isShowDebuggingInfoInUi()) {
-            bitmap = BitmapFactory
-                    .decodeFile(path, calculateScaling(objTag, getImageSize(imageId, path)));
+            bitmap = decodeFile(path, options);
         } else {
             try {
-                bitmap = BitmapFactory
-                        .decodeFile(path, calculateScaling(objTag, getImageSize(imageId, path)));
+                bitmap = decodeFile(path, options);
             } catch (OutOfMemoryError e) {
                 MyLog.w(objTag, getInfo(), e);
                 evictAll();
+                bitmapPool.clear();
             }
         }
         if (MyLog.isVerboseEnabled()) {
@@ -222,9 +301,39 @@ public class ImageCache extends LruCache<String, CachedImage> {
                     : "Loaded " + name + "'s bitmap " + bitmap.getWidth()
                     + "x" + bitmap.getHeight()) + " '" + path + "'");
         }
+        if (bitmap != null && options.inSampleSize > 1) {
+            // Images, which don't need scaling, are decoded fast enough from their own files
+            diskCache.save(objTag, path, bitmap);
+        }
         return bitmap;
     }
 
+    /** Decoding into a pooled bitmap, see {@link BitmapFactory.Options#inBitmap},
+     * requires a bitmap of the exact size before KitKat, which we cannot guarantee */
+    private void setBitmapToReuse(BitmapFactory.Options options, Point imageSize) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || imageSize.x < 1 || imageSize.y < 1) {
+            return;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        Bitmap bitmap = bitmapPool.acquire((imageSize.x + sampleSize - 1) / sampleSize,
+                (imageSize.y + sampleSize - 1) / sampleSize);
+        if (bitmap != null) {
+            options.inMutable = true;
+            options.inBitmap = bitmap;
+        }
+    }
+
+    private Bitmap decodeFile(String path, BitmapFactory.Options options) {
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The bitmap cannot be reused for this image
+            options.inBitmap = null;
+            options.inMutable = false;
+            return BitmapFactory.decodeFile(path, options);
+        }
+    }
+
     Point getImageSize(long imageId, String path) {
         if (!TextUtils.isEmpty(path)) {
             CachedImage image = get(path);
@@ -262,17 +371,18 @@ public class ImageCache extends LruCache<String, CachedImage> {
     public String getInfo() {
         StringBuilder builder = new StringBuilder(name.title);
         builder.append(": " + maxBitmapWidth + "x" + maxBitmapHeight + ", "
-                + size() + " of " + currentCacheSize);
-        if (requestedCacheSize != currentCacheSize) {
-            builder.append(" (initially capacity was " + requestedCacheSize + ")");
+                + I18n.formatBytes(size()) + " of " + I18n.formatBytes(currentSizeBytes));
+        if (requestedSizeBytes != currentSizeBytes) {
+            builder.append(" (initially capacity was " + I18n.formatBytes(requestedSizeBytes) + ")");
         }
-        builder.append(", free: " + recycledBitmaps.size());
+        builder.append(", " + bitmapPool.getInfo());
         if (!brokenBitmaps.isEmpty()) {
             builder.append(", broken: " + brokenBitmaps.size());
         }
         long accesses = hits.get() + misses.get();
         builder.append(", hits:" + hits.get() + ", misses:" + misses.get()
                 + (accesses == 0 ? "" : ", hitRate:" + hits.get() * 100 / accesses + "%"));
+        builder.append("; " + diskCache.getInfo());
         return builder.toString();
     }
 
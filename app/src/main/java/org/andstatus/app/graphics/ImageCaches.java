@@ -41,11 +41,12 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class ImageCaches {
     private static final float ATTACHED_IMAGES_CACHE_PART_OF_TOTAL_APP_MEMORY = 0.20f;
+    /** Minimal number of images of the maximum size, which should fit into the cache */
     public static final int ATTACHED_IMAGES_CACHE_SIZE_MIN = 10;
-    public static final int ATTACHED_IMAGES_CACHE_SIZE_MAX = 20;
+    private static final long ATTACHED_IMAGES_DISK_CACHE_BYTES = 40L * 1024 * 1024;
     private static final float AVATARS_CACHE_PART_OF_TOTAL_APP_MEMORY = 0.05f;
     public static final int AVATARS_CACHE_SIZE_MIN = 200;
-    public static final int AVATARS_CACHE_SIZE_MAX = 700;
+    private static final long AVATARS_DISK_CACHE_BYTES = 10L * 1024 * 1024;
 
     private static volatile ImageCache attachedImagesCache;
     private static volatile ImageCache avatarsCache;
@@ -68,37 +69,31 @@ public class ImageCaches {
         // We assume that current display orientation is preferred, so we use "y" size only
         int imageSize = (int) Math.round(AttachedImageView.MAX_ATTACHED_IMAGE_PART *
                 getDisplaySize(context).y);
-        int cacheSize = 0;
+        int cacheSizeBytes = calcCacheSizeBytes(context, ATTACHED_IMAGES_CACHE_PART_OF_TOTAL_APP_MEMORY);
         for (int i = 0 ; i < 5; i++) {
-            cacheSize = calcCacheSize(context, imageSize,
-                    ATTACHED_IMAGES_CACHE_PART_OF_TOTAL_APP_MEMORY);
-            if (cacheSize >= ATTACHED_IMAGES_CACHE_SIZE_MIN || imageSize < 2 ) {
+            if (cacheSizeBytes / imageSize / imageSize / ImageCache.BYTES_PER_PIXEL >= ATTACHED_IMAGES_CACHE_SIZE_MIN
+                    || imageSize < 2 ) {
                 break;
             }
             imageSize = (imageSize * 2) / 3;
         }
-        if (cacheSize > ATTACHED_IMAGES_CACHE_SIZE_MAX) {
-            cacheSize = ATTACHED_IMAGES_CACHE_SIZE_MAX;
-        }
         attachedImagesCache = new ImageCache(context, CacheName.ATTACHED_IMAGE, imageSize,
-                cacheSize);
+                cacheSizeBytes, ATTACHED_IMAGES_DISK_CACHE_BYTES);
     }
 
     private static void initializeAvatarsCache(Context context) {
         float displayDensity = context.getResources().getDisplayMetrics().density;
         int imageSize = Math.round(AvatarFile.AVATAR_SIZE_DIP * displayDensity);
-        int cacheSize = 0;
+        int cacheSizeBytes = calcCacheSizeBytes(context, AVATARS_CACHE_PART_OF_TOTAL_APP_MEMORY);
         for (int i = 0 ; i < 5; i++) {
-            cacheSize = calcCacheSize(context, imageSize, AVATARS_CACHE_PART_OF_TOTAL_APP_MEMORY);
-            if (cacheSize >= AVATARS_CACHE_SIZE_MIN || imageSize < 48 ) {
+            if (cacheSizeBytes / imageSize / imageSize / ImageCache.BYTES_PER_PIXEL >= AVATARS_CACHE_SIZE_MIN
+                    || imageSize < 48 ) {
                 break;
             }
             imageSize = (imageSize * 2) / 3;
         }
-        if (cacheSize > AVATARS_CACHE_SIZE_MAX) {
-            cacheSize = AVATARS_CACHE_SIZE_MAX;
-        }
-        avatarsCache = new ImageCache(context, CacheName.AVATAR, imageSize, cacheSize);
+        avatarsCache = new ImageCache(context, CacheName.AVATAR, imageSize, cacheSizeBytes,
+                AVATARS_DISK_CACHE_BYTES);
         setAvatarsRounded();
     }
 
@@ -107,9 +102,21 @@ public class ImageCaches {
         avatarsCache.rounded = SharedPreferencesUtil.getBoolean(MyPreferences.KEY_ROUNDED_AVATARS, true);
     }
 
-    private static int calcCacheSize(Context context, int imageSize, float partOfAvailableMemory) {
-        return Math.round(partOfAvailableMemory * getTotalAppMemory(context)
-                / imageSize / imageSize / ImageCache.BYTES_PER_PIXEL);
+    private static int calcCacheSizeBytes(Context context, float partOfAvailableMemory) {
+        return Math.round(partOfAvailableMemory * getTotalAppMemory(context));
+    }
+
+    /** See {@link android.content.ComponentCallbacks2#onTrimMemory(int)} */
+    public static void onTrimMemory(int level) {
+        ImageCache cache = avatarsCache;
+        if (cache != null) {
+            cache.onTrimMemory(level);
+        }
+        cache = attachedImagesCache;
+        if (cache != null) {
+            cache.onTrimMemory(level);
+        }
+        MyLog.v(ImageCaches.class.getSimpleName(), "onTrimMemory " + level + ". " + getCacheInfo());
     }
 
     @NonNull
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.graphics;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.util.I18n;
+import org.andstatus.app.util.MyLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent level of the {@link ImageCache}: bitmaps, already downscaled to the maximum size of the cache,
+ * are stored in the application's cache directory. So after a process restart or an eviction from memory
+ * an image is read from a small file instead of decoding of the full size image file.
+ * A file is keyed by the SHA-1 of the image path and by the maximum bitmap size.
+ * Each file has a header, which is checked on reading: the source file's length and modification time,
+ * and a checksum of the compressed bitmap.
+ * Total size of the files is limited, least recently used files are deleted first.
+ * @author yvolk@yurivolkov.com
+ */
+class ImageDiskCache {
+    static final String DIRECTORY_IMAGES = "images";
+    private static final int FILE_SIGNATURE = 0x416e5374;
+    private static final int FILE_FORMAT_VERSION = 1;
+    private static final String TMP_PREFIX = "new";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int JPEG_QUALITY = 90;
+
+    private final File dir;
+    private final String fileNameSuffix;
+    private final long maxSize;
+    /** File names in the access order, with sizes of the files */
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0;
+    private boolean initialized = false;
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+
+    ImageDiskCache(Context context, CacheName name, int maxBitmapWidth, int maxBitmapHeight, long maxSize) {
+        File cacheDir = context.getCacheDir();
+        dir = cacheDir == null ? null :
+                new File(new File(cacheDir, DIRECTORY_IMAGES), name.name().toLowerCase(Locale.US));
+        fileNameSuffix = "_" + maxBitmapWidth + "x" + maxBitmapHeight;
+        this.maxSize = maxSize;
+    }
+
+    private synchronized boolean isAvailable() {
+        if (!initialized) {
+            initialized = true;
+            if (dir != null && (dir.exists() || dir.mkdirs())) {
+                loadIndex();
+            }
+        }
+        return dir != null && dir.exists();
+    }
+
+    private void loadIndex() {
+        File[] existing = dir.listFiles();
+        if (existing == null) {
+            return;
+        }
+        Arrays.sort(existing, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long compared = lhs.lastModified() - rhs.lastModified();
+                return compared == 0 ? 0 : (compared > 0 ? 1 : -1);
+            }
+        });
+        for (File file : existing) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                deleteFile(file);
+            } else {
+                files.put(file.getName(), file.length());
+                totalSize += file.length();
+            }
+        }
+        evictToSize();
+    }
+
+    /** @return null if there is no valid bitmap for the source image file */
+    @Nullable
+    Bitmap load(Object objTag, @NonNull String path) {
+        if (!isAvailable()) {
+            return null;
+        }
+        File file = new File(dir, fileName(path));
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        Bitmap bitmap = null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            File source = new File(path);
+            if (in.readInt() == FILE_SIGNATURE && in.readInt() == FILE_FORMAT_VERSION
+                    && path.equals(in.readUTF())
+                    && in.readLong() == source.length() && in.readLong() == source.lastModified()) {
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (length > 0 && length <= file.length()) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    if (checksum == checksumOf(bytes)) {
+                        bitmap = BitmapFactory.decodeByteArray(bytes, 0, length);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            MyLog.d(objTag, "Failed to read cached bitmap '" + path + "'", e);
+        } finally {
+            DbUtils.closeSilently(in);
+        }
+        if (bitmap == null) {
+            MyLog.v(objTag, "Deleting outdated or broken cached bitmap of '" + path + "'");
+            remove(file);
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+            onAccessed(file);
+        }
+        return bitmap;
+    }
+
+    void save(Object objTag, @NonNull String path, @NonNull Bitmap bitmap) {
+        if (!isAvailable()) {
+            return;
+        }
+        File source = new File(path);
+        File file = new File(dir, fileName(path));
+        File tmpFile = null;
+        DataOutputStream out = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (!bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+                    JPEG_QUALITY, bytes)) {
+                return;
+            }
+            byte[] compressed = bytes.toByteArray();
+            // Unique, so concurrent saves of the same image don't write to one file
+            tmpFile = File.createTempFile(TMP_PREFIX, TMP_SUFFIX, dir);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(FILE_SIGNATURE);
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeUTF(path);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeInt(compressed.length);
+            out.writeLong(checksumOf(compressed));
+            out.write(compressed);
+            out.close();
+            out = null;
+            // The file appears under its name only when it's complete
+            if (tmpFile.renameTo(file)) {
+                onAdded(file);
+            } else {
+                deleteFile(tmpFile);
+            }
+        } catch (IOException e) {
+            MyLog.d(objTag, "Failed to cache bitmap of '" + path + "'", e);
+            DbUtils.closeSilently(out);
+            if (tmpFile != null) {
+                deleteFile(tmpFile);
+            }
+        }
+    }
+
+    private String fileName(String path) {
+        return sha1Hex(path) + fileNameSuffix;
+    }
+
+    /** Unlike {@link String#hashCode()}, different paths don't map to the same file in practice */
+    private static String sha1Hex(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(Charset.forName("UTF-8")));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format(Locale.US, "%02x", b & 0xFF));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static long checksumOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private synchronized void onAccessed(File file) {
+        if (files.get(file.getName()) != null) {
+            // So the order of use survives process restart
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    private synchronized void onAdded(File file) {
+        Long oldSize = files.put(file.getName(), file.length());
+        totalSize += file.length() - (oldSize == null ? 0 : oldSize);
+        evictToSize();
+    }
+
+    private synchronized void remove(File file) {
+        Long oldSize = files.remove(file.getName());
+        if (oldSize != null) {
+            totalSize -= oldSize;
+        }
+        deleteFile(file);
+    }
+
+    private void evictToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            totalSize -= entry.getValue();
+            iterator.remove();
+            deleteFile(new File(dir, entry.getKey()));
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            MyLog.v(ImageDiskCache.class.getSimpleName(), "Couldn't delete '" + file.getAbsolutePath() + "'");
+        }
+    }
+
+    synchronized String getInfo() {
+        long accesses = hits.get() + misses.get();
+        return "disk: " + files.size() + " files, " + I18n.formatBytes(totalSize) + " of " + I18n.formatBytes(maxSize)
+                + ", hits:" + hits.get() + ", misses:" + misses.get()
+                + (accesses == 0 ? "" : ", hitRate:" + hits.get() * 100 / accesses + "%");
+    }
+}
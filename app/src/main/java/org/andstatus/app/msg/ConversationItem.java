@@ -17,10 +17,7 @@
 package org.andstatus.app.msg;
 
 import android.content.Context;
-import android.database.Cursor;
 
-import org.andstatus.app.data.DbUtils;
-import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.util.I18n;
 
 public abstract class ConversationItem extends MessageViewItem implements Comparable<ConversationItem> {
@@ -88,9 +85,9 @@ public abstract class ConversationItem extends MessageViewItem implements Compar
 
     abstract String[] getProjection();
     
-    void load(Cursor cursor) {
-        inReplyToMsgId = DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_MSG_ID);
-        updatedDate = DbUtils.getLong(cursor, MsgTable.UPDATED_DATE);
+    void load(MessageRowMapper row) {
+        inReplyToMsgId = row.getLong(row.inReplyToMsgId);
+        updatedDate = row.getLong(row.updatedDate);
     }
 
     @Override
@@ -16,8 +16,6 @@
 
 package org.andstatus.app.msg;
 
-import android.database.Cursor;
-import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
@@ -26,25 +24,23 @@ import org.andstatus.app.LoadableListActivity.ProgressPublisher;
 import org.andstatus.app.SyncLoader;
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContext;
-import org.andstatus.app.data.DbUtils;
-import org.andstatus.app.data.MatchedUri;
 import org.andstatus.app.data.MyQuery;
 import org.andstatus.app.net.social.Connection;
 import org.andstatus.app.service.CommandData;
 import org.andstatus.app.service.CommandEnum;
 import org.andstatus.app.service.MyServiceManager;
-import org.andstatus.app.timeline.Timeline;
-import org.andstatus.app.timeline.TimelineType;
+import org.andstatus.app.util.LongMap;
+import org.andstatus.app.util.LongSet;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.TFactory;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class ConversationLoader<T extends ConversationItem> extends SyncLoader<T> {
     private static final int MAX_INDENT_LEVEL = 19;
@@ -58,7 +54,7 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
     private final ReplyLevelComparator<T> replyLevelComparator = new ReplyLevelComparator<>();
     private final TFactory<T> tFactory;
 
-    final Map<Long, T> cachedMessages = new ConcurrentHashMap<>();
+    final LongMap<T> cachedMessages = new LongMap<>();
     final List<T> msgList = new ArrayList<>();
     LoadableListActivity.ProgressPublisher mProgress;
 
@@ -66,7 +62,8 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
         return msgList;
     }
 
-    final List<Long> idsOfTheMessagesToFind = new ArrayList<>();
+    final LongSet idsOfTheMessagesToFind = new LongSet();
+    private final LongSet idsOfTheMessagesInList = new LongSet();
 
     public ConversationLoader(
             Class<T> tClass, MyContext myContext, MyAccount ma, long selectedMessageId, boolean sync) {
@@ -82,6 +79,7 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
         mProgress = publisher;
         cachedMessages.clear();
         idsOfTheMessagesToFind.clear();
+        idsOfTheMessagesInList.clear();
         msgList.clear();
         if (sync) {
             requestConversationSync(selectedMessageId);
@@ -99,11 +97,10 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
     protected boolean addMessageIdToFind(long msgId) {
         if (msgId == 0) {
             return false;
-        } else if (idsOfTheMessagesToFind.contains(msgId)) {
+        } else if (!idsOfTheMessagesToFind.add(msgId)) {
             MyLog.v(this, "findMessages cycled on the id=" + msgId);
             return false;
         }
-        idsOfTheMessagesToFind.add(msgId);
         return true;
     }
 
@@ -124,29 +121,9 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
         return oMsg;
     }
 
-    protected void loadMessageFromDatabase(T oMsg) {
-        if (oMsg.isLoaded() || oMsg.getMsgId() == 0 || cachedMessages.containsKey(oMsg.getMsgId())) {
-            return;
-        }
-        Uri uri = MatchedUri.getTimelineItemUri(
-                Timeline.getTimeline(TimelineType.EVERYTHING, ma, 0, null), oMsg.getMsgId());
-        Cursor cursor = null;
-        boolean loaded = false;
-        try {
-            cursor = myContext.context().getContentResolver().query(uri, oMsg.getProjection(), null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                oMsg.load(cursor);
-                loaded = true;
-            }
-        } finally {
-            DbUtils.closeSilently(cursor);
-        }
-        MyLog.v(this, (loaded ? "Loaded (" + oMsg.isLoaded() + ")"  : "Couldn't load") + " from a database msgId=" + oMsg.getMsgId());
-    }
-
     protected boolean addMessageToList(T oMsg) {
         boolean added = false;
-        if (msgList.contains(oMsg)) {
+        if (!idsOfTheMessagesInList.add(oMsg.getMsgId())) {
             MyLog.v(this, "Message id=" + oMsg.getMsgId() + " is in the list already");
         } else {
             msgList.add(oMsg);
@@ -218,9 +195,19 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
     
     private void enumerateMessages() {
         idsOfTheMessagesToFind.clear();
-        for (ConversationItem oMsg : msgList) {
+        LongMap<List<ConversationItem>> replies = new LongMap<>();
+        for (int ind = msgList.size() - 1; ind >= 0; ind--) {
+            ConversationItem oMsg = msgList.get(ind);
             oMsg.mListOrder = 0;
             oMsg.historyOrder = 0;
+            if (oMsg.inReplyToMsgId != 0) {
+                List<ConversationItem> list = replies.get(oMsg.inReplyToMsgId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    replies.put(oMsg.inReplyToMsgId, list);
+                }
+                list.add(oMsg);
+            }
         }
         OrderCounters order = new OrderCounters();
         for (int ind = msgList.size()-1; ind >= 0; ind--) {
@@ -228,28 +215,41 @@ public abstract class ConversationLoader<T extends ConversationItem> extends Syn
             if (oMsg.mListOrder < 0 ) {
                 continue;
             }
-            enumerateBranch(oMsg, order, 0);
+            enumerateBranch(oMsg, replies, order);
         }
     }
 
-    private void enumerateBranch(ConversationItem oMsg, OrderCounters order, int indent) {
-        if (!addMessageIdToFind(oMsg.getMsgId())) {
-            return;
-        }
-        int indentNext = indent;
-        oMsg.historyOrder = order.history++;
-        oMsg.mListOrder = order.list--;
-        oMsg.indentLevel = indent;
-        if ((oMsg.mNReplies > 1 || oMsg.mNParentReplies > 1)
-                && indentNext < MAX_INDENT_LEVEL) {
-            indentNext++;
-        }
-        for (int ind = msgList.size() - 1; ind >= 0; ind--) {
-           ConversationItem reply = msgList.get(ind);
-           if (reply.inReplyToMsgId == oMsg.getMsgId()) {
-               reply.mNParentReplies = oMsg.mNReplies;
-               enumerateBranch(reply, order, indentNext);
-           }
+    /** Depth-first traversal of the branch without recursion, so long threads don't overflow the stack */
+    private void enumerateBranch(ConversationItem root, LongMap<List<ConversationItem>> replies,
+                                 OrderCounters order) {
+        Deque<ConversationItem> branch = new ArrayDeque<>();
+        Deque<Integer> indents = new ArrayDeque<>();
+        branch.push(root);
+        indents.push(0);
+        while (!branch.isEmpty()) {
+            ConversationItem oMsg = branch.pop();
+            int indent = indents.pop();
+            if (!addMessageIdToFind(oMsg.getMsgId())) {
+                continue;
+            }
+            int indentNext = indent;
+            oMsg.historyOrder = order.history++;
+            oMsg.mListOrder = order.list--;
+            oMsg.indentLevel = indent;
+            if ((oMsg.mNReplies > 1 || oMsg.mNParentReplies > 1)
+                    && indentNext < MAX_INDENT_LEVEL) {
+                indentNext++;
+            }
+            List<ConversationItem> oMsgReplies = replies.get(oMsg.getMsgId());
+            if (oMsgReplies != null) {
+                // Pushed in the reverse order, so the first reply is enumerated first
+                for (int ind = oMsgReplies.size() - 1; ind >= 0; ind--) {
+                    ConversationItem reply = oMsgReplies.get(ind);
+                    reply.mNParentReplies = oMsg.mNReplies;
+                    branch.push(reply);
+                    indents.push(indentNext);
+                }
+            }
         }
     }
 
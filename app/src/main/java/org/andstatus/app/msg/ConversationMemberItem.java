@@ -16,9 +16,6 @@
 
 package org.andstatus.app.msg;
 
-import android.database.Cursor;
-
-import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.util.MyHtml;
 
@@ -40,10 +37,10 @@ public class ConversationMemberItem extends ConversationItem {
     }
 
     @Override
-    void load(Cursor cursor) {
-        super.load(cursor);
-        authorId = DbUtils.getLong(cursor, MsgTable.AUTHOR_ID);
-        setBody(MyHtml.fromHtml(DbUtils.getString(cursor, MsgTable.BODY)));
+    void load(MessageRowMapper row) {
+        super.load(row);
+        authorId = row.getLong(row.authorId);
+        setBody(MyHtml.fromHtml(row.getString(row.body)));
     }
 
     @Override
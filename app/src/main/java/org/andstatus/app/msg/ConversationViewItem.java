@@ -18,20 +18,13 @@ package org.andstatus.app.msg;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.provider.BaseColumns;
-import android.text.Html;
-import android.text.TextUtils;
 
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.data.AttachedImageFile;
 import org.andstatus.app.data.AvatarFile;
-import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.data.MyQuery;
 import org.andstatus.app.data.TimelineSql;
-import org.andstatus.app.database.MsgOfUserTable;
-import org.andstatus.app.database.MsgTable;
-import org.andstatus.app.database.UserTable;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyHtml;
 
@@ -55,7 +48,8 @@ public class ConversationViewItem extends ConversationItem {
     }
 
     @Override
-    void load(Cursor cursor) {
+    void load(MessageRowMapper row) {
+        Cursor cursor = row.cursor;
         /**
          * IDs of all known senders of this message except for the Author
          * These "senders" reblogged the message
@@ -63,35 +57,33 @@ public class ConversationViewItem extends ConversationItem {
         Set<Long> rebloggerIds = new HashSet<>();
         int ind=0;
         do {
-            long msgId = DbUtils.getLong(cursor, BaseColumns._ID);
+            long msgId = row.getLong(row.msgId);
             if (msgId != getMsgId()) {
                 if (ind > 0) {
                     cursor.moveToPrevious();
                 }
                 break;
             }
-            long senderId = DbUtils.getLong(cursor, MsgTable.ACTOR_ID);
-            authorId = DbUtils.getLong(cursor, MsgTable.AUTHOR_ID);
-            long linkedUserId = DbUtils.getLong(cursor, UserTable.LINKED_USER_ID);
+            long senderId = row.getLong(row.actorId);
+            authorId = row.getLong(row.authorId);
+            long linkedUserId = row.getLong(row.linkedUserId);
     
             if (ind == 0) {
                 // This is the same for all retrieved rows
-                super.load(cursor);
-                msgStatus = DownloadStatus.load(DbUtils.getLong(cursor, MsgTable.MSG_STATUS));
-                authorName = TimelineSql.userColumnNameToNameAtTimeline(cursor, UserTable.AUTHOR_NAME, false);
-                setBody(MyHtml.prepareForView(DbUtils.getString(cursor, MsgTable.BODY)));
-                String via = DbUtils.getString(cursor, MsgTable.VIA);
-                if (!TextUtils.isEmpty(via)) {
-                    messageSource = Html.fromHtml(via).toString().trim();
+                super.load(row);
+                msgStatus = DownloadStatus.load(row.getLong(row.msgStatus));
+                authorName = row.getString(row.authorName);
+                setBody(MyHtml.prepareForView(row.getString(row.body)));
+                via = row.getString(row.via);
+                avatarFile = new AvatarFile(authorId, row.getString(row.avatarFileName));
+                if (row.showAttachedImages) {
+                    attachedImageFile = new AttachedImageFile(row.getLong(row.imageId),
+                            row.getString(row.imageFileName));
                 }
-                avatarFile = AvatarFile.fromCursor(authorId, cursor);
-                if (MyPreferences.getDownloadAndDisplayAttachedImages()) {
-                    attachedImageFile = AttachedImageFile.fromCursor(cursor);
-                }
-                inReplyToMsgId = DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_MSG_ID);
-                inReplyToUserId = DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_USER_ID);
-                inReplyToName = TimelineSql.userColumnNameToNameAtTimeline(cursor, UserTable.IN_REPLY_TO_NAME, false);
-                recipientName = TimelineSql.userColumnNameToNameAtTimeline(cursor, UserTable.RECIPIENT_NAME, false);
+                inReplyToMsgId = row.getLong(row.inReplyToMsgId);
+                inReplyToUserId = row.getLong(row.inReplyToUserId);
+                inReplyToName = row.getString(row.inReplyToName);
+                recipientName = row.getString(row.recipientName);
             }
     
             if (senderId != authorId) {
@@ -101,7 +93,7 @@ public class ConversationViewItem extends ConversationItem {
                 if (getLinkedUserId() == 0 || !getLinkedMyAccount().isValid()) {
                     setLinkedUserAndAccount(linkedUserId);
                 }
-                if (DbUtils.getInt(cursor, MsgOfUserTable.REBLOGGED) == 1) {
+                if (row.getLong(row.reblogged) == 1) {
                     if (linkedUserId != authorId) {
                         rebloggerIds.add(linkedUserId);
                     }
@@ -109,7 +101,7 @@ public class ConversationViewItem extends ConversationItem {
                         reblogged = true;
                     }
                 }
-                if (getLinkedMyAccount().getUserId() == linkedUserId & DbUtils.getInt(cursor, MsgOfUserTable.FAVORITED) == 1) {
+                if (getLinkedMyAccount().getUserId() == linkedUserId & row.getLong(row.favorited) == 1) {
                     favorited = true;
                 }
             }
@@ -18,7 +18,6 @@ package org.andstatus.app.msg;
 
 import android.database.Cursor;
 import android.net.Uri;
-import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 
 import org.andstatus.app.account.MyAccount;
@@ -53,9 +52,10 @@ public class DirectMessagesConversationLoader<T extends ConversationItem> extend
             cursor = myContext.context().getContentResolver().query(uri, oMsg.getProjection(),
                     selection, null, null);
             if (cursor != null) {
+                MessageRowMapper row = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    T oMsg2 = newOMsg(DbUtils.getLong(cursor, BaseColumns._ID));
-                    oMsg2.load(cursor);
+                    T oMsg2 = newOMsg(row.getLong(row.msgId));
+                    oMsg2.load(row);
                     addMessageToList(oMsg2);
                 }
             }
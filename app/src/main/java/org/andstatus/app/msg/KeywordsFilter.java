@@ -29,6 +29,7 @@ public class KeywordsFilter {
     final List<String> keywordsToFilter;
     private final List<String> keywordsRaw;
     private static final char DOUBLE_QUOTE = '"';
+    private static final char LIKE_ESCAPE = '\\';
 
     public KeywordsFilter(String keywordsIn) {
         keywordsRaw = parseFilterString(keywordsIn);
@@ -138,6 +139,96 @@ public class KeywordsFilter {
         return selectionArgsOut;
     }
 
+    /**
+     * Selection of rows, which don't contain any of the keywords, the same as not {@link #matchedAny(String)}
+     * @param fieldName the field with {@link MyHtml#getBodyToSearch(String)} values
+     * @return empty if nothing to exclude. See {@link #getSqlExclusionArgs()}
+     */
+    @NonNull
+    public String getSqlExclusion(String fieldName) {
+        if (isEmpty()) {
+            return "";
+        }
+        StringBuilder selection = new StringBuilder();
+        for (String keyword : keywordsToFilter) {
+            if (selection.length() > 0) {
+                selection.append(" OR ");
+            }
+            selection.append(fieldName + " LIKE ? ESCAPE '" + LIKE_ESCAPE + "'");
+        }
+        return "(" + fieldName + " IS NULL OR NOT (" + selection.toString() + "))";
+    }
+
+    @NonNull
+    public String[] getSqlExclusionArgs() {
+        String[] args = new String[keywordsToFilter.size()];
+        for (int ind = 0; ind < keywordsToFilter.size(); ind++) {
+            args[ind] = "%" + escapeForLike(keywordsToFilter.get(ind)) + "%";
+        }
+        return args;
+    }
+
+    /** So "%" and "_" in a keyword are matched literally, as in {@link String#contains(CharSequence)} */
+    private static String escapeForLike(String keyword) {
+        StringBuilder builder = new StringBuilder();
+        for (int ind = 0; ind < keyword.length(); ind++) {
+            char c = keyword.charAt(ind);
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                builder.append(LIKE_ESCAPE);
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Query for the full text search index, see {@link org.andstatus.app.database.MsgSearchTable}:
+     * each keyword becomes a phrase, all phrases should match. The last token of a phrase is a prefix term.
+     * This query only narrows the search down to candidates: the exact result is given
+     * by {@link #getSqlSelection(String)}, which should be applied to the candidates found.
+     * <p>
+     * Keywords are whole words of {@link MyHtml#getBodyToSearch(String)}, so the selection doesn't match inside
+     * a word ("stat" doesn't find "andstatus"), and the index can't do this either: such mid-word matches are lost.
+     * Any row matched by the selection is found by the index, because the index also splits words at punctuation
+     * and ignores it, so it finds a superset of the selection's rows
+     * @return empty if some keyword cannot be expressed as a phrase (e.g. has punctuation only)
+     */
+    @NonNull
+    public String getSqlMatchQuery() {
+        StringBuilder query = new StringBuilder();
+        for (String keyword : keywordsToFilter) {
+            String phrase = toSearchIndexPhrase(keyword);
+            if (phrase.isEmpty()) {
+                return "";
+            }
+            if (query.length() > 0) {
+                query.append(" ");
+            }
+            query.append(DOUBLE_QUOTE + phrase + "*" + DOUBLE_QUOTE);
+        }
+        return query.toString();
+    }
+
+    /** Splits text into tokens the same way as the "simple" tokenizer of SQLite FTS does */
+    @NonNull
+    private static String toSearchIndexPhrase(String keyword) {
+        StringBuilder phrase = new StringBuilder();
+        boolean separated = true;
+        for (int ind = 0; ind < keyword.length(); ind++) {
+            char c = keyword.charAt(ind);
+            if (c < 128 && !Character.isLetterOrDigit(c)) {
+                separated = true;
+            } else {
+                if (separated && phrase.length() > 0) {
+                    phrase.append(' ');
+                }
+                phrase.append(c);
+                separated = false;
+            }
+        }
+        return phrase.toString();
+    }
+
     @NonNull
     public String getFirstTagOrFirstKeyword() {
         for (String keyword : keywordsRaw) {
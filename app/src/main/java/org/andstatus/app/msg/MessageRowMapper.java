@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.msg;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import org.andstatus.app.context.MyPreferences;
+import org.andstatus.app.database.DownloadTable;
+import org.andstatus.app.database.MsgOfUserTable;
+import org.andstatus.app.database.MsgTable;
+import org.andstatus.app.database.UserTable;
+
+/**
+ * Reads rows of a cursor with messages: column indices are resolved once per cursor
+ * (instead of by a column name for each row) and preferences are read once per load.
+ * Columns, absent in the cursor, give empty values, as {@link org.andstatus.app.data.DbUtils} does
+ * @author yvolk@yurivolkov.com
+ */
+class MessageRowMapper {
+    final Cursor cursor;
+    final boolean showOrigin;
+    final boolean showAttachedImages;
+
+    final int msgId;
+    final int originId;
+    final int linkedUserId;
+    final int authorId;
+    final int authorName;
+    final int actorId;
+    final int senderName;
+    final int body;
+    final int via;
+    final int inReplyToMsgId;
+    final int inReplyToUserId;
+    final int inReplyToName;
+    final int recipientName;
+    final int favorited;
+    final int reblogged;
+    final int sentDate;
+    final int updatedDate;
+    final int msgStatus;
+    final int avatarFileName;
+    final int imageId;
+    final int imageFileName;
+
+    MessageRowMapper(@NonNull Cursor cursor) {
+        this.cursor = cursor;
+        showOrigin = MyPreferences.getShowOrigin();
+        showAttachedImages = MyPreferences.getDownloadAndDisplayAttachedImages();
+
+        msgId = cursor.getColumnIndex(MsgTable._ID);
+        originId = cursor.getColumnIndex(MsgTable.ORIGIN_ID);
+        linkedUserId = cursor.getColumnIndex(UserTable.LINKED_USER_ID);
+        authorId = cursor.getColumnIndex(MsgTable.AUTHOR_ID);
+        authorName = cursor.getColumnIndex(UserTable.AUTHOR_NAME);
+        actorId = cursor.getColumnIndex(MsgTable.ACTOR_ID);
+        senderName = cursor.getColumnIndex(UserTable.SENDER_NAME);
+        body = cursor.getColumnIndex(MsgTable.BODY);
+        via = cursor.getColumnIndex(MsgTable.VIA);
+        inReplyToMsgId = cursor.getColumnIndex(MsgTable.IN_REPLY_TO_MSG_ID);
+        inReplyToUserId = cursor.getColumnIndex(MsgTable.IN_REPLY_TO_USER_ID);
+        inReplyToName = cursor.getColumnIndex(UserTable.IN_REPLY_TO_NAME);
+        recipientName = cursor.getColumnIndex(UserTable.RECIPIENT_NAME);
+        favorited = cursor.getColumnIndex(MsgOfUserTable.FAVORITED);
+        reblogged = cursor.getColumnIndex(MsgOfUserTable.REBLOGGED);
+        sentDate = cursor.getColumnIndex(MsgTable.SENT_DATE);
+        updatedDate = cursor.getColumnIndex(MsgTable.UPDATED_DATE);
+        msgStatus = cursor.getColumnIndex(MsgTable.MSG_STATUS);
+        avatarFileName = cursor.getColumnIndex(DownloadTable.AVATAR_FILE_NAME);
+        imageId = cursor.getColumnIndex(DownloadTable.IMAGE_ID);
+        imageFileName = cursor.getColumnIndex(DownloadTable.IMAGE_FILE_NAME);
+    }
+
+    long getLong(int columnIndex) {
+        return columnIndex < 0 ? 0 : cursor.getLong(columnIndex);
+    }
+
+    @NonNull
+    String getString(int columnIndex) {
+        if (columnIndex < 0) {
+            return "";
+        }
+        String value = cursor.getString(columnIndex);
+        return TextUtils.isEmpty(value) ? "" : value;
+    }
+}
@@ -18,6 +18,7 @@ package org.andstatus.app.msg;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.text.Html;
 import android.text.TextUtils;
 
 import org.andstatus.app.R;
@@ -62,7 +63,9 @@ public class MessageViewItem implements DuplicatesCollapsible<MessageViewItem>,
     long inReplyToUserId = 0;
     String inReplyToName = "";
 
-    String messageSource = "";
+    /** As stored, it's rendered to the {@link #getMessageSource()} only when shown */
+    String via = "";
+    private String messageSource = null;
 
     private String body = "";
     private String cleanedBody = "";
@@ -232,11 +235,20 @@ public class MessageViewItem implements DuplicatesCollapsible<MessageViewItem>,
         }
     }
 
+    @NonNull
+    String getMessageSource() {
+        if (messageSource == null) {
+            messageSource = TextUtils.isEmpty(via) ? "" : Html.fromHtml(via).toString().trim();
+        }
+        return messageSource;
+    }
+
     private void setMessageSource(Context context, StringBuilder messageDetails) {
-        if (!SharedPreferencesUtil.isEmpty(messageSource) && !"ostatus".equals(messageSource)
-                && !"unknown".equals(messageSource)) {
+        String source = getMessageSource();
+        if (!SharedPreferencesUtil.isEmpty(source) && !"ostatus".equals(source)
+                && !"unknown".equals(source)) {
             messageDetails.append(" " + String.format(
-                    context.getText(R.string.message_source_from).toString(), messageSource));
+                    context.getText(R.string.message_source_from).toString(), source));
         }
     }
 
@@ -252,8 +264,9 @@ public class MessageViewItem implements DuplicatesCollapsible<MessageViewItem>,
 
     public MessageViewItem setBody(String body) {
         this.body = body;
-        this.isFavoritingAction = MyHtml.isFavoritingAction(body);
-        cleanedBody = MyHtml.getCleanedBody(body);
+        String text = MyHtml.fromHtml(body).toLowerCase();
+        this.isFavoritingAction = MyHtml.isFavoritingActionText(text);
+        cleanedBody = MyHtml.getCleanedBodyText(text);
         return this;
     }
 
@@ -18,7 +18,7 @@ package org.andstatus.app.msg;
 
 import android.database.Cursor;
 import android.net.Uri;
-import android.provider.BaseColumns;
+import android.text.TextUtils;
 
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContext;
@@ -29,12 +29,26 @@ import org.andstatus.app.data.ProjectionMap;
 import org.andstatus.app.database.MsgTable;
 import org.andstatus.app.timeline.Timeline;
 import org.andstatus.app.timeline.TimelineType;
+import org.andstatus.app.util.LongMap;
+import org.andstatus.app.util.LongSet;
 import org.andstatus.app.util.MyLog;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
 /**
+ * Loads the whole conversation with a few queries, each of them selects a set of messages:
+ * the messages of the same {@link MsgTable#CONVERSATION_ID} first, and then the messages of other conversations,
+ * linked by {@link MsgTable#IN_REPLY_TO_MSG_ID}, level by level.
+ * The tree of the conversation is built in memory
  * @author yvolk@yurivolkov.com
  */
 public class RecursiveConversationLoader<T extends ConversationItem> extends ConversationLoader<T> {
+    private static final int MAX_IDS_IN_QUERY = 500;
+
     public RecursiveConversationLoader(Class<T> tClass, MyContext myContext, MyAccount ma,
                                        long selectedMessageId, boolean sync) {
         super(tClass, myContext, ma, selectedMessageId, sync);
@@ -43,7 +57,7 @@ public class RecursiveConversationLoader<T extends ConversationItem> extends Con
     @Override
     protected void load2(T oMsg) {
         cacheConversation(oMsg);
-        findPreviousMessagesRecursively(getOMsg(oMsg.getMsgId(), 0));
+        findConversationMessages(getOMsg(oMsg.getMsgId(), 0));
     }
 
     private void cacheConversation(T oMsg) {
@@ -51,6 +65,52 @@ public class RecursiveConversationLoader<T extends ConversationItem> extends Con
         String selection = ProjectionMap.MSG_TABLE_ALIAS + "." +
                 (conversationId == 0 ? MsgTable._ID + "=" + oMsg.getMsgId() :
                         MsgTable.CONVERSATION_ID + "=" + conversationId);
+        List<T> added = cacheMessages(oMsg, selection);
+        LongSet requestedIds = cachedMessages.keys();
+        while (!added.isEmpty()) {
+            List<Long> inReplyToIds = new ArrayList<>();
+            List<Long> msgIds = new ArrayList<>();
+            for (T item : added) {
+                msgIds.add(item.getMsgId());
+                if (item.inReplyToMsgId != 0 && requestedIds.add(item.inReplyToMsgId)) {
+                    inReplyToIds.add(item.inReplyToMsgId);
+                }
+            }
+            added = cacheLinkedMessages(oMsg, inReplyToIds, msgIds, conversationId);
+        }
+        MyLog.v(this, "Cached " + cachedMessages.size() + " messages of the conversation id=" + conversationId);
+    }
+
+    /** Loads the messages, to which the messages replied, and the replies to them, which are not cached yet */
+    private List<T> cacheLinkedMessages(T oMsg, List<Long> inReplyToIds, List<Long> msgIds, long conversationId) {
+        List<T> added = new ArrayList<>();
+        for (int from = 0; from < inReplyToIds.size() || from < msgIds.size(); from += MAX_IDS_IN_QUERY) {
+            String selection = "";
+            if (from < inReplyToIds.size()) {
+                selection = ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable._ID + " IN ("
+                        + TextUtils.join(",", subList(inReplyToIds, from)) + ")";
+            }
+            if (from < msgIds.size()) {
+                // Replies of the same conversation are cached already
+                selection += (TextUtils.isEmpty(selection) ? "" : " OR ")
+                        + "(" + ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.IN_REPLY_TO_MSG_ID + " IN ("
+                        + TextUtils.join(",", subList(msgIds, from)) + ")"
+                        + (conversationId == 0 ? "" : " AND IFNULL(" + ProjectionMap.MSG_TABLE_ALIAS + "."
+                        + MsgTable.CONVERSATION_ID + ",0)!=" + conversationId)
+                        + ")";
+            }
+            added.addAll(cacheMessages(oMsg, selection));
+        }
+        return added;
+    }
+
+    private static List<Long> subList(List<Long> ids, int from) {
+        return ids.subList(from, Math.min(ids.size(), from + MAX_IDS_IN_QUERY));
+    }
+
+    /** @return messages, which were not cached before */
+    private List<T> cacheMessages(T oMsg, String selection) {
+        List<T> added = new ArrayList<>();
         Uri uri = MatchedUri.getTimelineUri(
                 Timeline.getTimeline(TimelineType.EVERYTHING, ma, 0, null));
         Cursor cursor = null;
@@ -58,43 +118,62 @@ public class RecursiveConversationLoader<T extends ConversationItem> extends Con
             cursor = myContext.context().getContentResolver().query(uri, oMsg.getProjection(),
                     selection, null, null);
             if (cursor != null) {
+                MessageRowMapper row = new MessageRowMapper(cursor);
                 while (cursor.moveToNext()) {
-                    T oMsg2 = newOMsg(DbUtils.getLong(cursor, BaseColumns._ID));
-                    oMsg2.load(cursor);
-                    cachedMessages.put(oMsg2.getMsgId(), oMsg2);
+                    long msgId = row.getLong(row.msgId);
+                    if (!cachedMessages.containsKey(msgId)) {
+                        T oMsg2 = newOMsg(msgId);
+                        oMsg2.load(row);
+                        cachedMessages.put(msgId, oMsg2);
+                        added.add(oMsg2);
+                    }
                 }
             }
         } finally {
             DbUtils.closeSilently(cursor);
         }
+        return added;
     }
 
-    private void findPreviousMessagesRecursively(T oMsg) {
-        if (!addMessageIdToFind(oMsg.getMsgId())) {
-            return;
-        }
-        findRepliesRecursively(oMsg);
-        MyLog.v(this, "findPreviousMessages id=" + oMsg.getMsgId() + " replies:" + oMsg.mNReplies);
-        loadMessageFromDatabase(oMsg);
-        if (oMsg.isLoaded()) {
-            if (addMessageToList(oMsg)) {
-                if (oMsg.inReplyToMsgId != 0) {
-                    findPreviousMessagesRecursively(getOMsg(oMsg.inReplyToMsgId,
-                            oMsg.replyLevel - 1));
+    /** Walks the cached conversation from the selected message to its ancestors and to all replies */
+    private void findConversationMessages(T selectedMsg) {
+        LongMap<List<T>> replies = new LongMap<>();
+        for (T item : cachedMessages.values()) {
+            if (item.inReplyToMsgId != 0) {
+                List<T> list = replies.get(item.inReplyToMsgId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    replies.put(item.inReplyToMsgId, list);
                 }
+                list.add(item);
             }
-        } else if (mAllowLoadingFromInternet) {
-            loadFromInternet(oMsg.getMsgId());
         }
-    }
-
-    public void findRepliesRecursively(T oMsg) {
-        MyLog.v(this, "findReplies for id=" + oMsg.getMsgId());
-        for (T oMsgReply : cachedMessages.values()) {
-            if (oMsgReply.inReplyToMsgId == oMsg.getMsgId()) {
+        Deque<T> toFind = new ArrayDeque<>();
+        toFind.add(selectedMsg);
+        while (!toFind.isEmpty()) {
+            T oMsg = toFind.poll();
+            if (!addMessageIdToFind(oMsg.getMsgId())) {
+                continue;
+            }
+            List<T> oMsgReplies = replies.get(oMsg.getMsgId());
+            if (oMsgReplies == null) {
+                oMsgReplies = Collections.emptyList();
+            }
+            for (T oMsgReply : oMsgReplies) {
                 oMsg.mNReplies++;
                 oMsgReply.replyLevel = oMsg.replyLevel + 1;
-                findPreviousMessagesRecursively(oMsgReply);
+                toFind.add(oMsgReply);
+            }
+            MyLog.v(this, "findConversationMessages id=" + oMsg.getMsgId() + " replies:" + oMsg.mNReplies);
+            if (oMsg.isLoaded()) {
+                if (addMessageToList(oMsg) && oMsg.inReplyToMsgId != 0) {
+                    toFind.add(getOMsg(oMsg.inReplyToMsgId, oMsg.replyLevel - 1));
+                }
+            } else {
+                MyLog.v(this, "Message id=" + oMsg.getMsgId() + " is not loaded yet");
+                if (mAllowLoadingFromInternet) {
+                    loadFromInternet(oMsg.getMsgId());
+                }
             }
         }
     }
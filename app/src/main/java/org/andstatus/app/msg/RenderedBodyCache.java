@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.msg;
+
+import android.support.annotation.NonNull;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import org.andstatus.app.util.MyUrlSpan;
+
+/**
+ * Message bodies, rendered from HTML, by message id. The rendering is done when a row is bound to a view,
+ * so the cache is small: it is for rows, which are shown again while a list is scrolled back and forth
+ * @author yvolk@yurivolkov.com
+ */
+class RenderedBodyCache {
+    static final int MAX_SIZE = 200;
+    private static final LruCache<Long, RenderedBody> cache = new LruCache<>(MAX_SIZE);
+
+    private static class RenderedBody {
+        final String body;
+        final Spanned spanned;
+
+        RenderedBody(String body, Spanned spanned) {
+            this.body = body;
+            this.spanned = spanned;
+        }
+    }
+
+    private RenderedBodyCache() {
+        // Empty
+    }
+
+    /** @return null for an empty body, see {@link MyUrlSpan#showSpanned} */
+    static Spanned get(long msgId, @NonNull String body) {
+        if (TextUtils.isEmpty(body)) {
+            return null;
+        }
+        RenderedBody rendered = msgId == 0 ? null : cache.get(msgId);
+        if (rendered == null || !rendered.body.equals(body)) {
+            rendered = new RenderedBody(body, MyUrlSpan.toSpanned(body));
+            if (msgId != 0) {
+                cache.put(msgId, rendered);
+            }
+        }
+        return rendered.spanned;
+    }
+}
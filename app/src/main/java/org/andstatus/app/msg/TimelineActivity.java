@@ -723,14 +723,11 @@ public class TimelineActivity extends MessageEditorListActivity implements
         return listData;
     }
 
-    private TimelineData setAndGetListData(TimelinePage pageLoaded) {
-        TimelineData dataNew = new TimelineData(listData, pageLoaded);
+    private TimelineData setAndGetListData(TimelineLoader loader) {
+        TimelineData dataNew = loader.getDataMerged(listData);
+        // Collapsing modifies items, which are shown by the current adapter, so this is done in the UI thread
+        dataNew.collapseDuplicates(dataNew.isCollapseDuplicates(), 0);
         listData = dataNew;
-        TimelineAdapter listAdapter = getListAdapter();
-        if (listAdapter != null) {
-            // Old value of listData is modified also
-            listAdapter.notifyDataSetChanged();
-        }
         return dataNew;
     }
 
@@ -815,14 +812,18 @@ public class TimelineActivity extends MessageEditorListActivity implements
                 intent.setData(params.getContentUri());
             }
         }
-        return new TimelineLoader(params, BundleUtils.fromBundle(args, IntentExtra.INSTANCE_ID));
+        TimelineLoader loader = new TimelineLoader(params, BundleUtils.fromBundle(args, IntentExtra.INSTANCE_ID));
+        if (params.whichPage != WhichPage.EMPTY) {
+            loader.setDataToMergeWith(listData);
+        }
+        return loader;
     }
 
     @Override
     public void onLoadFinished(boolean keepCurrentPosition_in) {
         final String method = "onLoadFinished";
         verboseListPositionLog(method, "started");
-        TimelineData dataLoaded = setAndGetListData(((TimelineLoader) getLoaded()).getPage());
+        TimelineData dataLoaded = setAndGetListData((TimelineLoader) getLoaded());
         MyLog.v(this, method + "; " + dataLoaded.params.toSummary());
 
         // TODO start: Move this inside superclass
@@ -121,21 +121,9 @@ public class TimelineAdapter extends MessageListAdapter<TimelineViewItem> {
         }
     }
 
+    /** Children of collapsed items are found also */
     @Override
     public int getPositionById(long itemId) {
-        int position = super.getPositionById(itemId);
-        if (position < 0 && listData.isCollapseDuplicates()) {
-            for (int position2 = 0; position2 < getCount(); position2++) {
-                TimelineViewItem item = getItem(position2);
-                if (item.isCollapsed()) {
-                    for (TimelineViewItem child : item.getChildren()) {
-                        if (child.getMsgId() == itemId) {
-                            return position2;
-                        }
-                    }
-                }
-            }
-        }
-        return position;
+        return itemId == 0 ? -1 : listData.getPositionById(itemId);
     }
 }
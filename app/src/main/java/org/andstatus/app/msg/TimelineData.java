@@ -17,48 +17,83 @@
 package org.andstatus.app.msg;
 
 import android.support.annotation.NonNull;
-import android.support.v4.util.Pair;
 
 import org.andstatus.app.WhichPage;
 import org.andstatus.app.list.ListData;
 import org.andstatus.app.util.MyLog;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
+ * A snapshot of a timeline: pages and their lists of items are never modified, they are replaced instead.
+ * So a snapshot may be created (merged with a newly loaded page) not in the UI thread,
+ * while the previous snapshot is being shown.
+ * Items are found by their message ids in O(1), see {@link #getPositionById(long)}
  * @author yvolk@yurivolkov.com
  */
 public class TimelineData extends ListData {
     private static final int MAX_PAGES_COUNT = 5;
-    final List<TimelinePage> pages;
+    /** Unmodifiable */
+    volatile List<TimelinePage> pages;
     final long updatedAt = MyLog.uniqueCurrentTimeMS();
     final TimelineListParameters params;
     final boolean isSameTimeline;
+    /** Built lazily for the current {@link #pages} */
+    private volatile Index index = null;
 
+    /** Positions of items of the pages */
+    private static class Index {
+        /** Position of the first item of each page */
+        final int[] pageStarts;
+        final int size;
+        /** Message id to the position. Children of a collapsed item have the position of their parent */
+        final Map<Long, Integer> positions;
+
+        Index(List<TimelinePage> pages) {
+            pageStarts = new int[pages.size()];
+            int count = 0;
+            for (int ind = 0; ind < pages.size(); ind++) {
+                pageStarts[ind] = count;
+                count += pages.get(ind).items.size();
+            }
+            size = count;
+            positions = new HashMap<>(size * 2);
+            int position = 0;
+            for (TimelinePage page : pages) {
+                for (TimelineViewItem item : page.items) {
+                    positions.put(item.getMsgId(), position);
+                    for (TimelineViewItem child : item.getChildren()) {
+                        positions.put(child.getMsgId(), position);
+                    }
+                    position++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the page with the pages of the old data (the old data is not changed).
+     * Duplicates are not collapsed here, because collapsing modifies items, shared with the old data,
+     * see {@link #collapseDuplicates(boolean, long)}
+     */
     public TimelineData(TimelineData oldData, @NonNull TimelinePage thisPage) {
         super(oldData);
         this.params = thisPage.params;
         isSameTimeline = oldData != null &&
                 params.getContentUri().equals(oldData.params.getContentUri());
-        this.pages = isSameTimeline ? copyPages(oldData.pages) : new ArrayList<TimelinePage>();
-        addThisPage(thisPage);
-        collapseDuplicates(isCollapseDuplicates(), 0);
-        dropExcessivePage(thisPage);
+        List<TimelinePage> pagesNew = isSameTimeline ? new ArrayList<>(oldData.pages) : new ArrayList<TimelinePage>();
+        addThisPage(pagesNew, new TimelinePage(thisPage.params, new ArrayList<>(thisPage.items)));
+        dropExcessivePage(pagesNew, thisPage);
+        pages = Collections.unmodifiableList(pagesNew);
     }
 
-    private List<TimelinePage> copyPages(List<TimelinePage> pages) {
-        ArrayList<TimelinePage> copiedPages = new ArrayList<>();
-        for (TimelinePage page : pages) {
-            copiedPages.add(page);
-        }
-        return copiedPages;
-    }
-
-    private void dropExcessivePage(TimelinePage lastLoadedPage) {
+    private static void dropExcessivePage(List<TimelinePage> pages, TimelinePage lastLoadedPage) {
         if (pages.size() > MAX_PAGES_COUNT) {
             if (lastLoadedPage.params.whichPage == WhichPage.YOUNGER) {
                 pages.remove(pages.size() - 1);
@@ -68,14 +103,14 @@ public class TimelineData extends ListData {
         }
     }
 
-    private void addThisPage(TimelinePage page) {
+    private void addThisPage(List<TimelinePage> pages, TimelinePage page) {
         switch (page.params.whichPage) {
             case YOUNGEST:
-                if (mayHaveYoungerPage()) {
+                if (pages.size() == 0 || pages.get(0).params.mayHaveYoungerPage()) {
                     pages.clear();
                     pages.add(page);
                 } else {
-                    removeDuplicatesWithOlder(page, 1);
+                    page = removeDuplicatesWithOlder(pages, page, 1);
                     pages.remove(0);
                     pages.add(0, page);
                 }
@@ -86,11 +121,11 @@ public class TimelineData extends ListData {
                 pages.add(page);
                 break;
             case OLDER:
-                removeDuplicatesWithYounger(page, pages.size() - 1);
+                page = removeDuplicatesWithYounger(pages, page, pages.size() - 1);
                 pages.add(page);
                 break;
             case YOUNGER:
-                removeDuplicatesWithOlder(page, 0);
+                page = removeDuplicatesWithOlder(pages, page, 0);
                 pages.add(0, page);
                 break;
             default:
@@ -101,16 +136,21 @@ public class TimelineData extends ListData {
                     int found = -1;
                     for (int ind = 0; ind < pages.size(); ind++) {
                         TimelinePage p = pages.get(ind);
-                        if (p.params.maxSentDate == page.params.maxSentDate
-                                && p.params.minSentDate == page.params.minSentDate) {
+                        if (compareMaxKeys(p.params, page.params) == 0
+                                && compareMinKeys(p.params, page.params) == 0) {
                             found = ind;
                             break;
                         }
                     }
                     if (found >= 0) {
-                        removeDuplicatesWithYounger(page, found - 1);
-                        removeDuplicatesWithOlder(page, found + 1);
                         pages.remove(found);
+                        int sizeBefore = pages.size();
+                        page = removeDuplicatesWithYounger(pages, page, found - 1);
+                        if (pages.size() < sizeBefore) {
+                            // The younger page was removed
+                            found--;
+                        }
+                        page = removeDuplicatesWithOlder(pages, page, found);
                         pages.add(found, page);
                     } else {
                         pages.add(page);
@@ -120,125 +160,149 @@ public class TimelineData extends ListData {
         }
     }
 
-    private void removeDuplicatesWithYounger(TimelinePage page, int indExistingPage) {
+    /** @return the page without items, which are on the existing younger page */
+    private TimelinePage removeDuplicatesWithYounger(List<TimelinePage> pages, TimelinePage page,
+                                                     int indExistingPage) {
         if (indExistingPage < 0 || indExistingPage >= pages.size()
                 || pages.get(indExistingPage).items.isEmpty() || page.items.isEmpty()) {
-            return;
+            return page;
         }
         TimelinePage ePage = pages.get(indExistingPage);
-        if (ePage.params.maxSentDate > 0 && page.params.maxSentDate >= ePage.params.maxSentDate) {
+        if (ePage.params.maxSentDate > 0 && compareMaxKeys(page.params, ePage.params) >= 0) {
             MyLog.v(this, "Previous younger page removed");
             pages.remove(indExistingPage);
-            return;
+            return page;
         }
-        long edgeDate =  ePage.params.minSentDateLoaded;
-        List<TimelineViewItem> toRemove = new ArrayList<>();
-        for (int ind = 0; ind < page.items.size(); ind++) {
-            TimelineViewItem item = page.items.get(ind);
-            if (item.sentDate < edgeDate) {
-                break;
+        long edgeDate = ePage.params.minSentDateLoaded;
+        Map<Long, TimelineViewItem> existing = toMapById(ePage.items);
+        List<TimelineViewItem> items = new ArrayList<>(page.items.size());
+        for (TimelineViewItem item : page.items) {
+            TimelineViewItem eItem = existing.get(item.getMsgId());
+            if (eItem != null) {
+                mergeWithExisting(item, eItem);
             } else if (item.sentDate > edgeDate) {
                 MyLog.e(this, "This page has an item younger than on a younger page: " + item);
-                toRemove.add(item);
             } else {
-                for (int eInd = ePage.items.size() - 1; eInd >= 0; eInd--) {
-                    TimelineViewItem eItem = ePage.items.get(eInd);
-                    if (eItem.sentDate > item.sentDate) {
-                        break;
-                    }
-                    if (eItem.getMsgId() == item.getMsgId()) {
-                        mergeWithExisting(item, eItem);
-                        toRemove.add(item);
-                        break;
-                    }
-                }
+                items.add(item);
             }
         }
-        page.items.removeAll(toRemove);
+        return items.size() == page.items.size() ? page : new TimelinePage(page.params, items);
+    }
+
+    /** Compares upper bounds of pages, a bound without a message id includes all messages of its date */
+    private static int compareMaxKeys(TimelineListParameters p1, TimelineListParameters p2) {
+        if (p1.maxSentDate != p2.maxSentDate) {
+            return p1.maxSentDate > p2.maxSentDate ? 1 : -1;
+        }
+        long id1 = p1.maxSentDateMsgId == 0 ? Long.MAX_VALUE : p1.maxSentDateMsgId;
+        long id2 = p2.maxSentDateMsgId == 0 ? Long.MAX_VALUE : p2.maxSentDateMsgId;
+        return id1 == id2 ? 0 : (id1 > id2 ? 1 : -1);
+    }
+
+    /** Compares lower bounds of pages, a bound without a message id includes all messages of its date */
+    private static int compareMinKeys(TimelineListParameters p1, TimelineListParameters p2) {
+        if (p1.minSentDate != p2.minSentDate) {
+            return p1.minSentDate > p2.minSentDate ? 1 : -1;
+        }
+        long id1 = p1.minSentDateMsgId == 0 ? Long.MIN_VALUE : p1.minSentDateMsgId;
+        long id2 = p2.minSentDateMsgId == 0 ? Long.MIN_VALUE : p2.minSentDateMsgId;
+        return id1 == id2 ? 0 : (id1 > id2 ? 1 : -1);
     }
 
     private void mergeWithExisting(TimelineViewItem newItem, TimelineViewItem existingItem) {
         // TODO: Merge something...
     }
 
-    private void removeDuplicatesWithOlder(TimelinePage page, int indExistingPage) {
+    /** @return the page without items, which are on the existing older page */
+    private TimelinePage removeDuplicatesWithOlder(List<TimelinePage> pages, TimelinePage page,
+                                                   int indExistingPage) {
         if (indExistingPage < 0 || indExistingPage >= pages.size()
                 || pages.get(indExistingPage).items.isEmpty() || page.items.isEmpty()) {
-            return;
+            return page;
         }
         TimelinePage ePage = pages.get(indExistingPage);
-        if (page.params.minSentDate <= ePage.params.minSentDate) {
+        if (compareMinKeys(page.params, ePage.params) <= 0) {
             MyLog.v(this, "Previous older page removed");
             pages.remove(indExistingPage);
-            return;
+            return page;
         }
         long edgeDate = ePage.params.maxSentDateLoaded;
-        List<TimelineViewItem> toRemove = new ArrayList<>();
-        for (int ind = page.items.size() - 1; ind >= 0; ind--) {
-            TimelineViewItem item = page.items.get(ind);
-            if ( item.sentDate > edgeDate) {
-                break;
+        Map<Long, TimelineViewItem> existing = toMapById(ePage.items);
+        List<TimelineViewItem> items = new ArrayList<>(page.items.size());
+        for (TimelineViewItem item : page.items) {
+            TimelineViewItem eItem = existing.get(item.getMsgId());
+            if (eItem != null) {
+                mergeWithExisting(item, eItem);
             } else if (item.sentDate < edgeDate) {
                 MyLog.e(this, "This page has an item older than on an older page: " + item);
-                toRemove.add(item);
             } else {
-                for (int eInd = 0; eInd < ePage.items.size(); eInd++) {
-                    TimelineViewItem eItem = ePage.items.get(eInd);
-                    if (eItem.sentDate < item.sentDate) {
-                        break;
-                    }
-                    if (eItem.getMsgId() == item.getMsgId()) {
-                        mergeWithExisting(item, eItem);
-                        toRemove.add(item);
-                        break;
-                    }
-                }
+                items.add(item);
             }
         }
-        page.items.removeAll(toRemove);
+        return items.size() == page.items.size() ? page : new TimelinePage(page.params, items);
+    }
+
+    private static Map<Long, TimelineViewItem> toMapById(List<TimelineViewItem> items) {
+        Map<Long, TimelineViewItem> map = new HashMap<>(items.size() * 2);
+        for (TimelineViewItem item : items) {
+            map.put(item.getMsgId(), item);
+        }
+        return map;
+    }
+
+    @NonNull
+    private Index getIndex() {
+        Index indexLocal = index;
+        if (indexLocal == null) {
+            indexLocal = new Index(pages);
+            index = indexLocal;
+        }
+        return indexLocal;
+    }
+
+    private void setPages(List<TimelinePage> pagesNew) {
+        pages = Collections.unmodifiableList(pagesNew);
+        index = null;
     }
 
     @Override
     public int size() {
-        int count = 0;
-        for (TimelinePage page : pages) {
-            count += page.items.size();
-        }
-        return count;
+        return getIndex().size;
     }
 
     @Override
     public TimelineViewItem getItem(int position) {
-        int firstPosition = 0;
-        for (TimelinePage page : pages) {
-            if (position < firstPosition) {
-                break;
-            }
-            if (position < firstPosition + page.items.size()) {
-                return page.items.get(position - firstPosition);
+        List<TimelinePage> pagesLocal = pages;
+        Index indexLocal = getIndex();
+        if (position >= 0 && position < indexLocal.size) {
+            for (int ind = indexLocal.pageStarts.length - 1; ind >= 0; ind--) {
+                if (position >= indexLocal.pageStarts[ind]) {
+                    return pagesLocal.get(ind).items.get(position - indexLocal.pageStarts[ind]);
+                }
             }
-            firstPosition += page.items.size();
         }
         return TimelineViewItem.getEmpty();
     }
 
     public TimelineViewItem getById(long itemId) {
-        for (TimelinePage page : pages) {
-            for (TimelineViewItem item : page.items) {
-                if (item.getMsgId() == itemId) {
-                    return item;
-                }
-            }
-        }
-        return TimelineViewItem.getEmpty();
+        TimelineViewItem item = getItem(getPositionById(itemId));
+        return item.getMsgId() == itemId ? item : TimelineViewItem.getEmpty();
+    }
+
+    /** @return position of the item or of its collapsed parent, -1 if not found */
+    public int getPositionById(long itemId) {
+        Integer position = getIndex().positions.get(itemId);
+        return position == null ? -1 : position;
     }
 
     public boolean mayHaveYoungerPage() {
-        return pages.size() == 0 || pages.get(0).params.mayHaveYoungerPage();
+        List<TimelinePage> pagesLocal = pages;
+        return pagesLocal.size() == 0 || pagesLocal.get(0).params.mayHaveYoungerPage();
     }
 
     public boolean mayHaveOlderPage() {
-        return pages.size() == 0 || pages.get(pages.size() - 1).params.mayHaveOlderPage();
+        List<TimelinePage> pagesLocal = pages;
+        return pagesLocal.size() == 0 || pagesLocal.get(pagesLocal.size() - 1).params.mayHaveOlderPage();
     }
 
     @Override
@@ -250,7 +314,7 @@ public class TimelineData extends ListData {
         return MyLog.formatKeyValue(this, s );
     }
 
-    /** For all or for only one item */
+    /** For all or for only one item. Should be called in the UI thread */
     @Override
     public void collapseDuplicates(boolean collapse, long itemId) {
         super.collapseDuplicates(collapse, itemId);
@@ -262,73 +326,84 @@ public class TimelineData extends ListData {
     }
 
     private void collapseDuplicates(long itemId) {
-        Set<Pair<TimelinePage, TimelineViewItem>> toCollapse = new HashSet<>();
+        Set<TimelineViewItem> toCollapse = new HashSet<>();
         innerCollapseDuplicates(itemId, toCollapse);
-        for (Pair<TimelinePage, TimelineViewItem> pair : toCollapse) {
-            pair.first.items.remove(pair.second);
+        if (toCollapse.isEmpty()) {
+            return;
         }
+        List<TimelinePage> pagesNew = new ArrayList<>(pages.size());
+        for (TimelinePage page : pages) {
+            List<TimelineViewItem> items = new ArrayList<>(page.items.size());
+            for (TimelineViewItem item : page.items) {
+                if (!toCollapse.contains(item)) {
+                    items.add(item);
+                }
+            }
+            pagesNew.add(items.size() == page.items.size() ? page : new TimelinePage(page.params, items));
+        }
+        setPages(pagesNew);
     }
 
-    private void innerCollapseDuplicates(long itemId, Collection<Pair<TimelinePage, TimelineViewItem>> toCollapse) {
-        Pair<TimelinePage, TimelineViewItem> parent = new Pair<>(null, null);
-        Set<Pair<TimelinePage, TimelineViewItem>> group = new HashSet<>();
+    private void innerCollapseDuplicates(long itemId, Set<TimelineViewItem> toCollapse) {
+        TimelineViewItem parent = null;
+        List<TimelineViewItem> group = new ArrayList<>();
         for (TimelinePage page : pages) {
             for (TimelineViewItem item : page.items) {
-                Pair<TimelinePage, TimelineViewItem> itemPair =new Pair<>(page, item);
-                switch (item.duplicates(parent.second)) {
+                switch (item.duplicates(parent)) {
                     case DUPLICATES:
                         break;
                     case IS_DUPLICATED:
-                        parent = itemPair;
+                        parent = item;
                         break;
                     default:
                         if (collapseThisGroup(itemId, parent, group, toCollapse)) {
                             return;
                         }
                         group.clear();
-                        parent = itemPair;
+                        parent = item;
                         break;
                 }
-                group.add(itemPair);
+                group.add(item);
             }
         }
         collapseThisGroup(itemId, parent, group, toCollapse);
     }
 
-    private boolean collapseThisGroup(long itemId, Pair<TimelinePage, TimelineViewItem> parent, Set<Pair<TimelinePage, TimelineViewItem>> group, Collection<Pair<TimelinePage, TimelineViewItem>> toCollapse) {
+    private boolean collapseThisGroup(long itemId, TimelineViewItem parent, List<TimelineViewItem> group,
+                                      Set<TimelineViewItem> toCollapse) {
         if (group.isEmpty()) {
             return false;
         }
 
         boolean groupOfSelectedItem = false;
         if (itemId != 0) {
-            for (Pair<TimelinePage, TimelineViewItem> itemPair : group) {
-                if (itemId == itemPair.second.getMsgId()) {
+            for (TimelineViewItem item : group) {
+                if (itemId == item.getMsgId()) {
                     groupOfSelectedItem = true;
                     break;
                 }
             }
         }
         if (groupOfSelectedItem) {
-            for (Pair<TimelinePage, TimelineViewItem> itemPair : group) {
-                setIndividualCollapsedStatus(true, itemPair.second.getMsgId());
+            for (TimelineViewItem item : group) {
+                setIndividualCollapsedStatus(true, item.getMsgId());
             }
         }
 
         boolean hasIndividualCollapseState = false;
         if (!groupOfSelectedItem && !individualCollapsedStateIds.isEmpty()) {
-            for (Pair<TimelinePage, TimelineViewItem> itemPair : group) {
-                if (individualCollapsedStateIds.contains(itemPair.second.getMsgId())) {
+            for (TimelineViewItem item : group) {
+                if (individualCollapsedStateIds.contains(item.getMsgId())) {
                     hasIndividualCollapseState = true;
                     break;
                 }
             }
         }
         if (!hasIndividualCollapseState) {
-            for (Pair<TimelinePage, TimelineViewItem> itemPair : group) {
-                if (!parent.equals(itemPair)) {
-                    parent.second.collapse(itemPair.second);
-                    toCollapse.add(itemPair);
+            for (TimelineViewItem item : group) {
+                if (parent != item) {
+                    parent.collapse(item);
+                    toCollapse.add(item);
                 }
             }
         }
@@ -336,19 +411,38 @@ public class TimelineData extends ListData {
     }
 
     private void showDuplicates(long itemId) {
+        List<TimelinePage> pagesNew = new ArrayList<>(pages.size());
+        boolean changed = false;
+        boolean found = false;
         for (TimelinePage page : pages) {
-            for (int ind = page.items.size() - 1; ind >= 0; ind--) {
-                if (page.items.get(ind).isCollapsed()) {
-                    if (showDuplicatesOfOneItem(itemId, page, ind)) {
-                        return;
+            if (found) {
+                pagesNew.add(page);
+                continue;
+            }
+            List<TimelineViewItem> items = new ArrayList<>(page.items.size());
+            boolean pageChanged = false;
+            for (TimelineViewItem item : page.items) {
+                items.add(item);
+                if (!found && item.isCollapsed()) {
+                    List<TimelineViewItem> children = new ArrayList<>(item.getChildren());
+                    found = showDuplicatesOfOneItem(itemId, item);
+                    if (!item.isCollapsed()) {
+                        items.addAll(children);
+                        pageChanged = true;
                     }
                 }
             }
+            pagesNew.add(pageChanged ? new TimelinePage(page.params, items) : page);
+            changed |= pageChanged;
+        }
+        if (changed) {
+            setPages(pagesNew);
         }
     }
 
-    private boolean showDuplicatesOfOneItem(long itemId, TimelinePage page, int ind) {
-        TimelineViewItem item = page.items.get(ind);
+    /** Expands the item, unless it has individual collapsed state
+     * @return true if this is a group of the selected item */
+    private boolean showDuplicatesOfOneItem(long itemId, TimelineViewItem item) {
         boolean groupOfSelectedItem = itemId == item.getMsgId();
         if (itemId != 0 && !groupOfSelectedItem) {
             for (TimelineViewItem child : item.getChildren()) {
@@ -375,10 +469,6 @@ public class TimelineData extends ListData {
             }
         }
         if (!hasIndividualCollapseState && (itemId == 0 || groupOfSelectedItem)) {
-            int ind2 = ind + 1;
-            for (TimelineViewItem child : item.getChildren()) {
-                page.items.add(ind2++, child);
-            }
             item.getChildren().clear();
         }
         return groupOfSelectedItem;
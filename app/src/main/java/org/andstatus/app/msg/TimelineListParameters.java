@@ -27,6 +27,7 @@ import org.andstatus.app.IntentExtra;
 import org.andstatus.app.WhichPage;
 import org.andstatus.app.account.MyAccount;
 import org.andstatus.app.context.MyContext;
+import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.data.MatchedUri;
 import org.andstatus.app.data.ParsedUri;
 import org.andstatus.app.data.ProjectionMap;
@@ -40,6 +41,7 @@ import org.andstatus.app.timeline.TimelineTitle;
 import org.andstatus.app.timeline.TimelineType;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.SelectionAndArgs;
+import org.andstatus.app.util.SharedPreferencesUtil;
 
 import java.util.Date;
 
@@ -53,15 +55,21 @@ public class TimelineListParameters {
      * are being loaded in a case User scrolls down to the end of list.
      */
     static final int PAGE_SIZE = 200;
+    private static final String KEYSET_MSG_ID = ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable._ID;
     Timeline timeline = Timeline.EMPTY;
 
     WhichPage whichPage = WhichPage.EMPTY;
     String[] mProjection;
 
     long maxSentDate = 0;
+    /** If not 0, the page ends before this message, sent at {@link #maxSentDate}:
+     * a page boundary is a (sentDate, msgId) key, so no rows are repeated or skipped at the boundary */
+    long maxSentDateMsgId = 0;
 
     // These params are updated just before page loading
     volatile long minSentDate = 0;
+    /** If not 0, the page starts after this message, sent at {@link #minSentDate} */
+    volatile long minSentDateMsgId = 0;
     volatile SelectionAndArgs selectionAndArgs = new SelectionAndArgs();
     volatile String sortOrderAndLimit = "";
 
@@ -71,7 +79,9 @@ public class TimelineListParameters {
     volatile boolean cancelled = false;
     volatile int rowsLoaded = 0;
     volatile long minSentDateLoaded = 0;
+    volatile long minSentDateLoadedMsgId = 0;
     volatile long maxSentDateLoaded = 0;
+    volatile long maxSentDateLoadedMsgId = 0;
 
     public static TimelineListParameters clone(TimelineListParameters prev, WhichPage whichPage) {
         TimelineListParameters params = new TimelineListParameters(prev.myContext);
@@ -91,15 +101,19 @@ public class TimelineListParameters {
             case OLDER:
                 if (prev.mayHaveOlderPage()) {
                     params.maxSentDate = prev.minSentDateLoaded;
+                    params.maxSentDateMsgId = prev.minSentDateLoadedMsgId;
                 } else {
                     params.maxSentDate = prev.maxSentDate;
+                    params.maxSentDateMsgId = prev.maxSentDateMsgId;
                 }
                 break;
             case YOUNGER:
                 if (prev.mayHaveYoungerPage()) {
                     params.minSentDate = prev.maxSentDateLoaded;
+                    params.minSentDateMsgId = prev.maxSentDateLoadedMsgId;
                 } else {
                     params.minSentDate = prev.minSentDate;
+                    params.minSentDateMsgId = prev.minSentDateMsgId;
                 }
                 break;
             default:
@@ -116,13 +130,13 @@ public class TimelineListParameters {
 
     public boolean mayHaveYoungerPage() {
         return maxSentDate > 0 ||
-                (minSentDate > 0 && rowsLoaded > 0 && minSentDate < maxSentDateLoaded);
+                (minSentDate > 0 && rowsLoaded > 0 && (minSentDate < maxSentDateLoaded || minSentDateMsgId != 0));
     }
 
     public boolean mayHaveOlderPage() {
         return whichPage.equals(WhichPage.CURRENT) ||
                 minSentDate > 0 ||
-                (maxSentDate > 0 && rowsLoaded > 0 && maxSentDate > minSentDateLoaded);
+                (maxSentDate > 0 && rowsLoaded > 0 && (maxSentDate > minSentDateLoaded || maxSentDateMsgId != 0));
     }
 
     public boolean isSortOrderAscending() {
@@ -149,7 +163,9 @@ public class TimelineListParameters {
                 + (timeline.getUserId() == 0 ? "" : ", selectedUserId=" + timeline.getUserId())
             //    + ", projection=" + Arrays.toString(mProjection)
                 + (minSentDate > 0 ? ", minSentDate=" + new Date(minSentDate).toString() : "")
+                + (minSentDateMsgId != 0 ? ", after msgId=" + minSentDateMsgId : "")
                 + (maxSentDate > 0 ? ", maxSentDate=" + new Date(maxSentDate).toString() : "")
+                + (maxSentDateMsgId != 0 ? ", before msgId=" + maxSentDateMsgId : "")
                 + (selectionAndArgs.isEmpty() ? "" : ", sa=" + selectionAndArgs)
                 + (TextUtils.isEmpty(sortOrderAndLimit) ? "" : ", sortOrder=" + sortOrderAndLimit)
                 + (startTime > 0 ? ", startTime=" + startTime : "")
@@ -192,8 +208,9 @@ public class TimelineListParameters {
         if (!timeline.equals(that.timeline)) return false;
         if (!whichPage.equals(WhichPage.CURRENT) && !that.whichPage.equals(WhichPage.CURRENT)) {
             if (minSentDate != that.minSentDate) return false;
+            if (minSentDateMsgId != that.minSentDateMsgId) return false;
         }
-        return maxSentDate == that.maxSentDate;
+        return maxSentDate == that.maxSentDate && maxSentDateMsgId == that.maxSentDateMsgId;
     }
 
     @Override
@@ -203,15 +220,19 @@ public class TimelineListParameters {
             result = 31 * result + (-1 ^ (-1 >>> 32));
         } else {
             result = 31 * result + (int) (minSentDate ^ (minSentDate >>> 32));
+            result = 31 * result + (int) (minSentDateMsgId ^ (minSentDateMsgId >>> 32));
         }
         result = 31 * result + (int) (maxSentDate ^ (maxSentDate >>> 32));
+        result = 31 * result + (int) (maxSentDateMsgId ^ (maxSentDateMsgId >>> 32));
         return result;
     }
 
     boolean restoreState(@NonNull Bundle savedInstanceState) {
         whichPage = WhichPage.CURRENT;
         minSentDate = 0;
+        minSentDateMsgId = 0;
         maxSentDate = 0;
+        maxSentDateMsgId = 0;
         return parseUri(Uri.parse(savedInstanceState.getString(IntentExtra.MATCHED_URI.key,"")), "");
     }
     
@@ -232,12 +253,16 @@ public class TimelineListParameters {
         return timeline.getMyAccount();
     }
 
-    public void rememberSentDateLoaded(long sentDate) {
-        if (minSentDateLoaded == 0 || minSentDateLoaded > sentDate) {
+    public void rememberSentDateLoaded(long sentDate, long msgId) {
+        if (minSentDateLoaded == 0 || minSentDateLoaded > sentDate
+                || (minSentDateLoaded == sentDate && minSentDateLoadedMsgId > msgId)) {
             minSentDateLoaded = sentDate;
+            minSentDateLoadedMsgId = msgId;
         }
-        if (maxSentDateLoaded == 0 || maxSentDateLoaded < sentDate) {
+        if (maxSentDateLoaded == 0 || maxSentDateLoaded < sentDate
+                || (maxSentDateLoaded == sentDate && maxSentDateLoadedMsgId < msgId)) {
             maxSentDateLoaded = sentDate;
+            maxSentDateLoadedMsgId = msgId;
         }
     }
 
@@ -245,6 +270,7 @@ public class TimelineListParameters {
         switch (whichPage) {
             case CURRENT:
                 minSentDate = (new TimelineListPositionStorage(null, null, this)).getTLPosition().minSentDate;
+                minSentDateMsgId = 0;
                 break;
             default:
                 break;
@@ -253,8 +279,11 @@ public class TimelineListParameters {
         selectionAndArgs = buildSelectionAndArgs();
     }
 
+    /** Message id is a tie breaker for messages, sent at the same time, see {@link #maxSentDateMsgId} */
     private String buildSortOrderAndLimit() {
-        return (isSortOrderAscending() ? MsgTable.ASC_SORT_ORDER : MsgTable.DESC_SORT_ORDER)
+        return (isSortOrderAscending()
+                ? MsgTable.ASC_SORT_ORDER + ", " + KEYSET_MSG_ID + " ASC"
+                : MsgTable.DESC_SORT_ORDER + ", " + KEYSET_MSG_ID + " DESC")
                 + (minSentDate > 0 && maxSentDate > 0 ? "" : " LIMIT " + PAGE_SIZE);
     }
 
@@ -302,14 +331,37 @@ public class TimelineListParameters {
                 break;
         }
 
+        KeywordsFilter keywordsFilter = new KeywordsFilter(
+                SharedPreferencesUtil.getString(MyPreferences.KEY_FILTER_HIDE_MESSAGES_BASED_ON_KEYWORDS, ""));
+        if (!keywordsFilter.isEmpty()) {
+            sa.addSelection(keywordsFilter.getSqlExclusion(ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.BODY_TO_SEARCH),
+                    keywordsFilter.getSqlExclusionArgs());
+        }
+        if (getTimelineType() == TimelineType.HOME
+                && SharedPreferencesUtil.getBoolean(MyPreferences.KEY_FILTER_HIDE_REPLIES_NOT_TO_ME_OR_FRIENDS, false)) {
+            sa.addSelection(TimelineSql.notRepliesOrRepliesToMeOrMyFriends(getMyContext()));
+        }
+
+        // The date range comes first, so the index on the sent date is used, the message id only breaks ties.
+        // Bound values are arguments, so all pages of a timeline share the same compiled statement
         sa.addSelection(ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.SENT_DATE
                         + " >= ?",
                 new String[]{
                         String.valueOf(minSentDate > 0 ? minSentDate : 1)
                 });
+        if (minSentDate > 0 && minSentDateMsgId != 0) {
+            sa.addSelection("(" + ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.SENT_DATE + " > ?"
+                            + " OR " + KEYSET_MSG_ID + " > ?)",
+                    new String[]{String.valueOf(minSentDate), String.valueOf(minSentDateMsgId)});
+        }
         if (maxSentDate > 0) {
             sa.addSelection(ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.SENT_DATE + " <= ?",
                     String.valueOf(maxSentDate));
+            if (maxSentDateMsgId != 0) {
+                sa.addSelection("(" + ProjectionMap.MSG_TABLE_ALIAS + "." + MsgTable.SENT_DATE + " < ?"
+                                + " OR " + KEYSET_MSG_ID + " < ?)",
+                        new String[]{String.valueOf(maxSentDate), String.valueOf(maxSentDateMsgId)});
+            }
         }
         return sa;
     }
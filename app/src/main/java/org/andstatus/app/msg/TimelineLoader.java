@@ -22,16 +22,11 @@ import android.support.annotation.NonNull;
 import org.andstatus.app.LoadableListActivity;
 import org.andstatus.app.SyncLoader;
 import org.andstatus.app.WhichPage;
-import org.andstatus.app.context.MyContextHolder;
-import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.data.DbUtils;
-import org.andstatus.app.timeline.TimelineType;
-import org.andstatus.app.util.I18n;
-import org.andstatus.app.util.MyHtml;
 import org.andstatus.app.util.MyLog;
-import org.andstatus.app.util.SharedPreferencesUtil;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
 * @author yvolk@yurivolkov.com
@@ -42,6 +37,11 @@ public class TimelineLoader extends SyncLoader<TimelineViewItem> {
 
     private final long instanceId;
 
+    /** The data, shown when loading started. The loaded page is merged with it in the background */
+    private volatile TimelineData dataToMergeWith = null;
+    private volatile TimelineData dataMerged = null;
+    private volatile List<TimelinePage> pagesMergedWith = null;
+
     public TimelineLoader(@NonNull TimelineListParameters params, long instanceId) {
         this.params = params;
         this.page = new TimelinePage(getParams(), new ArrayList<TimelineViewItem>());
@@ -58,6 +58,39 @@ public class TimelineLoader extends SyncLoader<TimelineViewItem> {
         }
         params.endTime = System.nanoTime();
         logExecutionStats();
+        mergeWithData();
+    }
+
+    void setDataToMergeWith(TimelineData data) {
+        dataToMergeWith = data;
+    }
+
+    private void mergeWithData() {
+        TimelineData oldData = dataToMergeWith;
+        if (oldData == null || params.cancelled) {
+            return;
+        }
+        List<TimelinePage> oldPages = oldData.pages;
+        dataMerged = new TimelineData(oldData, page);
+        pagesMergedWith = oldPages;
+    }
+
+    /**
+     * @return the loaded page, merged with the current data. The page is merged again (in the current thread),
+     * if the data has changed after it was merged in the background
+     */
+    @NonNull
+    TimelineData getDataMerged(TimelineData currentData) {
+        TimelineData merged = dataMerged;
+        if (merged == null || currentData == null || dataToMergeWith != currentData
+                || pagesMergedWith != currentData.pages
+                || merged.isCollapseDuplicates() != currentData.isCollapseDuplicates()) {
+            merged = new TimelineData(currentData, page);
+        }
+        dataToMergeWith = null;
+        dataMerged = null;
+        pagesMergedWith = null;
+        return merged;
     }
 
     void markStart() {
@@ -89,37 +122,19 @@ public class TimelineLoader extends SyncLoader<TimelineViewItem> {
 
     @NonNull
     private void loadFromCursor(Cursor cursor) {
-        KeywordsFilter keywordsFilter = new KeywordsFilter(
-                SharedPreferencesUtil.getString(MyPreferences.KEY_FILTER_HIDE_MESSAGES_BASED_ON_KEYWORDS, ""));
-        boolean hideRepliesNotToMeOrFriends = getParams().getTimelineType() == TimelineType.HOME
-                && SharedPreferencesUtil.getBoolean(MyPreferences.KEY_FILTER_HIDE_REPLIES_NOT_TO_ME_OR_FRIENDS, false);
-        KeywordsFilter searchQuery = new KeywordsFilter(getParams().getTimeline().getSearchQuery());
-
         long startTime = System.currentTimeMillis();
         int rowsCount = 0;
-        int filteredOutCount = 0;
         if (cursor != null && !cursor.isClosed()) {
             try {
                 if (cursor.moveToFirst()) {
                     boolean reversedOrder = getParams().isSortOrderAscending();
+                    MessageRowMapper row = new MessageRowMapper(cursor);
                     do {
                         rowsCount++;
-                        TimelineViewItem item = TimelineViewItem.fromCursorRow(params.getMyContext(), cursor);
-                        getParams().rememberSentDateLoaded(item.sentDate);
-                        String body = MyHtml.getBodyToSearch(item.getBody());
-                        boolean skip = keywordsFilter.matchedAny(body);
-                        if (!skip && !searchQuery.isEmpty()) {
-                            skip = !searchQuery.matchedAll(body);
-                        }
-                        if (!skip && hideRepliesNotToMeOrFriends && item.inReplyToUserId != 0) {
-                            skip = !MyContextHolder.get().persistentAccounts().isMeOrMyFriend(item.inReplyToUserId);
-                        }
-                        if (skip) {
-                            filteredOutCount++;
-                            if (MyLog.isVerboseEnabled()) {
-                                MyLog.v(this, filteredOutCount + " Filtered out: " + I18n.trimTextAt(body, 100));
-                            }
-                        } else if (reversedOrder) {
+                        TimelineViewItem item = TimelineViewItem.fromCursorRow(params.getMyContext(), row);
+                        getParams().rememberSentDateLoaded(item.sentDate, item.getMsgId());
+                        // Search query and filters are applied by the database, see TimelineListParameters
+                        if (reversedOrder) {
                             page.items.add(0, item);
                         } else {
                             page.items.add(item);
@@ -130,7 +145,7 @@ public class TimelineLoader extends SyncLoader<TimelineViewItem> {
                 cursor.close();
             }
         }
-        MyLog.d(this, "Filtered out " + filteredOutCount + " of " + rowsCount + " rows, "
+        MyLog.d(this, "Loaded " + rowsCount + " rows, "
                 + (System.currentTimeMillis() - startTime) + "ms" );
         getParams().rowsLoaded = rowsCount;
     }
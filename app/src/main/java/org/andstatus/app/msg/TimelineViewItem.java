@@ -15,21 +15,13 @@
  */
 package org.andstatus.app.msg;
 
-import android.database.Cursor;
-import android.text.Html;
 import android.text.TextUtils;
 
 import org.andstatus.app.context.MyContext;
-import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.data.AttachedImageFile;
 import org.andstatus.app.data.AvatarFile;
-import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.data.TimelineSql;
-import org.andstatus.app.database.DownloadTable;
-import org.andstatus.app.database.MsgOfUserTable;
-import org.andstatus.app.database.MsgTable;
-import org.andstatus.app.database.UserTable;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyHtml;
 import org.andstatus.app.util.MyLog;
@@ -44,30 +36,30 @@ public class TimelineViewItem extends MessageViewItem {
         return EMPTY;
     }
 
-    public static TimelineViewItem fromCursorRow(MyContext myContext, Cursor cursor) {
+    public static TimelineViewItem fromCursorRow(MyContext myContext, MessageRowMapper row) {
         TimelineViewItem item = new TimelineViewItem();
         item.setMyContext(myContext);
-        item.setMsgId(DbUtils.getLong(cursor, MsgTable._ID));
-        item.setOriginId(DbUtils.getLong(cursor, MsgTable.ORIGIN_ID));
-        item.setLinkedUserAndAccount(DbUtils.getLong(cursor, UserTable.LINKED_USER_ID));
+        item.setMsgId(row.getLong(row.msgId));
+        item.setOriginId(row.getLong(row.originId));
+        item.setLinkedUserAndAccount(row.getLong(row.linkedUserId));
 
-        item.authorName = TimelineSql.userColumnIndexToNameAtTimeline(cursor,
-                cursor.getColumnIndex(UserTable.AUTHOR_NAME), MyPreferences.getShowOrigin());
-        item.setBody(MyHtml.prepareForView(DbUtils.getString(cursor, MsgTable.BODY)));
-        item.inReplyToMsgId = DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_MSG_ID);
-        item.inReplyToUserId = DbUtils.getLong(cursor, MsgTable.IN_REPLY_TO_USER_ID);
-        item.inReplyToName = DbUtils.getString(cursor, UserTable.IN_REPLY_TO_NAME);
-        item.recipientName = DbUtils.getString(cursor, UserTable.RECIPIENT_NAME);
-        item.favorited = item.isLinkedToMyAccount() && DbUtils.getLong(cursor, MsgOfUserTable.FAVORITED) == 1;
-        item.sentDate = DbUtils.getLong(cursor, MsgTable.SENT_DATE);
-        item.updatedDate = DbUtils.getLong(cursor, MsgTable.UPDATED_DATE);
-        item.msgStatus = DownloadStatus.load(DbUtils.getLong(cursor, MsgTable.MSG_STATUS));
+        item.authorName = TimelineSql.userColumnIndexToNameAtTimeline(row.cursor, row.authorName, row.showOrigin,
+                row.originId, row.authorId);
+        item.setBody(MyHtml.prepareForView(row.getString(row.body)));
+        item.inReplyToMsgId = row.getLong(row.inReplyToMsgId);
+        item.inReplyToUserId = row.getLong(row.inReplyToUserId);
+        item.inReplyToName = row.getString(row.inReplyToName);
+        item.recipientName = row.getString(row.recipientName);
+        item.favorited = item.isLinkedToMyAccount() && row.getLong(row.favorited) == 1;
+        item.sentDate = row.getLong(row.sentDate);
+        item.updatedDate = row.getLong(row.updatedDate);
+        item.msgStatus = DownloadStatus.load(row.getLong(row.msgStatus));
 
-        item.authorId = DbUtils.getLong(cursor, MsgTable.AUTHOR_ID);
+        item.authorId = row.getLong(row.authorId);
 
-        long senderId = DbUtils.getLong(cursor, MsgTable.ACTOR_ID);
+        long senderId = row.getLong(row.actorId);
         if (senderId != item.authorId) {
-            String senderName = DbUtils.getString(cursor, UserTable.SENDER_NAME);
+            String senderName = row.getString(row.senderName);
             if (TextUtils.isEmpty(senderName)) {
                 senderName = "(id" + senderId + ")";
             }
@@ -75,22 +67,16 @@ public class TimelineViewItem extends MessageViewItem {
         }
 
         if (item.isLinkedToMyAccount()) {
-            if (DbUtils.getInt(cursor, MsgOfUserTable.REBLOGGED) == 1) {
+            if (row.getLong(row.reblogged) == 1) {
                 item.addReblogger(item.getLinkedMyAccount().getUserId(), item.getLinkedMyAccount().getAccountName());
                 item.reblogged = true;
             }
         }
 
-        String via = DbUtils.getString(cursor, MsgTable.VIA);
-        if (!TextUtils.isEmpty(via)) {
-            item.messageSource = Html.fromHtml(via).toString().trim();
-        }
-
-        item.avatarFile = AvatarFile.fromCursor(item.authorId, cursor);
-        if (MyPreferences.getDownloadAndDisplayAttachedImages()) {
-            item.attachedImageFile = new AttachedImageFile(
-                    DbUtils.getLong(cursor, DownloadTable.IMAGE_ID),
-                    DbUtils.getString(cursor, DownloadTable.IMAGE_FILE_NAME));
+        item.via = row.getString(row.via);
+        item.avatarFile = new AvatarFile(item.authorId, row.getString(row.avatarFileName));
+        if (row.showAttachedImages) {
+            item.attachedImageFile = new AttachedImageFile(row.getLong(row.imageId), row.getString(row.imageFileName));
         }
         return item;
     }
@@ -40,6 +40,8 @@ public class ConnectionException extends IOException {
         FORBIDDEN, INTERNAL_SERVER_ERROR, BAD_GATEWAY, SERVICE_UNAVAILABLE, MOVED,
         REQUEST_ENTITY_TOO_LARGE,
         LENGTH_REQUIRED,
+        /** Quota of requests is exhausted, see {@link RateLimits} */
+        TOO_MANY_REQUESTS,
         CLIENT_ERROR,
         SERVER_ERROR;
         
@@ -65,6 +67,8 @@ public class ConnectionException extends IOException {
                     return LENGTH_REQUIRED;
                 case 413:
                     return REQUEST_ENTITY_TOO_LARGE;
+                case 429:
+                    return TOO_MANY_REQUESTS;
                 case 500:
                     return INTERNAL_SERVER_ERROR;
                 case 502:
@@ -151,8 +155,10 @@ public class ConnectionException extends IOException {
         this.isHardError = isHardFromStatusCode(isHardIn, statusCode);
     }
 
+    /** Exhausted quota of requests is a soft error: the command should be retried later */
     private static boolean isHardFromStatusCode(boolean isHardIn, StatusCode statusCode) {
-        return isHardIn || (statusCode != StatusCode.UNKNOWN && statusCode != StatusCode.OK);
+        return isHardIn || (statusCode != StatusCode.UNKNOWN && statusCode != StatusCode.OK
+                && statusCode != StatusCode.TOO_MANY_REQUESTS);
     }
 
     public StatusCode getStatusCode() {
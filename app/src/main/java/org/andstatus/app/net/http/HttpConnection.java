@@ -54,6 +54,16 @@ public abstract class HttpConnection {
         return UrlUtils.pathToUrlString(data.originUrl, path, errorOnInvalidUrls());
     }
 
+    /** See {@link RateLimits#getDelayMs(HttpConnectionData, String)} */
+    public long getRateLimitDelayMs(String path) {
+        try {
+            return RateLimits.getDelayMs(data, pathToUrlString(path));
+        } catch (ConnectionException e) {
+            MyLog.v(this, "getRateLimitDelayMs; path:'" + path + "'", e);
+            return 0;
+        }
+    }
+
     public boolean errorOnInvalidUrls() {
         return true;
     }
@@ -87,7 +97,12 @@ public abstract class HttpConnection {
         if( result.hasFormParams()) {
             MyLog.logNetworkLevelMessage("post_form", data.getLogName(), result.getFormParams());
         }
-        postRequest(result);
+        RateLimits.onRequest(data, result);
+        try {
+            postRequest(result);
+        } finally {
+            RateLimits.onResponse(data, result);
+        }
         MyLog.logNetworkLevelMessage("post_response", data.getLogName(), result.strResponse);
         result.parseAndThrow();
         return result.getJsonObject();
@@ -104,12 +119,25 @@ public abstract class HttpConnection {
     }
     
     private HttpReadResult getRequestCommon(String path, boolean authenticated) throws ConnectionException {
+        HttpReadResult result = newGetRequestResult(path);
+        result.authenticate = authenticated;
+        return getRequestCommon(result);
+    }
+
+    private HttpReadResult newGetRequestResult(String path) throws ConnectionException {
         if (TextUtils.isEmpty(path)) {
             throw new IllegalArgumentException("path is empty");
         }
-        HttpReadResult result = new HttpReadResult(pathToUrlString(path));
-        result.authenticate = authenticated;
-        getRequest(result);
+        return new HttpReadResult(pathToUrlString(path));
+    }
+
+    private HttpReadResult getRequestCommon(HttpReadResult result) throws ConnectionException {
+        RateLimits.onRequest(data, result);
+        try {
+            getRequest(result);
+        } finally {
+            RateLimits.onResponse(data, result);
+        }
         MyLog.logNetworkLevelMessage("get_response", data.getLogName(), result.strResponse);
         result.parseAndThrow();
         return result;
@@ -123,6 +151,17 @@ public abstract class HttpConnection {
         return getRequestCommon(path, true).getJsonArray(parentKey);
     }
 
+    /**
+     * Items of the array are parsed and passed to the consumer one by one, as they are being downloaded,
+     * so a large response doesn't stay in memory, neither as a String, nor as a {@link JSONArray}
+     * @param parentKey see {@link #getRequestAsArray(String, String)}
+     */
+    public final void getRequestAsArray(String path, String parentKey, JsonItemConsumer consumer)
+            throws ConnectionException {
+        HttpReadResult result = newGetRequestResult(path).setJsonArrayConsumer(parentKey, consumer);
+        getRequestCommon(result).consumeJsonArray();
+    }
+
     public final void downloadFile(String url, File file) throws ConnectionException {
         HttpReadResult result = new HttpReadResult(url, file);
         getRequest(result);
@@ -155,6 +155,7 @@ public class HttpConnectionApacheCommon {
                 StatusLine statusLine = httpResponse.getStatusLine();
                 result.statusLine = statusLine.toString();
                 result.setStatusCode(statusLine.getStatusCode());
+                result.setHeaders(httpResponse.getAllHeaders());
                 switch (result.getStatusCode()) {
                     case OK:
                     case UNKNOWN:
@@ -163,7 +164,7 @@ public class HttpConnectionApacheCommon {
                             if (result.fileResult != null) {
                                 FileUtils.readStreamToFile(entity.getContent(), result.fileResult);
                             } else {
-                                result.strResponse = HttpConnectionUtils.readStreamToString(entity.getContent());
+                                result.readStream(entity.getContent());
                             }
                         }
                         stop = true;
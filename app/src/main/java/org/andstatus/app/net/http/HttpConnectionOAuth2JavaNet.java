@@ -34,6 +34,7 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Iterator;
 import java.util.Map;
@@ -102,15 +103,17 @@ public class HttpConnectionOAuth2JavaNet extends HttpConnectionOAuthJavaNet {
                     request.addBodyParameter(key, result.getFormParams().optString(key));
                 }
             }
+            request.addHeader("Accept-Encoding", JavaNetTransport.ACCEPT_ENCODING);
             signRequest(request, service, false);
             final Response response = service.execute(request);
             result.setStatusCode(response.getCode());
+            setHeaders(result, response);
+            result.strResponse = HttpConnectionUtils.readStreamToString(
+                    JavaNetTransport.decode(response.getStream(), response.getHeader("Content-Encoding")));
             switch(result.getStatusCode()) {
                 case OK:
-                    result.strResponse = HttpConnectionUtils.readStreamToString(response.getStream());
                     break;
                 default:
-                    result.strResponse = HttpConnectionUtils.readStreamToString(response.getStream());
                     throw result.getExceptionFromJsonErrorResponse();
             }
         } catch (IOException | ExecutionException e) {
@@ -121,6 +124,12 @@ public class HttpConnectionOAuth2JavaNet extends HttpConnectionOAuthJavaNet {
         }
     }
 
+    private static void setHeaders(HttpReadResult result, Response response) {
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            result.setHeader(header.getKey(), header.getValue());
+        }
+    }
+
     byte[] httpEntityToBytes(HttpEntity httpEntity) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         httpEntity.writeTo(out);
@@ -140,17 +149,26 @@ public class HttpConnectionOAuth2JavaNet extends HttpConnectionOAuthJavaNet {
             boolean stop = false;
             do {
                 request = new OAuthRequest(Verb.GET, result.getUrlObj().toString());
+                String cacheKey = JavaNetTransport.toCacheKey(data, result);
+                JavaNetTransport.CachedResponse cached = JavaNetTransport.getCached(cacheKey, result);
+                for (Map.Entry<String, String> header : JavaNetTransport.getRequestHeaders(cached).entrySet()) {
+                    request.addHeader(header.getKey(), header.getValue());
+                }
                 if (result.authenticate) {
                     signRequest(request, service, redirected);
                 }
                 Response response = service.execute(request);
                 result.setStatusCode(response.getCode());
+                setHeaders(result, response);
                 switch(result.getStatusCode()) {
                     case OK:
+                        InputStream in = JavaNetTransport.decode(response.getStream(),
+                                response.getHeader("Content-Encoding"));
                         if (result.fileResult != null) {
-                            FileUtils.readStreamToFile(response.getStream(), result.fileResult);
+                            FileUtils.readStreamToFile(in, result.fileResult);
                         } else {
-                            result.strResponse = HttpConnectionUtils.readStreamToString(response.getStream());
+                            JavaNetTransport.readResponse(result, in, cacheKey, cached,
+                                    response.getHeader("ETag"), response.getHeader("Last-Modified"));
                         }
                         stop = true;
                         break;
@@ -168,10 +186,12 @@ public class HttpConnectionOAuth2JavaNet extends HttpConnectionOAuthJavaNet {
                             }
                             MyLog.v(this, message.toString());
                         }
-                        // TODO: ?! ...disconnect();
+                        // Read to the end, so the connection could be reused
+                        HttpConnectionUtils.readStreamToString(response.getStream());
                         break;
                     default:
-                        result.strResponse = HttpConnectionUtils.readStreamToString(response.getStream());
+                        result.strResponse = HttpConnectionUtils.readStreamToString(
+                                JavaNetTransport.decode(response.getStream(), response.getHeader("Content-Encoding")));
                         stop = result.fileResult == null || !result.authenticate;
                         if (!stop) {
                             result.authenticate = false;
@@ -123,7 +123,8 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
             conn.setDoOutput(true);
             conn.setDoInput(true);
             conn.setRequestMethod("POST");
-            
+            conn.setRequestProperty("Accept-Encoding", JavaNetTransport.ACCEPT_ENCODING);
+
             if (!result.hasFormParams()) {
                 // Nothing to do at this step
             } else if (result.getFormParams().has(HttpConnection.KEY_MEDIA_PART_URI)) {
@@ -133,12 +134,15 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
             }
                         
             result.setStatusCode(conn.getResponseCode());
+            result.setHeaders(conn.getHeaderFields());
             switch(result.getStatusCode()) {
                 case OK:
-                    result.strResponse = HttpConnectionUtils.readStreamToString(conn.getInputStream());
+                    result.strResponse = HttpConnectionUtils.readStreamToString(
+                            JavaNetTransport.decode(conn.getInputStream(), conn.getContentEncoding()));
                     break;
                 default:
-                    result.strResponse = HttpConnectionUtils.readStreamToString(conn.getErrorStream());
+                    result.strResponse = HttpConnectionUtils.readStreamToString(
+                            JavaNetTransport.decode(conn.getErrorStream(), conn.getContentEncoding()));
                     throw result.getExceptionFromJsonErrorResponse();
             }
         } catch (JSONException | IOException e) {
@@ -208,17 +212,25 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
             do {
                 conn = (HttpURLConnection) result.getUrlObj().openConnection();
                 conn.setInstanceFollowRedirects(false);
+                String cacheKey = JavaNetTransport.toCacheKey(data, result);
+                JavaNetTransport.CachedResponse cached = JavaNetTransport.getCached(cacheKey, result);
+                for (Entry<String, String> header : JavaNetTransport.getRequestHeaders(cached).entrySet()) {
+                    conn.setRequestProperty(header.getKey(), header.getValue());
+                }
                 if (result.authenticate) {
                     signConnection(conn, consumer, redirected);
                 }
                 conn.connect();
                 result.setStatusCode(conn.getResponseCode());
+                result.setHeaders(conn.getHeaderFields());
                 switch(result.getStatusCode()) {
                     case OK:
+                        InputStream in = JavaNetTransport.decode(conn.getInputStream(), conn.getContentEncoding());
                         if (result.fileResult != null) {
-                            FileUtils.readStreamToFile(conn.getInputStream(), result.fileResult);
+                            FileUtils.readStreamToFile(in, result.fileResult);
                         } else {
-                            result.strResponse = HttpConnectionUtils.readStreamToString(conn.getInputStream());
+                            JavaNetTransport.readResponse(result, in, cacheKey, cached,
+                                    conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
                         }
                         stop = true;
                         break;
@@ -238,10 +250,12 @@ public class HttpConnectionOAuthJavaNet extends HttpConnectionOAuth {
                             }
                             MyLog.v(this, message.toString());
                         }
-                        conn.disconnect();
+                        // Read to the end, so the connection could be reused
+                        HttpConnectionUtils.readStreamToString(conn.getInputStream());
                         break;
                     default:
-                        result.strResponse = HttpConnectionUtils.readStreamToString(conn.getErrorStream());
+                        result.strResponse = HttpConnectionUtils.readStreamToString(
+                                JavaNetTransport.decode(conn.getErrorStream(), conn.getContentEncoding()));
                         stop = result.fileResult == null || !result.authenticate;
                         if (!stop) {
                             result.authenticate = false;
@@ -18,6 +18,7 @@ package org.andstatus.app.net.http;
 
 import android.text.TextUtils;
 
+import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.net.http.ConnectionException.StatusCode;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
@@ -27,9 +28,19 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import cz.msebera.android.httpclient.Header;
 
 public class HttpReadResult {
     private final String urlInitial;
@@ -46,8 +57,11 @@ public class HttpReadResult {
     String statusLine = "";
     private int intStatusCode = 0;
     private StatusCode statusCode = StatusCode.UNKNOWN;
+    /** Only the response headers, which are needed to track quotas of requests, see {@link RateLimits} */
+    private final Map<String, String> headers = new HashMap<>();
 
     boolean redirected = false;
+    private JsonArrayStreamReader arrayReader = null;
 
     public HttpReadResult(String urlIn) throws ConnectionException {
         this (urlIn, null);
@@ -79,6 +93,36 @@ public class HttpReadResult {
     public StatusCode getStatusCode() {
         return statusCode;
     }
+
+    void setHeader(String name, String value) {
+        if (!TextUtils.isEmpty(value) && RateLimits.isRateLimitHeader(name)) {
+            headers.put(name.toLowerCase(Locale.US), value);
+        }
+    }
+
+    void setHeaders(Map<String, List<String>> headerFields) {
+        for (Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                setHeader(entry.getKey(), entry.getValue().get(0));
+            }
+        }
+    }
+
+    void setHeaders(Header[] apacheHeaders) {
+        for (Header header : apacheHeaders) {
+            setHeader(header.getName(), header.getValue());
+        }
+    }
+
+    /** @param name in lower case */
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /** "304 Not Modified" response to a conditional request, see {@link JavaNetTransport} */
+    boolean isNotModified() {
+        return intStatusCode == 304;
+    }
     
     public String getUrl() {
         return urlString;
@@ -114,9 +158,46 @@ public class HttpReadResult {
                 + (redirected ? "; redirected from:'" + urlInitial + "'" : "")
                 + ( hasFormParams() ? "; posted:'" + formParams.toString() + "'" : "")
                 + (TextUtils.isEmpty(strResponse) ? "" : "; response:'" + I18n.trimTextAt(strResponse, 40) + "'")
+                + (arrayReader == null || !arrayReader.isRead() ? "" : "; items:" + arrayReader.getItemsCount())
                 + (fileResult == null ? "" : "; saved to file");
     }
     
+    /** The response is expected to be a JSON array (or to contain it), which items will be parsed one by one */
+    HttpReadResult setJsonArrayConsumer(String arrayKey, JsonItemConsumer consumer) {
+        arrayReader = new JsonArrayStreamReader(this, arrayKey, consumer);
+        return this;
+    }
+
+    /**
+     * Reads successful response. If the array of items is expected, parses it while reading the stream,
+     * unless network level messages are logged: the whole response is needed to log it
+     */
+    void readStream(InputStream in) throws IOException {
+        if (arrayReader == null || MyLog.isNetworkLevelMessageLoggable(this)) {
+            strResponse = HttpConnectionUtils.readStreamToString(in);
+        } else if (in != null) {
+            try {
+                arrayReader.read(new InputStreamReader(in, HttpConnectionUtils.UTF_8));
+            } finally {
+                DbUtils.closeSilently(in);
+            }
+        }
+    }
+
+    /** Parses the array of items, if this wasn't done while reading the response stream */
+    void consumeJsonArray() throws ConnectionException {
+        if (arrayReader == null || arrayReader.isRead() || TextUtils.isEmpty(strResponse)) {
+            return;
+        }
+        try {
+            arrayReader.read(new StringReader(strResponse));
+        } catch (ConnectionException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ConnectionException(toString(), e);
+        }
+    }
+
     JSONObject getJsonObject() throws ConnectionException {
         return innerGetJsonObject(strResponse);
     }
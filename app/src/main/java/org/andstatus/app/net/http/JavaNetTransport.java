@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.net.http;
+
+import android.text.TextUtils;
+
+import org.andstatus.app.util.MyLog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transport level features, shared by the java.net based connections
+ * ({@link HttpConnectionOAuthJavaNet} and its subclasses, which use scribejava's JDK client):
+ * <ul>
+ * <li>Connections are kept alive and are returned to the (per host) pool of the {@link java.net.HttpURLConnection}:
+ * for this the response has to be read to the end and closed.</li>
+ * <li>Compressed (gzip or deflate) responses are requested and decompressed while they are being read.</li>
+ * <li>Validators ("ETag" and "Last-Modified") of the recent responses are remembered together with the responses,
+ * so a repeated request to the same endpoint may receive "304 Not Modified" without the response body.</li>
+ * </ul>
+ * @author yvolk@yurivolkov.com
+ */
+final class JavaNetTransport {
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+    static final int MAX_CACHED_RESPONSES = 100;
+    static final int MAX_CACHED_RESPONSE_LENGTH = 100 * 1024;
+
+    private static final Map<String, CachedResponse> cache =
+            new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                    return size() > MAX_CACHED_RESPONSES;
+                }
+            };
+
+    /** Response, which may be reused, if the server replies "304 Not Modified" */
+    static final class CachedResponse {
+        static final CachedResponse EMPTY = new CachedResponse("", "", "");
+        final String eTag;
+        final String lastModified;
+        final String body;
+
+        CachedResponse(String eTag, String lastModified, String body) {
+            this.eTag = eTag == null ? "" : eTag;
+            this.lastModified = lastModified == null ? "" : lastModified;
+            this.body = body == null ? "" : body;
+        }
+
+        boolean isEmpty() {
+            return TextUtils.isEmpty(eTag) && TextUtils.isEmpty(lastModified);
+        }
+    }
+
+    private JavaNetTransport() {
+        // Empty
+    }
+
+    /** Responses are cached for each account separately, as they may depend on the authenticated user */
+    static String toCacheKey(HttpConnectionData data, HttpReadResult result) {
+        return data.getAccountName() + " " + result.getUrl();
+    }
+
+    static CachedResponse getCached(String cacheKey, HttpReadResult result) {
+        if (result.fileResult != null) {
+            return CachedResponse.EMPTY;
+        }
+        synchronized (cache) {
+            CachedResponse cached = cache.get(cacheKey);
+            return cached == null ? CachedResponse.EMPTY : cached;
+        }
+    }
+
+    /** Headers, which should be added to a GET request */
+    static Map<String, String> getRequestHeaders(CachedResponse cached) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Connection", "keep-alive");
+        headers.put("Accept-Encoding", ACCEPT_ENCODING);
+        if (!TextUtils.isEmpty(cached.eTag)) {
+            headers.put("If-None-Match", cached.eTag);
+        }
+        if (!TextUtils.isEmpty(cached.lastModified)) {
+            headers.put("If-Modified-Since", cached.lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Wraps the stream in order to decompress it according to the "Content-Encoding" response header.
+     * An empty body (e.g. of "304 Not Modified" response) is returned as is
+     */
+    static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (in == null || TextUtils.isEmpty(contentEncoding)) {
+            return in;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if (!encoding.equals("gzip") && !encoding.equals("x-gzip") && !encoding.equals("deflate")) {
+            return in;
+        }
+        InputStream buffered = new BufferedInputStream(in);
+        buffered.mark(1);
+        if (buffered.read() < 0) {
+            return buffered;
+        }
+        buffered.reset();
+        return encoding.equals("deflate") ? new InflaterInputStream(buffered) : new GZIPInputStream(buffered);
+    }
+
+    /**
+     * Reads successful response (including "304 Not Modified", for which the cached response is used)
+     * and remembers it together with its validators
+     */
+    static void readResponse(HttpReadResult result, InputStream in, String cacheKey, CachedResponse cached,
+                             String eTag, String lastModified) throws IOException {
+        if (result.isNotModified() && !cached.isEmpty()) {
+            HttpConnectionUtils.readStreamToString(in);
+            MyLog.v(JavaNetTransport.class, "Not modified, using cached response; " + result.getUrl());
+            result.readStream(new ByteArrayInputStream(cached.body.getBytes(HttpConnectionUtils.UTF_8)));
+            return;
+        }
+        result.readStream(in);
+        if (result.fileResult != null) {
+            return;
+        }
+        synchronized (cache) {
+            if ((TextUtils.isEmpty(eTag) && TextUtils.isEmpty(lastModified))
+                    || TextUtils.isEmpty(result.strResponse)
+                    || result.strResponse.length() > MAX_CACHED_RESPONSE_LENGTH) {
+                cache.remove(cacheKey);
+            } else {
+                cache.put(cacheKey, new CachedResponse(eTag, lastModified, result.strResponse));
+            }
+        }
+    }
+
+    static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.net.http;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.util.MyLog;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull parser of a response, which is (or which contains) a JSON array of objects.
+ * Each item is converted to a {@link JSONObject} and passed to the {@link JsonItemConsumer}
+ * right after it is read, so neither the whole response text nor the whole tree of it is kept in memory.
+ * Finds the array the same way as {@link HttpReadResult#getJsonArray(String)} does
+ */
+class JsonArrayStreamReader {
+    private final HttpReadResult result;
+    private final String arrayKey;
+    private final JsonItemConsumer consumer;
+    private boolean read = false;
+    private int itemsCount = 0;
+
+    JsonArrayStreamReader(HttpReadResult result, String arrayKey, JsonItemConsumer consumer) {
+        this.result = result;
+        this.arrayKey = arrayKey;
+        this.consumer = consumer;
+    }
+
+    /** Reads the response and closes the reader. Network errors are thrown as {@link IOException} */
+    void read(Reader in) throws IOException {
+        String method = "readJsonArray; ";
+        read = true;
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        try {
+            JsonToken token;
+            try {
+                token = reader.peek();
+            } catch (EOFException e) {
+                MyLog.v(this, method + "response is empty");
+                return;
+            }
+            switch (token) {
+                case BEGIN_ARRAY:
+                    readItems(reader);
+                    break;
+                case BEGIN_OBJECT:
+                    readArrayInObject(reader);
+                    break;
+                default:
+                    throw ConnectionException.loggedHardJsonException(this,
+                            method + "Unexpected " + token + "; " + result.toString(), null, null);
+            }
+        } catch (MalformedJsonException | IllegalStateException | JSONException e) {
+            throw ConnectionException.loggedJsonException(this, method + result.toString(), e, null);
+        } finally {
+            DbUtils.closeSilently(reader);
+        }
+    }
+
+    boolean isRead() {
+        return read;
+    }
+
+    int getItemsCount() {
+        return itemsCount;
+    }
+
+    private void readArrayInObject(JsonReader reader) throws IOException, JSONException {
+        boolean found = false;
+        JSONArray otherArray = null;
+        String otherKey = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (found) {
+                reader.skipValue();
+            } else if (key.equals(arrayKey)) {
+                if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    throw new JSONException("'" + arrayKey + "' is not an array?!");
+                }
+                readItems(reader);
+                found = true;
+            } else if (otherArray == null && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                // May be used, if there is no array with the expected key
+                otherArray = readArray(reader);
+                otherKey = key;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!found) {
+            if (otherArray == null) {
+                throw ConnectionException.loggedHardJsonException(this,
+                        "No array in the response; " + result.toString(), null, null);
+            }
+            MyLog.v(this, "found array inside '" + otherKey + "' object");
+            for (int index = 0; index < otherArray.length(); index++) {
+                accept(otherArray.get(index));
+            }
+        }
+    }
+
+    private void readItems(JsonReader reader) throws IOException, JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            accept(readValue(reader));
+        }
+        reader.endArray();
+    }
+
+    private void accept(Object item) throws ConnectionException, JSONException {
+        if (!JSONObject.class.isInstance(item)) {
+            throw new JSONException("Item " + itemsCount + " is not an object");
+        }
+        consumer.accept((JSONObject) item);
+        itemsCount++;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return toNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected " + reader.peek());
+        }
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject jso = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            jso.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return jso;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray jsa = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            jsa.put(readValue(reader));
+        }
+        reader.endArray();
+        return jsa;
+    }
+
+    /** The same number types as {@link org.json.JSONTokener} produces */
+    private static Object toNumber(String literal) {
+        if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Too large for long, parse it as double below
+            }
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return literal;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.net.http;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import org.andstatus.app.net.http.ConnectionException.StatusCode;
+import org.andstatus.app.util.MyLog;
+
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quotas of requests per endpoint, learnt from the response headers of every request, see
+ * https://dev.twitter.com/rest/public/rate-limiting and
+ * https://github.com/tootsuite/documentation/blob/master/Using-the-API/Rate-limits.md
+ * A quota is shared by all accounts, which use the same application (OAuth client) key at the same host.
+ * Requests are not sent, when a quota is exhausted. Background requests (of automatic syncs)
+ * are not sent already when only a reserve is left, so that the reserve is used by requests of a User.
+ * Automatic syncs are spread evenly across the rest of the quota window
+ * @author yvolk@yurivolkov.com
+ */
+public final class RateLimits {
+    private static final String TAG = RateLimits.class.getSimpleName();
+
+    static final String HEADER_LIMIT = "x-rate-limit-limit";
+    static final String HEADER_REMAINING = "x-rate-limit-remaining";
+    /** Epoch seconds */
+    static final String HEADER_RESET = "x-rate-limit-reset";
+    static final String HEADER_LIMIT2 = "x-ratelimit-limit";
+    static final String HEADER_REMAINING2 = "x-ratelimit-remaining";
+    /** ISO 8601 date */
+    static final String HEADER_RESET2 = "x-ratelimit-reset";
+    /** Seconds */
+    static final String HEADER_RETRY_AFTER = "retry-after";
+
+    /** Part of a quota, which is left for requests, initiated by a User */
+    private static final int RESERVE_PERCENT = 5;
+    /** Used after "429 Too Many Requests" response without any hint on when to retry */
+    private static final long DEFAULT_BACKOFF_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final ConcurrentHashMap<String, Quota> quotas = new ConcurrentHashMap<>();
+    /** Requests of the current thread are sent in background, not initiated by a User */
+    private static final ThreadLocal<Boolean> inBackground = new ThreadLocal<>();
+
+    static class Quota {
+        int limit = 0;
+        int remaining = 0;
+        long resetAt = 0;
+        long lastRequestAt = 0;
+
+        synchronized boolean isExhausted(long now, boolean background) {
+            return now < resetAt && remaining <= (background ? getReserve() : 0);
+        }
+
+        synchronized void onRequest(long now) {
+            lastRequestAt = now;
+            if (now < resetAt && remaining > 0) {
+                // Don't wait for the response: parallel requests should see this
+                remaining--;
+            }
+        }
+
+        synchronized void update(int limit, int remaining, long resetAt) {
+            if (limit > 0) {
+                this.limit = limit;
+            }
+            this.remaining = remaining;
+            this.resetAt = resetAt;
+        }
+
+        synchronized void onTooManyRequests(long retryAt) {
+            remaining = 0;
+            resetAt = Math.max(resetAt, retryAt);
+        }
+
+        synchronized long getDelayMs(long now) {
+            if (now >= resetAt) {
+                return 0;
+            }
+            int available = remaining - getReserve();
+            if (available <= 0) {
+                return resetAt - now;
+            }
+            long intervalMs = (resetAt - now) / available;
+            return Math.max(0, lastRequestAt + intervalMs - now);
+        }
+
+        private int getReserve() {
+            return Math.max(1, limit * RESERVE_PERCENT / 100);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "remaining:" + remaining + "/" + limit
+                    + (resetAt == 0 ? "" : ", resets in "
+                    + TimeUnit.MILLISECONDS.toSeconds(resetAt - System.currentTimeMillis()) + "s");
+        }
+    }
+
+    private RateLimits() {
+        // Empty
+    }
+
+    static boolean isRateLimitHeader(String name) {
+        if (TextUtils.isEmpty(name)) {
+            return false;
+        }
+        switch (name.toLowerCase(Locale.US)) {
+            case HEADER_LIMIT:
+            case HEADER_REMAINING:
+            case HEADER_RESET:
+            case HEADER_LIMIT2:
+            case HEADER_REMAINING2:
+            case HEADER_RESET2:
+            case HEADER_RETRY_AFTER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** @throws ConnectionException if the quota of requests to the endpoint is exhausted */
+    static void onRequest(HttpConnectionData data, HttpReadResult result) throws ConnectionException {
+        long now = System.currentTimeMillis();
+        String key = toKey(data, result.getUrlObj());
+        Quota quota = quotas.get(key);
+        if (quota == null) {
+            return;
+        }
+        boolean background = isInBackground();
+        if (quota.isExhausted(now, background)) {
+            throw ConnectionException.fromStatusCode(StatusCode.TOO_MANY_REQUESTS,
+                    "Quota of requests is exhausted" + (background ? " for background requests, " : ", ")
+                            + quota + "; " + key);
+        }
+        quota.onRequest(now);
+    }
+
+    static void onResponse(HttpConnectionData data, HttpReadResult result) {
+        long now = System.currentTimeMillis();
+        String key = toKey(data, result.getUrlObj());
+        if (result.getStatusCode() == StatusCode.TOO_MANY_REQUESTS) {
+            long retryAfterSeconds = parseLong(result.getHeader(HEADER_RETRY_AFTER));
+            long resetAt = getResetAt(result);
+            getOrCreate(key).onTooManyRequests(retryAfterSeconds > 0
+                    ? now + TimeUnit.SECONDS.toMillis(retryAfterSeconds)
+                    : Math.max(resetAt, now + DEFAULT_BACKOFF_MS));
+            MyLog.i(TAG, "Too many requests, " + quotas.get(key) + "; " + key);
+            return;
+        }
+        String remaining = result.getHeader(HEADER_REMAINING);
+        if (TextUtils.isEmpty(remaining)) {
+            remaining = result.getHeader(HEADER_REMAINING2);
+        }
+        long resetAt = getResetAt(result);
+        if (TextUtils.isEmpty(remaining) || resetAt <= now) {
+            return;
+        }
+        String limit = result.getHeader(HEADER_LIMIT);
+        if (TextUtils.isEmpty(limit)) {
+            limit = result.getHeader(HEADER_LIMIT2);
+        }
+        Quota quota = getOrCreate(key);
+        quota.update((int) parseLong(limit), (int) parseLong(remaining), resetAt);
+        if (MyLog.isVerboseEnabled()) {
+            MyLog.v(TAG, quota + "; " + key);
+        }
+    }
+
+    /**
+     * @return How long to wait before the next request to the URL, so that the rest of its quota
+     * is spread evenly over the rest of the quota window. 0 means "now"
+     */
+    public static long getDelayMs(HttpConnectionData data, String urlString) {
+        try {
+            Quota quota = quotas.get(toKey(data, new URL(urlString)));
+            return quota == null ? 0 : quota.getDelayMs(System.currentTimeMillis());
+        } catch (Exception e) {
+            MyLog.v(TAG, "getDelayMs; url:'" + urlString + "'", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Marks requests, which will be sent by the current thread, as background ones (or initiated by a User)
+     * @return the previous value, to be restored after the requests
+     */
+    public static boolean setInBackground(boolean background) {
+        boolean previous = isInBackground();
+        inBackground.set(background);
+        return previous;
+    }
+
+    static boolean isInBackground() {
+        Boolean background = inBackground.get();
+        return background != null && background;
+    }
+
+    static void clear() {
+        quotas.clear();
+    }
+
+    @NonNull
+    private static Quota getOrCreate(String key) {
+        Quota quota = quotas.get(key);
+        if (quota == null) {
+            quota = new Quota();
+            Quota previous = quotas.putIfAbsent(key, quota);
+            if (previous != null) {
+                quota = previous;
+            }
+        }
+        return quota;
+    }
+
+    private static long getResetAt(HttpReadResult result) {
+        long resetSeconds = parseLong(result.getHeader(HEADER_RESET));
+        if (resetSeconds > 0) {
+            return TimeUnit.SECONDS.toMillis(resetSeconds);
+        }
+        String reset2 = result.getHeader(HEADER_RESET2);
+        if (TextUtils.isEmpty(reset2)) {
+            return 0;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(reset2).getTime();
+        } catch (ParseException e) {
+            MyLog.v(TAG, "Failed to parse " + HEADER_RESET2 + ":'" + reset2 + "'", e);
+            return 0;
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Accounts, which share the application key, share the quota. Numeric IDs in a path don't matter */
+    static String toKey(HttpConnectionData data, URL url) {
+        String client = data.areOAuthClientKeysPresent()
+                ? data.oauthClientKeys.getConsumerKey()
+                : (data.getAccountName() == null ? "" : data.getAccountName().toString());
+        return client + "@" + url.getHost() + url.getPath().replaceAll("/\\d+(?=/|\\.[a-z]+$|$)", "/:id");
+    }
+}
@@ -54,6 +54,8 @@ import java.util.Locale;
  */
 public abstract class Connection {
     public static final String KEY_PASSWORD = "password";
+    /** Maximum number of users, requested at once, see {@link #getUsers(List)} */
+    public static final int MAX_USERS_TO_GET = 100;
 
     /**
      * API routines (functions, "resources" in terms of Twitter)  enumerated
@@ -76,6 +78,8 @@ public abstract class Connection {
         GET_FOLLOWERS_IDS,
         GET_OPEN_INSTANCES,
         GET_USER,
+        /** Many users at once, by their IDs, see {@link Connection#getUsers(List)} */
+        GET_USERS,
         POST_MESSAGE,
         POST_WITH_MEDIA,
         POST_DIRECT_MESSAGE,
@@ -185,6 +189,18 @@ public abstract class Connection {
         return is;
     }
     
+    /**
+     * @return how long to wait before the routine may be requested in order to stay within the quota of requests,
+     * learnt from previous responses. 0 means "now"
+     */
+    public long getRateLimitDelayMs(ApiRoutineEnum routine) {
+        String path = getApiPath1(routine);
+        if (http == null || TextUtils.isEmpty(path)) {
+            return 0;
+        }
+        return http.getRateLimitDelayMs(path);
+    }
+
     /**
      * Check API requests status.
      */
@@ -282,6 +298,17 @@ public abstract class Connection {
         throw ConnectionException.fromStatusCode(StatusCode.UNSUPPORTED_API, "getUsersFollowing userOid=" + userId);
     }
 
+    /**
+     * Returns users, specified by their IDs, in one request. Users, which were not found, are omitted,
+     * the order of users is not guaranteed.
+     * @param userIds not more than {@link #MAX_USERS_TO_GET} IDs
+     */
+    @NonNull
+    public List<MbUser> getUsers(List<String> userIds) throws ConnectionException {
+        throw ConnectionException.fromStatusCode(StatusCode.UNSUPPORTED_API, "getUsers for " + userIds.size()
+                + " userOids");
+    }
+
     /**
      * Returns a single status, specified by the id parameter below.
      * The status's author will be returned inline.
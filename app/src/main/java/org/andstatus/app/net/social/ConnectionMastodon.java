@@ -199,8 +199,7 @@ public class ConnectionMastodon extends ConnectionTwitterLike {
         Uri.Builder builder = sUri.buildUpon();
         appendPositionParameters(builder, youngestPosition, oldestPosition);
         builder.appendQueryParameter("limit", strFixedDownloadLimit(limit, apiRoutine));
-        JSONArray jArr = http.getRequestAsArray(builder.build().toString());
-        return jArrToTimeline(jArr, apiRoutine, url);
+        return getRequestAsTimeline(builder.build().toString(), apiRoutine, url);
     }
 
     @NonNull
@@ -217,8 +216,7 @@ public class ConnectionMastodon extends ConnectionTwitterLike {
         builder.appendQueryParameter("q", searchQuery);
         builder.appendQueryParameter("resolve", "true");
         builder.appendQueryParameter("limit", strFixedDownloadLimit(limit, apiRoutine));
-        JSONArray jArr = http.getRequestAsArray(builder.build().toString());
-        return jArrToUsers(jArr, apiRoutine, url);
+        return getRequestAsUsers(builder.build().toString(), apiRoutine, url);
     }
 
     protected String getApiPathWithTag(ApiRoutineEnum routineEnum, String tag) throws ConnectionException {
@@ -458,7 +456,7 @@ public class ConnectionMastodon extends ConnectionTwitterLike {
         Uri.Builder builder = sUri.buildUpon();
         int limit = 400;
         builder.appendQueryParameter("limit", strFixedDownloadLimit(limit, apiRoutine));
-        return jArrToUsers(http.getRequestAsArray(builder.build().toString()), apiRoutine, url);
+        return getRequestAsUsers(builder.build().toString(), apiRoutine, url);
     }
 
 }
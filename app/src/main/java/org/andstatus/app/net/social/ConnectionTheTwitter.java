@@ -65,6 +65,10 @@ public class ConnectionTheTwitter extends ConnectionTwitterLike {
                 // https://dev.twitter.com/docs/api/1.1/get/friends/list
                 url = "friends/list.json";
                 break;
+            case GET_USERS:
+                // https://dev.twitter.com/rest/reference/get/users/lookup
+                url = "users/lookup.json";
+                break;
             case GET_MESSAGE:
                 url = "statuses/show.json" + "?id=%messageId%&tweet_mode=extended";
                 break;
@@ -172,8 +176,7 @@ public class ConnectionTheTwitter extends ConnectionTwitterLike {
         }
         appendPositionParameters(builder, youngestPosition, oldestPosition);
         builder.appendQueryParameter("count", strFixedDownloadLimit(limit, apiRoutine));
-        JSONArray jArr = getRequestArrayInObject(builder.build().toString(), "statuses");
-        return jArrToTimeline(jArr, apiRoutine, url);
+        return getRequestAsTimeline(builder.build().toString(), "statuses", apiRoutine, url);
     }
 
     @NonNull
@@ -187,7 +190,7 @@ public class ConnectionTheTwitter extends ConnectionTwitterLike {
             builder.appendQueryParameter("q", searchQuery);
         }
         builder.appendQueryParameter("count", strFixedDownloadLimit(limit, apiRoutine));
-        return jArrToUsers(http.getRequestAsArray(builder.build().toString()), apiRoutine, url);
+        return getRequestAsUsers(builder.build().toString(), apiRoutine, url);
     }
 
     private static final String ATTACHMENTS_FIELD_NAME = "media";
@@ -242,7 +245,7 @@ public class ConnectionTheTwitter extends ConnectionTwitterLike {
             builder.appendQueryParameter("user_id", userId);
         }
         builder.appendQueryParameter("count", strFixedDownloadLimit(limit, apiRoutine));
-        return jArrToUsers(http.getRequestAsArray(builder.build().toString()), apiRoutine, url);
+        return getRequestAsUsers(builder.build().toString(), apiRoutine, url);
     }
 
 }
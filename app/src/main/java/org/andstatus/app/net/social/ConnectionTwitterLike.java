@@ -22,6 +22,7 @@ import android.text.TextUtils;
 
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.net.http.ConnectionException;
+import org.andstatus.app.net.http.JsonItemConsumer;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.SharedPreferencesUtil;
 import org.andstatus.app.util.TriState;
@@ -31,6 +32,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -217,8 +219,7 @@ public abstract class ConnectionTwitterLike extends Connection {
             throws ConnectionException {
         Uri.Builder builder = getTimelineUriBuilder(apiRoutine, limit, userId);
         appendPositionParameters(builder, youngestPosition, oldestPosition);
-        JSONArray jArr = http.getRequestAsArray(builder.build().toString());
-        return jArrToTimeline(jArr, apiRoutine, builder.build().toString());
+        return getRequestAsTimeline(builder.build().toString(), apiRoutine, builder.build().toString());
     }
 
     @NonNull
@@ -430,8 +431,7 @@ public abstract class ConnectionTwitterLike extends Connection {
         }
         appendPositionParameters(builder, youngestPosition, oldestPosition);
         builder.appendQueryParameter("count", strFixedDownloadLimit(limit, apiRoutine));
-        JSONArray jArr = http.getRequestAsArray(builder.build().toString());
-        return jArrToTimeline(jArr, apiRoutine, url);
+        return getRequestAsTimeline(builder.build().toString(), apiRoutine, url);
     }
 
     protected void appendPositionParameters(Uri.Builder builder, TimelinePosition youngest, TimelinePosition oldest) {
@@ -450,6 +450,26 @@ public abstract class ConnectionTwitterLike extends Connection {
         }
     }
 
+    List<MbActivity> getRequestAsTimeline(String path, ApiRoutineEnum apiRoutine, String url)
+            throws ConnectionException {
+        return getRequestAsTimeline(path, "items", apiRoutine, url);
+    }
+
+    /** Activities are parsed one by one, while the response is being downloaded */
+    List<MbActivity> getRequestAsTimeline(String path, String arrayKey, ApiRoutineEnum apiRoutine, String url)
+            throws ConnectionException {
+        final List<MbActivity> timeline = new ArrayList<>();
+        http.getRequestAsArray(path, arrayKey, new JsonItemConsumer() {
+            @Override
+            public void accept(JSONObject item) throws ConnectionException {
+                timeline.add(activityFromTwitterLikeJson(item));
+            }
+        });
+        // Read the activities in chronological order
+        Collections.reverse(timeline);
+        return onTimelineParsed(timeline, apiRoutine, url);
+    }
+
     List<MbActivity> jArrToTimeline(JSONArray jArr, ApiRoutineEnum apiRoutine, String url) throws ConnectionException {
         List<MbActivity> timeline = new ArrayList<>();
         if (jArr != null) {
@@ -463,6 +483,10 @@ public abstract class ConnectionTwitterLike extends Connection {
                 }
             }
         }
+        return onTimelineParsed(timeline, apiRoutine, url);
+    }
+
+    private List<MbActivity> onTimelineParsed(List<MbActivity> timeline, ApiRoutineEnum apiRoutine, String url) {
         if (apiRoutine.isMsgPublic()) {
             setMessagesPublic(timeline);
         }
@@ -470,19 +494,15 @@ public abstract class ConnectionTwitterLike extends Connection {
         return timeline;
     }
 
-    List<MbUser> jArrToUsers(JSONArray jArr, ApiRoutineEnum apiRoutine, String url) throws ConnectionException {
-        List<MbUser> users = new ArrayList<>();
-        if (jArr != null) {
-            for (int index = 0; index < jArr.length(); index++) {
-                try {
-                    JSONObject jso = jArr.getJSONObject(index);
-                    MbUser item = userFromJson(jso);
-                    users.add(item);
-                } catch (JSONException e) {
-                    throw ConnectionException.loggedJsonException(this, "Parsing " + apiRoutine, e, null);
-                }
+    /** Users are parsed one by one, while the response is being downloaded */
+    List<MbUser> getRequestAsUsers(String path, ApiRoutineEnum apiRoutine, String url) throws ConnectionException {
+        final List<MbUser> users = new ArrayList<>();
+        http.getRequestAsArray(path, "items", new JsonItemConsumer() {
+            @Override
+            public void accept(JSONObject item) throws ConnectionException {
+                users.add(userFromJson(item));
             }
-        }
+        });
         if (apiRoutine.isMsgPublic()) {
             setUserMessagesPublic(users);
         }
@@ -508,6 +528,19 @@ public abstract class ConnectionTwitterLike extends Connection {
         return mbUser;
     }
     
+    /**
+     * @see <a href="https://dev.twitter.com/rest/reference/get/users/lookup">GET users/lookup</a>
+     */
+    @NonNull
+    @Override
+    public List<MbUser> getUsers(List<String> userIds) throws ConnectionException {
+        Uri sUri = Uri.parse(getApiPath(ApiRoutineEnum.GET_USERS));
+        Uri.Builder builder = sUri.buildUpon();
+        builder.appendQueryParameter("user_id", TextUtils.join(",", userIds));
+        String url = builder.build().toString();
+        return getRequestAsUsers(url, ApiRoutineEnum.GET_USERS, url);
+    }
+
     @Override
     public MbActivity postDirectMessage(String message, String statusId, String userId, Uri mediaUri) throws ConnectionException {
         JSONObject formParams = new JSONObject();
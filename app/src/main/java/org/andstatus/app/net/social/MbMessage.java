@@ -49,6 +49,8 @@ public class MbMessage {
     // TODO: Multiple recipients needed?!
     private MbUser recipient = MbUser.EMPTY;
     private String body = "";
+    /** Calculated once, see {@link #getBodyToSearch()} */
+    private String bodyToSearch = null;
 
     private MbMessage inReplyTo = null;
     public final List<MbMessage> replies = new ArrayList<>();
@@ -111,7 +113,10 @@ public class MbMessage {
         return body;
     }
     public String getBodyToSearch() {
-        return MyHtml.getBodyToSearch(body);
+        if (bodyToSearch == null) {
+            bodyToSearch = MyHtml.getBodyToSearch(body);
+        }
+        return bodyToSearch;
     }
 
     private boolean isHtmlContentAllowed() {
@@ -119,6 +124,7 @@ public class MbMessage {
     }
 
     public void setBody(String body) {
+        bodyToSearch = null;
         if (TextUtils.isEmpty(body)) {
             this.body = "";
         } else if (isHtmlContentAllowed()) {
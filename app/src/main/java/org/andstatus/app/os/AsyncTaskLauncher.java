@@ -78,7 +78,7 @@ public class AsyncTaskLauncher<Params> {
         }
         if (executor == null) {
             MyLog.v(TAG, "Creating pool " + pool.name());
-            executor = new ThreadPoolExecutor(pool.corePoolSize, pool.corePoolSize + 1,
+            executor = new ThreadPoolExecutor(pool.getCorePoolSize(), pool.getCorePoolSize() + 1,
                     1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(128));
             switch (pool) {
                 case QUICK_UI:
@@ -94,10 +94,29 @@ public class AsyncTaskLauncher<Params> {
                     SYNC_POOL_EXECUTOR = executor;
                     break;
             }
+        } else {
+            resize(pool, executor);
         }
         return executor;
     }
 
+    /** The size of the SYNC pool follows the number of sync lanes, which may be changed at any time */
+    private static void resize(MyAsyncTask.PoolEnum pool, ThreadPoolExecutor executor) {
+        int corePoolSize = pool.getCorePoolSize();
+        if (executor.getCorePoolSize() == corePoolSize) {
+            return;
+        }
+        MyLog.v(TAG, "Resizing pool " + pool.name() + " from " + executor.getCorePoolSize()
+                + " to " + corePoolSize);
+        if (corePoolSize > executor.getCorePoolSize()) {
+            executor.setMaximumPoolSize(corePoolSize + 1);
+            executor.setCorePoolSize(corePoolSize);
+        } else {
+            executor.setCorePoolSize(corePoolSize);
+            executor.setMaximumPoolSize(corePoolSize + 1);
+        }
+    }
+
     public static boolean execute(Object objTag, boolean throwOnFail, MyAsyncTask<Void, ?, ?> asyncTask) {
         AsyncTaskLauncher<Void> launcher = new AsyncTaskLauncher<>();
         return launcher.execute(objTag, throwOnFail, asyncTask, (Void) null);
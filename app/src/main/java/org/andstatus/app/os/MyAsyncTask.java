@@ -25,6 +25,7 @@ import android.text.TextUtils;
 
 import org.andstatus.app.IdentifiableInstance;
 import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.util.InstanceId;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
@@ -57,7 +58,7 @@ public abstract class MyAsyncTask<Params, Progress, Result> extends AsyncTask<Pa
 
     public enum PoolEnum {
         SYNC(2, MAX_COMMAND_EXECUTION_SECONDS),
-        FILE_DOWNLOAD(1, MAX_COMMAND_EXECUTION_SECONDS),
+        FILE_DOWNLOAD(4, MAX_COMMAND_EXECUTION_SECONDS),
         QUICK_UI(1, 20),
         LONG_UI(1, MAX_COMMAND_EXECUTION_SECONDS),
         DEFAULT(0, MAX_COMMAND_EXECUTION_SECONDS);
@@ -69,6 +70,11 @@ public abstract class MyAsyncTask<Params, Progress, Result> extends AsyncTask<Pa
             this.corePoolSize = corePoolSize;
             this.maxCommandExecutionSeconds = maxCommandExecutionSeconds;
         }
+
+        /** SYNC pool has one thread for the HeartBeat, others are for command execution lanes */
+        int getCorePoolSize() {
+            return this == SYNC ? corePoolSize - 1 + MyPreferences.getSyncLanes() : corePoolSize;
+        }
     }
 
     public final PoolEnum pool;
@@ -31,19 +31,27 @@ import org.andstatus.app.database.UserTable;
 import org.andstatus.app.net.http.ConnectionException;
 import org.andstatus.app.net.social.Connection;
 import org.andstatus.app.net.social.MbUser;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.os.MyAsyncTask;
 import org.andstatus.app.timeline.TimelineSyncTracker;
 import org.andstatus.app.timeline.TimelineType;
+import org.andstatus.app.util.LongSet;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author yvolk@yurivolkov.com
  */
 public class CommandExecutorFollowers extends CommandExecutorStrategy {
+    /** Maximum number of simultaneous requests, when Users are downloaded one by one */
+    private static final int MAX_PARALLEL_REQUESTS = 4;
     long userId = 0;
     String userOid = "";
     List<MbUser> usersNew = new ArrayList<>();
@@ -122,20 +130,14 @@ public class CommandExecutorFollowers extends CommandExecutorStrategy {
                     + " and " + Connection.ApiRoutineEnum.GET_FOLLOWERS_IDS);
         }
 
-        Set<Long> userIdsOld = MyQuery.getFollowersIds(userId);
+        LongSet userIdsOld = MyQuery.getFollowersIds(userId);
         execContext.getResult().incrementDownloadedCount();
         broadcastProgress(execContext.getContext().getText(R.string.followers).toString()
                 + ": " + userIdsOld.size() + " -> " + usersNew.size(), false);
 
         if (updateNewUsersAndTheirLatestMessages(usersNew)) return;
 
-        for (MbUser mbUser : usersNew) {
-            userIdsOld.remove(mbUser.userId);
-            FriendshipValues.setFollowed(mbUser.userId, userId);
-        }
-        for (long userIdOld : userIdsOld) {
-            FriendshipValues.setNotFollowed(userIdOld, userId);
-        }
+        FriendshipValues.syncFollowers(userId, userIdsOld, toUserIds(usersNew));
     }
 
     private void syncFriends() throws ConnectionException {
@@ -153,48 +155,72 @@ public class CommandExecutorFollowers extends CommandExecutorStrategy {
                             + " and " + Connection.ApiRoutineEnum.GET_FRIENDS_IDS);
         }
 
-        Set<Long> userIdsOld = MyQuery.getFriendsIds(userId);
+        LongSet userIdsOld = MyQuery.getFriendsIds(userId);
         execContext.getResult().incrementDownloadedCount();
         broadcastProgress(execContext.getContext().getText(R.string.friends).toString()
                 + ": " + userIdsOld.size() + " -> " + usersNew.size(), false);
 
         if (updateNewUsersAndTheirLatestMessages(usersNew)) return;
 
-        for (MbUser mbUser : usersNew) {
-            userIdsOld.remove(mbUser.userId);
-            FriendshipValues.setFollowed(userId, mbUser.userId);
+        FriendshipValues.syncFriends(userId, userIdsOld, toUserIds(usersNew));
+    }
+
+    private static LongSet toUserIds(List<MbUser> users) {
+        LongSet userIds = new LongSet(users.size());
+        for (MbUser user : users) {
+            if (user.userId != 0) {
+                userIds.add(user.userId);
+            }
         }
-        for (long userIdOld : userIdsOld) {
-            FriendshipValues.setNotFollowed(userId, userIdOld);
+        return userIds;
+    }
+
+    /**
+     * Users are requested in batches, if the Connection supports this,
+     * or one by one in parallel requests otherwise
+     * @return true if we need to interrupt process
+     */
+    private boolean getUsersForOids(List<String> userOidsNew, List<MbUser> usersNew) throws ConnectionException {
+        if (execContext.getMyAccount().getConnection().isApiSupported(Connection.ApiRoutineEnum.GET_USERS)) {
+            return getUsersInBatches(userOidsNew, usersNew);
         }
+        return getUsersInParallel(userOidsNew, usersNew);
     }
 
-    private boolean getUsersForOids(List<String> userOidsNew, List<MbUser> usersNew) {
-        long count = 0;
-        for (String userOidNew : userOidsNew) {
-            MbUser mbUser = null;
+    private boolean getUsersInBatches(List<String> userOidsNew, List<MbUser> usersNew) throws ConnectionException {
+        Connection connection = execContext.getMyAccount().getConnection();
+        for (int from = 0; from < userOidsNew.size(); from += Connection.MAX_USERS_TO_GET) {
+            List<String> batch = userOidsNew.subList(from,
+                    Math.min(from + Connection.MAX_USERS_TO_GET, userOidsNew.size()));
+            List<MbUser> users;
             try {
-                count++;
-                mbUser = execContext.getMyAccount().getConnection().getUser(userOidNew, null);
-                execContext.getResult().incrementDownloadedCount();
+                users = connection.getUsers(batch);
             } catch (ConnectionException e) {
-                long userId = MyQuery.oidToId(OidEnum.USER_OID,
-                        execContext.getMyAccount().getOriginId(), userOidNew);
-                if (userId == 0) {
-                    MyLog.i(this, "Failed to identify a User for oid=" + userOidNew, e);
-                } else {
-                    mbUser = MbUser.fromOriginAndUserOid(execContext.getMyAccount().getOriginId(), userOidNew);
-                    mbUser.userId = userId;
-                    mbUser.setWebFingerId(MyQuery.userIdToWebfingerId(userId));
-                    MyLog.v(this, "Server doesn't return User object for " + mbUser , e);
+                if (!isBatchErrorRecoverable(e)) {
+                    throw e;
+                }
+                MyLog.i(this, "Failed to get a batch of " + batch.size() + " users, getting them one by one", e);
+                if (getUsersInParallel(batch, usersNew)) {
+                    return true;
                 }
+                continue;
             }
-            if (mbUser != null) {
-                broadcastProgress(String.valueOf(count) + ". "
-                        + execContext.getContext().getText(R.string.get_user)
-                        + ": " + mbUser.getNamePreferablyWebFingerId(), true);
+            execContext.getResult().incrementDownloadedCount();
+            Set<String> oidsFound = new HashSet<>();
+            for (MbUser mbUser : users) {
+                oidsFound.add(mbUser.oid);
                 usersNew.add(mbUser);
             }
+            for (String userOidNew : batch) {
+                if (!oidsFound.contains(userOidNew)) {
+                    MbUser mbUser = getStoredUser(userOidNew, null);
+                    if (mbUser != null) {
+                        usersNew.add(mbUser);
+                    }
+                }
+            }
+            broadcastProgress(String.valueOf(from + batch.size()) + "/" + userOidsNew.size() + ". "
+                    + execContext.getContext().getText(R.string.get_user), true);
             if (logSoftErrorIfStopping()) {
                 return true;
             }
@@ -202,6 +228,121 @@ public class CommandExecutorFollowers extends CommandExecutorStrategy {
         return false;
     }
 
+    /** E.g. Twitter returns "Not found" for a batch, if none of its users exists anymore.
+     * Other users may still be got one by one, unless we cannot send requests at all */
+    private static boolean isBatchErrorRecoverable(ConnectionException e) {
+        switch (e.getStatusCode()) {
+            case AUTHENTICATION_ERROR:
+            case CREDENTIALS_OF_OTHER_USER:
+            case NO_CREDENTIALS_FOR_HOST:
+            case UNAUTHORIZED:
+            case TOO_MANY_REQUESTS:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /** Gets one User in the background */
+    private static class GetUserTask extends MyAsyncTask<Void, Void, MbUser> {
+        private final Connection connection;
+        private final String userOid;
+        private volatile ConnectionException exception = null;
+
+        GetUserTask(Connection connection, String userOid) {
+            super(GetUserTask.class.getSimpleName() + "-" + userOid, PoolEnum.DEFAULT);
+            setSingleInstance(false);
+            this.connection = connection;
+            this.userOid = userOid;
+        }
+
+        @Override
+        protected MbUser doInBackground2(Void... params) {
+            try {
+                return connection.getUser(userOid, null);
+            } catch (ConnectionException e) {
+                exception = e;
+                return null;
+            }
+        }
+
+        /** Executes the task in the current thread, if it was not launched */
+        MbUser executeHere() {
+            return doInBackground2();
+        }
+    }
+
+    /**
+     * Users are requested in tasks of the shared pool of {@link AsyncTaskLauncher},
+     * not more than {@link #MAX_PARALLEL_REQUESTS} at a time
+     */
+    private boolean getUsersInParallel(List<String> userOidsNew, List<MbUser> usersNew) {
+        if (userOidsNew.isEmpty()) {
+            return false;
+        }
+        final Connection connection = execContext.getMyAccount().getConnection();
+        List<GetUserTask> tasks = new ArrayList<>();
+        List<Boolean> launched = new ArrayList<>();
+        try {
+            for (int index = 0; index < userOidsNew.size(); index++) {
+                while (tasks.size() < userOidsNew.size() && tasks.size() < index + MAX_PARALLEL_REQUESTS) {
+                    GetUserTask task = new GetUserTask(connection, userOidsNew.get(tasks.size()));
+                    tasks.add(task);
+                    launched.add(AsyncTaskLauncher.execute(this, false, task));
+                }
+                GetUserTask task = tasks.get(index);
+                MbUser mbUser;
+                if (launched.get(index)) {
+                    try {
+                        mbUser = task.get();
+                    } catch (ExecutionException | CancellationException e) {
+                        MyLog.i(this, "Failed to get user " + task.userOid, e);
+                        mbUser = null;
+                    }
+                } else {
+                    mbUser = task.executeHere();
+                }
+                if (mbUser != null) {
+                    execContext.getResult().incrementDownloadedCount();
+                } else {
+                    mbUser = getStoredUser(task.userOid, task.exception);
+                }
+                if (mbUser != null) {
+                    broadcastProgress(String.valueOf(index + 1) + ". "
+                            + execContext.getContext().getText(R.string.get_user)
+                            + ": " + mbUser.getNamePreferablyWebFingerId(), true);
+                    usersNew.add(mbUser);
+                }
+                if (logSoftErrorIfStopping()) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            MyLog.i(this, "getUsersInParallel interrupted", e);
+            Thread.currentThread().interrupt();
+            return true;
+        } finally {
+            for (GetUserTask task : tasks) {
+                task.cancel(true);
+            }
+        }
+        return false;
+    }
+
+    /** The User, which is known to us already, in a case the server didn't return it */
+    private MbUser getStoredUser(String userOid, Throwable e) {
+        long userId = MyQuery.oidToId(OidEnum.USER_OID, execContext.getMyAccount().getOriginId(), userOid);
+        if (userId == 0) {
+            MyLog.i(this, "Failed to identify a User for oid=" + userOid, e);
+            return null;
+        }
+        MbUser mbUser = MbUser.fromOriginAndUserOid(execContext.getMyAccount().getOriginId(), userOid);
+        mbUser.userId = userId;
+        mbUser.setWebFingerId(MyQuery.userIdToWebfingerId(userId));
+        MyLog.v(this, "Server doesn't return User object for " + mbUser , e);
+        return mbUser;
+    }
+
     /**
      * @return true if we need to interrupt process
      */
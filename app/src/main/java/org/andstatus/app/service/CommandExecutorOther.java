@@ -88,10 +88,8 @@ class CommandExecutorOther extends CommandExecutorStrategy{
                 rateLimitStatus();
                 break;
             case FETCH_ATTACHMENT:
-                FileDownloader.newForDownloadRow(execContext.getCommandData().itemId).load(execContext.getCommandData());
-                break;
             case FETCH_AVATAR:
-                (new AvatarDownloader(execContext.getCommandData().getUserId())).load(execContext.getCommandData());
+                FileDownloader.newFor(execContext.getCommandData()).load(execContext.getCommandData());
                 break;
             case CLEAR_NOTIFICATIONS:
                 AppWidgets.clearAndUpdateWidgets(execContext.getMyContext());
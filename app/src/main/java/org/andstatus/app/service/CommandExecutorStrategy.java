@@ -18,6 +18,7 @@ package org.andstatus.app.service;
 
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.net.http.ConnectionException;
+import org.andstatus.app.net.http.RateLimits;
 import org.andstatus.app.util.I18n;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.RelativeTime;
@@ -33,8 +34,14 @@ class CommandExecutorStrategy implements CommandExecutorParent {
                 .setParent(parent);
         commandData.getResult().prepareForLaunch();
         logLaunch(strategy);
-        // This may cause recursive calls to executors...
-        strategy.execute();
+        boolean inBackgroundPrevious = RateLimits.setInBackground(
+                !commandData.isManuallyLaunched() && !commandData.isInForeground());
+        try {
+            // This may cause recursive calls to executors...
+            strategy.execute();
+        } finally {
+            RateLimits.setInBackground(inBackgroundPrevious);
+        }
         commandData.getResult().afterExecutionEnded();
         logEnd(strategy);
     }
@@ -23,27 +23,47 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDiskIOException;
 import android.support.annotation.NonNull;
 
+import net.jcip.annotations.GuardedBy;
+
 import org.andstatus.app.context.MyContextHolder;
 import org.andstatus.app.context.MyPreferences;
 import org.andstatus.app.data.DbUtils;
 import org.andstatus.app.database.CommandTable;
 import org.andstatus.app.util.MyLog;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
 
 /**
+ * Command queues, which are persisted in the {@link CommandTable} incrementally:
+ * each change of a queue (or of a queued command, see {@link #onChanged(CommandData)}) is journaled
+ * and written to the database in batches, one transaction per batch. So a crash may lose the latest batch only.
+ * A command, taken from a queue for execution, is kept in the database until it is finished,
+ * see {@link #finish(CommandData)}
  * @author yvolk@yurivolkov.com
  */
 public class CommandQueue {
+    /** Number of pending changes, which causes the journal to be written */
+    private static final int MAX_CHANGES_IN_BATCH = 20;
+    /** The journal is written on a next change, if its oldest change is older than this */
+    private static final long MAX_BATCH_AGE_MS = 3000;
+
     private final Context context;
-    private static class OneQueue {
-        Queue<CommandData> queue = new PriorityBlockingQueue<>(100);
+    private class OneQueue {
+        final JournaledQueue queue;
         volatile int savedCount = 0;
         volatile boolean savedForegroundTasks = false;
 
+        OneQueue(QueueType queueType) {
+            queue = new JournaledQueue(queueType);
+        }
+
         public void clear() {
             queue.clear();
             savedCount = 0;
@@ -72,10 +92,152 @@ public class CommandQueue {
             return queue.size() + savedCount;
         }
     }
+
+    /**
+     * The queue with a hash index of its commands by their identity (see {@link CommandData#equals(Object)}),
+     * which makes {@link #contains(Object)} O(1) and rejects duplicates.
+     * Its changes via {@link #offer(CommandData)} (and "add..." methods), {@link #remove(Object)}
+     * and {@link #clear()} are journaled. A command, taken by {@link #poll()}, is kept "in progress".
+     * Other modifications (e.g. via an iterator) are not supported
+     */
+    private class JournaledQueue extends PriorityBlockingQueue<CommandData> {
+        private final QueueType queueType;
+        private final Map<CommandData, CommandData> index = new ConcurrentHashMap<>();
+
+        JournaledQueue(QueueType queueType) {
+            super(100);
+            this.queueType = queueType;
+        }
+
+        /** @return true also if the same command is in the queue already */
+        @Override
+        public boolean offer(CommandData commandData) {
+            boolean added = restore(commandData);
+            inProgress.remove(commandData.getCommandId());
+            // A rejected duplicate is deleted, if it was persisted
+            journal(commandData);
+            return added || index.containsKey(commandData);
+        }
+
+        /** Adds the command without journaling it
+         * @return true if added */
+        boolean restore(CommandData commandData) {
+            synchronized (this) {
+                if (index.containsKey(commandData) || !super.offer(commandData)) {
+                    return false;
+                }
+                index.put(commandData, commandData);
+                return true;
+            }
+        }
+
+        /** Takes the command for execution, so it is not journaled */
+        @Override
+        public CommandData poll() {
+            synchronized (this) {
+                CommandData commandData = super.poll();
+                if (commandData != null) {
+                    index.remove(commandData);
+                    inProgress.put(commandData.getCommandId(), new Change(commandData, queueType));
+                }
+                return commandData;
+            }
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            CommandData removed = take(o, false);
+            if (removed != null) {
+                journal(removed);
+            }
+            return removed != null;
+        }
+
+        /** @return the removed command or null */
+        CommandData take(Object o, boolean forExecution) {
+            synchronized (this) {
+                CommandData removed = o == null ? null : index.remove(o);
+                if (removed != null) {
+                    super.remove(removed);
+                    if (forExecution) {
+                        inProgress.put(removed.getCommandId(), new Change(removed, queueType));
+                    }
+                }
+                return removed;
+            }
+        }
+
+        /** @return the queued command with the same commandId or null */
+        CommandData getById(@NonNull CommandData commandData) {
+            CommandData queued = index.get(commandData);
+            return queued != null && queued.getCommandId() == commandData.getCommandId() ? queued : null;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o != null && index.containsKey(o);
+        }
+
+        @Override
+        public void clear() {
+            for (CommandData commandData : unload()) {
+                journal(commandData);
+            }
+        }
+
+        /** Removes all commands from memory without journaling
+         * @return the commands removed */
+        List<CommandData> unload() {
+            synchronized (this) {
+                List<CommandData> removed = new ArrayList<>(index.values());
+                super.clear();
+                index.clear();
+                return removed;
+            }
+        }
+    }
+
+    /** A state of a command to be persisted */
+    private static class Change {
+        final CommandData commandData;
+        /** The queue of the command, null to delete the command */
+        final QueueType queueType;
+
+        Change(CommandData commandData, QueueType queueType) {
+            this.commandData = commandData;
+            this.queueType = queueType;
+        }
+
+        void writeTo(SQLiteDatabase db) {
+            if (queueType == null) {
+                db.delete(CommandTable.TABLE_NAME, CommandTable._ID + "=" + commandData.getCommandId(), null);
+            } else {
+                ContentValues values = new ContentValues();
+                commandData.toContentValues(values);
+                values.put(CommandTable.QUEUE_TYPE, queueType.save());
+                db.replaceOrThrow(CommandTable.TABLE_NAME, null, values);
+            }
+        }
+    }
+
     private final Map<QueueType, OneQueue> queues = new HashMap<>();
     private volatile boolean loaded = false;
     private volatile boolean saved = false;
 
+    /** Commands, taken from the queues for execution, by commandId. These are kept in the database
+     * in their queues till they are finished */
+    private final Map<Long, Change> inProgress = new ConcurrentHashMap<>();
+
+    private final Object journalLock = new Object();
+    /** Changed commands by commandId. Their state at the moment of writing is persisted,
+     * see {@link #toChange(CommandData)} */
+    @GuardedBy("journalLock")
+    private final Map<Long, CommandData> journal = new LinkedHashMap<>();
+    @GuardedBy("journalLock")
+    private long journalStartedAt = 0;
+    /** Batches are written one by one, so an older change cannot overwrite a newer one */
+    private final Object flushLock = new Object();
+
     public CommandQueue() {
         this(MyContextHolder.get().context());
     }
@@ -83,7 +245,7 @@ public class CommandQueue {
     public CommandQueue(Context context) {
         this.context = context;
         for (QueueType queueType : QueueType.values()) {
-            queues.put(queueType, new OneQueue());
+            queues.put(queueType, new OneQueue(queueType));
         }
     }
 
@@ -95,6 +257,7 @@ public class CommandQueue {
         if (loaded) {
             MyLog.d(this, "Already loaded");
         } else {
+            flushJournal();
             int count = load(QueueType.CURRENT) + load(QueueType.RETRY);
             int countError = load(QueueType.ERROR);
             MyLog.d(this, "State restored, " + (count > 0 ? Integer.toString(count) : "no ")
@@ -110,7 +273,7 @@ public class CommandQueue {
     protected int load(@NonNull QueueType queueType) {
         final String method = "loadQueue-" + queueType.save();
         OneQueue oneQueue = queues.get(queueType);
-        Queue<CommandData> queue = oneQueue.queue;
+        JournaledQueue queue = oneQueue.queue;
         int count = 0;
         SQLiteDatabase db = MyContextHolder.get().getDatabase();
         if (db == null) {
@@ -118,39 +281,53 @@ public class CommandQueue {
             return 0;
         }
         String sql = "SELECT * FROM " + CommandTable.TABLE_NAME + " WHERE " + CommandTable.QUEUE_TYPE + "='" + queueType.save() + "'";
+        List<CommandData> skipped = new ArrayList<>();
         Cursor c = null;
         try {
             c = db.rawQuery(sql, null);
             while (c.moveToNext()) {
                 CommandData cd = CommandData.fromCursor(MyContextHolder.get(), c);
-                if (CommandEnum.EMPTY.equals(cd.getCommand())) {
+                if (inProgress.containsKey(cd.getCommandId())) {
+                    MyLog.v(context, method + "; in progress " + cd);
+                } else if (CommandEnum.EMPTY.equals(cd.getCommand())) {
                     MyLog.e(context, method + "; empty skipped " + cd);
-                } else if (queue.contains(cd)) {
-                    MyLog.e(context, method + "; duplicate skipped " + cd);
+                    skipped.add(cd);
+                } else if (queue.restore(cd)) {
+                    count++;
+                    if (MyLog.isVerboseEnabled() && (count < 6 || cd.getCommand() == CommandEnum.UPDATE_STATUS )) {
+                        MyLog.v(context, method + "; " + count + ": " + cd.toString());
+                    }
                 } else {
-                    if (queue.offer(cd)) {
-                        count++;
-                        if (MyLog.isVerboseEnabled() && (count < 6 || cd.getCommand() == CommandEnum.UPDATE_STATUS )) {
-                            MyLog.v(context, method + "; " + count + ": " + cd.toString());
+                    CommandData existing = queue.index.get(cd);
+                    if (existing == null || existing.getCommandId() != cd.getCommandId()) {
+                        MyLog.e(context, method + "; duplicate skipped " + cd);
+                        if (existing != null) {
+                            skipped.add(cd);
                         }
-                    } else {
-                        MyLog.e(context, method + "; " + cd);
                     }
                 }
             }
         } finally {
             DbUtils.closeSilently(c);
         }
+        // Skipped rows are deleted, so they are not read again on each load
+        if (!skipped.isEmpty()) {
+            synchronized (journalLock) {
+                for (CommandData cd : skipped) {
+                    journal.put(cd.getCommandId(), cd);
+                }
+            }
+            flushJournal();
+            MyLog.d(context, method + "; deleted " + skipped.size() + " skipped commands");
+        }
         MyLog.d(context, method + "; loaded " + count + " commands from '" + queueType + "'");
         oneQueue.savedCount = 0;
         oneQueue.savedForegroundTasks = false;
         return count;
     }
 
+    /** Writes pending changes and releases memory, used by the queues. They are read back on {@link #load()} */
     public synchronized void save() {
-        if (loaded) {
-            clearQueuesInDatabase();
-        }
         int count = save(QueueType.CURRENT) + save(QueueType.RETRY);
         int countError = save(QueueType.ERROR);
         MyLog.d(this, (loaded ? "Queues saved" : "Saved new queued commands only") + ", "
@@ -164,75 +341,150 @@ public class CommandQueue {
     /** @return Number of items persisted */
     public int save(@NonNull QueueType queueType) {
         final String method = "saveQueue-" + queueType.save();
+        if (!flushJournal()) {
+            MyLog.d(context, method + "; not saved");
+            return 0;
+        }
         OneQueue oneQueue = queues.get(queueType);
-        Queue<CommandData> queue = oneQueue.queue;
-        int count = 0;
-        try {
+        if (loaded) {
+            oneQueue.savedCount = 0;
+            oneQueue.savedForegroundTasks = false;
+        }
+        boolean hasForegroundTasks = oneQueue.hasForegroundTasks();
+        int count = oneQueue.queue.unload().size();
+        oneQueue.savedForegroundTasks |= hasForegroundTasks;
+        oneQueue.savedCount += count;
+        if (count > 0) {
+            MyLog.d(context, method + "; " + count + " saved");
+        }
+        return count;
+    }
+
+    /** Persists the changed state of the queued command (e.g. after {@link CommandData#resetRetries()}) */
+    public void onChanged(@NonNull CommandData commandData) {
+        journal(commandData);
+    }
+
+    /**
+     * Removes the command from the queue for execution. It is kept in the database
+     * till {@link #finish(CommandData)} or till it is added to a queue again
+     * @return true if removed
+     */
+    public boolean takeForExecution(@NonNull QueueType queueType, @NonNull CommandData commandData) {
+        return queues.get(queueType).queue.take(commandData, true) != null;
+    }
+
+    /** The command, taken for execution, was executed or dropped.
+     * It is deleted from the database, unless it was added to a queue again */
+    public void finish(@NonNull CommandData commandData) {
+        Change change = inProgress.get(commandData.getCommandId());
+        if (change != null && change.commandData == commandData) {
+            inProgress.remove(commandData.getCommandId(), change);
+        }
+        journal(commandData);
+    }
+
+    private void journal(@NonNull CommandData commandData) {
+        boolean flushNow;
+        synchronized (journalLock) {
+            if (journal.isEmpty()) {
+                journalStartedAt = System.currentTimeMillis();
+            }
+            journal.put(commandData.getCommandId(), commandData);
+            flushNow = journal.size() >= MAX_CHANGES_IN_BATCH
+                    || System.currentTimeMillis() - journalStartedAt > MAX_BATCH_AGE_MS;
+        }
+        if (flushNow) {
+            flushJournal();
+        }
+    }
+
+    /** Writes pending changes to the database in one transaction
+     * @return true if nothing is pending now */
+    boolean flushJournal() {
+        final String method = "flushJournal";
+        synchronized (flushLock) {
+            List<CommandData> changed;
+            synchronized (journalLock) {
+                if (journal.isEmpty()) {
+                    return true;
+                }
+                changed = new ArrayList<>(journal.values());
+                journal.clear();
+            }
             SQLiteDatabase db = MyContextHolder.get().getDatabase();
             if (db == null) {
                 MyLog.d(context, method + "; Database is unavailable");
-                return 0;
-            }
-            if (loaded) {
-                oneQueue.savedCount = 0;
-                oneQueue.savedForegroundTasks = false;
-                String sql = "DELETE FROM " + CommandTable.TABLE_NAME + " WHERE " + CommandTable.QUEUE_TYPE + "='" + queueType.save() + "'";
-                DbUtils.execSQL(db, sql);
+                returnToJournal(changed);
+                return false;
             }
-
-            if (!queue.isEmpty()) {
-                while (!queue.isEmpty() && count < 300) {
-                    CommandData cd = queue.poll();
-                    oneQueue.savedForegroundTasks |= cd.isInForeground();
-                    ContentValues values = new ContentValues();
-                    cd.toContentValues(values);
-                    values.put(CommandTable.QUEUE_TYPE, queueType.save());
-                    db.insert(CommandTable.TABLE_NAME, null, values);
-                    count++;
-                    if (MyLog.isVerboseEnabled() && (count < 6 || cd.getCommand() == CommandEnum.UPDATE_STATUS )) {
-                        MyLog.v(context, method + "; " + count + ": " + cd.toString());
-                    }
-                    if (MyContextHolder.get().isTestRun() && queue.contains(cd)) {
-                        MyLog.e(context, method + "; Duplicated command in a queue:" + count + " " + cd.toString());
+            try {
+                db.beginTransaction();
+                try {
+                    for (CommandData commandData : changed) {
+                        toChange(commandData).writeTo(db);
                     }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                if (queue.isEmpty()) {
-                    MyLog.d(context, method + "; " + count + " saved");
-                } else {
-                    MyLog.e(context, method + "; " + count + " saved" +
-                            (queue.isEmpty() ? "" : ", " + queue.size() + " left"));
-                }
+            } catch (Exception e) {
+                MyLog.e(context, method + "; " + changed.size() + " changes not written.\n"
+                        + MyContextHolder.getSystemInfo(context, true), e);
+                returnToJournal(changed);
+                return false;
             }
-        } catch (Exception e) {
-            String msgLog = method + "; " + count + " saved, " + queue.size() + " left.\n"
-                    + MyContextHolder.getSystemInfo(context, true);
-            MyLog.e(context, msgLog, e);
-            if (SQLiteDiskIOException.class.isAssignableFrom(e.getClass())) {
-                throw e;
-            } else {
-                throw new IllegalStateException(msgLog, e);
+            MyLog.v(context, method + "; " + changed.size() + " changes written");
+            return true;
+        }
+    }
+
+    /** The current state of the command: it's either in one of the queues, or in progress, or deleted.
+     * So a change of the command, which is journaled later, cannot be overwritten by an older one */
+    private Change toChange(@NonNull CommandData commandData) {
+        for (Map.Entry<QueueType, OneQueue> entry : queues.entrySet()) {
+            CommandData queued = entry.getValue().queue.getById(commandData);
+            if (queued != null) {
+                return new Change(queued, entry.getKey());
             }
         }
-        oneQueue.savedCount += count;
-        return count;
+        Change change = inProgress.get(commandData.getCommandId());
+        return change == null ? new Change(commandData, null) : change;
+    }
+
+    private void returnToJournal(List<CommandData> changed) {
+        synchronized (journalLock) {
+            Map<Long, CommandData> newer = new LinkedHashMap<>(journal);
+            journal.clear();
+            for (CommandData commandData : changed) {
+                journal.put(commandData.getCommandId(), commandData);
+            }
+            journal.putAll(newer);
+            journalStartedAt = System.currentTimeMillis();
+        }
     }
 
     public synchronized void clearQueuesInDatabase() {
         final String method = "clearQueuesInDatabase";
-        try {
-            SQLiteDatabase db = MyContextHolder.get().getDatabase();
-            if (db == null) {
-                MyLog.d(context, method + "; Database is unavailable");
+        synchronized (flushLock) {
+            synchronized (journalLock) {
+                journal.clear();
             }
-            String sql = "DELETE FROM " + CommandTable.TABLE_NAME;
-            DbUtils.execSQL(db, sql);
-        } catch (Exception e) {
-            String msgLog = method + MyContextHolder.getSystemInfo(context, true);
-            MyLog.e(context, msgLog, e);
-            if (SQLiteDiskIOException.class.isAssignableFrom(e.getClass())) {
-                throw e;
-            } else {
-                throw new IllegalStateException(msgLog, e);
+            try {
+                SQLiteDatabase db = MyContextHolder.get().getDatabase();
+                if (db == null) {
+                    MyLog.d(context, method + "; Database is unavailable");
+                }
+                String sql = "DELETE FROM " + CommandTable.TABLE_NAME;
+                DbUtils.execSQL(db, sql);
+            } catch (Exception e) {
+                String msgLog = method + MyContextHolder.getSystemInfo(context, true);
+                MyLog.e(context, msgLog, e);
+                if (SQLiteDiskIOException.class.isAssignableFrom(e.getClass())) {
+                    throw e;
+                } else {
+                    throw new IllegalStateException(msgLog, e);
+                }
             }
         }
     }
@@ -243,6 +495,7 @@ public class CommandQueue {
         for ( Map.Entry<QueueType, OneQueue> entry : queues.entrySet()) {
             entry.getValue().clear();
         }
+        inProgress.clear();
         clearQueuesInDatabase();
         MyLog.v(this, "Queues cleared");
     }
@@ -279,8 +532,7 @@ public class CommandQueue {
     }
 
     public void addToQueue(QueueType queueType, CommandData commandData) {
-        if (!get(queueType).contains(commandData)
-                && !get(queueType).offer(commandData)) {
+        if (!get(queueType).offer(commandData)) {
             MyLog.e(this, queueType.name() + " is full?");
         }
     }
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.service;
+
+import android.net.Uri;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.context.MyContextHolder;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.os.MyAsyncTask;
+import org.andstatus.app.util.MyLog;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads of avatars and attachments ({@link CommandEnum#FETCH_AVATAR} and {@link CommandEnum#FETCH_ATTACHMENT})
+ * are executed here in parallel, separately from the (slow) syncing lanes of the {@link MyService}:
+ * not more than {@link #MAX_PARALLEL_DOWNLOADS} at a time, and not more than {@link #MAX_DOWNLOADS_PER_HOST}
+ * from the same host. The same Uri is never downloaded twice at the same time:
+ * the second download waits and then simply copies the file (see {@link FileDownloader}).
+ * Soft errors are retried here with increasing delays, only then the command is returned to the {@link MyService}
+ * @author yvolk@yurivolkov.com
+ */
+class FileDownloadQueue {
+    static final int MAX_PARALLEL_DOWNLOADS = 4;
+    static final int MAX_DOWNLOADS_PER_HOST = 2;
+    static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_SECONDS = 10;
+
+    private final MyService myService;
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final List<Entry> waiting = new ArrayList<>();
+    @GuardedBy("lock")
+    private final List<Entry> running = new ArrayList<>();
+
+    static class Entry {
+        final CommandData commandData;
+        /** Null until the download row is read from the database */
+        volatile FileDownloader downloader = null;
+        String host = "";
+        int attempts = 0;
+        long notBefore = 0;
+
+        Entry(CommandData commandData) {
+            this.commandData = commandData;
+        }
+
+        boolean isResolved() {
+            return downloader != null;
+        }
+
+        Uri getUri() {
+            return downloader == null ? Uri.EMPTY : downloader.getUri();
+        }
+
+        @Override
+        public String toString() {
+            return commandData.toString() + (attempts > 0 ? ", attempts:" + attempts : "")
+                    + (host.length() > 0 ? ", host:" + host : "");
+        }
+    }
+
+    FileDownloadQueue(MyService myService) {
+        this.myService = myService;
+    }
+
+    static boolean isFileDownload(CommandData commandData) {
+        switch (commandData.getCommand()) {
+            case FETCH_AVATAR:
+            case FETCH_ATTACHMENT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** @return true if the command was taken by this queue (or the same command is already here) */
+    boolean offer(CommandData commandData) {
+        if (commandData == null || !isFileDownload(commandData)) {
+            return false;
+        }
+        synchronized (lock) {
+            if (contains(waiting, commandData) || contains(running, commandData)) {
+                MyLog.v(this, "Already queued " + commandData);
+                return true;
+            }
+            waiting.add(new Entry(commandData));
+        }
+        startDownloads();
+        return true;
+    }
+
+    @GuardedBy("lock")
+    private static boolean contains(List<Entry> entries, CommandData commandData) {
+        for (Entry entry : entries) {
+            if (entry.commandData.equals(commandData)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Launches waiting downloads, which are due now and for which limits allow */
+    void startDownloads() {
+        final long now = System.currentTimeMillis();
+        List<Entry> toLaunch = new ArrayList<>();
+        synchronized (lock) {
+            for (Iterator<Entry> iterator = waiting.iterator();
+                 iterator.hasNext() && running.size() + toLaunch.size() < MAX_PARALLEL_DOWNLOADS; ) {
+                Entry entry = iterator.next();
+                if (entry.notBefore > now || (entry.isResolved() && !isAllowedToRun(entry))) {
+                    continue;
+                }
+                iterator.remove();
+                running.add(entry);
+                toLaunch.add(entry);
+            }
+        }
+        for (Entry entry : toLaunch) {
+            if (!AsyncTaskLauncher.execute(this, false, new DownloadTask(entry))) {
+                synchronized (lock) {
+                    running.remove(entry);
+                    waiting.add(0, entry);
+                }
+            }
+        }
+    }
+
+    /** A resolved entry may run, if its host has a free slot and nobody is downloading the same Uri */
+    @GuardedBy("lock")
+    private boolean isAllowedToRun(Entry entryIn) {
+        int sameHostCount = 0;
+        for (Entry entry : running) {
+            if (entry == entryIn || !entry.isResolved()) {
+                continue;
+            }
+            if (entry.getUri().equals(entryIn.getUri())) {
+                return false;
+            }
+            if (entryIn.host.length() > 0 && entry.host.equals(entryIn.host)) {
+                sameHostCount++;
+            }
+        }
+        return sameHostCount < MAX_DOWNLOADS_PER_HOST;
+    }
+
+    boolean isAnythingToExecuteNow() {
+        final long now = System.currentTimeMillis();
+        synchronized (lock) {
+            if (!running.isEmpty()) {
+                return true;
+            }
+            for (Entry entry : waiting) {
+                if (entry.notBefore <= now) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    boolean isRunning() {
+        synchronized (lock) {
+            return !running.isEmpty();
+        }
+    }
+
+    /** Waiting downloads are removed from this queue, so they could be persisted as usual commands */
+    List<CommandData> drainWaiting() {
+        List<CommandData> commands = new ArrayList<>();
+        synchronized (lock) {
+            for (Entry entry : waiting) {
+                commands.add(entry.commandData);
+            }
+            waiting.clear();
+        }
+        return commands;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return MyLog.formatKeyValue(this, "running:" + running.size() + ", waiting:" + waiting.size());
+        }
+    }
+
+    private void onEntryResolved(Entry entry) {
+        String host = entry.getUri().getHost();
+        entry.host = host == null ? "" : host;
+    }
+
+    /** @return false if the entry was returned to the waiting list */
+    private boolean acquireSlot(Entry entry) {
+        synchronized (lock) {
+            if (isAllowedToRun(entry)) {
+                return true;
+            }
+            running.remove(entry);
+            waiting.add(0, entry);
+        }
+        MyLog.v(this, "Postponed, host is busy: " + entry);
+        return false;
+    }
+
+    private void onEntryExecuted(Entry entry) {
+        CommandResult result = entry.commandData.getResult();
+        boolean retryHere = result.hasError() && !result.hasHardError() && entry.attempts < MAX_ATTEMPTS
+                && !myService.isStopping();
+        synchronized (lock) {
+            running.remove(entry);
+            if (retryHere) {
+                entry.notBefore = System.currentTimeMillis()
+                        + TimeUnit.SECONDS.toMillis(RETRY_DELAY_SECONDS << (2 * (entry.attempts - 1)));
+                waiting.add(entry);
+            }
+        }
+        if (retryHere) {
+            MyLog.v(this, "Will retry " + entry);
+        } else {
+            myService.onFileDownloadExecuted(entry.commandData);
+        }
+        if (MyLog.isVerboseEnabled()) {
+            MyLog.v(this, "Executed " + entry + "; " + toString());
+        }
+        startDownloads();
+    }
+
+    /** Each download is a separate task, so several of them are executed in parallel */
+    class DownloadTask extends MyAsyncTask<Void, Void, Void> {
+        private final Entry entry;
+
+        DownloadTask(Entry entry) {
+            super(FileDownloadQueue.class.getSimpleName() + "-" + entry.commandData.getCommandId(),
+                    PoolEnum.FILE_DOWNLOAD);
+            setSingleInstance(false);
+            this.entry = entry;
+        }
+
+        @Override
+        protected Void doInBackground2(Void... params) {
+            boolean postponed = false;
+            try {
+                if (!entry.isResolved()) {
+                    entry.downloader = FileDownloader.newFor(entry.commandData);
+                    onEntryResolved(entry);
+                    if (!acquireSlot(entry)) {
+                        postponed = true;
+                        return null;
+                    }
+                }
+                download();
+            } finally {
+                if (postponed) {
+                    startDownloads();
+                } else {
+                    onEntryExecuted(entry);
+                }
+            }
+            return null;
+        }
+
+        private void download() {
+            final CommandData commandData = entry.commandData;
+            entry.attempts++;
+            commandData.getResult().prepareForLaunch();
+            ConnectionState connectionState = MyContextHolder.get().getConnectionState();
+            if (commandData.getCommand().getConnectionRequired().isConnectionStateOk(connectionState)) {
+                myService.onFileDownloadStarted(commandData);
+                entry.downloader.load(commandData);
+            } else {
+                commandData.getResult().incrementNumIoExceptions();
+                commandData.getResult().setMessage("Expected '"
+                        + commandData.getCommand().getConnectionRequired()
+                        + "', but was '" + connectionState + "' connection");
+            }
+            commandData.getResult().afterExecutionEnded();
+        }
+    }
+}
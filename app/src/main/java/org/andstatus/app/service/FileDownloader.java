@@ -24,15 +24,26 @@ import org.andstatus.app.data.DownloadFile;
 import org.andstatus.app.data.DownloadStatus;
 import org.andstatus.app.net.http.ConnectionException;
 import org.andstatus.app.net.social.Connection;
+import org.andstatus.app.util.FileUtils;
 import org.andstatus.app.util.MyLog;
 import org.andstatus.app.util.UriUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 
 public abstract class FileDownloader {
     protected final DownloadData data;
     public Connection connectionMock;
 
+    /** @return downloader for the {@link CommandEnum#FETCH_AVATAR} or {@link CommandEnum#FETCH_ATTACHMENT} command */
+    static FileDownloader newFor(CommandData commandData) {
+        if (commandData.getCommand() == CommandEnum.FETCH_AVATAR) {
+            return new AvatarDownloader(commandData.getUserId());
+        }
+        return newForDownloadRow(commandData.itemId);
+    }
+
     static FileDownloader newForDownloadRow(long rowIdIn) {
         DownloadData data = DownloadData.fromId(rowIdIn);
         if (data.userId != 0) {
@@ -86,12 +97,18 @@ public abstract class FileDownloader {
         try {
             String uriString = data.getUri().toString();
             File file = fileTemp.getFile();
-            MyAccount ma = findBestAccountForDownload();
-            MyLog.v(this, "About to download " + data.toString() + "; account:" + ma.getAccountName());
-            if (ma.isValidAndSucceeded()) {
-                ((connectionMock != null) ? connectionMock : getConnection(ma, data.getUri())).downloadFile(uriString, file);
+            DownloadFile loadedFile = connectionMock == null ? data.getLoadedFileWithSameUri() : DownloadFile.EMPTY;
+            if (loadedFile.exists()) {
+                MyLog.v(this, "Copying " + loadedFile + " already downloaded from the same Uri; " + data.toString());
+                FileUtils.readStreamToFile(new FileInputStream(loadedFile.getFile()), file);
             } else {
-                data.hardErrorLogged(method + ", No account to download the file", null);
+                MyAccount ma = findBestAccountForDownload();
+                MyLog.v(this, "About to download " + data.toString() + "; account:" + ma.getAccountName());
+                if (ma.isValidAndSucceeded()) {
+                    ((connectionMock != null) ? connectionMock : getConnection(ma, data.getUri())).downloadFile(uriString, file);
+                } else {
+                    data.hardErrorLogged(method + ", No account to download the file", null);
+                }
             }
         } catch (ConnectionException e) {
             if (e.isHardError()) {
@@ -99,6 +116,8 @@ public abstract class FileDownloader {
             } else {
                 data.softErrorLogged(method, e);
             }
+        } catch (IOException e) {
+            data.softErrorLogged(method, e);
         }
         if (data.isError()) {
             fileTemp.delete();
@@ -121,6 +140,11 @@ public abstract class FileDownloader {
         }
     }
 
+    /** Uri, which the file is (down)loaded from */
+    Uri getUri() {
+        return data.getUri();
+    }
+
     public DownloadStatus getStatus() {
         return data.getStatus();
     }
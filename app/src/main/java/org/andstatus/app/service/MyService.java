@@ -41,7 +41,10 @@ import org.andstatus.app.util.RelativeTime;
 import org.andstatus.app.util.SharedPreferencesUtil;
 import org.andstatus.app.util.TriState;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -73,8 +76,9 @@ public class MyService extends Service {
     private int mLatestProcessedStartId = 0;
     
     private final Object executorLock = new Object();
+    /** Each executor is a "lane", see {@link MyPreferences#getSyncLanes()} */
     @GuardedBy("executorLock")
-    private QueueExecutor mExecutor = null;
+    private final List<QueueExecutor> mExecutors = new ArrayList<>();
 
     private final Object heartBeatLock = new Object();
     @GuardedBy("heartBeatLock")
@@ -88,6 +92,7 @@ public class MyService extends Service {
     @GuardedBy("wakeLockLock")
     private PowerManager.WakeLock mWakeLock = null;
     private final CommandQueue queues = new CommandQueue(this);
+    private final FileDownloadQueue fileDownloads = new FileDownloadQueue(this);
 
     private static final long RETRY_QUEUE_PROCESSING_PERIOD_SECONDS = 900; 
     private final AtomicLong mRetryQueueProcessedAt = new AtomicLong();
@@ -107,7 +112,7 @@ public class MyService extends Service {
         }
         return state;
     }
-    private boolean isStopping() {
+    boolean isStopping() {
         synchronized (serviceStateLock) {
             return mIsStopping;
         }
@@ -205,6 +210,8 @@ public class MyService extends Service {
         }
         if (queues.get(QueueType.CURRENT).contains(commandData)) {
             MyLog.v(this, "Didn't add to Main queue. Already found " + commandData);
+        } else if (fileDownloads.offer(commandData)) {
+            MyLog.v(this, "Added to " + fileDownloads + " " + commandData);
         } else {
             commandData.getResult().prepareForLaunch();
             MyLog.v(this, "Adding to Main queue " + commandData);
@@ -217,6 +224,29 @@ public class MyService extends Service {
         return null;
     }
 
+    void onFileDownloadStarted(CommandData commandData) {
+        MyServiceEventsBroadcaster.newInstance(myContext, getServiceState())
+                .setCommandData(commandData)
+                .setEvent(MyServiceEvent.BEFORE_EXECUTING_COMMAND).broadcast();
+    }
+
+    /** Called by the {@link FileDownloadQueue} for the commands, which it won't retry itself */
+    void onFileDownloadExecuted(CommandData commandData) {
+        onCommandExecuted(commandData);
+        broadcastAfterExecutingCommand(commandData);
+    }
+
+    /** The command is moved to the Retry or Error queue or it is deleted */
+    private void onCommandExecuted(CommandData commandData) {
+        if (commandData.getResult().shouldWeRetry()) {
+            queues.addToQueue(QueueType.RETRY, commandData);
+        } else if (commandData.getResult().hasError()) {
+            queues.addToQueue(QueueType.ERROR, commandData);
+        } else {
+            queues.finish(commandData);
+        }
+    }
+
     private void broadcastAfterExecutingCommand(CommandData commandData) {
         MyServiceEventsBroadcaster.newInstance(myContext, getServiceState())
         .setCommandData(commandData).setEvent(MyServiceEvent.AFTER_EXECUTING_COMMAND).broadcast();
@@ -268,7 +298,7 @@ public class MyService extends Service {
                 startExecution();
                 break;
             default:
-                MyLog.v(this, "Didn't change execution " + mExecutor);
+                MyLog.v(this, "Didn't change execution " + executorsToString());
                 break;
         }
     }
@@ -352,6 +382,7 @@ public class MyService extends Service {
         acquireWakeLock();
         try {
             ensureExecutorStarted();
+            fileDownloads.startDownloads();
         } catch (Exception e) {
             MyLog.i(this, "Couldn't startExecutor", e);
             couldStopExecutor(true);
@@ -363,25 +394,33 @@ public class MyService extends Service {
         final String method = "ensureExecutorStarted";
         StringBuilder logMessageBuilder = new StringBuilder();
         synchronized(executorLock) {
-            if ( mExecutor != null && mExecutor.completedBackgroundWork()) {
-                logMessageBuilder.append(" Removing completed Executor " + mExecutor);
-                removeExecutor(logMessageBuilder);
+            for (Iterator<QueueExecutor> iterator = mExecutors.iterator(); iterator.hasNext(); ) {
+                QueueExecutor executor = iterator.next();
+                if (executor.completedBackgroundWork()) {
+                    logMessageBuilder.append(" Removing completed Executor " + executor);
+                    removeExecutor(executor, logMessageBuilder);
+                    iterator.remove();
+                } else if (!executor.isReallyWorking()) {
+                    logMessageBuilder.append(" Cancelling stalled Executor " + executor);
+                    removeExecutor(executor, logMessageBuilder);
+                    iterator.remove();
+                }
             }
-            if ( mExecutor != null && !isExecutorReallyWorkingNow()) {
-                logMessageBuilder.append(" Cancelling stalled Executor " + mExecutor);
-                removeExecutor(logMessageBuilder);
+            // Loaded once for all lanes, so the number of queued commands is known
+            queues.load();
+            int lanesNeeded = Math.min(MyPreferences.getSyncLanes(), Math.max(1, queues.totalSizeToExecute()));
+            if (!mExecutors.isEmpty()) {
+                logMessageBuilder.append(" There are Executors already: " + mExecutors.size()
+                        + " of " + lanesNeeded);
             }
-            if (mExecutor != null) {
-                logMessageBuilder.append(" There is an Executor already " + mExecutor);
-            } else {
-                // For now let's have only ONE working thread 
-                // (it seems there is some problem in parallel execution...)
-                QueueExecutor newExecutor = new QueueExecutor();
+            while (mExecutors.size() < lanesNeeded) {
+                QueueExecutor newExecutor = new QueueExecutor(getFreeLaneIndex());
                 logMessageBuilder.append(" Adding and starting new Executor " + newExecutor);
                 if (AsyncTaskLauncher.execute(this, false, newExecutor)) {
-                    mExecutor = newExecutor;
+                    mExecutors.add(newExecutor);
                 } else {
                     logMessageBuilder.append(" New executor was not added");
+                    break;
                 }
             }
         }
@@ -389,18 +428,37 @@ public class MyService extends Service {
             MyLog.v(this, method + "; " + logMessageBuilder);
         }
     }
-    
-    private void removeExecutor(StringBuilder logMessageBuilder) {
-        synchronized(executorLock) {
-            if (mExecutor == null) {
-                return;
-            }
-            if (mExecutor.needsBackgroundWork()) {
-                logMessageBuilder.append(" Cancelling and");
-                mExecutor.cancelLogged(true);
+
+    @GuardedBy("executorLock")
+    private int getFreeLaneIndex() {
+        int laneIndex = 0;
+        boolean found;
+        do {
+            found = true;
+            for (QueueExecutor executor : mExecutors) {
+                if (executor.laneIndex == laneIndex) {
+                    laneIndex++;
+                    found = false;
+                    break;
+                }
             }
-            logMessageBuilder.append(" Removing Executor " + mExecutor);
-            mExecutor = null;
+        } while (!found);
+        return laneIndex;
+    }
+
+    /** The executor should be removed from the {@link #mExecutors} by the caller */
+    @GuardedBy("executorLock")
+    private void removeExecutor(QueueExecutor executor, StringBuilder logMessageBuilder) {
+        if (executor.needsBackgroundWork()) {
+            logMessageBuilder.append(" Cancelling and");
+            executor.cancelLogged(true);
+        }
+        logMessageBuilder.append(" Removing Executor " + executor);
+    }
+
+    private String executorsToString() {
+        synchronized(executorLock) {
+            return mExecutors.isEmpty() ? "(no executors)" : mExecutors.toString();
         }
     }
 
@@ -417,7 +475,7 @@ public class MyService extends Service {
 
     private boolean isAnythingToExecuteNow() {
         return queues.isAnythingToExecuteNowIn(QueueType.CURRENT) || isAnythingToRetryNow()
-                || isExecutorReallyWorkingNow();
+                || isExecutorReallyWorkingNow() || fileDownloads.isAnythingToExecuteNow();
     }
     
     private boolean isAnythingToRetryNow() {
@@ -430,8 +488,53 @@ public class MyService extends Service {
     
     private boolean isExecutorReallyWorkingNow() {
         synchronized(executorLock) {
-          return mExecutor != null && mExecutor.isReallyWorking();
-        }        
+            for (QueueExecutor executor : mExecutors) {
+                if (executor.isReallyWorking()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** @return true if no other lane is working now, so the queues may be saved */
+    private boolean isTheOnlyWorkingExecutor(QueueExecutor executorIn) {
+        synchronized(executorLock) {
+            for (QueueExecutor executor : mExecutors) {
+                if (executor != executorIn && executor.isReallyWorking()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Fair scheduling between lanes: commands of the same account are executed sequentially,
+     * and not more than {@link MyPreferences#getSyncLanesPerOrigin()} commands of one Origin run at the same time,
+     * so a slow server doesn't stall syncing of other Social networks
+     */
+    @GuardedBy("executorLock")
+    private boolean isLaneAvailableFor(QueueExecutor executorIn, CommandData commandData) {
+        if (mExecutors.size() < 2) {
+            return true;
+        }
+        final long originId = commandData.getTimeline().getOrigin().getId();
+        final long accountUserId = commandData.getTimeline().getMyAccount().getUserId();
+        int sameOriginCount = 0;
+        for (QueueExecutor executor : mExecutors) {
+            CommandData executing = executor.currentlyExecuting;
+            if (executor == executorIn || executing == null) {
+                continue;
+            }
+            if (accountUserId != 0 && executing.getTimeline().getMyAccount().getUserId() == accountUserId) {
+                return false;
+            }
+            if (executing.getTimeline().getOrigin().getId() == originId) {
+                sameOriginCount++;
+            }
+        }
+        return sameOriginCount < MyPreferences.getSyncLanesPerOrigin();
     }
     
     @Override
@@ -478,6 +581,7 @@ public class MyService extends Service {
                     MyLog.d(this, "On unregisterReceiver", e);
                 }
                 latestProcessedStartId = mLatestProcessedStartId;
+                queues.get(QueueType.CURRENT).addAll(fileDownloads.drainWaiting());
                 queues.save();
                 mInitialized = false;
                 mIsStopping = false;
@@ -503,17 +607,31 @@ public class MyService extends Service {
         final String method = "couldStopExecutor";
         StringBuilder logMessageBuilder = new StringBuilder();
         boolean could = true;
+        if (fileDownloads.isRunning()) {
+            if (forceNow) {
+                logMessageBuilder.append(" Downloads are still running;");
+            } else {
+                logMessageBuilder.append(" Cannot stop now " + fileDownloads);
+                could = false;
+            }
+        }
         synchronized(executorLock) {
-            if (mExecutor != null && mExecutor.needsBackgroundWork() && mExecutor.isReallyWorking() ) {
-                if (forceNow) {
-                    logMessageBuilder.append(" Cancelling working Executor;");
-                } else {
-                    logMessageBuilder.append(" Cannot stop now Executor " + mExecutor);
-                    could = false;
+            for (QueueExecutor executor : mExecutors) {
+                if (executor.needsBackgroundWork() && executor.isReallyWorking()) {
+                    if (forceNow) {
+                        logMessageBuilder.append(" Cancelling working Executor;");
+                    } else {
+                        logMessageBuilder.append(" Cannot stop now Executor " + executor);
+                        could = false;
+                        break;
+                    }
                 }
             }
             if (could) {
-                removeExecutor(logMessageBuilder);
+                for (QueueExecutor executor : mExecutors) {
+                    removeExecutor(executor, logMessageBuilder);
+                }
+                mExecutors.clear();
             }
         }
         if (logMessageBuilder.length() > 0) {
@@ -535,14 +653,15 @@ public class MyService extends Service {
     private class QueueExecutor extends MyAsyncTask<Void, Void, Boolean> implements CommandExecutorParent {
         private volatile CommandData currentlyExecuting = null;
         private static final long MAX_EXECUTION_TIME_SECONDS = 60;
+        final int laneIndex;
 
-        QueueExecutor() {
-            super(PoolEnum.SYNC);
+        QueueExecutor(int laneIndex) {
+            super(QueueExecutor.class.getSimpleName() + laneIndex, PoolEnum.SYNC);
+            this.laneIndex = laneIndex;
         }
 
         @Override
         protected Boolean doInBackground2(Void... arg0) {
-            queues.load();
             MyLog.d(this, "Started, " + queues.get(QueueType.CURRENT).size() + " commands to process");
             String breakReason = "";
             do {
@@ -558,19 +677,23 @@ public class MyService extends Service {
                     breakReason = "Executed too long";
                     break;
                 }
+                CommandData commandData;
                 synchronized (executorLock) {
-                    if (mExecutor != this) {
+                    if (!mExecutors.contains(this)) {
                         breakReason = "Other executor";
                         break;
                     }
+                    commandData = pollQueue();
+                    currentlyExecuting = commandData;
                 }
-                CommandData commandData = pollQueue();
-                currentlyExecuting = commandData;
                 currentlyExecutingSince = System.currentTimeMillis();
                 if (commandData == null) {
                     breakReason = "No more commands";
                     break;
                 }
+                if (fileDownloads.offer(commandData)) {
+                    continue;
+                }
                 ConnectionState connectionState = myContext.getConnectionState();
                 if (commandData.getCommand().getConnectionRequired()
                         .isConnectionStateOk(connectionState)) {
@@ -584,19 +707,19 @@ public class MyService extends Service {
                             + commandData.getCommand().getConnectionRequired()
                             + "', but was '" + connectionState + "' connection");
                 }
-                if (commandData.getResult().shouldWeRetry()) {
-                    queues.addToQueue(QueueType.RETRY, commandData);
-                } else if (commandData.getResult().hasError()) {
-                    queues.addToQueue(QueueType.ERROR, commandData);
-                }
+                onCommandExecuted(commandData);
                 broadcastAfterExecutingCommand(commandData);
                 addSyncOfThisToQueue(commandData);
             } while (true);
+            currentlyExecuting = null;
             MyLog.d(this, "Ended, " + breakReason + ", " + queues.totalSizeToExecute() + " commands left");
-            queues.save();
+            if (isTheOnlyWorkingExecutor(this)) {
+                queues.save();
+            }
             return true;
         }
 
+        @GuardedBy("executorLock")
         private CommandData pollQueue() {
             Queue<CommandData> tempQueue = new PriorityBlockingQueue<>(queues.get(QueueType.CURRENT).size()+1);
             CommandData commandData;
@@ -609,9 +732,9 @@ public class MyService extends Service {
                 if (commandData == null) {
                     break;
                 }
-                commandData = findInRetryQueue(commandData);
+                commandData = supersede(commandData, findInRetryQueue(commandData));
                 if (commandData != null) {
-                    commandData = findInErrorQueue(commandData);
+                    commandData = supersede(commandData, findInErrorQueue(commandData));
                 }
                 if (commandData != null && !commandData.isInForeground()
                         && myContext.isInForeground()
@@ -619,6 +742,10 @@ public class MyService extends Service {
                     tempQueue.add(commandData);
                     commandData = null;
                 }
+                if (commandData != null && !isLaneAvailableFor(this, commandData)) {
+                    tempQueue.add(commandData);
+                    commandData = null;
+                }
             } while (commandData == null);
             while (!tempQueue.isEmpty()) {
                 CommandData cd = tempQueue.poll();
@@ -641,6 +768,14 @@ public class MyService extends Service {
             return commandData;
         }
 
+        /** The polled command is dropped, if another one should be executed instead */
+        private CommandData supersede(CommandData polled, CommandData toExecute) {
+            if (polled != toExecute) {
+                queues.finish(polled);
+            }
+            return toExecute;
+        }
+
         private static final long MIN_RETRY_PERIOD_SECONDS = 900; 
         private void moveCommandsFromRetryToMainQueue() {
             for (CommandData cd : queues.get(QueueType.RETRY)) {
@@ -661,10 +796,11 @@ public class MyService extends Service {
                         cd.resetRetries();
                         if (cdIn.isManuallyLaunched() || cd.executedMoreSecondsAgoThan(MIN_RETRY_PERIOD_SECONDS)) {
                             cdOut = cd;
-                            queues.get(QueueType.RETRY).remove(cd);
+                            queues.takeForExecution(QueueType.RETRY, cd);
                             MyLog.v(this, "Returned from Retry queue: " + cd);
                         } else {
                             cdOut = null;
+                            queues.onChanged(cd);
                             MyLog.v(this, "Found in Retry queue: " + cd);
                         }
                         break;
@@ -683,10 +819,11 @@ public class MyService extends Service {
                         cd.resetRetries();
                         if (cdIn.isManuallyLaunched() || cd.executedMoreSecondsAgoThan(MIN_RETRY_PERIOD_SECONDS)) {
                             cdOut = cd;
-                            queues.get(QueueType.ERROR).remove(cd);
+                            queues.takeForExecution(QueueType.ERROR, cd);
                             MyLog.v(this, "Returned from Error queue: " + cd);
                         } else {
                             cdOut = null;
+                            queues.onChanged(cd);
                             MyLog.v(this, "Found in Error queue: " + cd);
                         }
                     } else {
@@ -741,6 +878,7 @@ public class MyService extends Service {
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder(64);
+            sb.append("lane: " + laneIndex + ", ");
             if (currentlyExecuting != null && currentlyExecutingSince > 0) {
                 sb.append("currentlyExecuting: " + currentlyExecuting + ", ");
                 sb.append("since: " + RelativeTime.getDifference(getBaseContext(), currentlyExecutingSince) + ", ");
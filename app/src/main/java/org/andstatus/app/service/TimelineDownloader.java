@@ -70,7 +70,7 @@ abstract class TimelineDownloader extends CommandExecutorStrategy {
         getTimeline().onSyncEnded(execContext.getCommandData().getResult());
         getTimeline().save(execContext.getMyContext());
         if (!execContext.getResult().hasError() && !isStopping()) {
-            new DataPruner(execContext.getMyContext()).prune();
+            new DataPruner(execContext.getMyContext()).setParent(this).prune();
         }
         if (execContext.getResult().getDownloadedCount() > 0) {
             MyLog.v(this, "Notifying of timeline changes");
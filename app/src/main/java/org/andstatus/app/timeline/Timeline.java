@@ -785,6 +785,14 @@ public class Timeline implements Comparable<Timeline> {
         long correctionForExecutionTime = syncFrequencyMs / 10;
         long passedMs = System.currentTimeMillis() - getSyncSucceededDate();
         boolean blnOut = passedMs > syncFrequencyMs - correctionForExecutionTime;
+        if (blnOut && myAccount.getConnection() != null) {
+            long delayMs = myAccount.getConnection().getRateLimitDelayMs(getTimelineType().getConnectionApiRoutine());
+            if (delayMs > 0) {
+                MyLog.v(this, "Auto update of " + this + " is postponed by "
+                        + TimeUnit.MILLISECONDS.toSeconds(delayMs) + " seconds to stay within a rate limit");
+                return false;
+            }
+        }
 
         if (blnOut && MyLog.isVerboseEnabled()) {
             MyLog.v(this, "It's time to auto update " + this +
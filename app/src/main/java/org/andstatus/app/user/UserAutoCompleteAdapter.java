@@ -16,6 +16,7 @@
 
 package org.andstatus.app.user;
 
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
@@ -40,7 +41,10 @@ import org.andstatus.app.util.MyUrlSpan;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UserAutoCompleteAdapter extends BaseAdapter implements Filterable {
     private final Origin origin;
@@ -54,6 +58,7 @@ public class UserAutoCompleteAdapter extends BaseAdapter implements Filterable {
         this.origin = origin;
         this.myActivity =myActivity;
         mInflater = LayoutInflater.from(myActivity);
+        UserMentionIndex.getOrStartBuild(MyContextHolder.get(), origin.getId());
     }
 
     public Origin getOrigin() {
@@ -120,8 +125,14 @@ public class UserAutoCompleteAdapter extends BaseAdapter implements Filterable {
             List<UserListViewItem> filteredValues = new ArrayList<>();
             if (!TextUtils.isEmpty(prefix)) {
                 final String prefixString = prefix.toString().toLowerCase();
-                filteredValues = loadFiltered(prefixString);
-                CollectionsUtil.sort(filteredValues);
+                UserMentionIndex index = UserMentionIndex.get(origin.getId());
+                if (index == null) {
+                    filteredValues = loadFiltered(prefixString);
+                    CollectionsUtil.sort(filteredValues);
+                } else {
+                    filteredValues = loadFiltered(index.find(MyContextHolder.get().persistentAccounts(),
+                            prefixString, UserMentionIndex.MAX_SUGGESTIONS));
+                }
             }
             final FilterResults results = new FilterResults();
             results.values = filteredValues;
@@ -150,6 +161,40 @@ public class UserAutoCompleteAdapter extends BaseAdapter implements Filterable {
             return filteredValues;
         }
 
+        /** @return the users in the order of the userIds */
+        private List<UserListViewItem> loadFiltered(final List<Long> userIds) {
+            if (userIds.isEmpty()) {
+                return Collections.singletonList(UserListViewItem.getEmpty(MyContextHolder.get().context()
+                        .getText(R.string.nothing_in_the_loadable_list).toString()));
+            }
+            UserListLoader loader = new UserListLoader(UserListType.USERS,
+                    MyContextHolder.get().persistentAccounts().getFirstSucceededForOrigin(origin), origin, 0, "") {
+                @NonNull
+                @Override
+                protected String getSelection() {
+                    return UserTable.TABLE_NAME + "." + BaseColumns._ID + " IN (" + TextUtils.join(",", userIds) + ")";
+                }
+            };
+            loader.load(null);
+            final Map<Long, Integer> positions = new HashMap<>();
+            for (int ind = 0; ind < userIds.size(); ind++) {
+                positions.put(userIds.get(ind), ind);
+            }
+            List<UserListViewItem> filteredValues = new ArrayList<>(loader.getList());
+            Collections.sort(filteredValues, new Comparator<UserListViewItem>() {
+                @Override
+                public int compare(UserListViewItem lhs, UserListViewItem rhs) {
+                    return getPosition(lhs) - getPosition(rhs);
+                }
+
+                private int getPosition(UserListViewItem item) {
+                    Integer position = positions.get(item.getUserId());
+                    return position == null ? Integer.MAX_VALUE / 2 : position;
+                }
+            });
+            return filteredValues;
+        }
+
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
             //noinspection unchecked
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.user;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.account.MyAccount;
+import org.andstatus.app.account.PersistentAccounts;
+import org.andstatus.app.context.MyContext;
+import org.andstatus.app.data.DbUtils;
+import org.andstatus.app.database.MsgTable;
+import org.andstatus.app.database.UserTable;
+import org.andstatus.app.os.AsyncTaskLauncher;
+import org.andstatus.app.os.MyAsyncTask;
+import org.andstatus.app.util.MyLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory prefix index of the users of one origin by their usernames, WebFinger IDs and real names,
+ * which is used to suggest users to mention.
+ * It is built in the background, when a message editor needs it for the first time,
+ * and then it is updated incrementally by the {@link org.andstatus.app.data.DataUpdater}.
+ * Suggestions are ranked: me and my friends first, then users, whom my accounts replied to recently,
+ * then users with newer messages.
+ * @author yvolk@yurivolkov.com
+ */
+public class UserMentionIndex {
+    private static final String TAG = UserMentionIndex.class.getSimpleName();
+    public static final int MAX_SUGGESTIONS = 20;
+    /** Keys, added after a build, are kept apart until there are too many of them */
+    private static final int MAX_ADDED_KEYS = 1000;
+
+    private static final ConcurrentMap<Long, UserMentionIndex> indices = new ConcurrentHashMap<>();
+
+    private final long originId;
+    private volatile boolean loaded = false;
+    /** Sorted by key */
+    @GuardedBy("this")
+    private KeyEntry[] keys = new KeyEntry[0];
+    @GuardedBy("this")
+    private final TreeSet<KeyEntry> addedKeys = new TreeSet<>();
+    @GuardedBy("this")
+    private final Map<Long, UserEntry> users = new HashMap<>();
+
+    static class UserEntry {
+        final long userId;
+        final String[] keys;
+        long mentionedDate = 0;
+        long latestMessageDate = 0;
+        /** The keys of this entry are outdated, see {@link #onUserUpdated(long, String, String, String)} */
+        boolean replaced = false;
+
+        UserEntry(long userId, String[] keys) {
+            this.userId = userId;
+            this.keys = keys;
+        }
+    }
+
+    private static class KeyEntry implements Comparable<KeyEntry> {
+        final String key;
+        final UserEntry user;
+
+        KeyEntry(String key, UserEntry user) {
+            this.key = key;
+            this.user = user;
+        }
+
+        /** The probe goes before all entries with the same key */
+        static KeyEntry probe(String key) {
+            return new KeyEntry(key, null);
+        }
+
+        long getUserId() {
+            return user == null ? Long.MIN_VALUE : user.userId;
+        }
+
+        @Override
+        public int compareTo(@NonNull KeyEntry another) {
+            int compared = key.compareTo(another.key);
+            if (compared == 0 && getUserId() != another.getUserId()) {
+                compared = getUserId() < another.getUserId() ? -1 : 1;
+            }
+            return compared;
+        }
+    }
+
+    private static class Candidate {
+        final long userId;
+        final long mentionedDate;
+        final long latestMessageDate;
+        boolean isMeOrMyFriend = false;
+
+        Candidate(UserEntry user) {
+            userId = user.userId;
+            mentionedDate = user.mentionedDate;
+            latestMessageDate = user.latestMessageDate;
+        }
+    }
+
+    /** The best candidate first */
+    private static final Comparator<Candidate> RANK = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate lhs, Candidate rhs) {
+            if (lhs.isMeOrMyFriend != rhs.isMeOrMyFriend) {
+                return lhs.isMeOrMyFriend ? -1 : 1;
+            }
+            if (lhs.mentionedDate != rhs.mentionedDate) {
+                return lhs.mentionedDate > rhs.mentionedDate ? -1 : 1;
+            }
+            if (lhs.latestMessageDate != rhs.latestMessageDate) {
+                return lhs.latestMessageDate > rhs.latestMessageDate ? -1 : 1;
+            }
+            return lhs.userId == rhs.userId ? 0 : (lhs.userId < rhs.userId ? -1 : 1);
+        }
+    };
+
+    UserMentionIndex(long originId) {
+        this.originId = originId;
+    }
+
+    /** @return null if the index of the origin is not built yet. Then its build is started in the background */
+    public static UserMentionIndex getOrStartBuild(@NonNull final MyContext myContext, final long originId) {
+        if (originId == 0) {
+            return null;
+        }
+        UserMentionIndex index = indices.get(originId);
+        if (index == null) {
+            final UserMentionIndex indexToBuild = new UserMentionIndex(originId);
+            if (indices.putIfAbsent(originId, indexToBuild) != null) {
+                return null;
+            }
+            AsyncTaskLauncher.execute(TAG, false,
+                    new MyAsyncTask<Void, Void, Void>(TAG + originId, MyAsyncTask.PoolEnum.LONG_UI) {
+                        @Override
+                        protected Void doInBackground2(Void... params) {
+                            indexToBuild.build(myContext);
+                            return null;
+                        }
+                    });
+            return null;
+        }
+        return index.loaded ? index : null;
+    }
+
+    /** Forget indices of all origins, e.g. when the database is reinitialized or restored */
+    public static void clear() {
+        indices.clear();
+    }
+
+    /** @return null if the index of the origin is not built yet */
+    public static UserMentionIndex get(long originId) {
+        UserMentionIndex index = indices.get(originId);
+        return index != null && index.loaded ? index : null;
+    }
+
+    /** Null names are not indexed */
+    public static void onUserUpdated(long originId, long userId, String userName, String webFingerId,
+                                     @Nullable String realName) {
+        UserMentionIndex index = indices.get(originId);
+        if (index != null) {
+            index.onUserUpdated(userId, userName, webFingerId, realName);
+        }
+    }
+
+    /** A message of the user or, if mentionedByMe, a message of my account in reply to the user */
+    public static void onMessage(long originId, long userId, long date, boolean mentionedByMe) {
+        UserMentionIndex index = indices.get(originId);
+        if (index != null) {
+            index.onMessage(userId, date, mentionedByMe);
+        }
+    }
+
+    void build(@NonNull MyContext myContext) {
+        final String method = "build";
+        long startTime = System.currentTimeMillis();
+        SQLiteDatabase db = myContext.getDatabase();
+        if (db == null) {
+            MyLog.v(this, method + "; Database is unavailable");
+            indices.remove(originId, this);
+            return;
+        }
+        List<UserEntry> loadedUsers = new ArrayList<>();
+        Map<Long, UserEntry> loadedUsersMap = new HashMap<>();
+        String sql = "SELECT " + BaseColumns._ID + ", " + UserTable.USERNAME + ", " + UserTable.WEBFINGER_ID
+                + ", " + UserTable.REAL_NAME + ", " + UserTable.USER_MSG_DATE
+                + " FROM " + UserTable.TABLE_NAME
+                + " WHERE " + UserTable.ORIGIN_ID + "=" + originId;
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                UserEntry user = new UserEntry(cursor.getLong(0),
+                        toKeys(cursor.getString(1), cursor.getString(2), cursor.getString(3)));
+                user.latestMessageDate = cursor.getLong(4);
+                loadedUsers.add(user);
+                loadedUsersMap.put(user.userId, user);
+            }
+            DbUtils.closeSilently(cursor);
+            String myUserIds = getMyUserIds(myContext.persistentAccounts());
+            if (!TextUtils.isEmpty(myUserIds)) {
+                sql = "SELECT " + MsgTable.IN_REPLY_TO_USER_ID + ", MAX(" + MsgTable.UPDATED_DATE + ")"
+                        + " FROM " + MsgTable.TABLE_NAME
+                        + " WHERE " + MsgTable.ORIGIN_ID + "=" + originId
+                        + " AND " + MsgTable.AUTHOR_ID + " IN (" + myUserIds + ")"
+                        + " AND " + MsgTable.IN_REPLY_TO_USER_ID + "!=0"
+                        + " GROUP BY " + MsgTable.IN_REPLY_TO_USER_ID;
+                cursor = db.rawQuery(sql, null);
+                while (cursor.moveToNext()) {
+                    UserEntry user = loadedUsersMap.get(cursor.getLong(0));
+                    if (user != null) {
+                        user.mentionedDate = cursor.getLong(1);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            MyLog.i(this, method + "; SQL:'" + sql + "'", e);
+            indices.remove(originId, this);
+            return;
+        } finally {
+            DbUtils.closeSilently(cursor);
+        }
+        setLoaded(loadedUsers);
+        MyLog.v(this, method + "; " + loadedUsers.size() + " users of originId=" + originId + ", "
+                + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    @NonNull
+    private String getMyUserIds(PersistentAccounts accounts) {
+        StringBuilder builder = new StringBuilder();
+        for (MyAccount ma : accounts.list()) {
+            if (ma.getOriginId() == originId && ma.getUserId() != 0) {
+                if (builder.length() > 0) {
+                    builder.append(",");
+                }
+                builder.append(ma.getUserId());
+            }
+        }
+        return builder.toString();
+    }
+
+    /** Users, updated while the index was being built, are newer than the loaded ones */
+    synchronized void setLoaded(List<UserEntry> loadedUsers) {
+        List<KeyEntry> keyEntries = new ArrayList<>();
+        for (UserEntry user : loadedUsers) {
+            UserEntry updated = users.get(user.userId);
+            if (updated == null) {
+                users.put(user.userId, user);
+                for (String key : user.keys) {
+                    keyEntries.add(new KeyEntry(key, user));
+                }
+            } else {
+                updated.mentionedDate = Math.max(updated.mentionedDate, user.mentionedDate);
+                updated.latestMessageDate = Math.max(updated.latestMessageDate, user.latestMessageDate);
+            }
+        }
+        keyEntries.addAll(addedKeys);
+        addedKeys.clear();
+        keys = keyEntries.toArray(new KeyEntry[keyEntries.size()]);
+        Arrays.sort(keys);
+        loaded = true;
+    }
+
+    synchronized void onUserUpdated(long userId, String userName, String webFingerId, @Nullable String realName) {
+        if (userId == 0) {
+            return;
+        }
+        String[] userKeys = toKeys(userName, webFingerId, realName);
+        UserEntry old = users.get(userId);
+        if (old != null && Arrays.equals(old.keys, userKeys)) {
+            return;
+        }
+        UserEntry user = new UserEntry(userId, userKeys);
+        if (old != null) {
+            old.replaced = true;
+            user.mentionedDate = old.mentionedDate;
+            user.latestMessageDate = old.latestMessageDate;
+            for (String key : old.keys) {
+                addedKeys.remove(new KeyEntry(key, old));
+            }
+        }
+        users.put(userId, user);
+        for (String key : userKeys) {
+            addedKeys.add(new KeyEntry(key, user));
+        }
+        if (loaded && addedKeys.size() > MAX_ADDED_KEYS) {
+            mergeAddedKeys();
+        }
+    }
+
+    synchronized void onMessage(long userId, long date, boolean mentionedByMe) {
+        UserEntry user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        if (mentionedByMe) {
+            user.mentionedDate = Math.max(user.mentionedDate, date);
+        } else {
+            user.latestMessageDate = Math.max(user.latestMessageDate, date);
+        }
+    }
+
+    /** Both lists are sorted, so they are merged in one pass, and outdated entries are dropped */
+    @GuardedBy("this")
+    private void mergeAddedKeys() {
+        KeyEntry[] merged = new KeyEntry[keys.length + addedKeys.size()];
+        int size = 0;
+        int ind = 0;
+        for (KeyEntry added : addedKeys) {
+            while (ind < keys.length && keys[ind].compareTo(added) < 0) {
+                if (!keys[ind].user.replaced) {
+                    merged[size++] = keys[ind];
+                }
+                ind++;
+            }
+            merged[size++] = added;
+        }
+        for (; ind < keys.length; ind++) {
+            if (!keys[ind].user.replaced) {
+                merged[size++] = keys[ind];
+            }
+        }
+        keys = size == merged.length ? merged : Arrays.copyOf(merged, size);
+        addedKeys.clear();
+    }
+
+    /** @return IDs of the best ranked users, whose username, WebFinger ID or real name start with the prefix */
+    @NonNull
+    public List<Long> find(@NonNull PersistentAccounts accounts, String prefix, int maxCount) {
+        if (TextUtils.isEmpty(prefix) || maxCount < 1) {
+            return Collections.emptyList();
+        }
+        // All matched users are ranked, so the best ones are found even for a short prefix
+        List<Candidate> candidates = getCandidates(prefix.toLowerCase(Locale.ROOT));
+        PriorityQueue<Candidate> best = new PriorityQueue<>(maxCount + 1, Collections.reverseOrder(RANK));
+        for (Candidate candidate : candidates) {
+            candidate.isMeOrMyFriend = accounts.isMeOrMyFriend(candidate.userId);
+            best.add(candidate);
+            if (best.size() > maxCount) {
+                best.poll();
+            }
+        }
+        Long[] userIds = new Long[best.size()];
+        for (int ind = userIds.length - 1; ind >= 0; ind--) {
+            userIds[ind] = best.poll().userId;
+        }
+        return Arrays.asList(userIds);
+    }
+
+    private synchronized List<Candidate> getCandidates(String prefix) {
+        Set<UserEntry> found = new HashSet<>();
+        KeyEntry probe = KeyEntry.probe(prefix);
+        int ind = Arrays.binarySearch(keys, probe);
+        for (ind = ind < 0 ? -ind - 1 : ind; ind < keys.length && keys[ind].key.startsWith(prefix); ind++) {
+            if (!keys[ind].user.replaced) {
+                found.add(keys[ind].user);
+            }
+        }
+        for (KeyEntry added : addedKeys.tailSet(probe)) {
+            if (!added.key.startsWith(prefix)) {
+                break;
+            }
+            found.add(added.user);
+        }
+        List<Candidate> candidates = new ArrayList<>(found.size());
+        for (UserEntry user : found) {
+            candidates.add(new Candidate(user));
+        }
+        return candidates;
+    }
+
+    @NonNull
+    private static String[] toKeys(String userName, String webFingerId, @Nullable String realName) {
+        Set<String> keys = new HashSet<>();
+        for (String name : new String[]{userName, webFingerId, realName}) {
+            if (!TextUtils.isEmpty(name)) {
+                keys.add(name.toLowerCase(Locale.ROOT));
+            }
+        }
+        String[] array = keys.toArray(new String[keys.size()]);
+        Arrays.sort(array);
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return TAG + "{originId=" + originId + (loaded ? "" : ", not loaded") + "}";
+    }
+}
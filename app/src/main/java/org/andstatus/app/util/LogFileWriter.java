@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.andstatus.app.util;
+
+import android.util.Log;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.andstatus.app.data.DbUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes records of {@link MyLog} to the current log file in a background thread,
+ * so logging threads don't wait for the file system and for each other.
+ * Records are queued without locking; when the queue is full, new records are dropped and counted.
+ * The file is kept open, it is flushed periodically and is rotated, when it becomes too large.
+ * While nothing is queued (e.g. when logging to file is disabled), the thread is parked.
+ * The thread ends after {@link #stop()}
+ * @author yvolk@yurivolkov.com
+ */
+final class LogFileWriter {
+    private static final String TAG = LogFileWriter.class.getSimpleName();
+    static final int MAX_QUEUED_RECORDS = 5000;
+    static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
+    static final long FLUSH_PERIOD_MS = 1000;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final Queue<String> records = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile Thread thread = null;
+    /** The thread is parked until a new record is added */
+    private volatile boolean idle = false;
+    private volatile boolean urgentPending = false;
+    private volatile boolean stopped = false;
+
+    private final Object fileLock = new Object();
+    @GuardedBy("fileLock")
+    private String openedFilename = null;
+    @GuardedBy("fileLock")
+    private Writer writer = null;
+    @GuardedBy("fileLock")
+    private long fileSize = 0;
+
+    /** @param urgent if true, the record is written without waiting for the next periodic flush */
+    void add(String record, boolean urgent) {
+        if (stopped) {
+            return;
+        }
+        if (queuedCount.incrementAndGet() > MAX_QUEUED_RECORDS) {
+            queuedCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        records.offer(record);
+        Thread writerThread = ensureStarted();
+        if (urgent) {
+            urgentPending = true;
+        }
+        if (urgent || idle) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** @return true if the thread is parked until a new record is added */
+    boolean isIdle() {
+        Thread writerThread = thread;
+        return writerThread != null && idle && writerThread.getState() == Thread.State.WAITING;
+    }
+
+    /** Writes queued records and ends the thread. Records, added after this, are discarded */
+    void stop() {
+        stopped = true;
+        Thread writerThread;
+        synchronized (this) {
+            writerThread = thread;
+            thread = null;
+        }
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        synchronized (fileLock) {
+            close();
+        }
+    }
+
+    private Thread ensureStarted() {
+        Thread writerThread = thread;
+        if (writerThread == null) {
+            synchronized (this) {
+                writerThread = thread;
+                if (writerThread == null) {
+                    writerThread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            writeInBackground();
+                        }
+                    }, TAG);
+                    writerThread.setDaemon(true);
+                    writerThread.setPriority(Thread.MIN_PRIORITY);
+                    writerThread.start();
+                    thread = writerThread;
+                }
+            }
+        }
+        return writerThread;
+    }
+
+    private void writeInBackground() {
+        while (!stopped) {
+            waitForRecords();
+            if (stopped) {
+                break;
+            }
+            if (!urgentPending) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_PERIOD_MS));
+            }
+            urgentPending = false;
+            try {
+                flush();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to write log file", e);
+            }
+        }
+    }
+
+    /** Parks the thread while the queue is empty. The record is offered before {@link #idle} is checked
+     * in {@link #add(String, boolean)}, so either the record is seen here or the thread is unparked */
+    private void waitForRecords() {
+        idle = true;
+        while (records.isEmpty() && !stopped) {
+            LockSupport.park(this);
+        }
+        idle = false;
+    }
+
+    /** Writes all queued records to the current log file and flushes it. May be called from any thread */
+    void flush() {
+        synchronized (fileLock) {
+            String filename = MyLog.getLogFilename();
+            if (filename == null) {
+                writeQueued();
+                close();
+                return;
+            }
+            if (!filename.equals(openedFilename) || writer == null
+                    || !FileUtils.exists(MyLog.getFileInLogDir(filename, false))) {
+                close();
+                open(filename);
+            }
+            writeQueued();
+            try {
+                if (writer != null) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to flush " + openedFilename, e);
+                close();
+            }
+            if (fileSize > MAX_FILE_SIZE) {
+                close();
+                MyLog.setNextLogFileName(true);
+            }
+        }
+    }
+
+    /** Records, queued while logging to file is disabled, are discarded */
+    @GuardedBy("fileLock")
+    private void writeQueued() {
+        long dropped = droppedCount.getAndSet(0);
+        if (dropped > 0) {
+            write(MyLog.currentDateTimeFormatted() + " W/" + TAG + ": " + dropped
+                    + " log records were dropped, as the queue was full\n");
+        }
+        String record;
+        while ((record = records.poll()) != null) {
+            queuedCount.decrementAndGet();
+            write(record);
+        }
+    }
+
+    @GuardedBy("fileLock")
+    private void write(String record) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(record);
+            fileSize += record.length();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write to " + openedFilename, e);
+            close();
+        }
+    }
+
+    @GuardedBy("fileLock")
+    private void open(String filename) {
+        File file = MyLog.getFileInLogDir(filename, false);
+        if (file == null) {
+            return;
+        }
+        try {
+            fileSize = file.length();
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file.getAbsolutePath(), true), "UTF-8"), BUFFER_SIZE);
+            openedFilename = filename;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open " + file.getAbsolutePath(), e);
+            writer = null;
+        }
+    }
+
+    @GuardedBy("fileLock")
+    private void close() {
+        if (writer != null) {
+            DbUtils.closeSilently(writer, openedFilename);
+            writer = null;
+        }
+        openedFilename = null;
+        fileSize = 0;
+    }
+}
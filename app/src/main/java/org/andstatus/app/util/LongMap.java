@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map with primitive long keys (e.g. ids of rows), which doesn't box them: an open addressing hash table
+ * with linear probing, see also {@link LongSet}. Null values are not allowed. Not thread-safe
+ * @author yvolk@yurivolkov.com
+ */
+public class LongMap<V> {
+    private static final int MIN_CAPACITY = 8;
+    /** 0 marks a free slot, so the value of the zero key is stored separately */
+    private long[] keys;
+    private Object[] values;
+    private Object zeroValue = null;
+    private int size = 0;
+
+    public LongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /** @param expectedSize number of entries, which may be added without resizing */
+    public LongMap(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /** @return power of two, large enough for the size */
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (isOverloaded(expectedSize, capacity)) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /** Load factor is kept at 0.75 at most */
+    static boolean isOverloaded(int size, int capacity) {
+        return size * 4L > capacity * 3L;
+    }
+
+    /** Fibonacci hashing spreads sequential ids over the whole table */
+    static int hash(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /** @return true if the slot is in the cyclic range (from, to] */
+    static boolean isBetween(int slot, int from, int to) {
+        return from <= to ? from < slot && slot <= to : from < slot || slot <= to;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return (V) zeroValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key, mask); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                return (V) values[slot];
+            }
+            if (k == 0) {
+                return null;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /** @return the previous value or null */
+    @SuppressWarnings("unchecked")
+    public V put(long key, @NonNull V value) {
+        if (key == 0) {
+            V previous = (V) zeroValue;
+            zeroValue = value;
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key, mask); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == 0) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                if (isOverloaded(size, keys.length)) {
+                    rehash(keys.length * 2);
+                }
+                return null;
+            }
+        }
+    }
+
+    /** @return the removed value or null */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            V previous = (V) zeroValue;
+            if (previous != null) {
+                zeroValue = null;
+                size--;
+            }
+            return previous;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key, mask); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                V previous = (V) values[slot];
+                removeAt(slot);
+                return previous;
+            }
+            if (k == 0) {
+                return null;
+            }
+        }
+    }
+
+    /** Backward shift deletion: the following entries of the probe chain are moved to fill the gap */
+    private void removeAt(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            if (isBetween(hash(keys[next], mask), gap, next)) {
+                continue;
+            }
+            keys[gap] = keys[next];
+            values[gap] = values[next];
+            gap = next;
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < oldKeys.length; index++) {
+            long key = oldKeys[index];
+            if (key != 0) {
+                int slot = hash(key, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[index];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            keys = new long[MIN_CAPACITY];
+            values = new Object[MIN_CAPACITY];
+            zeroValue = null;
+            size = 0;
+        }
+    }
+
+    /** @return a copy of the keys */
+    @NonNull
+    public LongSet keys() {
+        LongSet set = new LongSet(size);
+        if (zeroValue != null) {
+            set.add(0);
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                set.add(key);
+            }
+        }
+        return set;
+    }
+
+    /** @return a copy of the values */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        if (zeroValue != null) {
+            list.add((V) zeroValue);
+        }
+        for (Object value : values) {
+            if (value != null) {
+                list.add((V) value);
+            }
+        }
+        return list;
+    }
+}
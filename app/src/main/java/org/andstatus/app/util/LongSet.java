@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.andstatus.app.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of primitive longs (e.g. ids of rows), which doesn't box them: an open addressing hash table
+ * with linear probing. The primitive methods ({@link #add(long)}, {@link #contains(long)}, {@link #remove(long)})
+ * don't allocate, while the {@link java.util.Set} interface is kept for compatibility.
+ * Not thread-safe
+ * @author yvolk@yurivolkov.com
+ */
+public class LongSet extends AbstractSet<Long> {
+    private static final int MIN_CAPACITY = 8;
+    /** 0 marks a free slot, so the zero value is stored separately */
+    private long[] keys;
+    private boolean hasZero = false;
+    private int size = 0;
+
+    public LongSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /** @param expectedSize number of values, which may be added without resizing */
+    public LongSet(int expectedSize) {
+        keys = new long[LongMap.capacityFor(expectedSize)];
+    }
+
+    public LongSet(LongSet other) {
+        keys = other.keys.clone();
+        hasZero = other.hasZero;
+        size = other.size;
+    }
+
+    public static LongSet of(long... values) {
+        LongSet set = new LongSet(values.length);
+        for (long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    /** @return the collection itself, if it is a LongSet already, or its copy */
+    @NonNull
+    public static LongSet asLongSet(@NonNull Collection<Long> values) {
+        if (values instanceof LongSet) {
+            return (LongSet) values;
+        }
+        LongSet set = new LongSet(values.size());
+        for (Long value : values) {
+            set.add(value.longValue());
+        }
+        return set;
+    }
+
+    /** @return true if the set didn't contain the value */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongMap.hash(value, mask); ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == value) {
+                return false;
+            }
+            if (key == 0) {
+                keys[slot] = value;
+                size++;
+                if (LongMap.isOverloaded(size, keys.length)) {
+                    rehash(keys.length * 2);
+                }
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return hasZero;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongMap.hash(value, mask); ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == value) {
+                return true;
+            }
+            if (key == 0) {
+                return false;
+            }
+        }
+    }
+
+    /** @return true if the value was in the set */
+    public boolean remove(long value) {
+        if (value == 0) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongMap.hash(value, mask); ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == value) {
+                removeAt(slot);
+                return true;
+            }
+            if (key == 0) {
+                return false;
+            }
+        }
+    }
+
+    /** Backward shift deletion: the following entries of the probe chain are moved to fill the gap */
+    private void removeAt(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int ideal = LongMap.hash(keys[next], mask);
+            if (LongMap.isBetween(ideal, gap, next)) {
+                continue;
+            }
+            keys[gap] = keys[next];
+            gap = next;
+        }
+        keys[gap] = 0;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        keys = new long[capacity];
+        int mask = capacity - 1;
+        for (long value : oldKeys) {
+            if (value != 0) {
+                int slot = LongMap.hash(value, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = value;
+            }
+        }
+    }
+
+    public boolean addAll(LongSet other) {
+        boolean changed = other.hasZero && add(0);
+        for (long value : other.keys) {
+            if (value != 0 && add(value)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    @NonNull
+    public long[] toLongArray() {
+        long[] values = new long[size];
+        int index = 0;
+        if (hasZero) {
+            values[index++] = 0;
+        }
+        for (long value : keys) {
+            if (value != 0) {
+                values[index++] = value;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    /** Doesn't use {@link Iterator#remove()}, which is not supported */
+    @Override
+    public boolean removeAll(@NonNull Collection<?> c) {
+        boolean changed = false;
+        for (Object o : c) {
+            if (remove(o)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Doesn't use {@link Iterator#remove()}, which is not supported */
+    @Override
+    public boolean retainAll(@NonNull Collection<?> c) {
+        boolean changed = false;
+        for (long value : toLongArray()) {
+            if (!c.contains(value)) {
+                remove(value);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            keys = new long[MIN_CAPACITY];
+            hasZero = false;
+            size = 0;
+        }
+    }
+
+    /** The iterator boxes values and doesn't support removal, bulk removals are overridden.
+     * Use {@link #toLongArray()} to avoid boxing */
+    @NonNull
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private int slot = hasZero ? -1 : nextSlot(0);
+
+            private int nextSlot(int from) {
+                int next = from;
+                while (next < keys.length && keys[next] == 0) {
+                    next++;
+                }
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.length;
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long value = slot < 0 ? 0 : keys[slot];
+                slot = nextSlot(slot + 1);
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+}
@@ -28,11 +28,15 @@ import org.apache.commons.lang3.text.translate.EntityArrays;
 import org.apache.commons.lang3.text.translate.LookupTranslator;
 import org.apache.commons.lang3.text.translate.NumericEntityUnescaper;
 
+import java.util.regex.Pattern;
+
 public class MyHtml {
     // See http://docs.oracle.com/javase/6/docs/api/java/util/regex/Pattern.html
-    private static final String GNU_SOCIAL_FAVORITED_SOMETHING_BY_REGEX = "(?s)([^ ]+) favorited something by [^ ]+ (.+)";
-    private static final String SPACES_REGEX = "[\\[\\]\\(\\)\\{\\}\n\'\"<>,:;\\s]+";
-    private static final String PUNCTUATION_BEFORE_COMMA_REGEX = "[,.!?]+,";
+    private static final Pattern GNU_SOCIAL_FAVORITED_SOMETHING_BY_PATTERN =
+            Pattern.compile("(?s)([^ ]+) favorited something by [^ ]+ (.+)");
+    /** The same characters are checked by {@link #isWordSeparator(char)} */
+    private static final Pattern SPACES_PATTERN = Pattern.compile("[\\[\\]\\(\\)\\{\\}\n\'\"<>,:;\\s]+");
+    private static final Pattern NEWLINES_PATTERN = Pattern.compile("\n\\s*\n");
 
     private MyHtml() {
         // Empty
@@ -60,9 +64,16 @@ public class MyHtml {
         return Html.toHtml(spannable);
     }
 
+    /** The same as {@link #normalizeWordsForSearch(String)} of {@link #fromHtml(String)}, lowercased.
+     * Newlines and "<>" are word separators, so we skip the parts of {@link #fromHtml(String)}
+     * that only deal with them */
     @NonNull
     public static String getBodyToSearch(String body) {
-        return normalizeWordsForSearch(fromHtml(body)).toLowerCase();
+        if (TextUtils.isEmpty(body)) {
+            return "";
+        }
+        String text2 = hasHtmlMarkup(body) ? Html.fromHtml(body).toString() : body;
+        return normalizeWordsForSearch(unescapeEntities(text2).trim()).toLowerCase();
     }
 
     /** Strips HTML markup from the String */
@@ -80,10 +91,15 @@ public class MyHtml {
     }
 
     public static String unescapeHtml(String text2) {
-        return UNESCAPE_HTML.translate(text2)
-                // This is needed to avoid visible text truncation,
-                // see https://github.com/andstatus/andstatus/issues/441
-                .replaceAll("<>","< >");
+        String text3 = unescapeEntities(text2);
+        // This is needed to avoid visible text truncation,
+        // see https://github.com/andstatus/andstatus/issues/441
+        return text3.contains("<>") ? text3.replace("<>", "< >") : text3;
+    }
+
+    /** All entities start with '&', so the translators are not needed without it */
+    private static String unescapeEntities(String text) {
+        return text.indexOf('&') < 0 ? text : UNESCAPE_HTML.translate(text);
     }
 
     private static final CharSequenceTranslator UNESCAPE_HTML =
@@ -100,26 +116,94 @@ public class MyHtml {
             return "";
         } else {
             String text2 = text.trim();
-            String NEWLINE_SEARCH = "\n";
-            String NEWLINE_REPLACE = "\n";
-            text2 = text2.replaceAll(NEWLINE_SEARCH + "\\s*" + NEWLINE_SEARCH, NEWLINE_REPLACE);
-            if (text2.endsWith(NEWLINE_REPLACE)) {
-                text2 = text2.substring(0, text2.length() - NEWLINE_REPLACE.length());
+            if (text2.indexOf('\n') >= 0) {
+                text2 = NEWLINES_PATTERN.matcher(text2).replaceAll("\n");
+                if (text2.endsWith("\n")) {
+                    text2 = text2.substring(0, text2.length() - 1);
+                }
             }
             return text2;
         }
     }
 
+    /**
+     * Splits the text into words in one pass, without regular expressions.
+     * The result is ",word1,word2,...,": punctuation at the end of a word and "words" of punctuation only
+     * are dropped. A word, prefixed by '@', '#' or '!', is preceded by its name without the prefix
+     * (up to the next prefix char), e.g. "#AndStatus" gives "AndStatus,#AndStatus"
+     */
     public static String normalizeWordsForSearch(String text) {
         if (TextUtils.isEmpty(text)) {
             return "";
-        } else {
-            String text2 = "," + text + ",";
-            text2 = text2.replaceAll(SPACES_REGEX,",");
-            text2 = text2.replaceAll(PUNCTUATION_BEFORE_COMMA_REGEX,",");
-            text2 = text2.replaceAll("(,[@#!]([^@#!,]+))",",$2$1");
-            return text2;
         }
+        StringBuilder builder = new StringBuilder(text.length() + 32);
+        builder.append(',');
+        int length = text.length();
+        int wordStart = -1;
+        for (int ind = 0; ind <= length; ind++) {
+            if (ind < length && !isWordSeparator(text.charAt(ind))) {
+                if (wordStart < 0) {
+                    wordStart = ind;
+                }
+            } else if (wordStart >= 0) {
+                appendWordToSearch(builder, text, wordStart, ind);
+                wordStart = -1;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendWordToSearch(StringBuilder builder, String text, int start, int end) {
+        int end2 = end;
+        while (end2 > start && isPunctuation(text.charAt(end2 - 1))) {
+            end2--;
+        }
+        if (end2 == start) {
+            return;
+        }
+        if (end2 - start > 1 && isWordPrefix(text.charAt(start)) && !isWordPrefix(text.charAt(start + 1))) {
+            int nameEnd = start + 2;
+            while (nameEnd < end2 && !isWordPrefix(text.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            builder.append(text, start + 1, nameEnd).append(',');
+        }
+        builder.append(text, start, end2).append(',');
+    }
+
+    private static boolean isWordSeparator(char c) {
+        switch (c) {
+            case '[':
+            case ']':
+            case '(':
+            case ')':
+            case '{':
+            case '}':
+            case '\'':
+            case '"':
+            case '<':
+            case '>':
+            case ',':
+            case ':':
+            case ';':
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isPunctuation(char c) {
+        return c == '.' || c == '!' || c == '?';
+    }
+
+    private static boolean isWordPrefix(char c) {
+        return c == '@' || c == '#' || c == '!';
     }
 
     /** Very simple method  
@@ -134,14 +218,23 @@ public class MyHtml {
 
     @NonNull
     public static boolean isFavoritingAction(String body) {
-        String out = fromHtml(body).toLowerCase();
-        return out.matches(GNU_SOCIAL_FAVORITED_SOMETHING_BY_REGEX);
+        return isFavoritingActionText(fromHtml(body).toLowerCase());
+    }
+
+    /** @param text lowercased {@link #fromHtml(String)} of a body */
+    public static boolean isFavoritingActionText(@NonNull String text) {
+        return GNU_SOCIAL_FAVORITED_SOMETHING_BY_PATTERN.matcher(text).matches();
     }
 
     @NonNull
     public static String getCleanedBody(String body) {
-        String text2 = fromHtml(body).toLowerCase();
-        return text2.replaceAll(SPACES_REGEX, " ").
-                replaceFirst(GNU_SOCIAL_FAVORITED_SOMETHING_BY_REGEX,"$2");
+        return getCleanedBodyText(fromHtml(body).toLowerCase());
+    }
+
+    /** @param text lowercased {@link #fromHtml(String)} of a body */
+    @NonNull
+    public static String getCleanedBodyText(@NonNull String text) {
+        String text2 = SPACES_PATTERN.matcher(text).replaceAll(" ");
+        return GNU_SOCIAL_FAVORITED_SOMETHING_BY_PATTERN.matcher(text2).replaceFirst("$2");
     }
 }
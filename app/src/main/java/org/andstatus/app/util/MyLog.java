@@ -95,8 +95,10 @@ public class MyLog {
     private static volatile int minLogLevel = VERBOSE;
 
     private static Object logFileLock = new Object();
+    /** Is changed under the lock, but may be read without it */
     @GuardedBy("logFileLock")
-    private static String logFileName = null;
+    private static volatile String logFileName = null;
+    private static final LogFileWriter logFileWriter = new LogFileWriter();
 
     private static final String COMMA = ",";
 
@@ -483,6 +485,7 @@ public class MyLog {
     }
     
     public static void setNextLogFileName() {
+        flushLogFile();
         setNextLogFileName(true);
     }
     
@@ -490,13 +493,20 @@ public class MyLog {
         if (logEnabled) {
             setNextLogFileName(false);
         } else { 
+            flushLogFile();
             synchronized (logFileLock) {
                 logFileName = null;
             }
+            flushLogFile();
         }
     }
 
-    private static void setNextLogFileName(boolean changeExisting) {
+    /** Writes to the log file all records, which were queued for it, see {@link LogFileWriter} */
+    public static void flushLogFile() {
+        logFileWriter.flush();
+    }
+
+    static void setNextLogFileName(boolean changeExisting) {
         String filename = currentDateTimeFormatted() + "_log.txt";
         synchronized (logFileLock) {
             if (logFileName == null || changeExisting) {
@@ -506,12 +516,9 @@ public class MyLog {
     }
     
     public static boolean isLogToFileEnabled() {
-        synchronized (logFileLock) {
-            return logFileName != null;
-        }
+        return logFileName != null;
     }
     
-    private static Object logFileWriterLock = new Object();
     static void logToFile(int logLevel, String tag, String msg, Throwable tr) {
         if(!isLogToFileEnabled()) {
             return;
@@ -534,31 +541,11 @@ public class MyLog {
             builder.append(getStackTrace(tr));
         }
         builder.append("\n");
-        writeRawStringToLogFile(builder);
+        logFileWriter.add(builder.toString(), logLevel >= WARN);
     }
 
-    private static void writeRawStringToLogFile(StringBuilder builder)
-    {
-        synchronized (logFileWriterLock)
-        {
-            writeStringToFile(builder.toString(), getMostRecentLogFileName(),
-                              true, false);
-        }
-    }
-    
-    private static String getMostRecentLogFileName() {
-        String filename = getLogFilename();
-        if (!FileUtils.exists(getFileInLogDir(filename, false))) {
-            setNextLogFileName(true);
-            filename = getLogFilename();
-        }
-        return filename;
-    }
-    
     public static String getLogFilename() {
-        synchronized (logFileLock) {
-            return logFileName;
-        }
+        return logFileName;
     }
     
     static String logLevelToString(int logLevel) {
@@ -601,11 +588,15 @@ public class MyLog {
     }
 
     public static void logNetworkLevelMessage(Object objTag, String namePrefix, Object jso) {
-        if (jso != null && isLoggable(objTag, VERBOSE) 
-                && SharedPreferencesUtil.getBoolean(MyPreferences.KEY_LOG_NETWORK_LEVEL_MESSAGES, false)) {
+        if (jso != null && isNetworkLevelMessageLoggable(objTag)) {
             logJson(objTag, namePrefix, jso, MyPreferences.isLogEverythingToFile());
         }
     }
+
+    public static boolean isNetworkLevelMessageLoggable(Object objTag) {
+        return isLoggable(objTag, VERBOSE)
+                && SharedPreferencesUtil.getBoolean(MyPreferences.KEY_LOG_NETWORK_LEVEL_MESSAGES, false);
+    }
    
     public static void logJson(Object objTag, String namePrefix, Object jso, boolean toFile) {
         if (jso == null) {
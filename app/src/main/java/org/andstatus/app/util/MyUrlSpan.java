@@ -99,7 +99,27 @@ public class MyUrlSpan extends URLSpan {
 
     public static void showText(TextView textView, String text, boolean linkify, boolean showIfEmpty) {
         if (textView == null) return;
-        if (TextUtils.isEmpty(text)) {
+        showSpanned(textView, TextUtils.isEmpty(text) ? null : toSpanned(text), linkify, showIfEmpty);
+    }
+
+    /** Renders the text, which may have HTML markup. The result may be reused,
+     * see {@link #showSpanned(TextView, Spanned, boolean, boolean)} */
+    @NonNull
+    public static Spanned toSpanned(@NonNull String text) {
+        String text2 = text;
+        // Android 6 bug, see https://github.com/andstatus/andstatus/issues/334
+        // Setting setMovementMethod to not null causes a crash if text is SOFT_HYPHEN only:
+        if (text2.contains(SOFT_HYPHEN)) {
+            text2 = text2.replace(SOFT_HYPHEN, "-");
+        }
+        return MyHtml.hasHtmlMarkup(text2) ? Html.fromHtml(text2) : new SpannableString(text2);
+    }
+
+    /** The TextView gets a copy of the spanned, so the spanned itself is not modified
+     * @param spanned null for an empty text */
+    public static void showSpanned(TextView textView, Spanned spanned, boolean linkify, boolean showIfEmpty) {
+        if (textView == null) return;
+        if (spanned == null) {
             textView.setText("");
             ViewUtils.showView(textView, showIfEmpty);
         } else {
@@ -108,12 +128,6 @@ public class MyUrlSpan extends URLSpan {
                 textView.setFocusableInTouchMode(true);
                 textView.setLinksClickable(true);
             }
-            // Android 6 bug, see https://github.com/andstatus/andstatus/issues/334
-            // Setting setMovementMethod to not null causes a crash if text is SOFT_HYPHEN only:
-            if (text.contains(SOFT_HYPHEN)) {
-                text = text.replace(SOFT_HYPHEN, "-");
-            }
-            Spanned spanned = MyHtml.hasHtmlMarkup(text) ? Html.fromHtml(text) : new SpannableString(text);
             textView.setText(spanned);
             if (linkify && !hasUrlSpans(spanned)) {
                 Linkify.addLinks(textView, Linkify.WEB_URLS);